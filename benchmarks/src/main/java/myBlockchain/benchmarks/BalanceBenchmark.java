@@ -0,0 +1,66 @@
+package myBlockchain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import myBlockchain.myBlockchain;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSet;
+import myBlockchain.Transactions.Wallet;
+
+/*
+ * Wallet.getBalance() for a wallet holding a fixed number of outputs while
+ * the rest of the UTXO set grows. The balance should not depend on the set size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BalanceBenchmark
+{
+    private static final int OWNED = 10; // Outputs held by the measured wallet
+    private static final int OTHER_WALLETS = 64;
+
+    @Param({"1000", "10000", "100000"})
+    public int utxos;
+
+    private Wallet wallet;
+
+    @Setup
+    public void setup()
+    {
+        Fixtures.installProvider();
+        myBlockchain.UTXOs = new UTXOSet();
+        wallet = new Wallet();
+        Wallet[] others = new Wallet[OTHER_WALLETS];
+        for(int i = 0; i < others.length; i++)
+        {
+            others[i] = new Wallet();
+        }
+        for(int i = 0; i < utxos; i++)
+        {
+            Wallet owner = i < OWNED ? wallet : others[i % others.length];
+            TransactionOutput output = new TransactionOutput(owner.publicKey, Fixtures.coins(1), "balance " + i);
+            myBlockchain.UTXOs.put(output.id, output);
+        }
+    }
+
+    @Benchmark
+    public long getBalance()
+    {
+        return wallet.getBalance();
+    }
+}
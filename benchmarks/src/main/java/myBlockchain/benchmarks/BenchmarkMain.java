@@ -0,0 +1,33 @@
+package myBlockchain.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the JMH benchmarks with the GC profiler on and JSON results written to
+ * jmh-result.json, so runs from different builds can be compared.
+ * Accepts the usual JMH command line; -rf and -rff override the result file.
+ */
+public class BenchmarkMain
+{
+    public static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if(commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams())
+        {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+        if(!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if(!commandLine.getResult().hasValue()) options.result(RESULT_FILE);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,89 @@
+package myBlockchain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import myBlockchain.myBlockchain;
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Transactions.Wallet;
+
+/*
+ * myBlockchain.isChainValid() over chains of growing length, one payment per
+ * block going back and forth between two wallets. Difficulty is kept at 1 so
+ * the setup does not spend its time mining. The full variants check every
+ * block, the cold one also clears the signature cache first so every signature
+ * is verified again. The incremental variant is the usual call, which only
+ * checks blocks added since the last run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChainValidationBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int blocks;
+
+    @Setup
+    public void setup()
+    {
+        Fixtures.installProvider();
+        Fixtures.silence();
+        myBlockchain.difficulty = 1;
+        Wallet walletA = new Wallet();
+        Wallet walletB = new Wallet();
+        Block previous = Fixtures.genesis(walletA, Fixtures.coins(1000));
+        for(int i = 1; i < blocks; i++)
+        {
+            Wallet sender = (i & 1) == 1 ? walletA : walletB;
+            Wallet reciever = sender == walletA ? walletB : walletA;
+            Block block = new Block(previous.hash);
+            block.addTransaction(sender.sendFunds(reciever.publicKey, Fixtures.coins(1)));
+            Fixtures.append(block);
+            previous = block;
+        }
+        if(!myBlockchain.isChainValid())
+        {
+            throw new IllegalStateException("Benchmark chain is not valid");
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.restoreOutput();
+    }
+
+    @Benchmark
+    public boolean isChainValidCold()
+    {
+        myBlockchain.signatureCache.clear();
+        return myBlockchain.isChainValid(true);
+    }
+
+    @Benchmark
+    public boolean isChainValidWarm()
+    {
+        return myBlockchain.isChainValid(true);
+    }
+
+    @Benchmark
+    public boolean isChainValidIncremental()
+    {
+        return myBlockchain.isChainValid();
+    }
+}
@@ -0,0 +1,75 @@
+package myBlockchain.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.Security;
+
+import myBlockchain.myBlockchain;
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.ChainValidator;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.Wallet;
+
+/*
+ * Shared setup for the benchmarks: the crypto provider, a quiet System.out
+ * and a fresh ledger in the myBlockchain statics, built like the demo in main.
+ */
+final class Fixtures
+{
+    private static final PrintStream STDOUT = System.out;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private Fixtures()
+    {
+    }
+
+    static void installProvider()
+    {
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+    }
+    // Mining and transactions log every step, which would end up in the measurements
+    static void silence()
+    {
+        System.setOut(DISCARD);
+    }
+
+    static void restoreOutput()
+    {
+        System.setOut(STDOUT);
+    }
+    // Resets the chain and mines a genesis block paying the given amount to the wallet
+    static Block genesis(Wallet owner, long amount)
+    {
+        myBlockchain.ledger = new Ledger();
+        myBlockchain.UTXOs = myBlockchain.ledger;
+        myBlockchain.chainValidator = new ChainValidator();
+        myBlockchain.signatureCache.clear();
+
+        Wallet coinbase = new Wallet();
+        Transaction genesisTransaction = new Transaction(coinbase.publicKey, owner.publicKey, amount, null);
+        genesisTransaction.generateSignature(coinbase.privateKey);
+        genesisTransaction.transactionId = "0";
+        genesisTransaction.outputs.add(new TransactionOutput(genesisTransaction.reciever, genesisTransaction.value, genesisTransaction.transactionId));
+        myBlockchain.UTXOs.put(genesisTransaction.outputs.get(0).id, genesisTransaction.outputs.get(0));
+        myBlockchain.genesisTransaction = genesisTransaction;
+
+        Block genesis = new Block("0");
+        genesis.addTransaction(genesisTransaction);
+        append(genesis);
+        return genesis;
+    }
+    // Mines the block sequentially and commits it, like myBlockchain.addBlock() without the thread pool
+    static void append(Block block)
+    {
+        block.mineBlock(myBlockchain.difficulty);
+        myBlockchain.ledger.applyBlock(block);
+    }
+
+    static long coins(long coins)
+    {
+        return Amount.ofCoins(coins);
+    }
+}
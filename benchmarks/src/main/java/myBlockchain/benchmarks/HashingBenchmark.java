@@ -0,0 +1,67 @@
+package myBlockchain.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+/*
+ * SHA-256 of a block-sized string and the merkle root over a block's transactions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashingBenchmark
+{
+    @Param({"1", "16", "256", "4096"})
+    public int transactions;
+
+    private String input;
+    private ArrayList<Transaction> block;
+
+    @Setup
+    public void setup()
+    {
+        Fixtures.installProvider();
+        Wallet sender = new Wallet();
+        Wallet reciever = new Wallet();
+        block = new ArrayList<Transaction>(transactions);
+        for(int i = 0; i < transactions; i++)
+        {
+            Transaction transaction = new Transaction(sender.publicKey, reciever.publicKey, Fixtures.coins(i + 1), null);
+            transaction.transactionId = StringUtil.applySHA256("benchmark transaction " + i);
+            block.add(transaction);
+        }
+        // Previous hash, timestamp, nonce and merkle root, as the old string header was
+        input = StringUtil.applySHA256("previous") + System.currentTimeMillis() + 12345 + StringUtil.applySHA256("merkle");
+    }
+
+    @Benchmark
+    public String applySHA256()
+    {
+        return StringUtil.applySHA256(input);
+    }
+
+    @Benchmark
+    public String getMerkleRoot()
+    {
+        return StringUtil.getMerkleRoot(block);
+    }
+}
@@ -0,0 +1,70 @@
+package myBlockchain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.ParallelMiner;
+import myBlockchain.Util.StringUtil;
+
+/*
+ * Proof of work on an empty block. Every call mines a block with a new
+ * previous hash, so the nonce search does not repeat and the score is the
+ * average over many searches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MiningBenchmark
+{
+    @Param({"1", "2", "3", "4"})
+    public int difficulty;
+
+    private ParallelMiner miner;
+    private int counter;
+
+    @Setup
+    public void setup()
+    {
+        Fixtures.silence();
+        miner = new ParallelMiner(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        miner.shutdown();
+        Fixtures.restoreOutput();
+    }
+
+    @Benchmark
+    public String mineBlock()
+    {
+        Block block = new Block(StringUtil.applySHA256(Integer.toString(counter++)));
+        block.mineBlock(difficulty);
+        return block.hash;
+    }
+
+    @Benchmark
+    public String mineBlockParallel()
+    {
+        Block block = new Block(StringUtil.applySHA256(Integer.toString(counter++)));
+        block.mineBlock(difficulty, miner);
+        return block.hash;
+    }
+}
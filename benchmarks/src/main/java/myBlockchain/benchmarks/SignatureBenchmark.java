@@ -0,0 +1,56 @@
+package myBlockchain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+/*
+ * ECDSA signing and verification of transaction data, without the signature cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark
+{
+    private Wallet wallet;
+    private String data;
+    private byte[] signature;
+
+    @Setup
+    public void setup()
+    {
+        Fixtures.installProvider();
+        wallet = new Wallet();
+        Wallet reciever = new Wallet();
+        // Same shape as the data a transaction signs
+        data = StringUtil.getStringFromKey(wallet.publicKey) + StringUtil.getStringFromKey(reciever.publicKey) + Fixtures.coins(40);
+        signature = StringUtil.applyECDSASig(wallet.privateKey, data);
+    }
+
+    @Benchmark
+    public byte[] applyECDSASig()
+    {
+        return StringUtil.applyECDSASig(wallet.privateKey, data);
+    }
+
+    @Benchmark
+    public boolean verifyECDSASig()
+    {
+        return StringUtil.verifyECDSASig(wallet.publicKey, data, signature);
+    }
+}
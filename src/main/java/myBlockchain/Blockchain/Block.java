@@ -1,9 +1,15 @@
 package myBlockchain.Blockchain;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
+import myBlockchain.myBlockchain;
 import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Util.MerkleProof;
+import myBlockchain.Util.MerkleTree;
 import myBlockchain.Util.StringUtil;
 
 public class Block 
@@ -14,6 +20,9 @@ public class Block
     private int nonce; // Number used in mining process
     public String merkleRoot; // Root of the merkle tree of transactions
     public ArrayList<Transaction> transactions = new ArrayList<Transaction>(); // Transactions in this block
+    private MerkleTree merkleTree = new MerkleTree(); // Grows with every transaction added
+    private UTXOBatch utxoBatch; // Spends and creates of the added transactions, committed with the block
+    private boolean pruned; // Only the header is left, the transactions were dropped
     
     public Block(String previousHash)
     {
@@ -21,30 +30,127 @@ public class Block
         this.timeStamp = new Date().getTime();
         this.hash = calculateHash();
     }
+    // Recreates a block that was already mined, e.g. when it is read back from disk
+    public Block(String hash, String previousHash, long timeStamp, int nonce, String merkleRoot, ArrayList<Transaction> transactions)
+    {
+        this.hash = hash;
+        this.previousHash = previousHash;
+        this.timeStamp = timeStamp;
+        this.nonce = nonce;
+        this.merkleRoot = merkleRoot;
+        this.transactions = transactions;
+    }
+    // A block of which only the header is kept, e.g. one below a ledger's prune depth
+    public static Block pruned(String hash, BlockHeader header)
+    {
+        // The "0" genesis parent is only in the header as its hash
+        String previousHash = Arrays.equals(header.previousHash, StringUtil.toHashBytes("0")) ? "0" : StringUtil.toHexString(header.previousHash);
+        Block block = new Block(hash, previousHash, header.timeStamp, header.nonce, StringUtil.toHexString(header.merkleRoot), new ArrayList<Transaction>());
+        block.pruned = true;
+        return block;
+    }
+    // True when the transactions were dropped and only the header is left
+    public boolean isPruned()
+    {
+        return pruned;
+    }
+    // When this block was created
+    public long getTimeStamp()
+    {
+        return timeStamp;
+    }
+    // The nonce that was found while mining
+    public int getNonce()
+    {
+        return nonce;
+    }
     // Calculates the hash for this block
     public String calculateHash()
     {
-        String calculatedHash = StringUtil.applySHA256(
-            previousHash +
-            Long.toString(timeStamp) +
-            Integer.toString(nonce) +
-            merkleRoot
-            );
-        return calculatedHash;
+        return calculateHash(nonce);
+    }
+    // Calculates the hash this block would have with the given nonce
+    public String calculateHash(int nonce)
+    {
+        HeaderHasher hasher = new HeaderHasher(getHeader(nonce));
+        return hasher.getHashHex();
+    }
+    // Returns the binary header the block hash is calculated from
+    public BlockHeader getHeader()
+    {
+        return getHeader(nonce);
+    }
+
+    private BlockHeader getHeader(int nonce)
+    {
+        return new BlockHeader(previousHash, merkleRoot, timeStamp, nonce);
+    }
+    // Returns the merkle root of the transactions added so far, "" for an empty block
+    public String getMerkleRoot()
+    {
+        // Transactions put straight into the list bypass the tree, rebuild it then
+        if(merkleTree.size() != transactions.size())
+        {
+            merkleTree = new MerkleTree();
+            for(Transaction transaction : transactions)
+            {
+                merkleTree.append(StringUtil.toHashBytes(transaction.transactionId));
+            }
+        }
+        return merkleTree.getRootHex();
+    }
+    // Proves that the transaction at index is part of this block's merkle root
+    public MerkleProof getMerkleProof(int index)
+    {
+        getMerkleRoot();
+        return merkleTree.getProof(index);
     }
     // Mines the block by finding a hash with the required difficulty
 	public void mineBlock(int difficulty) 
     {
-		merkleRoot = StringUtil.getMerkleRoot(transactions);
-		String target = StringUtil.getDificultyString(difficulty);
-        // Keep trying different nonce values until hash meets difficulty requirement
-		while(!hash.substring( 0, difficulty).equals(target)) 
+		mineBlock(Target.ofDifficulty(difficulty));
+	}
+    // Mines the block by finding a hash at most the target
+	public void mineBlock(Target target) 
+    {
+		merkleRoot = getMerkleRoot();
+		HeaderHasher hasher = new HeaderHasher(getHeader());
+        // Keep trying different nonce values until hash meets the target
+		while(!hasher.meetsTarget(target)) 
         {
 			nonce ++;
-			hash = calculateHash();
+			hasher.hash(nonce);
 		}
+		hash = hasher.getHashHex();
 		System.out.println("Block Mined!!! : " + hash);
 	}
+    // Mines the block by splitting the nonce search across the miner's worker threads
+    public MiningResult mineBlock(int difficulty, ParallelMiner miner)
+    {
+        return mineBlock(Target.ofDifficulty(difficulty), miner);
+    }
+
+    public MiningResult mineBlock(Target target, ParallelMiner miner)
+    {
+        merkleRoot = getMerkleRoot();
+        MiningResult result = miner.mine(this, target);
+        nonce = result.nonce;
+        hash = result.hash;
+        System.out.println("Block Mined!!! : " + hash);
+        System.out.printf("Hash rate: %.0f H/s on %d threads%n", result.getHashesPerSecond(), miner.getThreads());
+        return result;
+    }
+    // The UTXO changes of this block's transactions, applied to myBlockchain.UTXOs together with the block by Ledger.applyBlock()
+    public UTXOBatch getUTXOBatch()
+    {
+        if(utxoBatch == null) utxoBatch = new UTXOBatch(myBlockchain.UTXOs);
+        return utxoBatch;
+    }
+    // The changes staged by transactions added to this block here, null for a block that was received or read back
+    UTXOBatch getStagedBatch()
+    {
+        return utxoBatch;
+    }
     // Adds a transaction to this block after validation
     public boolean addTransaction(Transaction transaction) 
     {
@@ -52,14 +158,47 @@ public class Block
         // Skip processing for genesis block
 		if((previousHash != "0")) 
         {
-			if((transaction.processTransaction() != true)) 
+			if((transaction.processTransaction(false, getUTXOBatch()) != true)) 
             {
 				System.out.println("Transaction failed to process. Discarded.");
 				return false;
 			}
 		}
 		transactions.add(transaction);
+		merkleTree.append(StringUtil.toHashBytes(transaction.transactionId));
 		System.out.println("Transaction Successfully added to Block");
 		return true;
 	}
+    // Adds a batch of transactions, verifying all their signatures in parallel first
+    public boolean[] addTransactions(List<Transaction> batch) 
+    {
+		boolean[] added = new boolean[batch.size()];
+        // Genesis transactions are not processed, so there is nothing to verify
+		if(previousHash == "0") 
+        {
+			for(int i = 0; i < added.length; i++) added[i] = addTransaction(batch.get(i));
+			return added;
+		}
+		boolean[] signatures = myBlockchain.signatureVerifier.verifyAll(batch);
+		for(int i = 0; i < added.length; i++) 
+        {
+			Transaction transaction = batch.get(i);
+			if(transaction == null) continue;
+			if(!signatures[i]) 
+            {
+				System.out.println("#Transaction Signature failed to verify");
+				continue;
+			}
+			if(!transaction.processTransaction(true, getUTXOBatch())) 
+            {
+				System.out.println("Transaction failed to process. Discarded.");
+				continue;
+			}
+			transactions.add(transaction);
+			merkleTree.append(StringUtil.toHashBytes(transaction.transactionId));
+			added[i] = true;
+		}
+		System.out.println(transactions.size() + " Transactions in Block");
+		return added;
+	}
 }
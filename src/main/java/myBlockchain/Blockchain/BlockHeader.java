@@ -0,0 +1,85 @@
+package myBlockchain.Blockchain;
+
+import java.nio.ByteBuffer;
+
+import myBlockchain.Util.StringUtil;
+
+/*
+ * Fixed-size binary form of the fields a block hash commits to:
+ *
+ *   previousHash (32) | merkleRoot (32) | timeStamp (8) | nonce (4)
+ *
+ * The two hashes fill the first SHA-256 block exactly, so their digest state
+ * can be computed once and only the 12 byte tail changes while mining.
+ */
+public class BlockHeader
+{
+    public static final int HASH_SIZE = 32; // Bytes in a SHA-256 hash
+    public static final int SIZE = 76; // Bytes in a serialized header
+    static final int TIMESTAMP_OFFSET = 64;
+    static final int NONCE_OFFSET = 72;
+
+    public final byte[] previousHash; // Previous block's hash
+    public final byte[] merkleRoot; // Root of the merkle tree of transactions
+    public final long timeStamp; // When the block was created
+    public final int nonce; // Number used in mining process
+
+    public BlockHeader(byte[] previousHash, byte[] merkleRoot, long timeStamp, int nonce)
+    {
+        if(previousHash.length != HASH_SIZE || merkleRoot.length != HASH_SIZE)
+        {
+            throw new IllegalArgumentException("Header hashes must be " + HASH_SIZE + " bytes");
+        }
+        this.previousHash = previousHash;
+        this.merkleRoot = merkleRoot;
+        this.timeStamp = timeStamp;
+        this.nonce = nonce;
+    }
+
+    public BlockHeader(String previousHash, String merkleRoot, long timeStamp, int nonce)
+    {
+        this(StringUtil.toHashBytes(previousHash), StringUtil.toHashBytes(merkleRoot), timeStamp, nonce);
+    }
+    // Reads a serialized header, e.g. one received from a peer
+    public static BlockHeader read(ByteBuffer in)
+    {
+        byte[] previousHash = new byte[HASH_SIZE];
+        byte[] merkleRoot = new byte[HASH_SIZE];
+        in.get(previousHash);
+        in.get(merkleRoot);
+        long timeStamp = in.getLong();
+        int nonce = in.getInt();
+        return new BlockHeader(previousHash, merkleRoot, timeStamp, nonce);
+    }
+    // Returns the serialized header
+    public byte[] toBytes()
+    {
+        byte[] out = new byte[SIZE];
+        writeTo(out, 0);
+        return out;
+    }
+    // Writes the serialized header into out starting at offset
+    public void writeTo(byte[] out, int offset)
+    {
+        System.arraycopy(previousHash, 0, out, offset, HASH_SIZE);
+        System.arraycopy(merkleRoot, 0, out, offset + HASH_SIZE, HASH_SIZE);
+        writeLong(out, offset + TIMESTAMP_OFFSET, timeStamp);
+        writeInt(out, offset + NONCE_OFFSET, nonce);
+    }
+    static void writeLong(byte[] out, int offset, long value)
+    {
+        for(int i = 7; i >= 0; i--)
+        {
+            out[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    static void writeInt(byte[] out, int offset, int value)
+    {
+        out[offset] = (byte) (value >>> 24);
+        out[offset + 1] = (byte) (value >>> 16);
+        out[offset + 2] = (byte) (value >>> 8);
+        out[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,347 @@
+package myBlockchain.Blockchain;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import myBlockchain.myBlockchain;
+import myBlockchain.Transactions.UTXOBatch;
+
+/*
+ * Every known block, arranged by parent, with the ledger following the branch
+ * that holds the most proof-of-work.
+ *
+ * A block that extends the tip is connected to the ledger straight away. A
+ * block on another branch is kept; once its branch has more cumulative work
+ * than the active one the ledger reorganizes onto it, disconnecting the blocks
+ * after the fork with their undo data and connecting the branch in one write.
+ * Branches with equal work do not take over, the first one seen stays active.
+ * A block whose parent is not known yet waits as an orphan until the parent
+ * arrives.
+ *
+ * The work of a block is the expected number of hashes needed to meet its
+ * target, which the DifficultyEngine derives from the blocks before it on the
+ * same branch. Blocks are checked on their own (hash, link, target,
+ * signatures) when added; their
+ * inputs are only checked when they are connected, and a block that fails then
+ * is marked invalid together with everything built on it.
+ *
+ * Blocks added to the ledger directly, e.g. while loading a BlockStore, are
+ * picked up as the active branch on the next add(). Blocks the ledger pruned
+ * are swapped for their header-only form here as well, so the tree does not
+ * keep their transactions alive. All methods are synchronized, so several
+ * miners can add blocks to one tree.
+ */
+public class BlockTree
+{
+    private static final int MAX_ORPHANS = 1000;
+
+    public enum Status
+    {
+        CONNECTED,   // Now part of the active chain, possibly after a reorg
+        SIDE_BRANCH, // Kept on a branch with less work than the active one
+        ORPHAN,      // Parent unknown, kept until it arrives
+        DUPLICATE,   // Already known
+        INVALID      // Rejected, or on a branch that failed to connect
+    }
+
+    // What adding a block changed in the active chain
+    public static final class Result
+    {
+        private Status status;
+        private final List<Block> disconnected = new ArrayList<Block>();
+        private final List<Block> connected = new ArrayList<Block>();
+
+        private Result(Status status)
+        {
+            this.status = status;
+        }
+
+        public Status getStatus()
+        {
+            return status;
+        }
+        // Blocks taken off the active chain, tip first
+        public List<Block> getDisconnected()
+        {
+            return Collections.unmodifiableList(disconnected);
+        }
+        // Blocks added to the active chain, in height order, including orphans that could follow
+        public List<Block> getConnected()
+        {
+            return Collections.unmodifiableList(connected);
+        }
+    }
+
+    private static final class Node
+    {
+        Block block; // Header-only once the ledger pruned it
+        final Node parent;
+        final int height;
+        final Target target;
+        final BigInteger work; // Cumulative, from the genesis block
+        boolean invalid;
+
+        Node(Block block, Node parent, Target target)
+        {
+            this.block = block;
+            this.parent = parent;
+            this.height = parent == null ? 0 : parent.height + 1;
+            this.target = target;
+            this.work = parent == null ? target.getWork() : parent.work.add(target.getWork());
+        }
+        // Time stamp of the block at the given height on this node's branch
+        long ancestorTimeStamp(int height)
+        {
+            Node node = this;
+            while(node.height > height) node = node.parent;
+            return node.block.getTimeStamp();
+        }
+    }
+
+    private final Ledger ledger;
+    private final HashMap<String,Node> nodes = new HashMap<String,Node>();
+    private final HashMap<String,List<Block>> orphans = new HashMap<String,List<Block>>(); // By previous hash
+    private int orphanCount;
+    private Node tip;
+    private int prunedHeight; // Blocks of the active chain below this height are header-only
+
+    BlockTree(Ledger ledger)
+    {
+        this.ledger = ledger;
+    }
+    // Adds a block to a chain whose genesis block was mined at the given difficulty, and follows the branch with the most work
+    public synchronized Result add(Block block, int difficulty)
+    {
+        sync(difficulty);
+        Result result = new Result(Status.INVALID);
+        result.status = attach(block, difficulty, result);
+        // Orphans waiting for this block can follow it now
+        List<String> parents = new ArrayList<String>();
+        parents.add(block.hash);
+        while(!parents.isEmpty())
+        {
+            List<Block> children = orphans.remove(parents.remove(parents.size() - 1));
+            if(children == null) continue;
+            orphanCount -= children.size();
+            for(Block child : children)
+            {
+                if(attach(child, difficulty, result) != Status.INVALID) parents.add(child.hash);
+            }
+        }
+        prune();
+        return result;
+    }
+    // The tip of the branch with the most work as of the last add(), null before the genesis block
+    public synchronized Block getTip()
+    {
+        return tip == null ? null : tip.block;
+    }
+    // Cumulative work of the active chain as of the last add()
+    public synchronized BigInteger getChainWork()
+    {
+        return tip == null ? BigInteger.ZERO : tip.work;
+    }
+    // True when the block is known, on any branch
+    public synchronized boolean contains(String hash)
+    {
+        return nodes.containsKey(hash);
+    }
+
+    // The block with the given hash on any branch, null when it is not known or still an orphan
+    public synchronized Block getBlock(String hash)
+    {
+        Node node = nodes.get(hash);
+        return node == null ? null : node.block;
+    }
+
+    public synchronized int size()
+    {
+        return nodes.size();
+    }
+
+    public synchronized int getOrphanCount()
+    {
+        return orphanCount;
+    }
+    // Forgets every block, called when the ledger is cleared
+    public synchronized void clear()
+    {
+        nodes.clear();
+        orphans.clear();
+        orphanCount = 0;
+        tip = null;
+        prunedHeight = 0;
+    }
+    // The target a block on top of the given parent has to meet; the initial target for the genesis block or an unknown parent
+    public synchronized Target getTarget(String previousHash, int difficulty)
+    {
+        sync(difficulty);
+        Node parent = nodes.get(previousHash);
+        return parent == null ? Target.ofDifficulty(difficulty) : nextTarget(parent);
+    }
+
+    private static Target nextTarget(Node parent)
+    {
+        return myBlockchain.difficultyEngine.next(parent.target, parent.height + 1, parent::ancestorTimeStamp);
+    }
+
+    private Status attach(Block block, int difficulty, Result result)
+    {
+        if(nodes.containsKey(block.hash)) return Status.DUPLICATE;
+        if(tip == null)
+        {
+            if(!"0".equals(block.previousHash)) return orphan(block);
+            // Genesis block, its outputs are taken as given
+            ledger.applyBlock(block);
+            tip = new Node(block, null, Target.ofDifficulty(difficulty));
+            nodes.put(block.hash, tip);
+            result.connected.add(block);
+            return Status.CONNECTED;
+        }
+        Node parent = nodes.get(block.previousHash);
+        if(parent == null) return orphan(block);
+        if(parent.invalid) return Status.INVALID;
+        Target target = nextTarget(parent);
+        // Signatures are checked in parallel, like a single block in ValidationPipeline.validate()
+        boolean[] signatures = myBlockchain.signatureVerifier.verifyAll(block.transactions);
+        long medianTime = myBlockchain.difficultyEngine.medianTimePast(parent.height + 1, parent::ancestorTimeStamp);
+        ValidationPipeline.Failure failure = ValidationPipeline.check(block, parent.block, target, medianTime, signatures);
+        if(failure != null)
+        {
+            System.out.println("#Block " + block.hash + " rejected: " + failure.reason);
+            return Status.INVALID;
+        }
+        Node node = new Node(block, parent, target);
+        nodes.put(block.hash, node);
+        if(node.work.compareTo(tip.work) <= 0) return Status.SIDE_BRANCH;
+        try
+        {
+            return parent == tip ? extend(node, result) : reorganize(node, result);
+        }
+        catch(RuntimeException e)
+        {
+            // Neither connected nor invalid, the block is forgotten so it can be added again
+            nodes.remove(block.hash);
+            throw e;
+        }
+    }
+    // Connects a block on top of the tip
+    private Status extend(Node node, Result result)
+    {
+        Block block = node.block;
+        UTXOBatch staged = block.getStagedBatch();
+        if(staged != null && staged.getStore() != ledger)
+        {
+            // Outputs kept in another store, it checked the inputs when the block was filled
+            ledger.applyBlock(block);
+        }
+        else
+        {
+            // Spent again against the current outputs, another block may have used them since the block was filled;
+            // a block received from a peer has nothing staged and is only spent here
+            UTXOBatch batch = new UTXOBatch(ledger);
+            ValidationPipeline.Failure failure = ValidationPipeline.spend(block, batch);
+            if(failure != null)
+            {
+                System.out.println("#Block " + block.hash + " rejected: " + failure.reason);
+                invalidate(node);
+                return Status.INVALID;
+            }
+            ledger.appendBlock(block, batch);
+            if(staged != null) staged.clear();
+        }
+        tip = node;
+        result.connected.add(block);
+        return Status.CONNECTED;
+    }
+    // Switches the ledger to the branch ending in node
+    private Status reorganize(Node node, Result result)
+    {
+        Ledger.Snapshot chain = ledger.snapshot();
+        List<Block> branch = new ArrayList<Block>();
+        Node fork = node;
+        while(chain.heightOf(fork.block.hash) != fork.height)
+        {
+            branch.add(fork.block);
+            fork = fork.parent;
+        }
+        Collections.reverse(branch);
+        int keep = fork.height + 1;
+        if(!ledger.canDisconnect(keep))
+        {
+            System.out.println("#Cannot switch to block " + node.block.hash + ", the outputs are not kept by the ledger");
+            return Status.SIDE_BRANCH;
+        }
+        int failed = ledger.reorganize(keep, branch);
+        if(failed >= 0)
+        {
+            System.out.println("#Block " + branch.get(failed).hash + " rejected: its inputs are not unspent");
+            invalidate(nodes.get(branch.get(failed).hash));
+            return Status.INVALID;
+        }
+        for(int height = chain.size() - 1; height >= keep; height--)
+        {
+            // A block connected earlier in this add() was never seen as connected by the caller
+            if(!result.connected.remove(chain.getBlock(height))) result.disconnected.add(chain.getBlock(height));
+        }
+        result.connected.addAll(branch);
+        tip = node;
+        return Status.CONNECTED;
+    }
+
+    // Marks the node and every block built on it, none of them can be connected
+    private void invalidate(Node bad)
+    {
+        bad.invalid = true;
+        for(Node node : nodes.values())
+        {
+            for(Node ancestor = node.parent; ancestor != null && ancestor.height >= bad.height; ancestor = ancestor.parent)
+            {
+                if(ancestor == bad) node.invalid = true;
+            }
+        }
+    }
+
+    private Status orphan(Block block)
+    {
+        if(orphanCount >= MAX_ORPHANS) return Status.INVALID;
+        orphans.computeIfAbsent(block.previousHash, hash -> new ArrayList<Block>()).add(block);
+        orphanCount++;
+        return Status.ORPHAN;
+    }
+    // Follows the ledger's pruning on the active chain; side branches below it can not be switched to anyway
+    private void prune()
+    {
+        Ledger.Snapshot chain = ledger.snapshot();
+        int pruned = Math.min(chain.getPrunedHeight(), chain.size());
+        for(; prunedHeight < pruned; prunedHeight++)
+        {
+            Block block = chain.getBlock(prunedHeight);
+            Node node = nodes.get(block.hash);
+            if(node != null) node.block = block;
+        }
+    }
+    // Takes in blocks that were appended to the ledger without going through the tree
+    private void sync(int difficulty)
+    {
+        Ledger.Snapshot chain = ledger.snapshot();
+        if(chain.isEmpty())
+        {
+            if(tip != null) clear();
+            return;
+        }
+        if(tip != null && chain.size() == tip.height + 1 && chain.getTip() == tip.block) return;
+        int height = chain.size() - 1;
+        while(height >= 0 && !nodes.containsKey(chain.getBlock(height).hash)) height--;
+        Node node = height < 0 ? null : nodes.get(chain.getBlock(height).hash);
+        for(height++; height < chain.size(); height++)
+        {
+            node = new Node(chain.getBlock(height), node, node == null ? Target.ofDifficulty(difficulty) : nextTarget(node));
+            nodes.put(node.block.hash, node);
+        }
+        tip = node;
+    }
+}
@@ -0,0 +1,57 @@
+package myBlockchain.Blockchain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOSnapshot;
+
+/*
+ * What connecting one block did to the unspent outputs: the outputs it spent
+ * and the ids of the outputs it created. Reverting it puts the spent outputs
+ * back and drops the created ones, so disconnecting a block costs as much as
+ * connecting it and never needs the blocks before it.
+ */
+final class BlockUndo
+{
+    static final BlockUndo EMPTY = new BlockUndo(new ArrayList<TransactionOutput>(), new ArrayList<String>());
+
+    private final List<TransactionOutput> spent;
+    private final List<String> created;
+
+    private BlockUndo(List<TransactionOutput> spent, List<String> created)
+    {
+        this.spent = spent;
+        this.created = created;
+    }
+    // Records the changes of a block about to be applied on top of the given outputs
+    static BlockUndo record(UTXOSnapshot before, UTXOBatch changes)
+    {
+        if(changes.isEmpty()) return EMPTY;
+        List<TransactionOutput> spent = new ArrayList<TransactionOutput>(changes.getSpent().size());
+        for(String id : changes.getSpent())
+        {
+            TransactionOutput output = before.get(id);
+            if(output != null) spent.add(output);
+        }
+        List<String> created = new ArrayList<String>(changes.getCreated().size());
+        for(TransactionOutput output : changes.getCreated())
+        {
+            created.add(output.id);
+        }
+        return new BlockUndo(spent, created);
+    }
+    // Stages the reverse of the block's changes
+    void revert(UTXOBatch batch)
+    {
+        for(String id : created)
+        {
+            batch.remove(id);
+        }
+        for(TransactionOutput output : spent)
+        {
+            batch.put(output);
+        }
+    }
+}
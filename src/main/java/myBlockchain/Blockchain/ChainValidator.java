@@ -0,0 +1,137 @@
+package myBlockchain.Blockchain;
+
+import java.util.ArrayList;
+
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSnapshot;
+
+/*
+ * Checks the chain, remembering how far it got.
+ * After a successful run the validator keeps a checkpoint at the last valid
+ * block with the unspent outputs after it, and the next run only checks the
+ * blocks added since. The checkpoint is dropped when the chain no longer holds
+ * its block or the difficulty changed, and validation starts over. The blocks
+ * themselves are checked by a ValidationPipeline, so a long run from the
+ * genesis block uses every core.
+ *
+ * A trusted checkpoint, e.g. one loaded with CheckpointFile, is taken as given:
+ * blocks up to it are never checked, which lets a new node skip old history.
+ * Blocks already checked are assumed not to change in memory; validateAll()
+ * checks everything again for audits that cannot assume that.
+ *
+ * Pruned blocks have no transactions left to check. When a run would have to
+ * start below the ledger's pruned height, the kept blocks are undone from the
+ * tip back to the pruned height with their undo data, and the run checks them
+ * from there against the outputs that gives. Only the pruned blocks are taken
+ * as they are, like blocks below a trusted checkpoint.
+ */
+public class ChainValidator
+{
+    private final ValidationPipeline pipeline;
+    private Checkpoint validated;
+    private Checkpoint trusted;
+    private ValidationPipeline.Result lastFailure;
+
+    public ChainValidator()
+    {
+        this(new ValidationPipeline());
+    }
+
+    public ChainValidator(ValidationPipeline pipeline)
+    {
+        this.pipeline = pipeline;
+    }
+
+    // Checks the blocks added since the last checkpoint
+    public synchronized boolean validate(Ledger.Snapshot chain, int difficulty)
+    {
+        Checkpoint start = validated;
+        if(start == null || !start.matches(chain) || start.getDifficulty() != difficulty)
+        {
+            start = trusted != null && trusted.matches(chain) ? trusted : genesis(chain, difficulty);
+        }
+        return validateFrom(start, chain, difficulty);
+    }
+    // Checks every block after the trusted checkpoint or the genesis block, ignoring earlier runs
+    public synchronized boolean validateAll(Ledger.Snapshot chain, int difficulty)
+    {
+        Checkpoint start = trusted != null && trusted.matches(chain) ? trusted : genesis(chain, difficulty);
+        return validateFrom(start, chain, difficulty);
+    }
+    // Accepts the blocks up to the checkpoint without checking them
+    public synchronized void trust(Checkpoint checkpoint)
+    {
+        trusted = checkpoint;
+        if(validated == null || validated.getHeight() < checkpoint.getHeight()) validated = null;
+    }
+    // The last valid block reached, or null when nothing was validated yet
+    public synchronized Checkpoint getCheckpoint()
+    {
+        return validated;
+    }
+
+    // Where and why the last run failed, null when it succeeded
+    public synchronized ValidationPipeline.Result getLastFailure()
+    {
+        return lastFailure;
+    }
+
+    public synchronized Checkpoint getTrusted()
+    {
+        return trusted;
+    }
+    // Forgets all checkpoints, trusted ones included
+    public synchronized void reset()
+    {
+        validated = null;
+        trusted = null;
+        lastFailure = null;
+    }
+
+    private boolean validateFrom(Checkpoint start, Ledger.Snapshot chain, int difficulty)
+    {
+        if(start == null) return true; // Empty chain
+        if(start.getHeight() < chain.getPrunedHeight()) start = asPruned(chain, difficulty);
+        validated = start;
+        if(start.getHeight() >= chain.size()) return true;
+        ValidationPipeline.Result result = pipeline.validate(chain, start.getHeight(), difficulty, start.getUTXOs());
+        int height = result.getValidHeight();
+        if(height > start.getHeight())
+        {
+            validated = new Checkpoint(height, chain.getBlock(height - 1).hash, difficulty, result.getUTXOs());
+        }
+        if(!result.isValid())
+        {
+            System.out.println("#" + result.getReason());
+            System.out.println("#Validation stopped at block " + result.getFailedHeight()
+                    + (result.getFailedTransaction() < 0 ? "" : ", transaction " + result.getFailedTransaction()));
+            lastFailure = result;
+            return false;
+        }
+        lastFailure = null;
+        return true;
+    }
+    // The outputs of the genesis block are taken as given, the same as isChainValid() always did
+    private static Checkpoint genesis(Ledger.Snapshot chain, int difficulty)
+    {
+        if(chain.isEmpty()) return null;
+        if(chain.isPruned(0)) return asPruned(chain, difficulty);
+        Block genesis = chain.getBlock(0);
+        ArrayList<TransactionOutput> outputs = new ArrayList<TransactionOutput>();
+        for(Transaction transaction : genesis.transactions)
+        {
+            outputs.addAll(transaction.outputs);
+        }
+        return new Checkpoint(1, genesis.hash, difficulty, UTXOSnapshot.of(outputs));
+    }
+    // Starts a pruned ledger's chain at the lowest block the undo data reaches back to, the pruned height
+    // unless blocks above it have none; the blocks below are taken as they are
+    private static Checkpoint asPruned(Ledger.Snapshot chain, int difficulty)
+    {
+        int height = Math.max(chain.getUndoHeight(), Math.max(chain.getPrunedHeight(), 1));
+        UTXOSnapshot outputs = height < chain.size() ? chain.getUTXOsBefore(height) : null;
+        if(outputs == null) return new Checkpoint(chain.size(), chain.getTip().hash, difficulty, chain.getUTXOs());
+        return new Checkpoint(height, chain.getBlock(height - 1).hash, difficulty, outputs);
+    }
+}
@@ -0,0 +1,50 @@
+package myBlockchain.Blockchain;
+
+import myBlockchain.Transactions.UTXOSnapshot;
+
+/*
+ * A point up to which the chain is known to be valid: the number of blocks
+ * checked, the hash of the last of them and the unspent outputs after it.
+ * Validation can pick up from here instead of from the genesis block.
+ */
+public final class Checkpoint
+{
+    private final int height;
+    private final String hash;
+    private final int difficulty;
+    private final UTXOSnapshot utxos;
+
+    public Checkpoint(int height, String hash, int difficulty, UTXOSnapshot utxos)
+    {
+        if(height < 1) throw new IllegalArgumentException("A checkpoint covers at least the genesis block: " + height);
+        this.height = height;
+        this.hash = hash;
+        this.difficulty = difficulty;
+        this.utxos = utxos;
+    }
+    // Number of blocks covered, the next block to check is at this height
+    public int getHeight()
+    {
+        return height;
+    }
+    // Hash of the last covered block
+    public String getHash()
+    {
+        return hash;
+    }
+    // Difficulty the covered blocks were checked against
+    public int getDifficulty()
+    {
+        return difficulty;
+    }
+    // Unspent outputs after the last covered block
+    public UTXOSnapshot getUTXOs()
+    {
+        return utxos;
+    }
+    // Whether the chain contains the covered blocks, judged by the hash of the last one
+    public boolean matches(Ledger.Snapshot chain)
+    {
+        return chain.size() >= height && chain.getBlock(height - 1).hash.equals(hash);
+    }
+}
@@ -0,0 +1,106 @@
+package myBlockchain.Blockchain;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/*
+ * Works out the target every block has to meet.
+ *
+ * The genesis block and the blocks after it are mined at the initial target,
+ * taken from myBlockchain.difficulty. Every interval blocks the target is
+ * retargeted from the time stamps of the blocks before: when they came faster
+ * than one per blockTime the target is lowered by the same ratio, when they
+ * came slower it is raised. One retarget changes the target by at most a
+ * factor of MAX_ADJUSTMENT either way, so a few odd time stamps cannot swing
+ * it far.
+ *
+ * The target is not stored in the block; every node derives it from the chain
+ * the same way, so a block meeting an easier target than expected is invalid.
+ *
+ * Time stamps are chosen by the miner, so they are bounded before they count:
+ * a block may not be older than the median of the MEDIAN_TIME_SPAN blocks
+ * before it, nor more than MAX_FUTURE_TIME ahead of the local clock. Without
+ * that a miner could stretch the span of an interval and ease every retarget
+ * by the full MAX_ADJUSTMENT.
+ */
+public class DifficultyEngine
+{
+    public static final int DEFAULT_INTERVAL = 100;
+    public static final long DEFAULT_BLOCK_TIME = 10_000; // Milliseconds
+    public static final int MAX_ADJUSTMENT = 4;
+    public static final int MEDIAN_TIME_SPAN = 11; // Blocks the median time past is taken over
+    public static final long MAX_FUTURE_TIME = 2 * 60 * 60 * 1000L; // Milliseconds
+
+    private final int interval;
+    private final long blockTime;
+
+    public DifficultyEngine()
+    {
+        this(DEFAULT_INTERVAL, DEFAULT_BLOCK_TIME);
+    }
+
+    public DifficultyEngine(int interval, long blockTime)
+    {
+        // A retarget spans the interval - 1 gaps between the blocks before it, one block has none
+        if(interval < 2) throw new IllegalArgumentException("Retarget interval must be at least two blocks: " + interval);
+        if(blockTime < 1) throw new IllegalArgumentException("Block time must be positive: " + blockTime);
+        this.interval = interval;
+        this.blockTime = blockTime;
+    }
+    // Blocks between retargets
+    public int getInterval()
+    {
+        return interval;
+    }
+    // Time the engine aims for between blocks, in milliseconds
+    public long getBlockTime()
+    {
+        return blockTime;
+    }
+    // True when the block at the given height gets a new target
+    public boolean isRetarget(int height)
+    {
+        return height > 0 && height % interval == 0;
+    }
+    // Target of the block at the given height, from its parent's target and the time stamps of the blocks before it by height.
+    // Time stamps are only read at a retarget.
+    public Target next(Target parent, int height, IntToLongFunction timeStamps)
+    {
+        if(!isRetarget(height)) return parent;
+        int last = height - 1;
+        int first = Math.max(last - interval, 0);
+        long expected = blockTime * (last - first);
+        long actual = timeStamps.applyAsLong(last) - timeStamps.applyAsLong(first);
+        actual = Math.max(expected / MAX_ADJUSTMENT, Math.min(actual, expected * MAX_ADJUSTMENT));
+        return Target.of(parent.getValue().multiply(BigInteger.valueOf(actual)).divide(BigInteger.valueOf(expected)));
+    }
+    // Earliest time stamp the block at the given height may carry, the median of the blocks before it by height
+    public long medianTimePast(int height, IntToLongFunction timeStamps)
+    {
+        if(height <= 0) return Long.MIN_VALUE;
+        int first = Math.max(height - MEDIAN_TIME_SPAN, 0);
+        long[] times = new long[height - first];
+        for(int i = 0; i < times.length; i++)
+        {
+            times[i] = timeStamps.applyAsLong(first + i);
+        }
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+    // True when the time stamp is not before the median time past and not too far ahead of the local clock
+    public boolean isTimeStampValid(long timeStamp, long medianTimePast)
+    {
+        return timeStamp >= medianTimePast && timeStamp <= System.currentTimeMillis() + MAX_FUTURE_TIME;
+    }
+    // Target of the block at the given height of the chain, whose genesis block was mined at the initial target
+    public Target targetAt(Ledger.Snapshot chain, int height, Target initial)
+    {
+        Target target = initial;
+        for(int retarget = interval; retarget <= height; retarget += interval)
+        {
+            target = next(target, retarget, chain::getTimeStamp);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,73 @@
+package myBlockchain.Blockchain;
+
+import myBlockchain.Util.SHA256;
+import myBlockchain.Util.StringUtil;
+
+/*
+ * Hashes one block header over and over with different nonces.
+ * The digest state after the constant first 64 bytes (the midstate) is computed
+ * once, and the padded tail block is laid out once, so each attempt only
+ * rewrites the nonce word and runs a single compression with no allocation.
+ * Not thread-safe, every mining thread needs its own copy.
+ */
+public class HeaderHasher
+{
+    private static final int NONCE_WORD = (BlockHeader.NONCE_OFFSET - SHA256.BLOCK_SIZE) / 4;
+
+    private final int[] midstate = new int[SHA256.STATE_WORDS];
+    private final int[] schedule = new int[SHA256.SCHEDULE_WORDS];
+    private final int[] state = new int[SHA256.STATE_WORDS];
+
+    public HeaderHasher(BlockHeader header)
+    {
+        byte[] bytes = header.toBytes();
+        SHA256.initState(midstate);
+        SHA256.loadBlock(bytes, 0, schedule);
+        SHA256.compress(midstate, schedule);
+
+        // Tail block: timestamp and nonce, the 0x80 pad byte, then the message length in bits
+        byte[] tail = new byte[SHA256.BLOCK_SIZE];
+        int tailLength = BlockHeader.SIZE - SHA256.BLOCK_SIZE;
+        System.arraycopy(bytes, SHA256.BLOCK_SIZE, tail, 0, tailLength);
+        tail[tailLength] = (byte) 0x80;
+        BlockHeader.writeLong(tail, SHA256.BLOCK_SIZE - 8, BlockHeader.SIZE * 8L);
+        SHA256.loadBlock(tail, 0, schedule);
+        hash(header.nonce);
+    }
+    // Copies another hasher, sharing the work already spent on its midstate
+    public HeaderHasher(HeaderHasher other)
+    {
+        System.arraycopy(other.midstate, 0, midstate, 0, midstate.length);
+        System.arraycopy(other.schedule, 0, schedule, 0, 16);
+        System.arraycopy(other.state, 0, state, 0, state.length);
+    }
+    // Hashes the header with the given nonce, the result stays in this hasher
+    public void hash(int nonce)
+    {
+        schedule[NONCE_WORD] = nonce;
+        System.arraycopy(midstate, 0, state, 0, SHA256.STATE_WORDS);
+        SHA256.compress(state, schedule);
+    }
+    // Checks the last hash for the given number of leading zero hex digits
+    public boolean meetsDifficulty(int difficulty)
+    {
+        return SHA256.hasLeadingZeroBits(state, difficulty * 4);
+    }
+    // Checks the last hash against a target
+    public boolean meetsTarget(Target target)
+    {
+        return target.isMetBy(state);
+    }
+    // Returns the last hash as raw bytes
+    public byte[] getHash()
+    {
+        byte[] out = new byte[BlockHeader.HASH_SIZE];
+        SHA256.writeDigest(state, out, 0);
+        return out;
+    }
+    // Returns the last hash as a hex string
+    public String getHashHex()
+    {
+        return StringUtil.toHexString(getHash());
+    }
+}
@@ -0,0 +1,245 @@
+package myBlockchain.Blockchain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import myBlockchain.Util.StringUtil;
+
+/*
+ * Compact index of block headers by height and by hash.
+ *
+ * Every block takes one fixed-size entry in a single byte array:
+ *
+ *   hash (32) | previousHash (32) | merkleRoot (32) | timeStamp (8) | nonce (4)
+ *
+ * which is the block hash followed by the BlockHeader bytes, so a header is
+ * found by height with one multiplication and a range of them is one copy.
+ * Lookups by hash go through an open-addressing table of heights, probed
+ * linearly from the last 4 bytes of the hash and compared against the hash
+ * stored in the entry. The first bytes would not do: proof of work makes them
+ * the leading zeros, the same for every block of a difficulty. No Block or String is
+ * kept or created for a lookup.
+ *
+ * There is one writer at a time (append() is synchronized) and any number of
+ * readers that never lock. Entries are written before the size is published,
+ * and a reader only trusts table slots that point below the size it read, so
+ * a lookup racing an append either finds the new block or does not see it at
+ * all. A grown array or table is a copy, readers of the old one are unaffected.
+ */
+public class HeaderIndex
+{
+    public static final int ENTRY_SIZE = BlockHeader.HASH_SIZE + BlockHeader.SIZE;
+    private static final int HEADER_OFFSET = BlockHeader.HASH_SIZE;
+
+    private volatile byte[] entries;
+    private volatile int[] table; // Height + 1 of the block in each slot, 0 for an empty slot
+    private volatile int size;
+
+    public HeaderIndex()
+    {
+        this(64);
+    }
+
+    public HeaderIndex(int capacity)
+    {
+        capacity = Math.max(capacity, 1);
+        entries = new byte[capacity * ENTRY_SIZE];
+        table = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+    }
+    // Adds the block as the next height, returns that height
+    public synchronized int append(Block block)
+    {
+        return append(StringUtil.toHashBytes(block.hash), block.getHeader());
+    }
+    // Adds a header with the given hash as the next height, returns that height
+    public synchronized int append(byte[] hash, BlockHeader header)
+    {
+        if(hash.length != BlockHeader.HASH_SIZE) throw new IllegalArgumentException("Hash must be " + BlockHeader.HASH_SIZE + " bytes");
+        int height = size;
+        byte[] entries = this.entries;
+        if((height + 1) * ENTRY_SIZE > entries.length)
+        {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        int offset = height * ENTRY_SIZE;
+        System.arraycopy(hash, 0, entries, offset, BlockHeader.HASH_SIZE);
+        header.writeTo(entries, offset + HEADER_OFFSET);
+        this.entries = entries;
+
+        int[] table = this.table;
+        if((height + 1) * 2 > table.length)
+        {
+            table = rehash(entries, height, table.length * 2);
+        }
+        insert(table, entries, height);
+        this.table = table;
+        size = height + 1; // Publishes the entry and the slot
+        return height;
+    }
+    // A new index holding the first count blocks of this one, e.g. to replace the blocks after a fork
+    public HeaderIndex copy(int count)
+    {
+        if(count < 0 || count > size) throw new IndexOutOfBoundsException("Cannot copy " + count + " of " + size + " headers");
+        HeaderIndex copy = new HeaderIndex(count + 1);
+        System.arraycopy(entries, 0, copy.entries, 0, count * ENTRY_SIZE);
+        copy.table = rehash(copy.entries, count, copy.table.length);
+        copy.size = count;
+        return copy;
+    }
+    // Number of indexed blocks
+    public int size()
+    {
+        return size;
+    }
+    // Height of the block with the given hash, -1 when it is not indexed
+    public int heightOf(byte[] hash)
+    {
+        return heightOf(hash, size);
+    }
+    // Same as heightOf(hash), only looking at the first limit heights
+    public int heightOf(byte[] hash, int limit)
+    {
+        if(hash == null || hash.length != BlockHeader.HASH_SIZE) return -1;
+        limit = Math.min(limit, size);
+        byte[] entries = this.entries;
+        int[] table = this.table;
+        int mask = table.length - 1;
+        for(int slot = probeStart(hash, 0) & mask; ; slot = (slot + 1) & mask)
+        {
+            int height = table[slot] - 1;
+            if(height < 0) return -1;
+            // Slots of blocks past the limit are skipped, they may not be readable yet
+            if(height < limit && matches(entries, height, hash)) return height;
+        }
+    }
+    // Height of the block with the given hex hash, -1 when it is not indexed
+    public int heightOf(String hash)
+    {
+        return heightOf(hash, size);
+    }
+
+    public int heightOf(String hash, int limit)
+    {
+        if(hash == null || hash.length() != BlockHeader.HASH_SIZE * 2) return -1;
+        return heightOf(StringUtil.toHashBytes(hash), limit);
+    }
+    // The hash of the block at the given height
+    public byte[] getHash(int height)
+    {
+        int offset = offset(height);
+        return Arrays.copyOfRange(entries, offset, offset + BlockHeader.HASH_SIZE);
+    }
+
+    public String getHashHex(int height)
+    {
+        return StringUtil.toHexString(getHash(height));
+    }
+    // The header of the block at the given height
+    public BlockHeader getHeader(int height)
+    {
+        return readHeader(entries, offset(height) + HEADER_OFFSET);
+    }
+    // The headers from height from (inclusive) to height to (exclusive)
+    public List<BlockHeader> getHeaders(int from, int to)
+    {
+        checkRange(from, to);
+        byte[] entries = this.entries;
+        List<BlockHeader> headers = new ArrayList<BlockHeader>(to - from);
+        for(int height = from; height < to; height++)
+        {
+            headers.add(readHeader(entries, height * ENTRY_SIZE + HEADER_OFFSET));
+        }
+        return headers;
+    }
+    // Copies the raw entries from height from to height to into out, ENTRY_SIZE bytes each; returns the bytes copied
+    public int copyEntries(int from, int to, byte[] out, int offset)
+    {
+        checkRange(from, to);
+        int length = (to - from) * ENTRY_SIZE;
+        System.arraycopy(entries, from * ENTRY_SIZE, out, offset, length);
+        return length;
+    }
+
+    public long getTimeStamp(int height)
+    {
+        return readLong(entries, offset(height) + HEADER_OFFSET + BlockHeader.TIMESTAMP_OFFSET);
+    }
+
+    public int getNonce(int height)
+    {
+        return readInt(entries, offset(height) + HEADER_OFFSET + BlockHeader.NONCE_OFFSET);
+    }
+    // Bytes used by the entries and the hash table
+    public long getMemoryUsage()
+    {
+        return (long) entries.length + table.length * 4L;
+    }
+
+    private int offset(int height)
+    {
+        if(height < 0 || height >= size) throw new IndexOutOfBoundsException("No header at height " + height + ", index has " + size);
+        return height * ENTRY_SIZE;
+    }
+
+    private void checkRange(int from, int to)
+    {
+        if(from < 0 || to > size || from > to) throw new IndexOutOfBoundsException("Range " + from + ".." + to + " outside 0.." + size);
+    }
+
+    private static int[] rehash(byte[] entries, int count, int capacity)
+    {
+        int[] table = new int[capacity];
+        for(int height = 0; height < count; height++)
+        {
+            insert(table, entries, height);
+        }
+        return table;
+    }
+
+    private static void insert(int[] table, byte[] entries, int height)
+    {
+        int mask = table.length - 1;
+        int slot = probeStart(entries, height * ENTRY_SIZE) & mask;
+        while(table[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = height + 1;
+    }
+
+    // Mined hashes start with zeros, their trailing bytes are still uniformly distributed
+    private static int probeStart(byte[] hash, int offset)
+    {
+        return readInt(hash, offset + BlockHeader.HASH_SIZE - 4);
+    }
+
+    private static boolean matches(byte[] entries, int height, byte[] hash)
+    {
+        int offset = height * ENTRY_SIZE;
+        return Arrays.equals(entries, offset, offset + BlockHeader.HASH_SIZE, hash, 0, BlockHeader.HASH_SIZE);
+    }
+
+    private static BlockHeader readHeader(byte[] entries, int offset)
+    {
+        byte[] previousHash = Arrays.copyOfRange(entries, offset, offset + BlockHeader.HASH_SIZE);
+        byte[] merkleRoot = Arrays.copyOfRange(entries, offset + BlockHeader.HASH_SIZE, offset + 2 * BlockHeader.HASH_SIZE);
+        return new BlockHeader(previousHash, merkleRoot,
+                readLong(entries, offset + BlockHeader.TIMESTAMP_OFFSET), readInt(entries, offset + BlockHeader.NONCE_OFFSET));
+    }
+
+    private static long readLong(byte[] in, int offset)
+    {
+        long value = 0;
+        for(int i = 0; i < 8; i++)
+        {
+            value = (value << 8) | (in[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int readInt(byte[] in, int offset)
+    {
+        return (in[offset] & 0xFF) << 24 | (in[offset + 1] & 0xFF) << 16 | (in[offset + 2] & 0xFF) << 8 | (in[offset + 3] & 0xFF);
+    }
+}
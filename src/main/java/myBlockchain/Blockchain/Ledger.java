@@ -0,0 +1,441 @@
+package myBlockchain.Blockchain;
+
+import java.security.PublicKey;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOSnapshot;
+import myBlockchain.Transactions.UTXOStore;
+
+/*
+ * Owns the chain and the unspent outputs.
+ * Writers (applyBlock, commit, put, remove) take turns on one lock; readers never
+ * lock. Each write builds a new Snapshot of the chain and the outputs together
+ * and publishes it through a volatile field, so a reader sees either all of a
+ * block or none of it and keeps a consistent view for as long as it holds one.
+ *
+ * The chain is an array that only ever grows: a snapshot remembers how many
+ * blocks it has, and slots past that are written before the snapshot that
+ * includes them is published. Headers and hashes are kept in a HeaderIndex,
+ * so lookups by hash or height do not touch the blocks. The outputs are a
+ * UTXOSnapshot, versioned layers of changes over a copy-on-write base.
+ *
+ * Every appended block keeps undo data, the outputs it spent and created, so
+ * reorganize() can swap the blocks after a fork for another branch without
+ * replaying the chain. Which branch to follow is decided by the BlockTree.
+ *
+ * With a prune depth set, blocks further than that below the tip lose their
+ * transactions and undo data: their slot is cleared, the only write to a slot
+ * below a published size, and readers get a header-only Block rebuilt from the
+ * HeaderIndex instead. Headers, merkle roots and the unspent outputs stay, so
+ * new blocks are still checked in full, but no reorg reaches below the depth.
+ *
+ * As a UTXOStore the ledger reads from the current snapshot and writes through
+ * the lock, so it can stand in wherever myBlockchain.UTXOs is used.
+ */
+public class Ledger implements UTXOStore
+{
+    // The chain and the unspent outputs as they were after one write
+    public static final class Snapshot
+    {
+        private final Block[] blocks;
+        private final BlockUndo[] undos;
+        private final int size;
+        private final UTXOSnapshot utxos;
+        private final HeaderIndex headers;
+        private final long version;
+        private final int prunedHeight;
+
+        private Snapshot(Block[] blocks, BlockUndo[] undos, int size, UTXOSnapshot utxos, HeaderIndex headers, long version, int prunedHeight)
+        {
+            this.blocks = blocks;
+            this.undos = undos;
+            this.size = size;
+            this.utxos = utxos;
+            this.headers = headers;
+            this.version = version;
+            this.prunedHeight = prunedHeight;
+        }
+        // Number of blocks
+        public int size()
+        {
+            return size;
+        }
+
+        public boolean isEmpty()
+        {
+            return size == 0;
+        }
+        // The block at the given height, only its header when it was pruned
+        public Block getBlock(int height)
+        {
+            if(height < 0 || height >= size) throw new IndexOutOfBoundsException("No block at height " + height + ", chain has " + size);
+            Block block = blocks[height];
+            if(block != null) return block;
+            return Block.pruned(headers.getHashHex(height), headers.getHeader(height));
+        }
+        // The block with the given hash, or null when it is not in this snapshot
+        public Block getBlock(String hash)
+        {
+            int height = heightOf(hash);
+            return height < 0 ? null : getBlock(height);
+        }
+        // True when the block at the given height has only its header left
+        public boolean isPruned(int height)
+        {
+            if(height < 0 || height >= size) throw new IndexOutOfBoundsException("No block at height " + height + ", chain has " + size);
+            return blocks[height] == null;
+        }
+        // Blocks below this height had been pruned when the snapshot was taken
+        public int getPrunedHeight()
+        {
+            return prunedHeight;
+        }
+        // Height of the block with the given hash, -1 when it is not in this snapshot
+        public int heightOf(String hash)
+        {
+            return headers.heightOf(hash, size);
+        }
+
+        public int heightOf(byte[] hash)
+        {
+            return headers.heightOf(hash, size);
+        }
+        // The header of the block at the given height, read from the index without touching the block
+        public BlockHeader getHeader(int height)
+        {
+            if(height < 0 || height >= size) throw new IndexOutOfBoundsException("No block at height " + height + ", chain has " + size);
+            return headers.getHeader(height);
+        }
+        // When the block at the given height was mined, read from the index
+        public long getTimeStamp(int height)
+        {
+            if(height < 0 || height >= size) throw new IndexOutOfBoundsException("No block at height " + height + ", chain has " + size);
+            return headers.getTimeStamp(height);
+        }
+        // The headers from height from (inclusive) to height to (exclusive)
+        public List<BlockHeader> getHeaders(int from, int to)
+        {
+            if(to > size) throw new IndexOutOfBoundsException("Range " + from + ".." + to + " outside 0.." + size);
+            return headers.getHeaders(from, to);
+        }
+        // The last block, or null for an empty chain
+        public Block getTip()
+        {
+            return size == 0 ? null : getBlock(size - 1);
+        }
+        // Read-only list view of the blocks
+        public List<Block> getBlocks()
+        {
+            return new AbstractList<Block>()
+            {
+                @Override
+                public Block get(int index)
+                {
+                    return getBlock(index);
+                }
+
+                @Override
+                public int size()
+                {
+                    return size;
+                }
+            };
+        }
+
+        public UTXOSnapshot getUTXOs()
+        {
+            return utxos;
+        }
+        // Lowest height from which every block up to the tip still has its undo data, size when the tip has none
+        int getUndoHeight()
+        {
+            int height = size;
+            while(height > 0 && undos[height - 1] != null) height--;
+            return height;
+        }
+        // The unspent outputs as they were before the block at the given height: the tip's outputs with the
+        // blocks from there on reverted. Null when one of them has no undo data, e.g. it was pruned since
+        UTXOSnapshot getUTXOsBefore(int height)
+        {
+            if(height < 0 || height > size) throw new IndexOutOfBoundsException("No block at height " + height + ", chain has " + size);
+            UTXOSnapshot reverted = utxos;
+            for(int current = size - 1; current >= height; current--)
+            {
+                BlockUndo undo = undos[current];
+                if(undo == null) return null;
+                UTXOBatch batch = new UTXOBatch(reverted);
+                undo.revert(batch);
+                reverted = reverted.apply(batch);
+            }
+            return reverted;
+        }
+
+        public long getBalance(PublicKey publicKey)
+        {
+            return utxos.getBalance(publicKey);
+        }
+        // Counts writes, a newer snapshot has a higher version
+        public long getVersion()
+        {
+            return version;
+        }
+    }
+
+    private final Object writeLock = new Object();
+    // Guarded by writeLock; slots below the published size are only written again to prune them
+    private Block[] blocks = new Block[64];
+    private BlockUndo[] undos = new BlockUndo[64]; // Null for blocks whose changes went to another store
+    private HeaderIndex headers = new HeaderIndex();
+    private int pruneDepth; // Blocks kept whole below the tip, 0 keeps every block
+    private int prunedHeight; // Blocks below this height have been pruned
+    private final BlockTree tree = new BlockTree(this);
+    private volatile Snapshot current = new Snapshot(blocks, undos, 0, UTXOSnapshot.empty(), headers, 0, 0);
+
+    // The chain and outputs as of the last write, never blocks
+    public Snapshot snapshot()
+    {
+        return current;
+    }
+    // Appends a mined block and commits its staged UTXO changes as one step
+    public void applyBlock(Block block)
+    {
+        UTXOBatch batch = block.getUTXOBatch();
+        appendBlock(block, batch);
+        batch.clear();
+    }
+    // Appends a block together with the given changes to the outputs, which may be null.
+    // Changes staged on another store are committed to that store first. A pruned block,
+    // e.g. one loaded from a pruned BlockStore, only adds its header and can only follow pruned blocks.
+    public void appendBlock(Block block, UTXOBatch changes)
+    {
+        if(changes != null && changes.getStore() != this)
+        {
+            changes.commit();
+            changes = null;
+        }
+        synchronized(writeLock)
+        {
+            Snapshot snapshot = current;
+            if(snapshot.heightOf(block.hash) >= 0)
+            {
+                throw new IllegalArgumentException("Block " + block.hash + " is already in the chain");
+            }
+            int height = snapshot.size;
+            if(block.isPruned() && height != prunedHeight)
+            {
+                throw new IllegalArgumentException("Pruned block " + block.hash + " cannot follow blocks that were kept");
+            }
+            if(height == blocks.length)
+            {
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                undos = Arrays.copyOf(undos, blocks.length);
+            }
+            blocks[height] = block.isPruned() ? null : block;
+            undos[height] = changes == null || block.isPruned() ? null : BlockUndo.record(snapshot.utxos, changes);
+            if(block.isPruned()) prunedHeight = height + 1;
+            headers.append(block);
+            UTXOSnapshot utxos = changes == null ? snapshot.utxos : snapshot.utxos.apply(changes);
+            prune(height + 1);
+            current = new Snapshot(blocks, undos, height + 1, utxos, headers, snapshot.version + 1, prunedHeight);
+        }
+    }
+    // Replaces the blocks from height keep on with the given branch in one write.
+    // The old blocks are disconnected with their undo data and the branch is connected on
+    // top, spending its inputs against the outputs left. Returns -1 when the branch was
+    // connected, otherwise the index of the first branch block that could not be and
+    // nothing is changed.
+    public int reorganize(int keep, List<Block> branch)
+    {
+        synchronized(writeLock)
+        {
+            Snapshot snapshot = current;
+            if(keep < 1 || keep > snapshot.size) throw new IndexOutOfBoundsException("Cannot keep " + keep + " of " + snapshot.size + " blocks");
+            if(!canDisconnect(keep)) throw new IllegalStateException("Blocks after height " + keep + " have no undo data");
+            UTXOSnapshot utxos = snapshot.utxos;
+            for(int height = snapshot.size - 1; height >= keep; height--)
+            {
+                UTXOBatch batch = new UTXOBatch(utxos);
+                undos[height].revert(batch);
+                utxos = utxos.apply(batch);
+            }
+            BlockUndo[] branchUndos = new BlockUndo[branch.size()];
+            for(int i = 0; i < branch.size(); i++)
+            {
+                UTXOBatch batch = new UTXOBatch(utxos);
+                if(ValidationPipeline.spend(branch.get(i), batch) != null) return i;
+                branchUndos[i] = BlockUndo.record(utxos, batch);
+                utxos = utxos.apply(batch);
+            }
+            // Slots below the old size are shared with published snapshots, so the chain is copied
+            int size = keep + branch.size();
+            Block[] newBlocks = Arrays.copyOf(blocks, Math.max(blocks.length, Integer.highestOneBit(size) * 2));
+            BlockUndo[] newUndos = Arrays.copyOf(undos, newBlocks.length);
+            HeaderIndex newHeaders = headers.copy(keep);
+            for(int i = 0; i < branch.size(); i++)
+            {
+                newBlocks[keep + i] = branch.get(i);
+                newUndos[keep + i] = branchUndos[i];
+                newHeaders.append(branch.get(i));
+            }
+            Arrays.fill(newBlocks, size, newBlocks.length, null);
+            Arrays.fill(newUndos, size, newUndos.length, null);
+            blocks = newBlocks;
+            undos = newUndos;
+            headers = newHeaders;
+            prune(size);
+            current = new Snapshot(blocks, undos, size, utxos, headers, snapshot.version + 1, prunedHeight);
+            return -1;
+        }
+    }
+    // True when every block from the given height to the tip can be disconnected
+    public boolean canDisconnect(int from)
+    {
+        synchronized(writeLock)
+        {
+            for(int height = from; height < current.size; height++)
+            {
+                if(undos[height] == null) return false;
+            }
+            return true;
+        }
+    }
+    // Keeps only the last depth blocks whole, older ones lose their transactions and undo data; 0 keeps every block
+    public void setPruneDepth(int depth)
+    {
+        if(depth < 0) throw new IllegalArgumentException("Prune depth cannot be negative: " + depth);
+        synchronized(writeLock)
+        {
+            pruneDepth = depth;
+            Snapshot snapshot = current;
+            prune(snapshot.size);
+            current = new Snapshot(blocks, undos, snapshot.size, snapshot.utxos, headers, snapshot.version + 1, prunedHeight);
+        }
+    }
+
+    public int getPruneDepth()
+    {
+        synchronized(writeLock)
+        {
+            return pruneDepth;
+        }
+    }
+    // Competing branches of this chain, selects which of them the ledger follows
+    public BlockTree getBlockTree()
+    {
+        return tree;
+    }
+
+    @Override
+    public int size()
+    {
+        return current.utxos.size();
+    }
+    // Headers of every block added so far, snapshots only look at their own part of it
+    public HeaderIndex getHeaderIndex()
+    {
+        return current.headers;
+    }
+    // Number of blocks
+    public int height()
+    {
+        return current.size;
+    }
+
+    @Override
+    public TransactionOutput get(String id)
+    {
+        return current.utxos.get(id);
+    }
+
+    @Override
+    public boolean containsKey(String id)
+    {
+        return current.utxos.containsKey(id);
+    }
+
+    @Override
+    public long getBalance(int owner)
+    {
+        return current.utxos.getBalance(owner);
+    }
+
+    @Override
+    public List<TransactionOutput> getOutputs(int owner)
+    {
+        return current.utxos.getOutputs(owner);
+    }
+
+    @Override
+    public UTXOStore readView()
+    {
+        return current.utxos;
+    }
+
+    @Override
+    public void put(String id, TransactionOutput output)
+    {
+        if(!id.equals(output.id)) throw new IllegalArgumentException("Output " + output.id + " cannot be stored as " + id);
+        UTXOBatch batch = new UTXOBatch(this);
+        batch.put(output);
+        commit(batch);
+    }
+
+    @Override
+    public TransactionOutput remove(String id)
+    {
+        synchronized(writeLock)
+        {
+            TransactionOutput output = get(id);
+            if(output == null) return null;
+            UTXOBatch batch = new UTXOBatch(this);
+            batch.remove(id);
+            publish(current.utxos.apply(batch));
+            return output;
+        }
+    }
+
+    @Override
+    public void commit(UTXOBatch batch)
+    {
+        synchronized(writeLock)
+        {
+            publish(current.utxos.apply(batch));
+        }
+    }
+    // Drops every block and every output, the prune depth stays
+    @Override
+    public void clear()
+    {
+        synchronized(writeLock)
+        {
+            // Readers of older snapshots keep the old array and index
+            blocks = new Block[64];
+            undos = new BlockUndo[64];
+            headers = new HeaderIndex();
+            prunedHeight = 0;
+            current = new Snapshot(blocks, undos, 0, UTXOSnapshot.empty(), headers, current.version + 1, 0);
+        }
+        tree.clear();
+    }
+    // Called with the write lock held
+    private void publish(UTXOSnapshot utxos)
+    {
+        Snapshot snapshot = current;
+        if(utxos == snapshot.utxos) return;
+        current = new Snapshot(blocks, undos, snapshot.size, utxos, headers, snapshot.version + 1, prunedHeight);
+    }
+    // Clears the slots of blocks more than the prune depth below size; called with the write lock held
+    private void prune(int size)
+    {
+        if(pruneDepth == 0) return;
+        for(; prunedHeight < size - pruneDepth; prunedHeight++)
+        {
+            blocks[prunedHeight] = null;
+            undos[prunedHeight] = null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package myBlockchain.Blockchain;
+
+public class MiningResult
+{
+    public final int nonce; // Winning nonce
+    public final String hash; // Hash produced by the winning nonce
+    public final long hashes; // Total hashes tried by all workers
+    public final long elapsedNanos; // Wall-clock time spent mining
+
+    public MiningResult(int nonce, String hash, long hashes, long elapsedNanos)
+    {
+        this.nonce = nonce;
+        this.hash = hash;
+        this.hashes = hashes;
+        this.elapsedNanos = elapsedNanos;
+    }
+    // Returns the mining speed over the whole search
+    public double getHashesPerSecond()
+    {
+        if(elapsedNanos <= 0) return 0;
+        return hashes * 1_000_000_000d / elapsedNanos;
+    }
+}
@@ -0,0 +1,119 @@
+package myBlockchain.Blockchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Searches the nonce space of a block on a pool of worker threads.
+ * Worker i tries nonces i, i + n, i + 2n ... so the workers never overlap,
+ * and all of them stop as soon as one publishes a hash that meets the difficulty.
+ */
+public class ParallelMiner
+{
+    private static final long NONCE_SPACE = 1L << 32; // Every value an int nonce can take
+
+    private final int threads;
+    private final ExecutorService executor;
+
+    public ParallelMiner()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelMiner(int threads)
+    {
+        if(threads < 1)
+        {
+            throw new IllegalArgumentException("Miner needs at least one thread");
+        }
+        this.threads = threads;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable ->
+        {
+            Thread thread = new Thread(runnable, "miner-" + counter.incrementAndGet());
+            thread.setDaemon(true); // Never keep the JVM alive just for idle miners
+            return thread;
+        });
+    }
+    // Returns the number of worker threads
+    public int getThreads()
+    {
+        return threads;
+    }
+    // Finds a nonce whose block hash starts with the required number of zeros
+    public MiningResult mine(Block block, int difficulty)
+    {
+        return mine(block, Target.ofDifficulty(difficulty));
+    }
+    // Finds a nonce whose block hash is at most the target
+    public MiningResult mine(Block block, Target target)
+    {
+        // Every worker starts from a copy of the same midstate
+        HeaderHasher template = new HeaderHasher(block.getHeader());
+        AtomicReference<MiningResult> winner = new AtomicReference<MiningResult>();
+        LongAdder hashes = new LongAdder();
+
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>(threads);
+        for(int w = 0; w < threads; w++)
+        {
+            final long start = w;
+            workers.add(() ->
+            {
+                HeaderHasher hasher = new HeaderHasher(template);
+                long attempts = 0;
+                for(long n = start; n < NONCE_SPACE && winner.get() == null; n += threads)
+                {
+                    int nonce = (int) n;
+                    hasher.hash(nonce);
+                    attempts++;
+                    if(hasher.meetsTarget(target))
+                    {
+                        winner.compareAndSet(null, new MiningResult(nonce, hasher.getHashHex(), 0, 0));
+                        break;
+                    }
+                }
+                hashes.add(attempts);
+                return null;
+            });
+        }
+
+        long startTime = System.nanoTime();
+        try
+        {
+            for(Future<Void> future : executor.invokeAll(workers))
+            {
+                future.get();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        MiningResult found = winner.get();
+        if(found == null)
+        {
+            throw new IllegalStateException("Nonce space exhausted at target " + target);
+        }
+        return new MiningResult(found.nonce, found.hash, hashes.sum(), elapsed);
+    }
+    // Stops the worker threads, the miner can not be used afterwards
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+}
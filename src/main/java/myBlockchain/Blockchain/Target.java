@@ -0,0 +1,114 @@
+package myBlockchain.Blockchain;
+
+import java.math.BigInteger;
+
+import myBlockchain.Util.StringUtil;
+
+/*
+ * A proof-of-work target: a block is mined when its hash, read as a 256-bit
+ * unsigned number, is at most the target. A difficulty of d leading hex zeros
+ * is the target 2^(256 - 4d) - 1, but a target can sit anywhere in between,
+ * which lets the DifficultyEngine adjust it in small steps.
+ *
+ * The target is also kept as eight big-endian words, the layout of a SHA-256
+ * state, so a miner compares each attempt without building a BigInteger.
+ */
+public final class Target implements Comparable<Target>
+{
+    private static final BigInteger TWO_TO_256 = BigInteger.ONE.shiftLeft(256);
+    // Every hash meets it
+    public static final Target MAX = new Target(TWO_TO_256.subtract(BigInteger.ONE));
+
+    private final BigInteger value;
+    private final int[] words = new int[8];
+
+    private Target(BigInteger value)
+    {
+        this.value = value;
+        byte[] bytes = value.toByteArray(); // Big-endian, may carry a sign byte or be shorter than 32
+        for(int i = 0; i < 32; i++)
+        {
+            int index = bytes.length - 32 + i;
+            int b = index < 0 ? 0 : bytes[index] & 0xFF;
+            words[i / 4] |= b << (24 - 8 * (i % 4));
+        }
+    }
+    // The target of a hash with the given number of leading zero hex digits
+    public static Target ofDifficulty(int difficulty)
+    {
+        if(difficulty < 0 || difficulty > 64) throw new IllegalArgumentException("Difficulty must be 0 to 64 hex digits: " + difficulty);
+        return new Target(BigInteger.ONE.shiftLeft(256 - 4 * difficulty).subtract(BigInteger.ONE));
+    }
+    // A target with the given value, clamped to 1..MAX
+    public static Target of(BigInteger value)
+    {
+        if(value.signum() <= 0) return new Target(BigInteger.ONE);
+        if(value.compareTo(MAX.value) >= 0) return MAX;
+        return new Target(value);
+    }
+
+    public BigInteger getValue()
+    {
+        return value;
+    }
+    // True when the hex hash is at most this target
+    public boolean isMetBy(String hash)
+    {
+        return hash != null && hash.length() == 64 && isMetBy(StringUtil.toHashBytes(hash));
+    }
+    // True when the raw 32-byte hash is at most this target
+    public boolean isMetBy(byte[] hash)
+    {
+        for(int i = 0; i < 32; i++)
+        {
+            int b = hash[i] & 0xFF;
+            int t = (words[i / 4] >>> (24 - 8 * (i % 4))) & 0xFF;
+            if(b != t) return b < t;
+        }
+        return true;
+    }
+    // Same as isMetBy(hash) for a hash still held as SHA-256 state words
+    boolean isMetBy(int[] state)
+    {
+        for(int i = 0; i < 8; i++)
+        {
+            if(state[i] != words[i]) return Integer.compareUnsigned(state[i], words[i]) < 0;
+        }
+        return true;
+    }
+    // Expected number of hashes to meet this target, 2^256 / (target + 1)
+    public BigInteger getWork()
+    {
+        return TWO_TO_256.divide(value.add(BigInteger.ONE));
+    }
+    // How much harder than the easiest target, in hex digits; matches the old difficulty for whole digits
+    public double getDifficulty()
+    {
+        return (256 - Math.log(value.doubleValue() + 1) / Math.log(2)) / 4;
+    }
+
+    @Override
+    public int compareTo(Target other)
+    {
+        return value.compareTo(other.value);
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        return other instanceof Target && value.equals(((Target) other).value);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return value.hashCode();
+    }
+    // The target as 64 hex digits
+    @Override
+    public String toString()
+    {
+        String hex = value.toString(16);
+        return "0".repeat(64 - hex.length()) + hex;
+    }
+}
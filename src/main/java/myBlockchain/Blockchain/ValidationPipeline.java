@@ -0,0 +1,334 @@
+package myBlockchain.Blockchain;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import myBlockchain.myBlockchain;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Payment;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOSnapshot;
+import myBlockchain.Util.StringUtil;
+
+/*
+ * Validates a run of blocks in two stages.
+ *
+ * The first stage holds every check that only needs the block and its parent:
+ * the hash, the link to the previous block, the expected target, the time
+ * stamp against the median of the blocks before, the merkle root, the
+ * transaction and output ids, the signatures, inputs against outputs plus fee
+ * and who the outputs go to. It runs on the fork-join pool for many blocks at
+ * a time. The second stage spends and creates the outputs block by block in
+ * chain order, on the calling thread, since every block depends on the
+ * outputs left by the ones before.
+ *
+ * The stages are connected by a bounded window of blocks in flight: the first
+ * stage runs at most that many blocks ahead of the second, so a long chain
+ * does not queue up work for all of its blocks at once. The first block that
+ * fails either stage ends the run, and later blocks are cancelled.
+ */
+public class ValidationPipeline
+{
+    private static final int BLOCKS_PER_THREAD = 4; // Window size per pool thread, keeps workers busy while the UTXO stage catches up
+
+    // Outcome of a run: how far it got and, when it stopped early, where and why
+    public static final class Result
+    {
+        private final int validHeight;
+        private final UTXOSnapshot utxos;
+        private final int failedTransaction;
+        private final String reason;
+
+        private Result(int validHeight, UTXOSnapshot utxos, int failedTransaction, String reason)
+        {
+            this.validHeight = validHeight;
+            this.utxos = utxos;
+            this.failedTransaction = failedTransaction;
+            this.reason = reason;
+        }
+
+        public boolean isValid()
+        {
+            return reason == null;
+        }
+        // Number of blocks known to be valid; when the run failed, the height of the first invalid block
+        public int getValidHeight()
+        {
+            return validHeight;
+        }
+        // Height of the first invalid block, -1 when every block is valid
+        public int getFailedHeight()
+        {
+            return isValid() ? -1 : validHeight;
+        }
+        // Index of the first invalid transaction in that block, -1 when the block itself is at fault
+        public int getFailedTransaction()
+        {
+            return failedTransaction;
+        }
+        // Why validation failed, null when it did not
+        public String getReason()
+        {
+            return reason;
+        }
+        // Unspent outputs after the last valid block
+        public UTXOSnapshot getUTXOs()
+        {
+            return utxos;
+        }
+    }
+
+    // A failed check, from either stage
+    static final class Failure
+    {
+        final int transaction;
+        final String reason;
+
+        Failure(int transaction, String reason)
+        {
+            this.transaction = transaction;
+            this.reason = reason;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int window;
+
+    public ValidationPipeline()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ValidationPipeline(ForkJoinPool pool)
+    {
+        this(pool, pool.getParallelism() * BLOCKS_PER_THREAD);
+    }
+
+    public ValidationPipeline(ForkJoinPool pool, int window)
+    {
+        if(window < 1) throw new IllegalArgumentException("Window must hold at least one block: " + window);
+        this.pool = pool;
+        this.window = window;
+    }
+    // Validates the blocks from the given height to the end of the chain on top of the outputs left by the blocks before
+    public Result validate(Ledger.Snapshot chain, int from, int difficulty, UTXOSnapshot utxos)
+    {
+        int end = chain.size();
+        // Targets are worked out on this thread in chain order, each from the one before
+        DifficultyEngine engine = myBlockchain.difficultyEngine;
+        Target target = engine.targetAt(chain, from - 1, Target.ofDifficulty(difficulty));
+        // A single block gains nothing from the pipeline, its signatures are checked in parallel instead
+        if(end - from == 1)
+        {
+            Block block = chain.getBlock(from);
+            boolean[] signatures = myBlockchain.signatureVerifier.verifyAll(block.transactions);
+            target = engine.next(target, from, chain::getTimeStamp);
+            long medianTime = engine.medianTimePast(from, chain::getTimeStamp);
+            return finish(chain, from, utxos, check(block, chain.getBlock(from - 1), target, medianTime, signatures));
+        }
+        ArrayDeque<Future<Failure>> inFlight = new ArrayDeque<Future<Failure>>(Math.min(window, Math.max(end - from, 0)));
+        int next = from;
+        try
+        {
+            for(int height = from; height < end; height++)
+            {
+                while(next < end && next - height < window)
+                {
+                    Block block = chain.getBlock(next);
+                    Block previous = chain.getBlock(next - 1);
+                    target = engine.next(target, next, chain::getTimeStamp);
+                    Target blockTarget = target;
+                    long medianTime = engine.medianTimePast(next, chain::getTimeStamp);
+                    inFlight.add(pool.submit(() -> check(block, previous, blockTarget, medianTime, null)));
+                    next++;
+                }
+                Result result = finish(chain, height, utxos, await(inFlight.poll()));
+                if(!result.isValid()) return result;
+                utxos = result.getUTXOs();
+            }
+            return new Result(end, utxos, -1, null);
+        }
+        finally
+        {
+            for(Future<Failure> pending : inFlight)
+            {
+                pending.cancel(false);
+            }
+        }
+    }
+    // Runs the UTXO stage for one block whose first stage ended with the given failure, null when it passed
+    private static Result finish(Ledger.Snapshot chain, int height, UTXOSnapshot utxos, Failure failure)
+    {
+        if(failure == null)
+        {
+            UTXOBatch batch = new UTXOBatch(utxos);
+            failure = spend(chain.getBlock(height), batch);
+            if(failure == null) return new Result(height + 1, utxos.apply(batch), -1, null);
+        }
+        return new Result(height, utxos, failure.transaction, failure.reason);
+    }
+    // First stage, the checks that only need the block and its parent, plus the median time past of the blocks
+    // before it; signatures may be null to check them here
+    static Failure check(Block currentBlock, Block previousBlock, Target target, long medianTime, boolean[] signatures)
+    {
+        try
+        {
+            // Verify block's hash is correct
+            if(!currentBlock.hash.equals(currentBlock.calculateHash()))
+            {
+                return new Failure(-1, "Current Hashes not equal");
+            }
+            // Verify chain links are correct
+            if(!previousBlock.hash.equals(currentBlock.previousHash))
+            {
+                return new Failure(-1, "Previous Hashes not equal");
+            }
+            // Verify block was properly mined, against the target expected at its height
+            if(!target.isMetBy(currentBlock.hash))
+            {
+                return new Failure(-1, "This block hasn't been mined");
+            }
+            // Verify the time stamp, retargets are worked out from it
+            if(!myBlockchain.difficultyEngine.isTimeStampValid(currentBlock.getTimeStamp(), medianTime))
+            {
+                return new Failure(-1, "Time stamp is before the median time past or too far in the future");
+            }
+            // Verify the header commits to these transactions
+            if(!StringUtil.getMerkleRoot(currentBlock.transactions).equals(currentBlock.merkleRoot))
+            {
+                return new Failure(-1, "Merkle root does not match the transactions");
+            }
+            List<Transaction> transactions = currentBlock.transactions;
+            for(int t = 0; t < transactions.size(); t++)
+            {
+                Transaction currentTransaction = transactions.get(t);
+                // Verify transaction signature
+                if(!(signatures != null ? signatures[t] : currentTransaction.verifiySignature()))
+                {
+                    return new Failure(t, "Signature on Transaction(" + t + ") is Invalid");
+                }
+                // Verify the ids were not rewritten, the merkle root and the signature do not cover the outputs
+                if(!hasValidIds(currentTransaction))
+                {
+                    return new Failure(t, "Transaction(" + t + ") ids do not match its contents");
+                }
+                // Verify inputs match outputs plus the fee
+                if(currentTransaction.getInputsValue() != Amount.add(currentTransaction.getOutputsValue(), currentTransaction.fee))
+                {
+                    return new Failure(t, "Inputs are note equal to outputs on Transaction(" + t + ")");
+                }
+                // Verify transaction outputs go to correct recipients
+                if(!currentTransaction.outputs.get(0).isMine(currentTransaction.reciever))
+                {
+                    return new Failure(t, "Transaction(" + t + ") output reciever is not who it should be");
+                }
+                // Then one output per further payment, with its amount
+                int payments = currentTransaction.payments.size();
+                for(int p = 0; p < payments; p++)
+                {
+                    Payment payment = currentTransaction.payments.get(p);
+                    TransactionOutput output = p + 1 < currentTransaction.outputs.size() ? currentTransaction.outputs.get(p + 1) : null;
+                    if(output == null || !output.isMine(payment.reciever) || output.value != payment.value)
+                    {
+                        return new Failure(t, "Transaction(" + t + ") payment " + (p + 1) + " is not paid to who it should be");
+                    }
+                }
+                if(currentTransaction.outputs.size() > payments + 2)
+                {
+                    return new Failure(t, "Transaction(" + t + ") has outputs it does not pay");
+                }
+                if(currentTransaction.outputs.size() > payments + 1 && !currentTransaction.outputs.get(payments + 1).isMine(currentTransaction.sender))
+                {
+                    return new Failure(t, "Transaction(" + t + ") output 'change' is not sender.");
+                }
+            }
+            return null;
+        }
+        catch(RuntimeException e)
+        {
+            // A malformed block fails validation instead of the whole run
+            return new Failure(-1, "Block could not be checked: " + e);
+        }
+    }
+    // Second stage, spends the inputs and adds the outputs of every transaction in order
+    static Failure spend(Block currentBlock, UTXOBatch tempUTXOs)
+    {
+        List<Transaction> transactions = currentBlock.transactions;
+        for(int t = 0; t < transactions.size(); t++)
+        {
+            Transaction currentTransaction = transactions.get(t);
+            // Validate all transaction inputs
+            for(TransactionInput input : currentTransaction.inputs)
+            {
+                TransactionOutput tempOutput = tempUTXOs.get(input.transactionOutputId);
+                if(tempOutput == null)
+                {
+                    return new Failure(t, "Referenced input on Transaction(" + t + ") is Missing");
+                }
+                // The first stage skips inputs that were never linked to an output, they fail here
+                if(input.UTXO == null || input.UTXO.value != tempOutput.value)
+                {
+                    return new Failure(t, "Referenced input Transaction(" + t + ") value is Invalid");
+                }
+                // Only the owner of an output can spend it, the signature only shows who the sender is
+                if(!tempOutput.isMine(currentTransaction.sender))
+                {
+                    return new Failure(t, "Referenced input on Transaction(" + t + ") is not owned by the sender");
+                }
+                // Remove spent UTXO
+                tempUTXOs.remove(input.transactionOutputId);
+            }
+            // Add new outputs to UTXO set
+            for(TransactionOutput output : currentTransaction.outputs)
+            {
+                if(tempUTXOs.get(output.id) != null)
+                {
+                    return new Failure(t, "Transaction(" + t + ") creates an output that is already unspent");
+                }
+                tempUTXOs.put(output);
+            }
+        }
+        return null;
+    }
+
+    // True when the transaction id is the hash of its body and every output id the hash of that output.
+    // Legacy transactions, only read from old block stores, had ids made up differently; only the links to their outputs are checked.
+    static boolean hasValidIds(Transaction transaction)
+    {
+        boolean legacy = transaction.version == Transaction.LEGACY_VERSION;
+        if(!legacy && !StringUtil.sha256Hex(transaction.getBody()).equals(transaction.transactionId)) return false;
+        List<TransactionOutput> outputs = transaction.outputs;
+        if(outputs.isEmpty() || outputs.get(0).value != transaction.value) return false;
+        for(int i = 0; i < outputs.size(); i++)
+        {
+            TransactionOutput output = outputs.get(i);
+            if(!transaction.transactionId.equals(output.parentTransactionId)) return false;
+            if(!legacy && !StringUtil.sha256Hex(TransactionCodec.encodeOutput(output.owner, output.value, output.parentTransactionId, i)).equals(output.id)) return false;
+        }
+        return true;
+    }
+
+    private static Failure await(Future<Failure> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package myBlockchain.Network;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.BlockHeader;
+import myBlockchain.Blockchain.HeaderHasher;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Util.Binary;
+import myBlockchain.Util.SipHash;
+import myBlockchain.Util.StringUtil;
+import myBlockchain.Util.VarInt;
+
+/*
+ * A block announced by its header and a 6 byte short id per transaction, for
+ * peers that most likely have its transactions in their mempool already:
+ *
+ *   header (76) | salt (8) | count | short ids | count | (index gap | transaction)...
+ *
+ * Short ids are SipHash-2-4 of the transaction id, keyed with the first 16
+ * bytes of SHA-256(header | salt) and cut to 48 bits. The salt is new for every
+ * message, so ids that collide for one block do not collide for the next and
+ * no transaction can be made to collide on purpose. Transactions the peer is
+ * not known to have go in whole ("prefilled"), each after the number of
+ * positions skipped since the previous one.
+ *
+ * The receiver fills the short ids from its mempool and asks for whatever is
+ * left; a pooled transaction that only shared a short id shows as a wrong
+ * merkle root, then the whole block is fetched instead. Not thread-safe.
+ */
+public final class CompactBlock
+{
+    public static final int SHORT_ID_LENGTH = 6;
+    private static final long SHORT_ID_MASK = (1L << (8 * SHORT_ID_LENGTH)) - 1;
+
+    private final BlockHeader header;
+    private final String hash;
+    private final long salt;
+    private final long k0;
+    private final long k1;
+    private final Transaction[] transactions; // By position in the block, null while missing
+    private final int[] shortPositions; // Positions sent as short ids, ascending
+    private final long[] shortIds; // Their short ids
+    private final int prefilled;
+
+    private CompactBlock(BlockHeader header, long salt, Transaction[] transactions, int[] shortPositions, long[] shortIds)
+    {
+        this.header = header;
+        this.hash = new HeaderHasher(header).getHashHex();
+        this.salt = salt;
+        this.transactions = transactions;
+        this.shortPositions = shortPositions;
+        this.shortIds = shortIds;
+        this.prefilled = transactions.length - shortPositions.length;
+        byte[] key = keyOf(header, salt);
+        k0 = SipHash.keyHalf(key, 0);
+        k1 = SipHash.keyHalf(key, 1);
+    }
+    // The compact form of a block for one peer; transactions peerHas does not know of are sent in whole
+    public static CompactBlock of(Block block, long salt, Predicate<String> peerHas)
+    {
+        int count = block.transactions.size();
+        Transaction[] transactions = new Transaction[count];
+        int[] positions = new int[count];
+        long[] ids = new long[count];
+        int shorts = 0;
+        BlockHeader header = block.getHeader();
+        byte[] key = keyOf(header, salt);
+        long k0 = SipHash.keyHalf(key, 0);
+        long k1 = SipHash.keyHalf(key, 1);
+        HashSet<Long> used = new HashSet<Long>();
+        for(int i = 0; i < count; i++)
+        {
+            Transaction transaction = block.transactions.get(i);
+            long id = shortId(k0, k1, transaction.transactionId);
+            // A short id taken twice in one block could not be told apart, the second one goes in whole
+            if(peerHas.test(transaction.transactionId) && used.add(id))
+            {
+                positions[shorts] = i;
+                ids[shorts] = id;
+                shorts++;
+            }
+            else
+            {
+                transactions[i] = transaction;
+            }
+        }
+        return new CompactBlock(header, salt, transactions, Arrays.copyOf(positions, shorts), Arrays.copyOf(ids, shorts));
+    }
+    // Reads a compact block written by encode()
+    public static CompactBlock decode(ByteBuffer in, TransactionCodec codec) throws ProtocolException
+    {
+        BlockHeader header = BlockHeader.read(in);
+        long salt = in.getLong();
+        int shorts = Message.readCount(in, SHORT_ID_LENGTH);
+        long[] ids = new long[shorts];
+        for(int i = 0; i < shorts; i++)
+        {
+            ids[i] = readShortId(in);
+        }
+        int prefilled = Message.readCount(in, 2);
+        Transaction[] transactions = new Transaction[shorts + prefilled];
+        int position = -1;
+        for(int i = 0; i < prefilled; i++)
+        {
+            long next = position + 1L + VarInt.readUnsignedLong(in);
+            if(next >= transactions.length) throw new ProtocolException("Prefilled transaction past the end of the block");
+            position = (int) next;
+            transactions[position] = codec.decode(in);
+        }
+        int[] positions = new int[shorts];
+        int next = 0;
+        for(int i = 0; i < transactions.length; i++)
+        {
+            if(transactions[i] == null) positions[next++] = i;
+        }
+        return new CompactBlock(header, salt, transactions, positions, ids);
+    }
+
+    public byte[] encode()
+    {
+        Binary.Writer out = new Binary.Writer(BlockHeader.SIZE + 16 + shortIds.length * SHORT_ID_LENGTH + prefilled * 256);
+        byte[] bytes = header.toBytes();
+        out.write(bytes, 0, bytes.length);
+        out.writeLong(salt);
+        out.writeVarInt(shortIds.length);
+        byte[] id = new byte[SHORT_ID_LENGTH];
+        for(long shortId : shortIds)
+        {
+            for(int i = 0; i < SHORT_ID_LENGTH; i++)
+            {
+                id[i] = (byte) (shortId >>> (8 * i));
+            }
+            out.write(id, 0, id.length);
+        }
+        out.writeVarInt(prefilled);
+        int previous = -1;
+        int next = 0;
+        for(int i = 0; i < transactions.length; i++)
+        {
+            // Positions sent as short ids are never prefilled, even after reconstruct() filled them
+            if(next < shortPositions.length && shortPositions[next] == i)
+            {
+                next++;
+                continue;
+            }
+            out.writeVarInt(i - previous - 1);
+            bytes = transactions[i].toBytes();
+            out.write(bytes, 0, bytes.length);
+            previous = i;
+        }
+        return out.toByteArray();
+    }
+    // The short id of a transaction under this block's key
+    public long shortId(String transactionId)
+    {
+        return shortId(k0, k1, transactionId);
+    }
+    // Fills the short ids from pooled transactions, returns the positions still missing; ids two pooled transactions share stay missing
+    public List<Integer> reconstruct(Collection<Transaction> pool)
+    {
+        HashMap<Long,Integer> open = new HashMap<Long,Integer>();
+        for(int i = 0; i < shortIds.length; i++)
+        {
+            if(transactions[shortPositions[i]] == null) open.put(shortIds[i], shortPositions[i]);
+        }
+        if(!open.isEmpty())
+        {
+            HashSet<Integer> ambiguous = new HashSet<Integer>();
+            for(Transaction transaction : pool)
+            {
+                Integer position = open.get(shortId(transaction.transactionId));
+                if(position == null) continue;
+                if(transactions[position] != null) ambiguous.add(position);
+                else transactions[position] = transaction;
+            }
+            for(Integer position : ambiguous)
+            {
+                transactions[position] = null;
+            }
+        }
+        return getMissing();
+    }
+    // Positions whose transaction has not been found yet
+    public List<Integer> getMissing()
+    {
+        List<Integer> missing = new ArrayList<Integer>();
+        for(int position : shortPositions)
+        {
+            if(transactions[position] == null) missing.add(position);
+        }
+        return missing;
+    }
+    // Puts the transactions a peer sent for getMissing() in place, in the same order
+    public void fill(List<Transaction> found) throws ProtocolException
+    {
+        List<Integer> missing = getMissing();
+        if(found.size() != missing.size()) throw new ProtocolException("Got " + found.size() + " transactions for " + missing.size() + " missing");
+        for(int i = 0; i < found.size(); i++)
+        {
+            transactions[missing.get(i)] = found.get(i);
+        }
+    }
+    // The block with copies of its transactions, null while transactions are missing or when they do not match the merkle root.
+    // Copies come without outputs, which are rebuilt once their inputs are linked.
+    public Block toBlock(TransactionCodec codec)
+    {
+        ArrayList<Transaction> copies = new ArrayList<Transaction>(transactions.length);
+        for(Transaction transaction : transactions)
+        {
+            if(transaction == null) return null;
+            Transaction copy = codec.decode(transaction.toBytes());
+            copy.outputs.clear();
+            copies.add(copy);
+        }
+        String merkleRoot = StringUtil.toHexString(header.merkleRoot);
+        if(!StringUtil.getMerkleRoot(copies).equals(merkleRoot)) return null;
+        return new Block(hash, getPreviousHash(), header.timeStamp, header.nonce, merkleRoot, copies);
+    }
+
+    public String getHash()
+    {
+        return hash;
+    }
+
+    public String getPreviousHash()
+    {
+        return StringUtil.toHexString(header.previousHash);
+    }
+    // Number of transactions in the block
+    public int size()
+    {
+        return transactions.length;
+    }
+    // Transactions that were sent in whole
+    public List<Transaction> getPrefilled()
+    {
+        List<Transaction> sent = new ArrayList<Transaction>(prefilled);
+        int next = 0;
+        for(int i = 0; i < transactions.length; i++)
+        {
+            if(next < shortPositions.length && shortPositions[next] == i) next++;
+            else sent.add(transactions[i]);
+        }
+        return sent;
+    }
+
+    private static byte[] keyOf(BlockHeader header, long salt)
+    {
+        ByteBuffer keyed = ByteBuffer.allocate(BlockHeader.SIZE + 8);
+        keyed.put(header.toBytes());
+        keyed.order(ByteOrder.LITTLE_ENDIAN).putLong(salt);
+        return StringUtil.sha256(keyed.array());
+    }
+
+    private static long shortId(long k0, long k1, String transactionId)
+    {
+        return SipHash.hash(k0, k1, StringUtil.toHashBytes(transactionId)) & SHORT_ID_MASK;
+    }
+
+    private static long readShortId(ByteBuffer in)
+    {
+        long id = 0;
+        for(int i = 0; i < SHORT_ID_LENGTH; i++)
+        {
+            id |= (in.get() & 0xffL) << (8 * i);
+        }
+        return id;
+    }
+}
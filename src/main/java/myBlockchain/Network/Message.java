@@ -0,0 +1,205 @@
+package myBlockchain.Network;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import myBlockchain.Blockchain.BlockHeader;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Util.Binary;
+import myBlockchain.Util.StringUtil;
+import myBlockchain.Util.VarInt;
+
+/*
+ * The messages nodes exchange. Every message is one frame:
+ *
+ *   length (4, of what follows) | type (1) | payload
+ *
+ * Payloads are written with Binary, so counts are varints and hashes take
+ * 32 raw bytes:
+ *
+ *   HELLO                   protocol version | genesis hash | tip height | tip hash
+ *   INV_BLOCKS              count | block hashes            (announces blocks the sender has)
+ *   INV_TRANSACTIONS        count | transaction ids         (announces pooled transactions)
+ *   GET_HEADERS             count | locator hashes          (newest first, see Node)
+ *   HEADERS                 count | 76 byte headers         (in chain order after the locator)
+ *   GET_BLOCKS              count | block hashes
+ *   BLOCK                   block as BlockCodec encodes it
+ *   GET_TRANSACTIONS        count | transaction ids
+ *   TRANSACTION             transaction as TransactionCodec encodes it
+ *   NOT_FOUND               count | block hashes the sender does not have
+ *   COMPACT_BLOCK           new block as CompactBlock encodes it
+ *   GET_BLOCK_TRANSACTIONS  block hash | count | gaps between the positions of its missing transactions
+ *   BLOCK_TRANSACTIONS      block hash | count | transactions at those positions
+ */
+final class Message
+{
+    static final int PROTOCOL_VERSION = 2; // 2 added compact blocks
+    static final int MAX_FRAME = 32 * 1024 * 1024; // Largest frame accepted, bigger ones end the connection
+    static final int MAX_HEADERS = 2000; // Most headers sent in one HEADERS message
+
+    static final int HELLO = 1;
+    static final int INV_BLOCKS = 2;
+    static final int INV_TRANSACTIONS = 3;
+    static final int GET_HEADERS = 4;
+    static final int HEADERS = 5;
+    static final int GET_BLOCKS = 6;
+    static final int BLOCK = 7;
+    static final int GET_TRANSACTIONS = 8;
+    static final int TRANSACTION = 9;
+    static final int NOT_FOUND = 10;
+    static final int COMPACT_BLOCK = 11;
+    static final int GET_BLOCK_TRANSACTIONS = 12;
+    static final int BLOCK_TRANSACTIONS = 13;
+
+    private static final int HEADER_LENGTH = 4;
+
+    private Message()
+    {
+    }
+    // A writer with room for the frame header, the payload goes after it
+    static Binary.Writer start(int type)
+    {
+        Binary.Writer out = new Binary.Writer(256);
+        out.writeInt(0);
+        out.write(type);
+        return out;
+    }
+    // Fills in the length and returns the frame ready to send
+    static ByteBuffer finish(Binary.Writer out)
+    {
+        out.putInt(0, out.position() - HEADER_LENGTH);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+    // A frame carrying already encoded bytes, a block or a transaction
+    static ByteBuffer of(int type, byte[] payload)
+    {
+        Binary.Writer out = new Binary.Writer(payload.length + HEADER_LENGTH + 1);
+        out.writeInt(0);
+        out.write(type);
+        out.write(payload, 0, payload.length);
+        return finish(out);
+    }
+
+    static ByteBuffer hello(String genesisHash, int height, String tipHash)
+    {
+        Binary.Writer out = start(HELLO);
+        out.writeVarInt(PROTOCOL_VERSION);
+        out.writeHash(genesisHash);
+        out.writeVarInt(height);
+        out.writeHash(tipHash);
+        return finish(out);
+    }
+    // INV_BLOCKS, INV_TRANSACTIONS, GET_HEADERS, GET_BLOCKS, GET_TRANSACTIONS and NOT_FOUND all carry a list of hashes
+    static ByteBuffer hashes(int type, Collection<String> hashes)
+    {
+        Binary.Writer out = start(type);
+        out.writeVarInt(hashes.size());
+        for(String hash : hashes)
+        {
+            out.writeHash(hash);
+        }
+        return finish(out);
+    }
+
+    static ByteBuffer headers(List<BlockHeader> headers)
+    {
+        Binary.Writer out = new Binary.Writer(HEADER_LENGTH + 1 + VarInt.MAX_LONG_SIZE + headers.size() * BlockHeader.SIZE);
+        out.writeInt(0);
+        out.write(HEADERS);
+        out.writeVarInt(headers.size());
+        byte[] bytes = new byte[BlockHeader.SIZE];
+        for(BlockHeader header : headers)
+        {
+            header.writeTo(bytes, 0);
+            out.write(bytes, 0, bytes.length);
+        }
+        return finish(out);
+    }
+
+    // Asks for the transactions of a compact block at the given ascending positions
+    static ByteBuffer getBlockTransactions(String hash, List<Integer> positions)
+    {
+        Binary.Writer out = start(GET_BLOCK_TRANSACTIONS);
+        out.writeHash(hash);
+        out.writeVarInt(positions.size());
+        int previous = -1;
+        for(int position : positions)
+        {
+            out.writeVarInt(position - previous - 1);
+            previous = position;
+        }
+        return finish(out);
+    }
+
+    static ByteBuffer blockTransactions(String hash, List<Transaction> transactions)
+    {
+        Binary.Writer out = start(BLOCK_TRANSACTIONS);
+        out.writeHash(hash);
+        out.writeVarInt(transactions.size());
+        for(Transaction transaction : transactions)
+        {
+            byte[] encoded = transaction.toBytes();
+            out.write(encoded, 0, encoded.length);
+        }
+        return finish(out);
+    }
+
+    static List<String> readHashes(ByteBuffer in) throws ProtocolException
+    {
+        int count = readCount(in, 1 + StringUtil.SHA256_LENGTH);
+        List<String> hashes = new ArrayList<String>(count);
+        for(int i = 0; i < count; i++)
+        {
+            hashes.add(Binary.readHash(in));
+        }
+        return hashes;
+    }
+
+    static List<BlockHeader> readHeaders(ByteBuffer in) throws ProtocolException
+    {
+        int count = readCount(in, BlockHeader.SIZE);
+        if(count > MAX_HEADERS) throw new ProtocolException("Too many headers: " + count);
+        List<BlockHeader> headers = new ArrayList<BlockHeader>(count);
+        for(int i = 0; i < count; i++)
+        {
+            headers.add(BlockHeader.read(in));
+        }
+        return headers;
+    }
+    // Positions written by getBlockTransactions()
+    static List<Integer> readPositions(ByteBuffer in) throws ProtocolException
+    {
+        int count = readCount(in, 1);
+        List<Integer> positions = new ArrayList<Integer>(count);
+        long position = -1;
+        for(int i = 0; i < count; i++)
+        {
+            position += 1 + VarInt.readUnsignedLong(in);
+            if(position > Integer.MAX_VALUE) throw new ProtocolException("Transaction position out of range");
+            positions.add((int) position);
+        }
+        return positions;
+    }
+
+    static List<Transaction> readTransactions(ByteBuffer in, TransactionCodec codec) throws ProtocolException
+    {
+        int count = readCount(in, 2);
+        List<Transaction> transactions = new ArrayList<Transaction>(count);
+        for(int i = 0; i < count; i++)
+        {
+            transactions.add(codec.decode(in));
+        }
+        return transactions;
+    }
+    // A count of items taking at least minSize bytes each, checked against what the payload can hold
+    static int readCount(ByteBuffer in, int minSize) throws ProtocolException
+    {
+        int count = VarInt.readUnsignedInt(in);
+        if(count > in.remaining() / minSize) throw new ProtocolException("Count " + count + " does not fit the message");
+        return count;
+    }
+}
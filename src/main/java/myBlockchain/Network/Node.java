@@ -0,0 +1,1044 @@
+package myBlockchain.Network;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import myBlockchain.myBlockchain;
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.BlockHeader;
+import myBlockchain.Blockchain.BlockTree;
+import myBlockchain.Blockchain.HeaderHasher;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Storage.BlockCodec;
+import myBlockchain.Storage.BlockStore;
+import myBlockchain.Transactions.Mempool;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Util.Binary;
+import myBlockchain.Util.StringUtil;
+import myBlockchain.Util.VarInt;
+
+/*
+ * A node of the peer-to-peer network, relaying blocks and transactions for one
+ * ledger and mempool over TCP (see Message for the protocol).
+ *
+ * All connections are non-blocking channels served by one network thread with
+ * a Selector, which also does all of the node's bookkeeping, so none of it is
+ * locked. Other threads hand work to it through a queue: connect(), announce()
+ * and the submit methods return straight away.
+ *
+ * Transactions are announced by hash. A peer that does not have them asks
+ * for them by hash and, once they are valid, announces them on. A new tip
+ * goes out as a CompactBlock: its header and short ids for the transactions
+ * the peer announced or was told about, in whole for the others. The peer
+ * rebuilds it from its mempool and asks only for the transactions it still
+ * lacks, or for the whole block when the parent is unknown or the rebuilt
+ * transactions do not match the merkle root. With compact blocks off, blocks
+ * are announced by hash like transactions.
+ * A node that is behind first fetches the headers after the newest block it
+ * shares with a peer, from one peer at a time, and then downloads the blocks
+ * for them from every peer whose chain is long enough, a few blocks per peer
+ * at a time and no further than a window ahead of its tip. Blocks arriving
+ * before their parent wait in the node until it is there; each block is
+ * then added to the ledger's BlockTree, which checks it and follows the
+ * branch with the most work. A peer that does not deliver in time is
+ * disconnected and what it owed is asked of the others.
+ *
+ * All nodes of a network share their genesis block, which has to be in the
+ * ledger before the node starts; headers are only ever sent for blocks after it.
+ * A node on a pruned ledger serves every header but answers NOT_FOUND for
+ * blocks it pruned, so peers catching up take those from other nodes.
+ */
+public class Node implements AutoCloseable
+{
+    private static final int MAX_PEERS = 64;
+    private static final int MAX_IN_FLIGHT = 16; // Blocks asked of one peer at a time
+    private static final int DOWNLOAD_WINDOW = 512; // How many blocks past the tip are downloaded ahead
+    private static final int MAX_WAITING = 1024; // Blocks kept until their parent arrives
+    private static final int RECENT_OUTPUTS = 100_000; // Outputs of received blocks kept to link the inputs of side branches
+    private static final long REQUEST_TIMEOUT_MILLIS = 20_000;
+    private static final long TICK_MILLIS = 250;
+
+    // A block that was asked for and has not arrived yet
+    private static final class Request
+    {
+        final Peer peer;
+        final int height; // -1 when the block was announced rather than found in headers
+        final long sentAt;
+
+        Request(Peer peer, int height, long sentAt)
+        {
+            this.peer = peer;
+            this.height = height;
+            this.sentAt = sentAt;
+        }
+    }
+
+    // A block known from its header that has not been asked for yet
+    private static final class Download
+    {
+        final String hash;
+        final int height;
+
+        Download(String hash, int height)
+        {
+            this.hash = hash;
+            this.height = height;
+        }
+    }
+
+    private static final Comparator<Download> BY_HEIGHT = Comparator.comparingInt((Download download) -> download.height)
+            .thenComparing(download -> download.hash);
+
+    private final Ledger ledger;
+    private final Mempool mempool;
+    private final BlockStore store;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    // Network thread only
+    private final BlockCodec blocks = new BlockCodec();
+    private final TransactionCodec transactions = new TransactionCodec();
+    private final List<Peer> peers = new ArrayList<Peer>();
+    private final HashMap<String,Integer> headerHeights = new HashMap<String,Integer>(); // Blocks known from headers and not connected yet
+    private final TreeSet<Download> wanted = new TreeSet<Download>(BY_HEIGHT);
+    private final HashMap<String,Download> wantedByHash = new HashMap<String,Download>();
+    private final HashMap<String,Request> requested = new HashMap<String,Request>();
+    private final HashMap<String,List<Block>> waiting = new HashMap<String,List<Block>>(); // By previous hash
+    private final HashSet<String> waitingHashes = new HashSet<String>();
+    private final HashMap<String,CompactBlock> partial = new HashMap<String,CompactBlock>(); // Compact blocks waiting for their missing transactions
+    private final SplittableRandom salts = new SplittableRandom();
+    private final HashMap<String,Long> requestedTransactions = new HashMap<String,Long>();
+    private final LinkedHashMap<String,TransactionOutput> recentOutputs = new LinkedHashMap<String,TransactionOutput>()
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,TransactionOutput> eldest)
+        {
+            return size() > RECENT_OUTPUTS;
+        }
+    };
+    private Peer headerPeer; // Asked for headers and not answered yet
+    private String bestHeader;
+    private int bestHeaderHeight = -1;
+
+    private ServerSocketChannel server;
+    private volatile InetSocketAddress address;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile int peerCount;
+    private volatile boolean syncing;
+    private volatile boolean compactBlocks = true;
+    private volatile long bytesSent;
+
+    // A node for myBlockchain's ledger, mempool and block store, open the store first
+    public Node()
+    {
+        this(myBlockchain.ledger, myBlockchain.mempool, myBlockchain.blockStore);
+    }
+    // A node for the given ledger; the mempool should check its inputs against that ledger, and store may be null
+    public Node(Ledger ledger, Mempool mempool, BlockStore store)
+    {
+        this.ledger = ledger;
+        this.mempool = mempool;
+        this.store = store;
+        try
+        {
+            selector = Selector.open();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+    // Listens on the given address, port 0 picks a free one, and starts the network thread; returns the address listened on
+    public synchronized InetSocketAddress start(InetSocketAddress address)
+    {
+        if(thread != null) throw new IllegalStateException("Node already started");
+        if(ledger.snapshot().isEmpty()) throw new IllegalStateException("The ledger needs its genesis block before the node starts");
+        InetSocketAddress local;
+        try
+        {
+            server = ServerSocketChannel.open();
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            local = (InetSocketAddress) server.getLocalAddress();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        this.address = local;
+        running = true;
+        thread = new Thread(this::run, "node-" + local.getPort());
+        thread.setDaemon(true);
+        thread.start();
+        return local;
+    }
+    // Opens a connection to another node
+    public void connect(InetSocketAddress address)
+    {
+        submit(() -> open(address));
+    }
+    // Adds a mined block to the ledger and announces it when it was connected
+    public BlockTree.Result submitBlock(Block block)
+    {
+        BlockTree.Result result = myBlockchain.acceptBlock(block, ledger, mempool, store);
+        announce(result);
+        return result;
+    }
+    // Tells peers about the new tip after a local add connected blocks, they fetch the rest themselves
+    public void announce(BlockTree.Result result)
+    {
+        List<Block> connected = result.getConnected();
+        if(result.getStatus() != BlockTree.Status.CONNECTED || connected.isEmpty()) return;
+        Block tip = connected.get(connected.size() - 1);
+        submit(() -> announceBlock(tip, null));
+    }
+    // Adds a signed transaction to the mempool and announces it when it was accepted
+    public Mempool.Result submitTransaction(Transaction transaction)
+    {
+        Mempool.Result result = mempool.add(transaction);
+        if(result == Mempool.Result.ADDED)
+        {
+            String id = transaction.transactionId;
+            submit(() -> relayTransaction(id, null));
+        }
+        return result;
+    }
+    // Whether new tips are sent as compact blocks, on by default; off announces them by hash
+    public void setCompactBlocks(boolean compactBlocks)
+    {
+        this.compactBlocks = compactBlocks;
+    }
+    // Bytes of all messages sent to peers so far
+    public long getBytesSent()
+    {
+        return bytesSent;
+    }
+    // Peers that completed the handshake
+    public int getPeerCount()
+    {
+        return peerCount;
+    }
+    // True while headers or blocks are being fetched
+    public boolean isSyncing()
+    {
+        return syncing;
+    }
+
+    public Ledger getLedger()
+    {
+        return ledger;
+    }
+
+    public Mempool getMempool()
+    {
+        return mempool;
+    }
+    // The address the node listens on, null before start()
+    public InetSocketAddress getAddress()
+    {
+        return address;
+    }
+    // Stops the network thread and closes every connection
+    @Override
+    public void close()
+    {
+        Thread stopping;
+        synchronized(this)
+        {
+            stopping = thread;
+            running = false;
+        }
+        selector.wakeup();
+        if(stopping == null)
+        {
+            try
+            {
+                selector.close();
+            }
+            catch(IOException e)
+            {
+                // Closing anyway
+            }
+            return;
+        }
+        if(stopping == Thread.currentThread()) return;
+        try
+        {
+            stopping.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(Runnable task)
+    {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run()
+    {
+        try
+        {
+            while(running)
+            {
+                selector.select(TICK_MILLIS);
+                Runnable task;
+                while((task = tasks.poll()) != null)
+                {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()) continue;
+                    if(key.isAcceptable()) accept();
+                    else process((Peer) key.attachment(), key);
+                }
+                expireRequests();
+                syncing = headerPeer != null || !wanted.isEmpty() || !requested.isEmpty() || !waitingHashes.isEmpty();
+            }
+        }
+        catch(IOException e)
+        {
+            System.out.println("#Node stopped: " + e);
+        }
+        finally
+        {
+            for(Peer peer : peers)
+            {
+                peer.close();
+            }
+            peers.clear();
+            peerCount = 0;
+            try
+            {
+                server.close();
+                selector.close();
+            }
+            catch(IOException e)
+            {
+                // Closing anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel = server.accept();
+        if(channel == null) return;
+        if(peers.size() >= MAX_PEERS)
+        {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Peer peer = new Peer(channel, key, channel.getRemoteAddress());
+        key.attach(peer);
+        peers.add(peer);
+        send(peer, hello());
+    }
+
+    private void open(InetSocketAddress address)
+    {
+        try
+        {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
+            Peer peer = new Peer(channel, key, address);
+            key.attach(peer);
+            peers.add(peer);
+            if(channel.connect(address)) connected(peer);
+        }
+        catch(IOException e)
+        {
+            System.out.println("#Could not connect to " + address + ": " + e);
+        }
+    }
+
+    private void connected(Peer peer)
+    {
+        peer.key.interestOps(SelectionKey.OP_READ);
+        send(peer, hello());
+    }
+
+    private void process(Peer peer, SelectionKey key)
+    {
+        try
+        {
+            if(key.isConnectable())
+            {
+                peer.channel.finishConnect();
+                connected(peer);
+            }
+            if(key.isValid() && key.isReadable() && !peer.read(this::handle))
+            {
+                disconnect(peer, "closed by peer");
+                return;
+            }
+            if(key.isValid() && key.isWritable()) peer.flush();
+        }
+        catch(IOException | RuntimeException e)
+        {
+            // A broken connection or a malformed message, either way the peer is dropped
+            disconnect(peer, e.toString());
+        }
+    }
+
+    private void handle(Peer peer, int type, ByteBuffer in) throws IOException
+    {
+        if(!peer.ready && type != Message.HELLO) throw new ProtocolException("Expected HELLO, got message " + type);
+        switch(type)
+        {
+            case Message.HELLO:
+                onHello(peer, in);
+                break;
+            case Message.INV_BLOCKS:
+                onBlockInventory(peer, Message.readHashes(in));
+                break;
+            case Message.INV_TRANSACTIONS:
+                onTransactionInventory(peer, Message.readHashes(in));
+                break;
+            case Message.GET_HEADERS:
+                onGetHeaders(peer, Message.readHashes(in));
+                break;
+            case Message.HEADERS:
+                onHeaders(peer, Message.readHeaders(in));
+                break;
+            case Message.GET_BLOCKS:
+                onGetBlocks(peer, Message.readHashes(in));
+                break;
+            case Message.BLOCK:
+                onBlock(peer, blocks.decode(in));
+                break;
+            case Message.GET_TRANSACTIONS:
+                onGetTransactions(peer, Message.readHashes(in));
+                break;
+            case Message.TRANSACTION:
+                onTransaction(peer, transactions.decode(in));
+                break;
+            case Message.NOT_FOUND:
+                onNotFound(peer, Message.readHashes(in));
+                break;
+            case Message.COMPACT_BLOCK:
+                onCompactBlock(peer, CompactBlock.decode(in, transactions));
+                break;
+            case Message.GET_BLOCK_TRANSACTIONS:
+                onGetBlockTransactions(peer, Binary.readHash(in), Message.readPositions(in));
+                break;
+            case Message.BLOCK_TRANSACTIONS:
+                onBlockTransactions(peer, Binary.readHash(in), Message.readTransactions(in, transactions));
+                break;
+            default:
+                throw new ProtocolException("Unknown message type " + type);
+        }
+    }
+
+    private ByteBuffer hello()
+    {
+        Ledger.Snapshot chain = ledger.snapshot();
+        return Message.hello(chain.getBlock(0).hash, chain.size() - 1, chain.getTip().hash);
+    }
+
+    private void onHello(Peer peer, ByteBuffer in) throws IOException
+    {
+        int version = VarInt.readUnsignedInt(in);
+        String genesis = Binary.readHash(in);
+        int height = VarInt.readUnsignedInt(in);
+        String tip = Binary.readHash(in);
+        if(peer.ready) throw new ProtocolException("HELLO sent twice");
+        if(version != Message.PROTOCOL_VERSION) throw new ProtocolException("Unsupported protocol version " + version);
+        if(!genesis.equals(ledger.snapshot().getBlock(0).hash)) throw new ProtocolException("Peer is on another chain, genesis " + genesis);
+        peer.ready = true;
+        peer.height = height;
+        peer.tipHash = tip;
+        peerCount++;
+        if(!isKnown(tip)) syncHeaders(peer);
+        schedule();
+    }
+    // Announced blocks are asked for straight away, the tip of a peer's chain usually is one block ahead
+    private void onBlockInventory(Peer peer, List<String> hashes)
+    {
+        List<String> fetch = new ArrayList<String>();
+        long now = System.currentTimeMillis();
+        for(String hash : hashes)
+        {
+            if(isInTree(hash))
+            {
+                peer.height = Math.max(peer.height, ledger.snapshot().heightOf(hash));
+                continue;
+            }
+            peer.tipHash = hash;
+            if(requested.containsKey(hash) || wantedByHash.containsKey(hash) || waitingHashes.contains(hash)) continue;
+            requested.put(hash, new Request(peer, -1, now));
+            peer.inFlight++;
+            fetch.add(hash);
+        }
+        if(!fetch.isEmpty()) send(peer, Message.hashes(Message.GET_BLOCKS, fetch));
+    }
+
+    private void onTransactionInventory(Peer peer, List<String> ids)
+    {
+        List<String> fetch = new ArrayList<String>();
+        long now = System.currentTimeMillis();
+        for(String id : ids)
+        {
+            peer.addKnown(id);
+            if(mempool.contains(id) || requestedTransactions.containsKey(id)) continue;
+            requestedTransactions.put(id, now);
+            fetch.add(id);
+        }
+        if(!fetch.isEmpty()) send(peer, Message.hashes(Message.GET_TRANSACTIONS, fetch));
+    }
+    // Answers with the headers after the newest locator block on the active chain
+    private void onGetHeaders(Peer peer, List<String> locator)
+    {
+        Ledger.Snapshot chain = ledger.snapshot();
+        int from = -1;
+        for(String hash : locator)
+        {
+            int height = chain.heightOf(hash);
+            if(height >= 0)
+            {
+                from = height + 1;
+                break;
+            }
+        }
+        List<BlockHeader> headers = from < 0 ? Collections.<BlockHeader>emptyList()
+                : chain.getHeaders(from, Math.min(chain.size(), from + Message.MAX_HEADERS));
+        send(peer, Message.headers(headers));
+    }
+    // Queues the blocks of headers that link up to a known block, and asks for more while they keep coming
+    private void onHeaders(Peer peer, List<BlockHeader> headers) throws IOException
+    {
+        if(peer == headerPeer) headerPeer = null;
+        if(headers.isEmpty())
+        {
+            nextHeaderPeer();
+            return;
+        }
+        String previous = StringUtil.toHexString(headers.get(0).previousHash);
+        int height = heightOf(previous);
+        if(height < 0) throw new ProtocolException("Headers do not connect to a known block");
+        for(BlockHeader header : headers)
+        {
+            if(!StringUtil.toHexString(header.previousHash).equals(previous)) throw new ProtocolException("Headers do not link up");
+            String hash = new HeaderHasher(header).getHashHex();
+            height++;
+            if(!isInTree(hash) && !headerHeights.containsKey(hash))
+            {
+                headerHeights.put(hash, height);
+                want(hash, height);
+            }
+            previous = hash;
+        }
+        if(height > bestHeaderHeight)
+        {
+            bestHeaderHeight = height;
+            bestHeader = previous;
+        }
+        peer.height = Math.max(peer.height, height);
+        if(headers.size() == Message.MAX_HEADERS) syncHeaders(peer);
+        else nextHeaderPeer();
+        schedule();
+    }
+
+    private void onGetBlocks(Peer peer, List<String> hashes)
+    {
+        List<String> missing = new ArrayList<String>();
+        for(String hash : hashes)
+        {
+            Block block = findBlock(hash);
+            if(block == null) missing.add(hash);
+            else send(peer, Message.of(Message.BLOCK, blocks.encode(block)));
+        }
+        if(!missing.isEmpty()) send(peer, Message.hashes(Message.NOT_FOUND, missing));
+    }
+
+    private void onBlock(Peer peer, Block block)
+    {
+        peer.blocksReceived++;
+        Request request = requested.remove(block.hash);
+        if(request != null) request.peer.inFlight--;
+        Download download = wantedByHash.remove(block.hash);
+        if(download != null) wanted.remove(download);
+        if(isInTree(block.hash) || waitingHashes.contains(block.hash))
+        {
+            schedule();
+            return;
+        }
+        if(!isInTree(block.previousHash))
+        {
+            // Parked until the parent is there; a parent nobody is fetching means a gap, which the headers fill
+            park(block);
+            if(heightOf(block.previousHash) < 0 && !requested.containsKey(block.previousHash) && !waitingHashes.contains(block.previousHash)) syncHeaders(peer);
+        }
+        else
+        {
+            connect(peer, block);
+        }
+        schedule();
+    }
+
+    private void onGetTransactions(Peer peer, List<String> ids)
+    {
+        for(String id : ids)
+        {
+            Transaction transaction = mempool.get(id);
+            if(transaction == null) continue;
+            peer.addKnown(id);
+            send(peer, Message.of(Message.TRANSACTION, transaction.toBytes()));
+        }
+    }
+
+    private void onTransaction(Peer peer, Transaction transaction) throws IOException
+    {
+        requestedTransactions.remove(transaction.transactionId);
+        peer.addKnown(transaction.transactionId);
+        if(!StringUtil.sha256Hex(transaction.getBody()).equals(transaction.transactionId))
+        {
+            throw new ProtocolException("Transaction " + transaction.transactionId + " does not match its id");
+        }
+        if(mempool.add(transaction) == Mempool.Result.ADDED) relayTransaction(transaction.transactionId, peer);
+    }
+    // Rebuilds the block from the mempool when its parent is here, the transactions that are not pooled are asked of the peer
+    private void onCompactBlock(Peer peer, CompactBlock compact)
+    {
+        for(Transaction transaction : compact.getPrefilled())
+        {
+            peer.addKnown(transaction.transactionId);
+        }
+        String hash = compact.getHash();
+        if(isInTree(hash) || !isInTree(compact.getPreviousHash()))
+        {
+            // Known already, or too far ahead to rebuild: handled like an announcement, which fetches the whole block if needed
+            onBlockInventory(peer, Collections.singletonList(hash));
+            return;
+        }
+        peer.tipHash = hash;
+        if(requested.containsKey(hash) || wantedByHash.containsKey(hash) || waitingHashes.contains(hash)) return;
+        List<Integer> missing = compact.reconstruct(mempool.getTransactions());
+        if(missing.isEmpty())
+        {
+            rebuild(peer, compact);
+            return;
+        }
+        requested.put(hash, new Request(peer, -1, System.currentTimeMillis()));
+        peer.inFlight++;
+        partial.put(hash, compact);
+        send(peer, Message.getBlockTransactions(hash, missing));
+    }
+
+    private void onGetBlockTransactions(Peer peer, String hash, List<Integer> positions) throws IOException
+    {
+        Block block = findBlock(hash);
+        if(block == null)
+        {
+            send(peer, Message.hashes(Message.NOT_FOUND, Collections.singletonList(hash)));
+            return;
+        }
+        List<Transaction> found = new ArrayList<Transaction>(positions.size());
+        for(int position : positions)
+        {
+            if(position >= block.transactions.size()) throw new ProtocolException("Block " + hash + " has no transaction " + position);
+            found.add(block.transactions.get(position));
+        }
+        send(peer, Message.blockTransactions(hash, found));
+    }
+
+    private void onBlockTransactions(Peer peer, String hash, List<Transaction> found) throws IOException
+    {
+        Request request = requested.get(hash);
+        if(request == null || request.peer != peer || !partial.containsKey(hash)) return;
+        requested.remove(hash);
+        peer.inFlight--;
+        CompactBlock compact = partial.remove(hash);
+        compact.fill(found);
+        rebuild(peer, compact);
+    }
+    // Adds a compact block whose transactions are all there, or fetches it whole when they do not add up to the header
+    private void rebuild(Peer peer, CompactBlock compact)
+    {
+        Block block = compact.toBlock(transactions);
+        if(block == null || !linkInputs(block))
+        {
+            System.out.println("#Compact block " + compact.getHash() + " could not be rebuilt, fetching it whole");
+            onBlockInventory(peer, Collections.singletonList(compact.getHash()));
+            return;
+        }
+        onBlock(peer, block);
+    }
+    // The peer does not have these after all, they are asked of another peer that should
+    private void onNotFound(Peer peer, List<String> hashes)
+    {
+        for(String hash : hashes)
+        {
+            Request request = requested.get(hash);
+            if(request == null || request.peer != peer) continue;
+            requested.remove(hash);
+            partial.remove(hash);
+            peer.inFlight--;
+            if(request.height < 0) continue;
+            peer.height = Math.min(peer.height, request.height - 1);
+            if(anyPeerHas(request.height)) want(hash, request.height);
+            else headerHeights.remove(hash);
+        }
+        schedule();
+    }
+    // Adds a block whose parent is known, then every waiting block that can follow it
+    private void connect(Peer source, Block first)
+    {
+        ArrayDeque<Block> ready = new ArrayDeque<Block>();
+        ready.add(first);
+        Block tip = null;
+        while(!ready.isEmpty())
+        {
+            Block block = ready.poll();
+            waitingHashes.remove(block.hash);
+            linkInputs(block);
+            BlockTree.Status status;
+            try
+            {
+                if(hasLegacyTransactions(block)) throw new IllegalArgumentException("legacy transactions are only read from block stores");
+                BlockTree.Result result = myBlockchain.acceptBlock(block, ledger, mempool, store);
+                status = result.getStatus();
+                for(Block connected : result.getConnected())
+                {
+                    headerHeights.remove(connected.hash);
+                    tip = connected;
+                }
+            }
+            catch(RuntimeException e)
+            {
+                System.out.println("#Block " + block.hash + " from " + source + " could not be added: " + e);
+                status = BlockTree.Status.INVALID;
+            }
+            List<Block> children = waiting.remove(block.hash);
+            if(status == BlockTree.Status.INVALID)
+            {
+                // Nothing built on it can be valid either
+                headerHeights.remove(block.hash);
+                if(children != null) dropWaiting(children);
+                continue;
+            }
+            remember(block);
+            if(children != null) ready.addAll(children);
+        }
+        source.height = Math.max(source.height, ledger.snapshot().heightOf(first.hash));
+        // Announced once the download is done, peers following along fetch the blocks before it themselves
+        if(tip != null && wanted.isEmpty() && requested.isEmpty()) announceBlock(tip, source);
+    }
+    // Legacy transactions have ids that can not be checked against their bodies, peers do not get to send them
+    private static boolean hasLegacyTransactions(Block block)
+    {
+        for(Transaction transaction : block.transactions)
+        {
+            if(transaction.version == Transaction.LEGACY_VERSION) return true;
+        }
+        return false;
+    }
+    // Received blocks carry only the ids of the outputs they spend, the outputs are looked up for the checks.
+    // Rebuilt blocks also need their outputs made, false when a transaction's inputs do not cover them.
+    private boolean linkInputs(Block block)
+    {
+        UTXOStore utxos = ledger.readView();
+        HashMap<String,TransactionOutput> created = new HashMap<String,TransactionOutput>();
+        for(Transaction transaction : block.transactions)
+        {
+            for(TransactionInput input : transaction.inputs)
+            {
+                if(input.UTXO != null) continue;
+                TransactionOutput output = created.get(input.transactionOutputId);
+                if(output == null) output = utxos.get(input.transactionOutputId);
+                if(output == null) output = recentOutputs.get(input.transactionOutputId);
+                input.UTXO = output;
+            }
+            if(transaction.outputs.isEmpty())
+            {
+                long paid = transaction.getTotalValue();
+                long leftOver = transaction.getInputsValue() - paid - transaction.fee;
+                if(paid < 0 || leftOver < 0 || !allLinked(transaction)) return false;
+                transaction.createOutputs(leftOver);
+            }
+            for(TransactionOutput output : transaction.outputs)
+            {
+                created.put(output.id, output);
+            }
+        }
+        return true;
+    }
+
+    private static boolean allLinked(Transaction transaction)
+    {
+        for(TransactionInput input : transaction.inputs)
+        {
+            if(input.UTXO == null) return false;
+        }
+        return true;
+    }
+
+    private void remember(Block block)
+    {
+        for(Transaction transaction : block.transactions)
+        {
+            for(TransactionOutput output : transaction.outputs)
+            {
+                recentOutputs.put(output.id, output);
+            }
+        }
+    }
+
+    private void park(Block block)
+    {
+        if(waitingHashes.size() >= MAX_WAITING)
+        {
+            System.out.println("#Too many blocks waiting for their parent, dropped " + block.hash);
+            return;
+        }
+        waiting.computeIfAbsent(block.previousHash, hash -> new ArrayList<Block>()).add(block);
+        waitingHashes.add(block.hash);
+    }
+
+    private void dropWaiting(List<Block> blocks)
+    {
+        ArrayDeque<Block> dropped = new ArrayDeque<Block>(blocks);
+        while(!dropped.isEmpty())
+        {
+            Block block = dropped.poll();
+            waitingHashes.remove(block.hash);
+            headerHeights.remove(block.hash);
+            List<Block> children = waiting.remove(block.hash);
+            if(children != null) dropped.addAll(children);
+        }
+    }
+    // Hands out the wanted blocks within the window, each to the peer with the fewest blocks in flight that has it
+    private void schedule()
+    {
+        int limit = ledger.height() - 1 + DOWNLOAD_WINDOW;
+        long now = System.currentTimeMillis();
+        LinkedHashMap<Peer,List<String>> batches = new LinkedHashMap<Peer,List<String>>();
+        Iterator<Download> downloads = wanted.iterator();
+        while(downloads.hasNext() && waitingHashes.size() + requested.size() < MAX_WAITING)
+        {
+            Download download = downloads.next();
+            if(download.height > limit) break;
+            Peer best = null;
+            for(Peer peer : peers)
+            {
+                if(!peer.ready || peer.height < download.height || peer.inFlight >= MAX_IN_FLIGHT) continue;
+                if(best == null || peer.inFlight < best.inFlight) best = peer;
+            }
+            // Later blocks are higher still, no peer can take them either
+            if(best == null) break;
+            downloads.remove();
+            wantedByHash.remove(download.hash);
+            best.inFlight++;
+            requested.put(download.hash, new Request(best, download.height, now));
+            batches.computeIfAbsent(best, peer -> new ArrayList<String>()).add(download.hash);
+        }
+        for(Map.Entry<Peer,List<String>> batch : batches.entrySet())
+        {
+            send(batch.getKey(), Message.hashes(Message.GET_BLOCKS, batch.getValue()));
+        }
+    }
+
+    private void want(String hash, int height)
+    {
+        Download download = new Download(hash, height);
+        wanted.add(download);
+        wantedByHash.put(hash, download);
+    }
+    // Asks the peer for the headers after the newest block both are likely to have, unless another peer is being asked
+    private void syncHeaders(Peer peer)
+    {
+        if(headerPeer != null && headerPeer != peer) return;
+        headerPeer = peer;
+        send(peer, Message.hashes(Message.GET_HEADERS, locator()));
+    }
+    // Once one peer ran out of headers, a peer whose tip is still unknown is asked next
+    private void nextHeaderPeer()
+    {
+        if(headerPeer != null) return;
+        for(Peer peer : peers)
+        {
+            if(peer.ready && peer.tipHash != null && !isKnown(peer.tipHash))
+            {
+                syncHeaders(peer);
+                return;
+            }
+        }
+    }
+    // The best header, then the active chain from the tip back: ten blocks one by one, then ever larger steps down to the genesis block
+    private List<String> locator()
+    {
+        Ledger.Snapshot chain = ledger.snapshot();
+        List<String> locator = new ArrayList<String>();
+        if(bestHeader != null && bestHeaderHeight >= chain.size()) locator.add(bestHeader);
+        int step = 1;
+        for(int height = chain.size() - 1; height > 0; height -= step)
+        {
+            locator.add(chain.getBlock(height).hash);
+            if(locator.size() >= 10) step *= 2;
+        }
+        locator.add(chain.getBlock(0).hash);
+        return locator;
+    }
+
+    private void expireRequests()
+    {
+        long now = System.currentTimeMillis();
+        List<Peer> late = new ArrayList<Peer>();
+        for(Request request : requested.values())
+        {
+            if(now - request.sentAt > REQUEST_TIMEOUT_MILLIS && !late.contains(request.peer)) late.add(request.peer);
+        }
+        for(Peer peer : late)
+        {
+            disconnect(peer, "blocks not delivered in time");
+        }
+        requestedTransactions.values().removeIf(sentAt -> now - sentAt > REQUEST_TIMEOUT_MILLIS);
+    }
+
+    // New tips go out as compact blocks made for each peer, or by hash when compact blocks are off
+    private void announceBlock(Block tip, Peer except)
+    {
+        if(!compactBlocks)
+        {
+            relay(Message.hashes(Message.INV_BLOCKS, Collections.singletonList(tip.hash)), except);
+            return;
+        }
+        for(Peer peer : new ArrayList<Peer>(peers))
+        {
+            if(!peer.ready || peer == except) continue;
+            CompactBlock compact = CompactBlock.of(tip, salts.nextLong(), peer::knows);
+            send(peer, Message.of(Message.COMPACT_BLOCK, compact.encode()));
+            for(Transaction transaction : tip.transactions)
+            {
+                peer.addKnown(transaction.transactionId);
+            }
+        }
+    }
+
+    private void relayTransaction(String id, Peer except)
+    {
+        ByteBuffer frame = Message.hashes(Message.INV_TRANSACTIONS, Collections.singletonList(id));
+        for(Peer peer : new ArrayList<Peer>(peers))
+        {
+            if(!peer.ready || peer == except) continue;
+            peer.addKnown(id);
+            send(peer, frame.duplicate());
+        }
+    }
+
+    private void relay(ByteBuffer frame, Peer except)
+    {
+        for(Peer peer : new ArrayList<Peer>(peers))
+        {
+            if(peer.ready && peer != except) send(peer, frame.duplicate());
+        }
+    }
+
+    private void send(Peer peer, ByteBuffer frame)
+    {
+        bytesSent += frame.remaining();
+        try
+        {
+            peer.send(frame);
+        }
+        catch(IOException e)
+        {
+            disconnect(peer, e.toString());
+        }
+    }
+    // Closes the connection and hands what the peer owed to the others
+    private void disconnect(Peer peer, String reason)
+    {
+        if(!peers.remove(peer)) return;
+        peer.close();
+        if(peer.ready) peerCount--;
+        System.out.println("#Peer " + peer + " disconnected: " + reason);
+        Iterator<Map.Entry<String,Request>> requests = requested.entrySet().iterator();
+        while(requests.hasNext())
+        {
+            Map.Entry<String,Request> entry = requests.next();
+            Request request = entry.getValue();
+            if(request.peer != peer) continue;
+            requests.remove();
+            partial.remove(entry.getKey());
+            if(request.height >= 0) want(entry.getKey(), request.height);
+        }
+        if(headerPeer == peer)
+        {
+            headerPeer = null;
+            nextHeaderPeer();
+        }
+        schedule();
+    }
+
+    // A block on any branch of the block tree or in the ledger, null when there is none with that hash or it was pruned
+    private Block findBlock(String hash)
+    {
+        Block block = ledger.getBlockTree().getBlock(hash);
+        if(block == null) block = ledger.snapshot().getBlock(hash);
+        return block == null || block.isPruned() ? null : block;
+    }
+
+    private boolean anyPeerHas(int height)
+    {
+        for(Peer peer : peers)
+        {
+            if(peer.ready && peer.height >= height) return true;
+        }
+        return false;
+    }
+    // On any branch of the block tree, or in the ledger
+    private boolean isInTree(String hash)
+    {
+        return ledger.getBlockTree().contains(hash) || ledger.snapshot().heightOf(hash) >= 0;
+    }
+    // In the tree or known from headers
+    private boolean isKnown(String hash)
+    {
+        return headerHeights.containsKey(hash) || isInTree(hash);
+    }
+    // Height on the active chain or as known from headers, -1 when unknown
+    private int heightOf(String hash)
+    {
+        int height = ledger.snapshot().heightOf(hash);
+        if(height >= 0) return height;
+        Integer known = headerHeights.get(hash);
+        return known == null ? -1 : known;
+    }
+}
@@ -0,0 +1,150 @@
+package myBlockchain.Network;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * One connection to another node, and what this node knows about it.
+ *
+ * Frames are read into a buffer that grows to the largest frame seen, and every
+ * complete frame is handed to the node as a slice of it, so nothing is copied
+ * before a message is decoded. Outgoing frames wait in a queue until the
+ * socket takes them; a peer that lets too much pile up is disconnected.
+ * Only the node's network thread touches a peer.
+ */
+final class Peer
+{
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final long MAX_QUEUED_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_KNOWN_TRANSACTIONS = 50_000; // Transaction ids remembered per peer, oldest forgotten first
+
+    // Handles one complete frame; the payload is only valid during the call
+    interface FrameHandler
+    {
+        void handle(Peer peer, int type, ByteBuffer payload) throws IOException;
+    }
+
+    final SocketChannel channel;
+    final SelectionKey key;
+    final SocketAddress address;
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+    private long queuedBytes;
+
+    boolean ready; // HELLO received
+    int height = -1; // Height of the best block the peer is known to have
+    String tipHash; // Hash of that block, as far as known
+    int inFlight; // Blocks asked of this peer that have not arrived yet
+    int blocksReceived;
+    // Transactions the peer announced, sent or was told about, so compact blocks leave them out
+    private final LinkedHashMap<String,Boolean> knownTransactions = new LinkedHashMap<String,Boolean>()
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Boolean> eldest)
+        {
+            return size() > MAX_KNOWN_TRANSACTIONS;
+        }
+    };
+
+    Peer(SocketChannel channel, SelectionKey key, SocketAddress address)
+    {
+        this.channel = channel;
+        this.key = key;
+        this.address = address;
+    }
+    // Reads what the socket has and hands every complete frame to the handler; false once the peer closed the connection
+    boolean read(FrameHandler handler) throws IOException
+    {
+        int read = channel.read(in);
+        in.flip();
+        try
+        {
+            while(in.remaining() >= 4 && channel.isOpen())
+            {
+                int start = in.position();
+                int length = in.getInt(start);
+                if(length < 1 || length > Message.MAX_FRAME) throw new ProtocolException("Bad frame length " + length);
+                if(in.remaining() < 4 + length)
+                {
+                    if(in.capacity() < 4 + length) grow(4 + length);
+                    break;
+                }
+                ByteBuffer frame = in.slice(start + 4, length);
+                in.position(start + 4 + length);
+                int type = frame.get();
+                handler.handle(this, type, frame);
+            }
+        }
+        finally
+        {
+            in.compact();
+        }
+        return read >= 0;
+    }
+    // Queues a frame and writes as much as the socket takes right away
+    void send(ByteBuffer frame) throws IOException
+    {
+        out.add(frame);
+        queuedBytes += frame.remaining();
+        if(queuedBytes > MAX_QUEUED_BYTES) throw new ProtocolException("Peer is not reading, " + queuedBytes + " bytes queued");
+        flush();
+    }
+    // Writes queued frames until the socket is full, and asks to be told when it has room again
+    void flush() throws IOException
+    {
+        while(!out.isEmpty())
+        {
+            ByteBuffer frame = out.peek();
+            int written = channel.write(frame);
+            queuedBytes -= written;
+            if(frame.hasRemaining()) break;
+            out.poll();
+        }
+        int ops = out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if(key.isValid() && key.interestOps() != ops) key.interestOps(ops);
+    }
+
+    void addKnown(String transactionId)
+    {
+        knownTransactions.put(transactionId, Boolean.TRUE);
+    }
+
+    boolean knows(String transactionId)
+    {
+        return knownTransactions.containsKey(transactionId);
+    }
+
+    void close()
+    {
+        key.cancel();
+        try
+        {
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            // Closing anyway
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(address);
+    }
+    // Called in read mode with the partial frame from the current position
+    private void grow(int capacity)
+    {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        bigger.put(in);
+        bigger.flip();
+        in = bigger;
+    }
+}
@@ -0,0 +1,114 @@
+package myBlockchain.Storage;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.ArrayList;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.KeyRegistry;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Util.Binary;
+import myBlockchain.Util.VarInt;
+
+/*
+ * Compact binary form of a block and its transactions.
+ * Fields are written with Binary, so amounts and lengths are varints. Since
+ * version 3 hashes are written as raw bytes and each transaction is stored in the form TransactionCodec defines,
+ * copied from the bytes the transaction already keeps; older versions are
+ * still read, their transactions come back as Transaction.LEGACY_VERSION.
+ * Decoding gives public keys pending ids by their encoded form (see
+ * KeyRegistry), so the same key read twice is the same object, like it was in
+ * memory before it was stored, and is only registered once its block is.
+ * A codec instance is not thread-safe.
+ */
+public class BlockCodec
+{
+    public static final int VERSION = 3; // First byte of every encoded block, 2 added the fee, 3 the binary transactions
+
+    private final TransactionCodec transactions = new TransactionCodec();
+
+    // Encodes a block with all its transactions
+    public byte[] encode(Block block)
+    {
+        Binary.Writer out = new Binary.Writer(256);
+        out.write(VERSION);
+        out.writeHash(block.hash);
+        out.writeHash(block.previousHash);
+        out.writeLong(block.getTimeStamp());
+        out.writeInt(block.getNonce());
+        out.writeHash(block.merkleRoot);
+        out.writeVarInt(block.transactions.size());
+        for(Transaction transaction : block.transactions)
+        {
+            byte[] encoded = transaction.toBytes();
+            out.write(encoded, 0, encoded.length);
+        }
+        return out.toByteArray();
+    }
+    // Decodes a block written by encode()
+    public Block decode(ByteBuffer in)
+    {
+        int version = in.get();
+        if(version < 1 || version > VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported block format version " + version);
+        }
+        String hash = readHash(in, version);
+        String previousHash = readHash(in, version);
+        long timeStamp = in.getLong();
+        int nonce = in.getInt();
+        String merkleRoot = readHash(in, version);
+        int count = VarInt.readUnsignedInt(in);
+        ArrayList<Transaction> transactions = new ArrayList<Transaction>(Math.min(count, 1024));
+        for(int i = 0; i < count; i++)
+        {
+            transactions.add(version >= 3 ? this.transactions.decode(in) : readLegacyTransaction(in, version));
+        }
+        return new Block(hash, previousHash, timeStamp, nonce, merkleRoot, transactions);
+    }
+
+    // Encoded size of a transaction on its own, e.g. to rank transactions by fee per byte
+    public static int encodedSize(Transaction transaction)
+    {
+        return transaction.getEncodedSize();
+    }
+    // Hashes are raw bytes since version 3, strings before
+    private static String readHash(ByteBuffer in, int version)
+    {
+        return version >= 3 ? Binary.readHash(in) : Binary.readString(in);
+    }
+    // Transactions of versions 1 and 2, written field by field with string ids
+    private Transaction readLegacyTransaction(ByteBuffer in, int version)
+    {
+        String transactionId = Binary.readString(in);
+        PublicKey sender = transactions.readKey(in);
+        PublicKey reciever = transactions.readKey(in);
+        long value = Amount.read(in);
+        long fee = version >= 2 ? Amount.read(in) : 0;
+        byte[] signature = Binary.readBytes(in);
+        int inputCount = VarInt.readUnsignedInt(in);
+        ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>(Math.min(inputCount, 1024));
+        for(int i = 0; i < inputCount; i++)
+        {
+            inputs.add(new TransactionInput(Binary.readString(in)));
+        }
+        Transaction transaction = new Transaction(sender, reciever, value, fee, inputs);
+        transaction.version = Transaction.LEGACY_VERSION;
+        transaction.transactionId = transactionId;
+        transaction.signature = signature.length == 0 ? null : signature;
+        int outputCount = VarInt.readUnsignedInt(in);
+        for(int i = 0; i < outputCount; i++)
+        {
+            String id = Binary.readString(in);
+            int owner = KeyRegistry.intern(Binary.readBytes(in));
+            long outputValue = Amount.read(in);
+            String parent = Binary.readString(in);
+            transaction.outputs.add(new TransactionOutput(id, owner, outputValue, parent));
+        }
+        return transaction;
+    }
+}
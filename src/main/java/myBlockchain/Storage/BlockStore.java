@@ -0,0 +1,506 @@
+package myBlockchain.Storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.BlockHeader;
+import myBlockchain.Blockchain.Checkpoint;
+import myBlockchain.Blockchain.HeaderIndex;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSnapshot;
+import myBlockchain.Util.StringUtil;
+
+/*
+ * Append-only block storage.
+ *
+ * Blocks are encoded with BlockCodec and appended to numbered segment files as
+ * [length][crc32][payload] records; a segment is closed once it reaches the
+ * size limit. A separate index file holds one fixed-size entry per block,
+ * height | hash | segment | offset | length, so opening a store only reads the
+ * index and reads go straight to the record through a memory-mapped segment.
+ *
+ * A record is written before its index entry, so a crash can leave at most an
+ * unindexed record or a partial index entry at the end. Both are cut off when
+ * the store is opened again. Every record is checked against its CRC when read.
+ *
+ * prune() deletes whole segments below a height. The hash and header of every
+ * block in them go to a headers file and the unspent outputs after the last of
+ * them to a checkpoint file first, in that order, so the checkpoint's height
+ * says how far pruning got and a crash in between is finished on the next open.
+ * The index keeps the entries of pruned blocks, their records are just gone.
+ */
+public class BlockStore implements Closeable
+{
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    static final int RECORD_HEADER_SIZE = 8; // length + crc32
+    static final int INDEX_ENTRY_SIZE = 4 + StringUtil.SHA256_LENGTH + 4 + 8 + 4;
+    private static final String INDEX_FILE = "blocks.idx";
+    private static final String HEADERS_FILE = "headers.dat";
+    private static final String PRUNED_FILE = "pruned.chk";
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final BlockCodec codec = new BlockCodec();
+    private final HashMap<String,Integer> heights = new HashMap<String,Integer>();
+    private final ArrayList<MappedByteBuffer> mappings = new ArrayList<MappedByteBuffer>();
+    private final FileChannel index;
+    private final FileChannel headers; // Hash and header of every pruned block, HeaderIndex.ENTRY_SIZE bytes each
+    private FileChannel active; // Segment new records are appended to
+    private int activeSegment;
+    private long activeSize;
+    private boolean sync = true;
+    private int prunedHeight; // Blocks below this height have no record left
+
+    // Location of every stored block, by height
+    private int count;
+    private int[] segments = new int[64];
+    private long[] offsets = new long[64];
+    private int[] lengths = new int[64];
+
+    // Opens the store in the given directory, creating it when it does not exist
+    public static BlockStore open(Path directory)
+    {
+        return new BlockStore(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public BlockStore(Path directory, long maxSegmentSize)
+    {
+        if(maxSegmentSize <= RECORD_HEADER_SIZE || maxSegmentSize > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Segment size out of range: " + maxSegmentSize);
+        }
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        try
+        {
+            Files.createDirectories(directory);
+            index = FileChannel.open(directory.resolve(INDEX_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            headers = FileChannel.open(directory.resolve(HEADERS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            loadPruned();
+            loadIndex();
+            openActiveSegment();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+    // Turns off fsync after every append, faster but the last blocks may be lost on a crash
+    public synchronized void setSync(boolean sync)
+    {
+        this.sync = sync;
+    }
+    // Number of stored blocks, the next block is appended at this height
+    public synchronized int size()
+    {
+        return count;
+    }
+    // Blocks below this height were pruned, only their headers are left
+    public synchronized int getPrunedHeight()
+    {
+        return prunedHeight;
+    }
+    // Height of the block with the given hash, or -1 when it is not stored
+    public synchronized int heightOf(String hash)
+    {
+        Integer height = heights.get(hash);
+        return height == null ? -1 : height;
+    }
+    // Appends a mined block at the next height, returns that height
+    public synchronized int append(Block block)
+    {
+        byte[] payload = codec.encode(block);
+        long recordSize = RECORD_HEADER_SIZE + (long) payload.length;
+        try
+        {
+            if(activeSize > 0 && activeSize + recordSize > maxSegmentSize)
+            {
+                active.close();
+                activeSegment++;
+                activeSize = 0;
+                active = openSegment(activeSegment);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+            record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            long offset = activeSize;
+            writeFully(active, record, offset);
+            if(sync) active.force(false);
+            activeSize += recordSize;
+
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putInt(count).put(StringUtil.toHashBytes(block.hash))
+                    .putInt(activeSegment).putLong(offset).putInt(payload.length).flip();
+            writeFully(index, entry, (long) count * INDEX_ENTRY_SIZE);
+            if(sync) index.force(false);
+            return addEntry(block.hash, activeSegment, offset, payload.length);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+    // Drops the blocks from the given height on, e.g. the ones a reorg disconnected. The index is cut
+    // first, then the segments are cut back to the end of the new last record, so the next block takes their place.
+    public synchronized void truncate(int height)
+    {
+        if(height < 0 || height > count)
+        {
+            throw new IndexOutOfBoundsException("Cannot truncate " + count + " blocks to " + height);
+        }
+        if(height == count) return;
+        if(height < prunedHeight) throw new IllegalStateException("Cannot truncate to " + height + ", blocks below " + prunedHeight + " were pruned");
+        try
+        {
+            index.truncate((long) height * INDEX_ENTRY_SIZE);
+            if(sync) index.force(false);
+            // Without a stored block left above the pruned ones the first dropped record's segment starts over
+            int segment = height > prunedHeight ? segments[height - 1] : segments[height];
+            long size = height > prunedHeight ? offsets[height - 1] + RECORD_HEADER_SIZE + lengths[height - 1] : 0;
+            if(segment != activeSegment)
+            {
+                active.close();
+                deleteSegments(segment + 1, activeSegment + 1);
+                activeSegment = segment;
+                active = openSegment(segment);
+            }
+            active.truncate(size);
+            if(sync) active.force(false);
+            activeSize = size;
+            // A mapping may reach past the cut, it is mapped again once the segment grows back
+            if(segment < mappings.size()) mappings.set(segment, null);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        heights.values().removeIf(stored -> stored >= height);
+        count = height;
+    }
+    // The encoded block at the given height, a read-only view of the mapped segment
+    public synchronized ByteBuffer readRaw(int height)
+    {
+        if(height < 0 || height >= count)
+        {
+            throw new IndexOutOfBoundsException("No block at height " + height);
+        }
+        if(height < prunedHeight) throw new IllegalStateException("Block at height " + height + " was pruned");
+        long offset = offsets[height];
+        int length = lengths[height];
+        MappedByteBuffer mapping = mapping(segments[height], offset + RECORD_HEADER_SIZE + length);
+        ByteBuffer record = mapping.duplicate();
+        record.position((int) offset);
+        int storedLength = record.getInt();
+        int storedCrc = record.getInt();
+        record.limit(record.position() + length);
+        ByteBuffer payload = record.slice().asReadOnlyBuffer();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if(storedLength != length || storedCrc != (int) crc.getValue())
+        {
+            throw new IllegalStateException("Block at height " + height + " failed its checksum");
+        }
+        return payload;
+    }
+    // Decodes the block at the given height
+    public synchronized Block read(int height)
+    {
+        return codec.decode(readRaw(height));
+    }
+    // Decodes the block with the given hash, or returns null when it is not stored
+    public synchronized Block read(String hash)
+    {
+        int height = heightOf(hash);
+        return height < 0 ? null : read(height);
+    }
+    // Decodes every block in height order, linking each input to the output it spends.
+    // Pruned blocks come header-only, inputs spending their outputs are linked through getPrunedUTXOs().
+    public synchronized ArrayList<Block> loadChain()
+    {
+        ArrayList<Block> chain = new ArrayList<Block>(count);
+        HashMap<String,TransactionOutput> outputs = new HashMap<String,TransactionOutput>();
+        for(TransactionOutput output : getPrunedUTXOs().values())
+        {
+            outputs.put(output.id, output);
+        }
+        for(Block block : readPrunedHeaders())
+        {
+            chain.add(block);
+        }
+        for(int height = prunedHeight; height < count; height++)
+        {
+            Block block = read(height);
+            for(Transaction transaction : block.transactions)
+            {
+                for(TransactionInput input : transaction.inputs)
+                {
+                    input.UTXO = outputs.get(input.transactionOutputId);
+                }
+                for(TransactionOutput output : transaction.outputs)
+                {
+                    outputs.put(output.id, output);
+                }
+            }
+            chain.add(block);
+        }
+        return chain;
+    }
+
+    // The unspent outputs after the last pruned block, empty when nothing was pruned
+    public synchronized UTXOSnapshot getPrunedUTXOs()
+    {
+        Path file = directory.resolve(PRUNED_FILE);
+        return prunedHeight == 0 || !Files.exists(file) ? UTXOSnapshot.empty() : CheckpointFile.load(file).getUTXOs();
+    }
+    // Deletes the segments that only hold blocks below the given height. The segment of the
+    // last block always stays, so fewer blocks than asked for may be pruned; returns the new pruned height.
+    public synchronized int prune(int height)
+    {
+        if(height < 0 || height > count) throw new IndexOutOfBoundsException("Cannot prune " + count + " blocks to " + height);
+        if(count == 0) return prunedHeight;
+        int keep = segments[Math.min(height, count - 1)];
+        int pruned = prunedHeight;
+        while(pruned < count && segments[pruned] < keep) pruned++;
+        if(pruned == prunedHeight) return prunedHeight;
+        try
+        {
+            // Headers and outputs of the blocks about to go, both on disk before any segment is deleted
+            HashMap<String,TransactionOutput> outputs = new HashMap<String,TransactionOutput>();
+            for(TransactionOutput output : getPrunedUTXOs().values())
+            {
+                outputs.put(output.id, output);
+            }
+            ByteBuffer entries = ByteBuffer.allocate((pruned - prunedHeight) * HeaderIndex.ENTRY_SIZE);
+            Block block = null;
+            for(int h = prunedHeight; h < pruned; h++)
+            {
+                block = read(h);
+                entries.put(StringUtil.toHashBytes(block.hash)).put(block.getHeader().toBytes());
+                for(Transaction transaction : block.transactions)
+                {
+                    for(TransactionInput input : transaction.inputs)
+                    {
+                        outputs.remove(input.transactionOutputId);
+                    }
+                    for(TransactionOutput output : transaction.outputs)
+                    {
+                        outputs.put(output.id, output);
+                    }
+                }
+            }
+            entries.flip();
+            writeFully(headers, entries, (long) prunedHeight * HeaderIndex.ENTRY_SIZE);
+            headers.force(false);
+            CheckpointFile.save(directory.resolve(PRUNED_FILE), new Checkpoint(pruned, block.hash, 0, UTXOSnapshot.of(outputs.values())));
+            int first = segments[prunedHeight];
+            prunedHeight = pruned;
+            deleteSegments(first, keep);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return prunedHeight;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        try
+        {
+            active.close();
+            index.close();
+            headers.close();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        mappings.clear();
+    }
+
+    private void loadIndex() throws IOException
+    {
+        long entries = index.size() / INDEX_ENTRY_SIZE;
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        byte[] hash = new byte[StringUtil.SHA256_LENGTH];
+        long[] segmentSizes = new long[0];
+        int last = 0; // Segment of the last entry read
+        for(long i = 0; i < entries; i++)
+        {
+            entry.clear();
+            readFully(index, entry, i * INDEX_ENTRY_SIZE);
+            entry.flip();
+            int height = entry.getInt();
+            entry.get(hash);
+            int segment = entry.getInt();
+            long offset = entry.getLong();
+            int length = entry.getInt();
+            if(segment >= segmentSizes.length)
+            {
+                segmentSizes = Arrays.copyOf(segmentSizes, segment + 1);
+                segmentSizes[segment] = sizeOf(segment);
+            }
+            // A torn write leaves an entry that points past the end of its segment; pruned blocks have no segment left
+            if(height != count || segment < last) break;
+            if(height >= prunedHeight && offset + RECORD_HEADER_SIZE + length > segmentSizes[segment]) break;
+            last = segment;
+            if(height >= prunedHeight)
+            {
+                activeSegment = segment;
+                activeSize = offset + RECORD_HEADER_SIZE + length;
+            }
+            addEntry(StringUtil.toHexString(hash), segment, offset, length);
+        }
+        index.truncate((long) count * INDEX_ENTRY_SIZE);
+        if(count < prunedHeight) throw new IllegalStateException(INDEX_FILE + " ends before the pruned height " + prunedHeight);
+        if(prunedHeight == 0) return;
+        // With every stored block pruned, e.g. after a truncate, new records go to a fresh segment
+        if(count == prunedHeight)
+        {
+            activeSegment = last + 1;
+            activeSize = 0;
+        }
+        // Segments a crash left behind while pruning
+        deleteSegments(0, count == prunedHeight ? activeSegment : segments[prunedHeight]);
+    }
+    // Reads how far the store was pruned and drops headers written after that
+    private void loadPruned() throws IOException
+    {
+        Path file = directory.resolve(PRUNED_FILE);
+        prunedHeight = Files.exists(file) ? CheckpointFile.load(file).getHeight() : 0;
+        if(headers.size() < (long) prunedHeight * HeaderIndex.ENTRY_SIZE)
+        {
+            throw new IllegalStateException(HEADERS_FILE + " ends before the pruned height " + prunedHeight);
+        }
+        headers.truncate((long) prunedHeight * HeaderIndex.ENTRY_SIZE);
+    }
+    // Header-only blocks for the pruned heights
+    private ArrayList<Block> readPrunedHeaders()
+    {
+        ArrayList<Block> blocks = new ArrayList<Block>(prunedHeight);
+        ByteBuffer entries = ByteBuffer.allocate(prunedHeight * HeaderIndex.ENTRY_SIZE);
+        try
+        {
+            readFully(headers, entries, 0);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        entries.flip();
+        byte[] hash = new byte[BlockHeader.HASH_SIZE];
+        for(int height = 0; height < prunedHeight; height++)
+        {
+            entries.get(hash);
+            blocks.add(Block.pruned(StringUtil.toHexString(hash), BlockHeader.read(entries)));
+        }
+        return blocks;
+    }
+    // Deletes the segment files from first up to, not including, end
+    private void deleteSegments(int first, int end) throws IOException
+    {
+        for(int segment = first; segment < end; segment++)
+        {
+            Files.deleteIfExists(segmentPath(segment));
+            if(segment < mappings.size()) mappings.set(segment, null);
+        }
+    }
+    // Cuts records that never made it into the index off the end of the last segment
+    private void openActiveSegment() throws IOException
+    {
+        for(int segment = activeSegment + 1; Files.exists(segmentPath(segment)); segment++)
+        {
+            Files.delete(segmentPath(segment));
+        }
+        active = openSegment(activeSegment);
+        active.truncate(activeSize);
+    }
+
+    private int addEntry(String hash, int segment, long offset, int length)
+    {
+        if(count == segments.length)
+        {
+            segments = Arrays.copyOf(segments, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        segments[count] = segment;
+        offsets[count] = offset;
+        lengths[count] = length;
+        heights.put(hash, count);
+        return count++;
+    }
+    // Maps a segment read-only, remapping the active one once it has grown past the mapped end
+    private MappedByteBuffer mapping(int segment, long end)
+    {
+        while(mappings.size() <= segment) mappings.add(null);
+        MappedByteBuffer mapping = mappings.get(segment);
+        if(mapping == null || mapping.capacity() < end)
+        {
+            try(FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ))
+            {
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            catch(IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            mappings.set(segment, mapping);
+        }
+        return mapping;
+    }
+
+    private FileChannel openSegment(int segment) throws IOException
+    {
+        return FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private long sizeOf(int segment) throws IOException
+    {
+        Path path = segmentPath(segment);
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    private Path segmentPath(int segment)
+    {
+        return directory.resolve(String.format("blocks-%05d.dat", segment));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if(read < 0) throw new IOException("Unexpected end of file at " + position);
+            position += read;
+        }
+    }
+}
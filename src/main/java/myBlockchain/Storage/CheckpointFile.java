@@ -0,0 +1,116 @@
+package myBlockchain.Storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+import myBlockchain.Blockchain.Checkpoint;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSnapshot;
+import myBlockchain.Util.Binary;
+import myBlockchain.Util.VarInt;
+
+/*
+ * Saves and loads validation checkpoints.
+ *
+ * A checkpoint file is one [length][crc32][payload] record: format version,
+ * height, hash of the last covered block, difficulty and the unspent outputs
+ * after that block, written the same way as in DiskUTXOStore. It is written to
+ * a temporary file and moved into place, so a crash leaves the old checkpoint.
+ * A node that loads a checkpoint trusts it, so only load files from a source
+ * that is trusted as well.
+ */
+public final class CheckpointFile
+{
+    public static final int VERSION = 1;
+
+    private static final int RECORD_HEADER_SIZE = 8; // length + crc32
+
+    private CheckpointFile()
+    {
+    }
+
+    public static void save(Path file, Checkpoint checkpoint)
+    {
+        Collection<TransactionOutput> outputs = checkpoint.getUTXOs().values();
+        Binary.Writer out = new Binary.Writer(RECORD_HEADER_SIZE + 128 + outputs.size() * 160);
+        out.writeLong(0); // Room for the record header
+        out.writeVarInt(VERSION);
+        out.writeVarInt(checkpoint.getHeight());
+        out.writeString(checkpoint.getHash());
+        out.writeVarInt(checkpoint.getDifficulty());
+        out.writeVarInt(outputs.size());
+        for(TransactionOutput output : outputs)
+        {
+            out.writeOutput(output);
+        }
+        ByteBuffer payload = out.buffer();
+        payload.position(RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.putInt(0, out.position() - RECORD_HEADER_SIZE);
+        out.putInt(4, (int) crc.getValue());
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try
+        {
+            if(file.getParent() != null) Files.createDirectories(file.getParent());
+            try(FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                ByteBuffer buffer = out.buffer();
+                while(buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static Checkpoint load(Path file)
+    {
+        ByteBuffer in;
+        try
+        {
+            in = ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        if(in.remaining() < RECORD_HEADER_SIZE) throw new IllegalStateException("Checkpoint " + file + " is truncated");
+        int length = in.getInt();
+        int storedCrc = in.getInt();
+        if(length != in.remaining()) throw new IllegalStateException("Checkpoint " + file + " is truncated");
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate());
+        if(storedCrc != (int) crc.getValue()) throw new IllegalStateException("Checkpoint " + file + " failed its checksum");
+
+        int version = VarInt.readUnsignedInt(in);
+        if(version != VERSION) throw new IllegalStateException("Unsupported checkpoint version " + version);
+        int height = VarInt.readUnsignedInt(in);
+        String hash = Binary.readString(in);
+        int difficulty = VarInt.readUnsignedInt(in);
+        int count = VarInt.readUnsignedInt(in);
+        ArrayList<TransactionOutput> outputs = new ArrayList<TransactionOutput>(count);
+        for(int i = 0; i < count; i++)
+        {
+            outputs.add(Binary.readOutput(in));
+        }
+        return new Checkpoint(height, hash, difficulty, UTXOSnapshot.of(outputs));
+    }
+}
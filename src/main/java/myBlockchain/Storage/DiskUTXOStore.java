@@ -0,0 +1,447 @@
+package myBlockchain.Storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.KeyRegistry;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Util.Binary;
+import myBlockchain.Util.VarInt;
+
+/*
+ * UTXOStore that keeps the outputs in a log file instead of on the heap.
+ *
+ * Every commit appends one [length][crc32][payload] record holding the ids it
+ * spends and the outputs it creates, so a batch is on disk completely or, after
+ * a torn write is cut off on open, not at all. In memory there is only a
+ * UTXOIndex from output id to its place in the log, which also chains each
+ * owner's outputs (by KeyRegistry id; keys read back from the log are
+ * registered from their bytes and only decoded when asked for), and an LRU
+ * cache of decoded outputs. Opening the store replays the log through a
+ * sliding window to rebuild the index, so the log may be larger than the
+ * address space of one mapping; once most of the log is spent outputs it is
+ * rewritten with the live outputs only, a record per chunk of them.
+ */
+public class DiskUTXOStore implements UTXOStore, Closeable
+{
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    private static final int RECORD_HEADER_SIZE = 8; // length + crc32
+    private static final long COMPACT_MIN_SIZE = 1L << 20;
+    private static final int WINDOW_SIZE = 1 << 20; // Bytes read at a time while replaying, grown for a larger record
+    private static final int COMPACT_RECORD_SIZE = 1 << 20; // Outputs per record of a compacted log, in bytes
+    private static final String LOG_FILE = "utxo.log";
+
+    private final Path logPath;
+    private final UTXOIndex index = new UTXOIndex();
+    private final Map<String,TransactionOutput> cache;
+    private FileChannel log;
+    private long logSize;
+    private long liveBytes; // Bytes of the log taken by unspent outputs
+    private boolean sync = true;
+
+    // Opens the store in the given directory, creating it when it does not exist
+    public static DiskUTXOStore open(Path directory)
+    {
+        return new DiskUTXOStore(directory, DEFAULT_CACHE_SIZE);
+    }
+
+    public DiskUTXOStore(Path directory, int cacheSize)
+    {
+        this.logPath = directory.resolve(LOG_FILE);
+        this.cache = new LinkedHashMap<String,TransactionOutput>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,TransactionOutput> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+        try
+        {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(compactPath()); // Left over from an interrupted compaction
+            log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replay();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+    // Turns off fsync after every commit, faster but the last commits may be lost on a crash
+    public synchronized void setSync(boolean sync)
+    {
+        this.sync = sync;
+    }
+    // Returns the unspent output with the given id, or null
+    public synchronized TransactionOutput get(String id)
+    {
+        TransactionOutput output = cache.get(id);
+        if(output != null) return output;
+        int slot = index.find(id);
+        return slot < 0 ? null : read(slot);
+    }
+    // Checks if an output with the given id is unspent
+    public synchronized boolean containsKey(String id)
+    {
+        return index.find(id) >= 0;
+    }
+    // Adds an unspent output, replacing any output with the same id
+    public synchronized void put(String id, TransactionOutput output)
+    {
+        if(!id.equals(output.id))
+        {
+            output = new TransactionOutput(id, output.owner, output.value, output.parentTransactionId);
+        }
+        UTXOBatch batch = new UTXOBatch(this);
+        batch.put(output);
+        commit(batch);
+    }
+    // Removes a spent output, returns it or null when it was not in the store
+    public synchronized TransactionOutput remove(String id)
+    {
+        UTXOBatch batch = new UTXOBatch(this);
+        TransactionOutput removed = batch.remove(id);
+        if(removed != null) commit(batch);
+        return removed;
+    }
+    // Number of unspent outputs
+    public synchronized int size()
+    {
+        return index.size();
+    }
+    // Sum of the outputs the key with the given KeyRegistry id can spend
+    public synchronized long getBalance(int ownerId)
+    {
+        return index.getBalance(ownerId);
+    }
+    // The outputs the key with the given KeyRegistry id can spend, in the order they were added
+    public synchronized List<TransactionOutput> getOutputs(int ownerId)
+    {
+        int[] slots = index.slotsOf(ownerId);
+        List<TransactionOutput> owned = new ArrayList<TransactionOutput>(slots.length);
+        for(int slot : slots)
+        {
+            TransactionOutput output = cache.get(index.getId(slot));
+            owned.add(output != null ? output : read(slot));
+        }
+        return owned;
+    }
+    // Writes the batch as one log record, then applies it to the index
+    public synchronized void commit(UTXOBatch batch)
+    {
+        ArrayList<String> spent = new ArrayList<String>(batch.getSpent().size());
+        for(String id : batch.getSpent())
+        {
+            if(index.find(id) >= 0) spent.add(id);
+        }
+        if(spent.isEmpty() && batch.getCreated().isEmpty()) return;
+
+        Binary.Writer out = new Binary.Writer(256);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeVarInt(spent.size());
+        for(String id : spent)
+        {
+            out.writeString(id);
+        }
+        out.writeVarInt(batch.getCreated().size());
+        int[] starts = new int[batch.getCreated().size() + 1];
+        int i = 0;
+        for(TransactionOutput output : batch.getCreated())
+        {
+            starts[i++] = out.position();
+            out.writeOutput(output);
+        }
+        starts[i] = out.position();
+        long position = append(out);
+
+        for(String id : spent)
+        {
+            unindex(id);
+        }
+        i = 0;
+        for(TransactionOutput output : batch.getCreated())
+        {
+            int length = starts[i + 1] - starts[i];
+            index(output.id, position + starts[i], length, output.owner, output.value);
+            cache.put(output.id, output);
+            i++;
+        }
+        if(logSize > COMPACT_MIN_SIZE && logSize > 4 * liveBytes)
+        {
+            compact();
+        }
+    }
+    // Removes every output
+    public synchronized void clear()
+    {
+        try
+        {
+            log.truncate(0);
+            if(sync) log.force(false);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        logSize = 0;
+        liveBytes = 0;
+        index.clear();
+        cache.clear();
+    }
+    // Size of the log file in bytes
+    public synchronized long getLogSize()
+    {
+        return logSize;
+    }
+    // Rewrites the log with only the unspent outputs, owner by owner so replaying keeps the order of their outputs
+    public synchronized void compact()
+    {
+        Path compacted = compactPath();
+        try(FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+        {
+            // New positions are only taken over once the compacted log is in place
+            long[] moved = new long[index.capacity()];
+            int[] chunk = new int[64]; // Slots in the record being filled
+            int chunkSize = 0;
+            Binary.Writer outputs = new Binary.Writer(COMPACT_RECORD_SIZE + 1024);
+            long written = 0;
+            ByteBuffer record = ByteBuffer.allocate(0);
+            for(int owner : index.owners())
+            {
+                for(int slot : index.slotsOf(owner))
+                {
+                    int length = index.getLength(slot);
+                    if(record.capacity() < length) record = ByteBuffer.allocate(length);
+                    record.clear().limit(length);
+                    readFully(record, index.getPosition(slot));
+                    if(chunkSize == chunk.length) chunk = Arrays.copyOf(chunk, chunkSize * 2);
+                    chunk[chunkSize++] = slot;
+                    moved[slot] = outputs.position();
+                    outputs.write(record.array(), 0, length);
+                    if(outputs.position() >= COMPACT_RECORD_SIZE)
+                    {
+                        written += writeChunk(target, written, outputs, chunk, chunkSize, moved);
+                        outputs = new Binary.Writer(COMPACT_RECORD_SIZE + 1024);
+                        chunkSize = 0;
+                    }
+                }
+            }
+            if(chunkSize > 0) written += writeChunk(target, written, outputs, chunk, chunkSize, moved);
+            target.force(true);
+            log.close();
+            Files.move(compacted, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            logSize = written;
+            for(int slot = 0; slot < index.capacity(); slot++)
+            {
+                if(index.isUsed(slot)) index.setPosition(slot, moved[slot]);
+            }
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void close()
+    {
+        try
+        {
+            log.close();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        cache.clear();
+    }
+
+    // Rebuilds the index from the log, cutting off a torn last record
+    private void replay() throws IOException
+    {
+        long size = log.size();
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        window.limit(0);
+        long windowStart = 0; // Log position of the window's first byte
+        long position = 0;
+        CRC32 crc = new CRC32();
+        while(size - position >= RECORD_HEADER_SIZE)
+        {
+            if(position + RECORD_HEADER_SIZE > windowStart + window.limit())
+            {
+                window = fill(window, position, RECORD_HEADER_SIZE);
+                windowStart = position;
+            }
+            int offset = (int) (position - windowStart);
+            int length = window.getInt(offset);
+            int storedCrc = window.getInt(offset + 4);
+            if(length < 0 || length > size - position - RECORD_HEADER_SIZE) break;
+            if(position + RECORD_HEADER_SIZE + length > windowStart + window.limit())
+            {
+                window = fill(window, position, RECORD_HEADER_SIZE + length);
+                windowStart = position;
+                offset = 0;
+            }
+            ByteBuffer payload = window.duplicate();
+            payload.limit(offset + RECORD_HEADER_SIZE + length).position(offset + RECORD_HEADER_SIZE);
+            payload = payload.slice();
+            crc.reset();
+            crc.update(payload.duplicate());
+            if(storedCrc != (int) crc.getValue()) break;
+            replayRecord(payload, position + RECORD_HEADER_SIZE);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if(position < size)
+        {
+            log.truncate(position);
+        }
+        logSize = position;
+    }
+    // Reads the log from position into the window, at least needed bytes; a window too small for them is replaced
+    private ByteBuffer fill(ByteBuffer window, long position, int needed) throws IOException
+    {
+        if(window.capacity() < needed) window = ByteBuffer.allocate(needed);
+        window.clear();
+        while(window.position() < needed)
+        {
+            int read = log.read(window, position + window.position());
+            if(read < 0) throw new IOException("Unexpected end of " + LOG_FILE);
+            if(!window.hasRemaining()) break;
+        }
+        window.flip();
+        return window;
+    }
+
+    private void replayRecord(ByteBuffer payload, long base)
+    {
+        int spent = VarInt.readUnsignedInt(payload);
+        for(int i = 0; i < spent; i++)
+        {
+            unindex(Binary.readString(payload));
+        }
+        int created = VarInt.readUnsignedInt(payload);
+        for(int i = 0; i < created; i++)
+        {
+            int start = payload.position();
+            String id = Binary.readString(payload);
+            int owner = KeyRegistry.intern(Binary.readBytes(payload));
+            long value = Amount.read(payload);
+            Binary.readString(payload);
+            index(id, base + start, payload.position() - start, owner, value);
+        }
+    }
+
+    private void index(String id, long position, int length, int owner, long value)
+    {
+        liveBytes += length - index.put(id, position, length, owner, value);
+    }
+
+    private void unindex(String id)
+    {
+        cache.remove(id);
+        int slot = index.find(id);
+        if(slot >= 0) liveBytes -= index.remove(slot);
+    }
+    // Decodes the output in the slot from the log and caches it
+    private TransactionOutput read(int slot)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(index.getLength(slot));
+        try
+        {
+            readFully(buffer, index.getPosition(slot));
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+        TransactionOutput output = Binary.readOutput(buffer);
+        cache.put(output.id, output);
+        return output;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            if(log.read(buffer, position + buffer.position()) < 0) throw new IOException("Unexpected end of " + LOG_FILE);
+        }
+    }
+    // Writes the outputs gathered for a compacted log as one record at the given position, fixing their new positions; returns its size
+    private static long writeChunk(FileChannel target, long position, Binary.Writer outputs, int[] slots, int count, long[] moved) throws IOException
+    {
+        Binary.Writer out = new Binary.Writer(outputs.position() + 32);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeVarInt(0);
+        out.writeVarInt(count);
+        long base = position + out.position();
+        out.write(outputs.buffer().array(), 0, outputs.position());
+        seal(out);
+        ByteBuffer buffer = out.buffer();
+        while(buffer.hasRemaining())
+        {
+            target.write(buffer, position + buffer.position());
+        }
+        for(int i = 0; i < count; i++)
+        {
+            moved[slots[i]] += base;
+        }
+        return out.position();
+    }
+    // Fills in the record header and appends the record at the end of the log, returns where it starts
+    private long append(Binary.Writer out)
+    {
+        seal(out);
+        long start = logSize;
+        ByteBuffer buffer = out.buffer();
+        try
+        {
+            while(buffer.hasRemaining())
+            {
+                log.write(buffer, start + buffer.position());
+            }
+            if(sync) log.force(false);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        logSize = start + out.position();
+        return start;
+    }
+
+    private static void seal(Binary.Writer out)
+    {
+        ByteBuffer payload = out.buffer();
+        payload.position(RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.putInt(0, out.position() - RECORD_HEADER_SIZE);
+        out.putInt(4, (int) crc.getValue());
+    }
+
+    private Path compactPath()
+    {
+        return logPath.resolveSibling(LOG_FILE + ".compact");
+    }
+}
@@ -0,0 +1,299 @@
+package myBlockchain.Storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Util.StringUtil;
+
+/*
+ * Index of DiskUTXOStore from output id to where the output is in the log.
+ *
+ * An open-addressing table kept in primitive arrays, one slot per output:
+ *
+ *   id (4 longs) | log position | record length | owner | value | previous | next
+ *
+ * so an unspent output costs about 64 bytes of heap, with no String, map entry
+ * or boxed value per output. Ids are kept as their 32 raw bytes (see
+ * StringUtil.toHashBytes) and probed linearly from their last 8 bytes, which
+ * are uniformly distributed. Each owner's outputs are chained through their
+ * slots in the order they were added, so balances and owner lookups need no
+ * per-output objects either. Removing an output shifts the rest of its probe
+ * run back and relinks the moved slots. Not thread-safe.
+ */
+final class UTXOIndex
+{
+    private static final int KEY_LONGS = StringUtil.SHA256_LENGTH / 8;
+    private static final int NONE = -1;
+
+    // The outputs of one owner, as a chain of slots
+    private static final class Owner
+    {
+        int head = NONE;
+        int tail = NONE;
+        long balance;
+    }
+
+    private final HashMap<Integer,Owner> owners = new HashMap<Integer,Owner>();
+    private long[] keys;
+    private long[] positions;
+    private int[] lengths; // 0 for an empty slot
+    private int[] ownerIds;
+    private long[] values;
+    private int[] previous; // Previous slot of the same owner
+    private int[] next;
+    private int size;
+
+    UTXOIndex()
+    {
+        allocate(64);
+    }
+
+    int size()
+    {
+        return size;
+    }
+    // Number of slots, for walking the table with isUsed()
+    int capacity()
+    {
+        return lengths.length;
+    }
+
+    boolean isUsed(int slot)
+    {
+        return lengths[slot] != 0;
+    }
+    // Slot of the output with the given id, -1 when it is not indexed
+    int find(String id)
+    {
+        long[] key = toKey(id);
+        int mask = lengths.length - 1;
+        for(int slot = home(key[KEY_LONGS - 1], mask); lengths[slot] != 0; slot = (slot + 1) & mask)
+        {
+            if(matches(slot, key)) return slot;
+        }
+        return NONE;
+    }
+    // Adds an output, replacing one with the same id; returns the record length it replaced, 0 when it is new
+    int put(String id, long position, int length, int owner, long value)
+    {
+        if(length <= 0) throw new IllegalArgumentException("Record length must be positive: " + length);
+        int replaced = 0;
+        int existing = find(id);
+        if(existing != NONE) replaced = remove(existing);
+        if((size + 1) * 4L > lengths.length * 3L) grow();
+        long[] key = toKey(id);
+        int slot = insert(key, position, length, owner, value);
+        link(slot);
+        size++;
+        return replaced;
+    }
+    // Removes the output in the slot, returns its record length
+    int remove(int slot)
+    {
+        int length = lengths[slot];
+        unlink(slot);
+        int mask = lengths.length - 1;
+        int empty = slot;
+        // Moves later entries of the probe run into the gap, unless that would put them before their home slot
+        for(int current = (slot + 1) & mask; lengths[current] != 0; current = (current + 1) & mask)
+        {
+            int home = home(keys[current * KEY_LONGS + KEY_LONGS - 1], mask);
+            boolean stays = empty <= current ? (home > empty && home <= current) : (home > empty || home <= current);
+            if(stays) continue;
+            move(current, empty);
+            empty = current;
+        }
+        lengths[empty] = 0;
+        size--;
+        return length;
+    }
+
+    long getPosition(int slot)
+    {
+        return positions[slot];
+    }
+
+    void setPosition(int slot, long position)
+    {
+        positions[slot] = position;
+    }
+
+    int getLength(int slot)
+    {
+        return lengths[slot];
+    }
+    // The id in hex, the same String as the output's id for every hash id
+    String getId(int slot)
+    {
+        byte[] id = new byte[StringUtil.SHA256_LENGTH];
+        for(int i = 0; i < KEY_LONGS; i++)
+        {
+            long part = keys[slot * KEY_LONGS + i];
+            for(int b = 0; b < 8; b++)
+            {
+                id[i * 8 + b] = (byte) (part >>> (56 - 8 * b));
+            }
+        }
+        return StringUtil.toHexString(id);
+    }
+
+    long getBalance(int owner)
+    {
+        Owner entry = owners.get(owner);
+        return entry == null ? 0 : entry.balance;
+    }
+    // Every owner with outputs in the index
+    int[] owners()
+    {
+        int[] ids = new int[owners.size()];
+        int count = 0;
+        for(int owner : owners.keySet())
+        {
+            ids[count++] = owner;
+        }
+        return ids;
+    }
+    // Slots of the owner's outputs in the order they were added
+    int[] slotsOf(int owner)
+    {
+        Owner entry = owners.get(owner);
+        if(entry == null) return new int[0];
+        int[] slots = new int[8];
+        int count = 0;
+        for(int slot = entry.head; slot != NONE; slot = next[slot])
+        {
+            if(count == slots.length) slots = Arrays.copyOf(slots, count * 2);
+            slots[count++] = slot;
+        }
+        return Arrays.copyOf(slots, count);
+    }
+
+    void clear()
+    {
+        owners.clear();
+        allocate(64);
+        size = 0;
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity * KEY_LONGS];
+        positions = new long[capacity];
+        lengths = new int[capacity];
+        ownerIds = new int[capacity];
+        values = new long[capacity];
+        previous = new int[capacity];
+        next = new int[capacity];
+    }
+    // Doubles the table, walking every owner's chain so the order of their outputs stays
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        long[] oldPositions = positions;
+        int[] oldLengths = lengths;
+        long[] oldValues = values;
+        int[] oldNext = next;
+        allocate(lengths.length * 2);
+        long[] key = new long[KEY_LONGS];
+        for(Map.Entry<Integer,Owner> entry : owners.entrySet())
+        {
+            Owner owner = entry.getValue();
+            int slot = owner.head;
+            owner.head = NONE;
+            owner.tail = NONE;
+            for(; slot != NONE; slot = oldNext[slot])
+            {
+                System.arraycopy(oldKeys, slot * KEY_LONGS, key, 0, KEY_LONGS);
+                int moved = insert(key, oldPositions[slot], oldLengths[slot], entry.getKey(), oldValues[slot]);
+                previous[moved] = owner.tail;
+                next[moved] = NONE;
+                if(owner.tail == NONE) owner.head = moved;
+                else next[owner.tail] = moved;
+                owner.tail = moved;
+            }
+        }
+    }
+    // Puts the entry in the first free slot from its home, without linking it
+    private int insert(long[] key, long position, int length, int owner, long value)
+    {
+        int mask = lengths.length - 1;
+        int slot = home(key[KEY_LONGS - 1], mask);
+        while(lengths[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        System.arraycopy(key, 0, keys, slot * KEY_LONGS, KEY_LONGS);
+        positions[slot] = position;
+        lengths[slot] = length;
+        ownerIds[slot] = owner;
+        values[slot] = value;
+        return slot;
+    }
+    // Appends the slot to its owner's chain and balance
+    private void link(int slot)
+    {
+        Owner owner = owners.computeIfAbsent(ownerIds[slot], id -> new Owner());
+        previous[slot] = owner.tail;
+        next[slot] = NONE;
+        if(owner.tail == NONE) owner.head = slot;
+        else next[owner.tail] = slot;
+        owner.tail = slot;
+        owner.balance = Amount.add(owner.balance, values[slot]);
+    }
+
+    private void unlink(int slot)
+    {
+        Owner owner = owners.get(ownerIds[slot]);
+        if(previous[slot] == NONE) owner.head = next[slot];
+        else next[previous[slot]] = next[slot];
+        if(next[slot] == NONE) owner.tail = previous[slot];
+        else previous[next[slot]] = previous[slot];
+        owner.balance -= values[slot];
+        if(owner.head == NONE) owners.remove(ownerIds[slot]);
+    }
+    // Moves an entry to an empty slot, pointing its neighbours in the owner's chain at the new slot
+    private void move(int from, int to)
+    {
+        System.arraycopy(keys, from * KEY_LONGS, keys, to * KEY_LONGS, KEY_LONGS);
+        positions[to] = positions[from];
+        lengths[to] = lengths[from];
+        ownerIds[to] = ownerIds[from];
+        values[to] = values[from];
+        previous[to] = previous[from];
+        next[to] = next[from];
+        Owner owner = owners.get(ownerIds[to]);
+        if(previous[to] == NONE) owner.head = to;
+        else next[previous[to]] = to;
+        if(next[to] == NONE) owner.tail = to;
+        else previous[next[to]] = to;
+        lengths[from] = 0;
+    }
+
+    private boolean matches(int slot, long[] key)
+    {
+        int offset = slot * KEY_LONGS;
+        for(int i = 0; i < KEY_LONGS; i++)
+        {
+            if(keys[offset + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private static int home(long last, int mask)
+    {
+        return (int) (last ^ (last >>> 32)) & mask;
+    }
+
+    private static long[] toKey(String id)
+    {
+        byte[] bytes = StringUtil.toHashBytes(id);
+        long[] key = new long[KEY_LONGS];
+        for(int i = 0; i < StringUtil.SHA256_LENGTH; i++)
+        {
+            key[i / 8] = (key[i / 8] << 8) | (bytes[i] & 0xFF);
+        }
+        return key;
+    }
+}
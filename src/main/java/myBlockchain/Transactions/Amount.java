@@ -0,0 +1,94 @@
+package myBlockchain.Transactions;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import myBlockchain.Util.VarInt;
+
+/*
+ * Fixed-point amounts. An amount is a plain long counting base units, one coin
+ * is COIN base units, so sums are exact and can live in primitive fields and
+ * arrays without boxing. This class only holds the arithmetic and formatting
+ * rules; all arithmetic is overflow-checked and throws ArithmeticException.
+ */
+public final class Amount
+{
+    public static final int DECIMALS = 8; // Digits after the decimal point
+    public static final long COIN = 100_000_000L; // Base units in one coin
+
+    private Amount()
+    {
+    }
+    // Converts whole coins into base units
+    public static long ofCoins(long coins)
+    {
+        return Math.multiplyExact(coins, COIN);
+    }
+    // Parses a decimal coin amount such as "0.1", rejecting anything finer than one base unit
+    public static long parse(String coins)
+    {
+        try
+        {
+            return new BigDecimal(coins).movePointRight(DECIMALS).longValueExact();
+        }
+        catch(ArithmeticException e)
+        {
+            throw new IllegalArgumentException("Not a valid amount: " + coins, e);
+        }
+    }
+    // Adds two amounts
+    public static long add(long a, long b)
+    {
+        return Math.addExact(a, b);
+    }
+    // Subtracts b from a
+    public static long subtract(long a, long b)
+    {
+        return Math.subtractExact(a, b);
+    }
+    // Adds up a list of amounts
+    public static long sum(long[] amounts)
+    {
+        long total = 0;
+        for(long amount : amounts)
+        {
+            total = Math.addExact(total, amount);
+        }
+        return total;
+    }
+    // Checks that an amount can be sent or held
+    public static boolean isValid(long amount)
+    {
+        return amount >= 0;
+    }
+    // Formats an amount in coins, "60.0" or "0.125"
+    public static String toString(long amount)
+    {
+        String text = BigDecimal.valueOf(amount, DECIMALS).stripTrailingZeros().toPlainString();
+        return text.indexOf('.') < 0 ? text + ".0" : text;
+    }
+    // Writes an amount as a varint, most amounts take far fewer than 8 bytes
+    public static void write(ByteBuffer out, long amount)
+    {
+        if(amount < 0)
+        {
+            throw new IllegalArgumentException("Negative amount: " + amount);
+        }
+        VarInt.writeUnsignedLong(out, amount);
+    }
+    // Reads an amount written by write()
+    public static long read(ByteBuffer in)
+    {
+        long amount = VarInt.readUnsignedLong(in);
+        if(amount < 0)
+        {
+            throw new IllegalArgumentException("Amount out of range");
+        }
+        return amount;
+    }
+    // Number of bytes write() uses for the amount
+    public static int encodedSize(long amount)
+    {
+        return VarInt.sizeOf(amount);
+    }
+}
@@ -0,0 +1,152 @@
+package myBlockchain.Transactions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Ways a wallet picks the outputs to spend for a payment.
+ *
+ * Every strategy gets the spendable outputs sorted largest first and the value
+ * they have to cover, and returns the outputs to spend or null when all of them
+ * together fall short. Fewer inputs mean a smaller transaction, less to verify
+ * and fewer outputs left in the UTXO set; spending the exact value means no
+ * change output at all.
+ */
+public enum CoinSelection
+{
+    // The largest outputs until the value is covered; no selection covers it with fewer inputs
+    LARGEST_FIRST
+    {
+        @Override
+        public List<TransactionOutput> select(List<TransactionOutput> outputs, long target)
+        {
+            List<TransactionOutput> selected = new ArrayList<TransactionOutput>();
+            long total = 0;
+            for(TransactionOutput output : outputs)
+            {
+                if(total >= target) break;
+                selected.add(output);
+                total = Amount.add(total, output.value);
+            }
+            return total >= target ? selected : null;
+        }
+    },
+    // Outputs adding up to exactly the value, found by a bounded depth-first search; FEWEST_INPUTS when there are none
+    BRANCH_AND_BOUND
+    {
+        @Override
+        public List<TransactionOutput> select(List<TransactionOutput> outputs, long target)
+        {
+            List<TransactionOutput> exact = exactMatch(outputs, target);
+            return exact != null ? exact : FEWEST_INPUTS.select(outputs, target);
+        }
+    },
+    // As few inputs as LARGEST_FIRST, each swapped for the smallest output that still covers the value, so the change stays small and large outputs are kept
+    FEWEST_INPUTS
+    {
+        @Override
+        public List<TransactionOutput> select(List<TransactionOutput> outputs, long target)
+        {
+            List<TransactionOutput> largest = LARGEST_FIRST.select(outputs, target);
+            if(largest == null || largest.isEmpty()) return largest;
+            int count = largest.size();
+            int[] chosen = new int[count];
+            long total = 0;
+            for(int i = 0; i < count; i++)
+            {
+                chosen[i] = i;
+                total += outputs.get(i).value;
+            }
+            // Smallest slot first, each moved to the last output between it and the next slot that keeps the value covered
+            for(int slot = count - 1; slot >= 0; slot--)
+            {
+                long others = total - outputs.get(chosen[slot]).value;
+                int limit = slot == count - 1 ? outputs.size() - 1 : chosen[slot + 1] - 1;
+                int moved = lastCovering(outputs, chosen[slot], limit, target - others);
+                total = others + outputs.get(moved).value;
+                chosen[slot] = moved;
+            }
+            List<TransactionOutput> selected = new ArrayList<TransactionOutput>(count);
+            for(int index : chosen)
+            {
+                selected.add(outputs.get(index));
+            }
+            return selected;
+        }
+    };
+
+    // Steps the exact match search takes before it gives up
+    static final int MAX_TRIES = 100_000;
+
+    // Outputs to spend for the target out of the given ones sorted largest first, or null when they do not add up to it
+    public abstract List<TransactionOutput> select(List<TransactionOutput> outputs, long target);
+
+    // Outputs summing to exactly the target, or null when none are found within MAX_TRIES steps
+    static List<TransactionOutput> exactMatch(List<TransactionOutput> outputs, long target)
+    {
+        int n = outputs.size();
+        long[] values = new long[n];
+        long[] remaining = new long[n + 1]; // Sum of the outputs from an index on, the most the rest of a branch can add
+        for(int i = n - 1; i >= 0; i--)
+        {
+            values[i] = outputs.get(i).value;
+            remaining[i] = Amount.add(remaining[i + 1], values[i]);
+        }
+        if(remaining[0] < target) return null;
+        int[] included = new int[n];
+        int depth = 0;
+        long sum = 0;
+        int i = 0;
+        for(int tries = 0; tries < MAX_TRIES; tries++)
+        {
+            if(sum == target)
+            {
+                List<TransactionOutput> selected = new ArrayList<TransactionOutput>(depth);
+                for(int d = 0; d < depth; d++)
+                {
+                    selected.add(outputs.get(included[d]));
+                }
+                return selected;
+            }
+            if(i < n && sum + remaining[i] >= target)
+            {
+                // Include the output when it fits, otherwise go on to the smaller ones
+                if(sum + values[i] <= target)
+                {
+                    included[depth++] = i;
+                    sum += values[i];
+                }
+                i++;
+                continue;
+            }
+            // Nothing below this branch reaches the target: leave out the last output taken
+            if(depth == 0) return null;
+            int last = included[--depth];
+            sum -= values[last];
+            i = last + 1;
+            // An equal output in its place would only repeat the same sums
+            while(i < n && values[i] == values[last]) i++;
+        }
+        return null;
+    }
+
+    // The last index from first to limit whose output is at least needed; first always is
+    private static int lastCovering(List<TransactionOutput> outputs, int first, int limit, long needed)
+    {
+        int low = first;
+        int high = limit;
+        while(low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+            if(outputs.get(middle).value >= needed)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,213 @@
+package myBlockchain.Transactions;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import myBlockchain.Util.Binary;
+
+/*
+ * Every public key the node has seen, interned by its encoded form.
+ *
+ * Each distinct key gets a small int id, handed out in order from 1, and is
+ * kept once together with its X.509 bytes and their Base64 string, so outputs,
+ * the UTXO stores and wallets hold an int instead of a key object and compare
+ * owners with ==. Keys read from disk or the network are registered from their
+ * bytes and only decoded when something asks for the key itself.
+ *
+ * A key read as part of a transaction that has not been checked yet only gets
+ * a pending id, a negative one from a table that drops its oldest key once it
+ * holds PENDING_CAPACITY, so keys made up by a peer do not stay for good.
+ * accept() registers such a key for good once an output to it is accepted,
+ * e.g. staged in a UTXOBatch or taken into the mempool; a pending id that was
+ * dropped before is unknown from then on. Until then isKey() tells whether a
+ * pending id stands for a key, by its bytes, so a block from a peer can be
+ * checked before any of its keys are registered.
+ *
+ * Ids only live as long as the process: everything written to disk or sent
+ * to other nodes still carries the encoded key. Registration is synchronized,
+ * lookups by id and by bytes do not lock.
+ */
+public final class KeyRegistry
+{
+    public static final int NONE = 0; // Id of no key
+    public static final int PENDING_CAPACITY = 1 << 15;
+
+    private static final ConcurrentHashMap<ByteBuffer,Integer> byEncoded = new ConcurrentHashMap<ByteBuffer,Integer>();
+    private static final ConcurrentHashMap<OwnerKey,Integer> byKey = new ConcurrentHashMap<OwnerKey,Integer>();
+    private static volatile Entry[] entries = new Entry[64];
+    private static int count = 1; // Next id, guarded by the class lock
+    // Keys with a pending id, oldest first; guarded by the class lock
+    private static final HashMap<ByteBuffer,Integer> pendingByEncoded = new HashMap<ByteBuffer,Integer>();
+    private static final LinkedHashMap<Integer,Entry> pending = new LinkedHashMap<Integer,Entry>()
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer,Entry> eldest)
+        {
+            if(size() <= PENDING_CAPACITY) return false;
+            pendingByEncoded.remove(ByteBuffer.wrap(eldest.getValue().encoded));
+            return true;
+        }
+    };
+    private static int nextPending = -1; // Guarded by the class lock
+
+    private static final class Entry
+    {
+        final byte[] encoded;
+        volatile PublicKey key; // Decoded on first use for keys registered from their bytes
+        volatile String string;
+
+        Entry(byte[] encoded, PublicKey key)
+        {
+            this.encoded = encoded;
+            this.key = key;
+        }
+    }
+
+    private KeyRegistry()
+    {
+    }
+    // Id of the key, registering it when it is new
+    public static int idOf(PublicKey key)
+    {
+        OwnerKey owner = new OwnerKey(key);
+        Integer id = byKey.get(owner);
+        if(id != null) return id;
+        id = register(key.getEncoded(), key);
+        byKey.putIfAbsent(owner, id);
+        return id;
+    }
+    // Id of the X.509 encoded key, registering it when it is new; the array must not be modified afterwards
+    public static int intern(byte[] encoded)
+    {
+        Integer id = byEncoded.get(ByteBuffer.wrap(encoded));
+        return id != null ? id : register(encoded, null);
+    }
+    // Id of the key if it is registered, NONE otherwise; never registers it
+    public static int find(PublicKey key)
+    {
+        Integer id = byKey.get(new OwnerKey(key));
+        if(id != null) return id;
+        id = byEncoded.get(ByteBuffer.wrap(key.getEncoded()));
+        return id != null ? id : NONE;
+    }
+    // True when the id is the key's; a pending id is compared by the key's bytes, the key may be registered by now
+    public static boolean isKey(int id, PublicKey key)
+    {
+        if(id > 0) return id == find(key);
+        return id != NONE && Arrays.equals(entry(id).encoded, encodedOf(key));
+    }
+    // The X.509 bytes of the key, shared from the registry when it is registered; never registers it
+    public static byte[] encodedOf(PublicKey key)
+    {
+        Integer id = byKey.get(new OwnerKey(key));
+        return id != null ? getEncoded(id) : key.getEncoded();
+    }
+    // Id of the X.509 encoded key if it is registered, otherwise a pending id for it; the array must not be modified afterwards
+    public static int internPending(byte[] encoded)
+    {
+        Integer id = byEncoded.get(ByteBuffer.wrap(encoded));
+        if(id != null) return id;
+        synchronized(KeyRegistry.class)
+        {
+            id = byEncoded.get(ByteBuffer.wrap(encoded));
+            if(id == null) id = pendingByEncoded.get(ByteBuffer.wrap(encoded));
+            if(id != null) return id;
+            id = nextPending;
+            nextPending = nextPending == Integer.MIN_VALUE ? -1 : nextPending - 1;
+            pending.put(id, new Entry(encoded, null));
+            pendingByEncoded.put(ByteBuffer.wrap(encoded), id);
+            return id;
+        }
+    }
+    // Registers the key with a pending id for good and returns its id; registered ids are returned as they are
+    public static int accept(int id)
+    {
+        if(id > 0) return id;
+        Entry entry = entry(id);
+        int accepted = register(entry.encoded, entry.key);
+        if(entry.key != null) byKey.putIfAbsent(new OwnerKey(entry.key), accepted);
+        return accepted;
+    }
+    // The key with the given id, decoded once when it was registered from its bytes
+    public static PublicKey getKey(int id)
+    {
+        Entry entry = entry(id);
+        PublicKey key = entry.key;
+        if(key == null)
+        {
+            synchronized(entry)
+            {
+                key = entry.key;
+                if(key == null)
+                {
+                    key = Binary.decodeKey(entry.encoded);
+                    entry.key = key;
+                    if(id > 0) byKey.putIfAbsent(new OwnerKey(key), id);
+                }
+            }
+        }
+        return key;
+    }
+    // The X.509 bytes of the key; the array is shared, callers must not modify it
+    public static byte[] getEncoded(int id)
+    {
+        return entry(id).encoded;
+    }
+    // The Base64 form of the key, same as StringUtil.getStringFromKey()
+    public static String getString(int id)
+    {
+        Entry entry = entry(id);
+        String string = entry.string;
+        if(string == null)
+        {
+            string = Base64.getEncoder().encodeToString(entry.encoded);
+            entry.string = string;
+        }
+        return string;
+    }
+    // Number of registered keys, pending ones not included
+    public static synchronized int size()
+    {
+        return count - 1;
+    }
+
+    private static synchronized int register(byte[] encoded, PublicKey key)
+    {
+        Integer existing = byEncoded.get(ByteBuffer.wrap(encoded));
+        if(existing != null) return existing;
+        int id = count++;
+        Entry[] current = entries;
+        if(id >= current.length)
+        {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = new Entry(encoded, key);
+        entries = current;
+        // Published after the entry, so an id found in the map always has one
+        byEncoded.put(ByteBuffer.wrap(encoded), id);
+        return id;
+    }
+
+    private static Entry entry(int id)
+    {
+        if(id < 0)
+        {
+            synchronized(KeyRegistry.class)
+            {
+                Entry entry = pending.get(id);
+                if(entry == null) throw new IllegalArgumentException("Unknown key id " + id + ", it is no longer pending");
+                return entry;
+            }
+        }
+        Entry[] current = entries;
+        Entry entry = id > 0 && id < current.length ? current[id] : null;
+        if(entry == null) throw new IllegalArgumentException("Unknown key id " + id);
+        return entry;
+    }
+}
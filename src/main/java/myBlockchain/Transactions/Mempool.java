@@ -0,0 +1,348 @@
+package myBlockchain.Transactions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import myBlockchain.myBlockchain;
+import myBlockchain.Blockchain.Block;
+
+/*
+ * Pool of signed transactions waiting to be mined.
+ *
+ * Transactions are looked up by id and by the outputs they spend in concurrent
+ * maps, so submitting from many threads only contends on the fee ordering. Each
+ * spent output is claimed with putIfAbsent, the first transaction to claim it
+ * wins and a later double-spend is rejected. Transactions are also kept sorted
+ * by fee per byte, in a tree rather than a binary heap so that confirmed ones
+ * can be taken out in O(log n). Once the pool's estimated memory use passes its
+ * budget the cheapest transactions are evicted and anything paying less than
+ * them is turned away, which is the back-pressure a full pool gives submitters.
+ *
+ * Inputs have to be confirmed outputs: a pooled transaction has no outputs
+ * until it is processed into a block, so transactions cannot chain in the pool.
+ */
+public class Mempool
+{
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    static final int ENTRY_OVERHEAD = 512; // Estimated heap for the objects, keys and map entries around one transaction
+
+    public enum Result
+    {
+        ADDED, // Accepted into the pool
+        DUPLICATE, // Already in the pool
+        INVALID, // Bad signature, missing or unknown inputs, or value and fee not covered
+        DOUBLE_SPEND, // Spends an output another pooled transaction already spends
+        FEE_TOO_LOW // The pool is full and this does not pay more than what would be evicted
+    }
+
+    // A pooled transaction with what it is ranked by
+    private static final class Entry
+    {
+        final Transaction transaction;
+        final String id;
+        final int size;
+        final double feeRate;
+        final long sequence; // Ties between equal fee rates go to the earlier transaction
+
+        Entry(Transaction transaction, int size, long sequence)
+        {
+            this.transaction = transaction;
+            this.id = transaction.transactionId;
+            this.size = size;
+            this.feeRate = transaction.fee / (double) size;
+            this.sequence = sequence;
+        }
+
+        long usage()
+        {
+            return size + ENTRY_OVERHEAD;
+        }
+    }
+
+    private static final Comparator<Entry> CHEAPEST_FIRST = Comparator
+            .comparingDouble((Entry entry) -> entry.feeRate)
+            .thenComparing(Comparator.comparingLong((Entry entry) -> entry.sequence).reversed());
+
+    private final long maxBytes;
+    private final UTXOStore confirmed; // Null for myBlockchain.UTXOs, whichever store it is at the time
+    private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+    private final ConcurrentHashMap<String,String> spentOutputs = new ConcurrentHashMap<String,String>(); // Output id -> id of the pooled transaction spending it
+    private final TreeSet<Entry> byFeeRate = new TreeSet<Entry>(CHEAPEST_FIRST);
+    private final ReentrantLock orderLock = new ReentrantLock();
+    private final AtomicLong usage = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public Mempool()
+    {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public Mempool(long maxBytes)
+    {
+        this(maxBytes, null);
+    }
+    // A pool whose inputs are checked against the given store, e.g. the ledger of a network node
+    public Mempool(long maxBytes, UTXOStore confirmed)
+    {
+        if(maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("Memory budget must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.confirmed = confirmed;
+    }
+    // Validates and adds a signed transaction
+    public Result add(Transaction transaction)
+    {
+        if(transaction == null) return Result.INVALID;
+        return add(transaction, transaction.verifiySignature());
+    }
+    // Adds a batch, verifying all signatures in parallel first; result[i] is for transactions.get(i)
+    public Result[] addAll(List<Transaction> transactions)
+    {
+        boolean[] signatures = myBlockchain.signatureVerifier.verifyAll(transactions);
+        Result[] results = new Result[transactions.size()];
+        for(int i = 0; i < results.length; i++)
+        {
+            Transaction transaction = transactions.get(i);
+            results[i] = transaction == null ? Result.INVALID : add(transaction, signatures[i]);
+        }
+        return results;
+    }
+
+    private Result add(Transaction transaction, boolean signatureValid)
+    {
+        if(transaction.transactionId != null && entries.containsKey(transaction.transactionId)) return Result.DUPLICATE;
+        if(!signatureValid || !hasValidInputs(transaction)) return Result.INVALID;
+        String id = transaction.getId();
+
+        Entry entry = new Entry(transaction, transaction.getEncodedSize(), sequence.getAndIncrement());
+        if(isFull(entry.usage()) && !outbids(entry)) return Result.FEE_TOO_LOW;
+        // Claim the spent outputs, giving them back if one is already taken
+        List<TransactionInput> inputs = transaction.inputs;
+        for(int i = 0; i < inputs.size(); i++)
+        {
+            if(spentOutputs.putIfAbsent(inputs.get(i).transactionOutputId, id) != null)
+            {
+                for(int j = 0; j < i; j++)
+                {
+                    spentOutputs.remove(inputs.get(j).transactionOutputId, id);
+                }
+                return Result.DOUBLE_SPEND;
+            }
+        }
+        if(entries.putIfAbsent(id, entry) != null)
+        {
+            release(entry);
+            return Result.DUPLICATE;
+        }
+        orderLock.lock();
+        try
+        {
+            // A concurrent remove() may already have taken the entry out again
+            if(entries.get(id) == entry)
+            {
+                byFeeRate.add(entry);
+                usage.addAndGet(entry.usage());
+                evictOverBudget();
+            }
+        }
+        finally
+        {
+            orderLock.unlock();
+        }
+        if(!entries.containsKey(id)) return Result.FEE_TOO_LOW;
+        // Pooled for longer than a key stays pending, so the owners of its outputs are registered for good
+        for(TransactionOutput output : transaction.outputs)
+        {
+            output.owner = KeyRegistry.accept(output.owner);
+        }
+        return Result.ADDED;
+    }
+    // Removes a transaction, returns it or null when it was not pooled
+    public Transaction remove(String id)
+    {
+        Entry entry = id == null ? null : entries.remove(id);
+        if(entry == null) return null;
+        orderLock.lock();
+        try
+        {
+            // Eviction may have got to it first and already given its usage back
+            if(byFeeRate.remove(entry)) usage.addAndGet(-entry.usage());
+        }
+        finally
+        {
+            orderLock.unlock();
+        }
+        release(entry);
+        return entry.transaction;
+    }
+    // Drops the block's transactions and every pooled transaction that conflicts with them
+    public void removeForBlock(Block block)
+    {
+        for(Transaction transaction : block.transactions)
+        {
+            remove(transaction.transactionId);
+            if(transaction.inputs == null) continue;
+            for(TransactionInput input : transaction.inputs)
+            {
+                String spender = spentOutputs.get(input.transactionOutputId);
+                if(spender != null) remove(spender);
+            }
+        }
+    }
+    // The best paying transactions by fee per byte whose encoded size fits into maxBytes, in one pass
+    public List<Transaction> getBlockTemplate(long maxBytes)
+    {
+        List<Transaction> template = new ArrayList<Transaction>();
+        long used = 0;
+        orderLock.lock();
+        try
+        {
+            for(Entry entry : byFeeRate.descendingSet())
+            {
+                if(used + entry.size > maxBytes) continue; // A smaller one further down may still fit
+                used += entry.size;
+                template.add(entry.transaction);
+            }
+        }
+        finally
+        {
+            orderLock.unlock();
+        }
+        return template;
+    }
+
+    public boolean contains(String id)
+    {
+        return id != null && entries.containsKey(id);
+    }
+
+    public Transaction get(String id)
+    {
+        Entry entry = id == null ? null : entries.get(id);
+        return entry == null ? null : entry.transaction;
+    }
+    // Id of the pooled transaction spending the given output, or null
+    public String getSpender(String outputId)
+    {
+        return spentOutputs.get(outputId);
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+    // Estimated heap used by the pooled transactions, in bytes
+    public long getUsage()
+    {
+        return usage.get();
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+    // Fee per byte a transaction has to beat while the pool is full, 0 while an average transaction still fits
+    public double getMinFeeRate()
+    {
+        orderLock.lock();
+        try
+        {
+            if(byFeeRate.isEmpty()) return 0;
+            long average = usage.get() / byFeeRate.size();
+            return isFull(average) ? byFeeRate.first().feeRate : 0;
+        }
+        finally
+        {
+            orderLock.unlock();
+        }
+    }
+
+    public Collection<Transaction> getTransactions()
+    {
+        List<Transaction> transactions = new ArrayList<Transaction>(entries.size());
+        for(Entry entry : entries.values())
+        {
+            transactions.add(entry.transaction);
+        }
+        return transactions;
+    }
+
+    public void clear()
+    {
+        orderLock.lock();
+        try
+        {
+            entries.clear();
+            spentOutputs.clear();
+            byFeeRate.clear();
+            usage.set(0);
+        }
+        finally
+        {
+            orderLock.unlock();
+        }
+    }
+    // Every input has to be an unspent confirmed output and together they have to cover value and fee
+    private boolean hasValidInputs(Transaction transaction)
+    {
+        if(transaction.inputs == null || transaction.inputs.isEmpty()) return false;
+        long paid = transaction.getTotalValue();
+        if(paid < 0 || !Amount.isValid(transaction.fee)) return false;
+        UTXOStore confirmed = (this.confirmed == null ? myBlockchain.UTXOs : this.confirmed).readView();
+        int sender = KeyRegistry.find(transaction.sender);
+        if(sender == KeyRegistry.NONE) return false; // A key that owns no output was never registered
+        long total = 0;
+        for(TransactionInput input : transaction.inputs)
+        {
+            TransactionOutput output = confirmed.get(input.transactionOutputId);
+            if(output == null || !output.isMine(sender)) return false;
+            total = Amount.add(total, output.value);
+        }
+        return total >= myBlockchain.minimumTransaction && total >= Amount.add(paid, transaction.fee);
+    }
+
+    private boolean isFull(long extra)
+    {
+        return usage.get() + extra > maxBytes;
+    }
+
+    private boolean outbids(Entry entry)
+    {
+        orderLock.lock();
+        try
+        {
+            return byFeeRate.isEmpty() || entry.feeRate > byFeeRate.first().feeRate;
+        }
+        finally
+        {
+            orderLock.unlock();
+        }
+    }
+    // Called with the order lock held
+    private void evictOverBudget()
+    {
+        while(usage.get() > maxBytes && !byFeeRate.isEmpty())
+        {
+            Entry cheapest = byFeeRate.pollFirst();
+            entries.remove(cheapest.id, cheapest);
+            usage.addAndGet(-cheapest.usage());
+            release(cheapest);
+        }
+    }
+
+    private void release(Entry entry)
+    {
+        for(TransactionInput input : entry.transaction.inputs)
+        {
+            spentOutputs.remove(input.transactionOutputId, entry.id);
+        }
+    }
+}
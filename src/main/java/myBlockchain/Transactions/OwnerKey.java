@@ -0,0 +1,33 @@
+package myBlockchain.Transactions;
+
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+
+/*
+ * Public key used as a map key, hashed by its curve point.
+ * BouncyCastle keys decoded from their encoded form are equal to the original
+ * key but do not share its hashCode, so the key itself cannot be the map key.
+ */
+final class OwnerKey
+{
+    final PublicKey key;
+    private final int hash;
+
+    OwnerKey(PublicKey key)
+    {
+        this.key = key;
+        this.hash = key instanceof ECPublicKey ? ((ECPublicKey) key).getW().hashCode() : key.hashCode();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        return other instanceof OwnerKey && key.equals(((OwnerKey) other).key);
+    }
+}
@@ -0,0 +1,19 @@
+package myBlockchain.Transactions;
+
+import java.security.PublicKey;
+
+/*
+ * One recipient of a transaction paying several, and what it gets.
+ * Payments are signed with the transaction, so they cannot change once it is.
+ */
+public final class Payment
+{
+    public final PublicKey reciever; // Who gets the funds
+    public final long value; // Amount paid, in base units
+
+    public Payment(PublicKey reciever, long value)
+    {
+        this.reciever = reciever;
+        this.value = value;
+    }
+}
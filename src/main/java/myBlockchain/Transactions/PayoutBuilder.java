@@ -0,0 +1,158 @@
+package myBlockchain.Transactions;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import myBlockchain.myBlockchain;
+
+/*
+ * Builds the transactions for a large number of payments from one wallet.
+ *
+ * Payments are packed maxPayments to a transaction, each transaction paying
+ * every one of its recipients with an output of its own plus at most one
+ * change output, and paying the fee once. The wallet's outputs are read from
+ * the UTXO store once for the whole batch and the inputs of every transaction
+ * are reserved from that one index, so nothing is rescanned per payment. The
+ * transactions are then signed on a fork-join pool, each worker thread reusing
+ * its own pooled Signature instance (see StringUtil).
+ *
+ * Building takes the payments out of the builder, so it can be filled again
+ * for the next batch and a second build() never pays anyone twice. When
+ * signing fails the inputs reserved for the batch are handed back. A builder
+ * is meant to be filled and built from one thread.
+ */
+public class PayoutBuilder
+{
+    public static final int DEFAULT_MAX_PAYMENTS = 200; // Keeps a transaction well under a block
+
+    private final Wallet wallet;
+    private final long fee;
+    private final ForkJoinPool pool;
+    private final ArrayList<Payment> payments = new ArrayList<Payment>();
+    private int maxPayments = DEFAULT_MAX_PAYMENTS;
+
+    // Payouts from the wallet, paying the given fee for each transaction built
+    public PayoutBuilder(Wallet wallet, long fee)
+    {
+        this(wallet, fee, ForkJoinPool.commonPool());
+    }
+
+    public PayoutBuilder(Wallet wallet, long fee, ForkJoinPool pool)
+    {
+        if(!Amount.isValid(fee)) throw new IllegalArgumentException("Invalid fee " + fee);
+        this.wallet = wallet;
+        this.fee = fee;
+        this.pool = pool;
+    }
+    // Adds a payment of value to the reciever
+    public PayoutBuilder add(PublicKey reciever, long value)
+    {
+        if(value <= 0) throw new IllegalArgumentException("Payments must be positive: " + value);
+        payments.add(new Payment(reciever, value));
+        return this;
+    }
+    // Most payments one transaction carries
+    public void setMaxPayments(int maxPayments)
+    {
+        if(maxPayments < 1) throw new IllegalArgumentException("A transaction carries at least one payment: " + maxPayments);
+        this.maxPayments = maxPayments;
+    }
+    // Number of payments added so far
+    public int size()
+    {
+        return payments.size();
+    }
+    // Sum of the payments and the fees of the transactions they take
+    public long getTotal()
+    {
+        long total = 0;
+        for(Payment payment : payments)
+        {
+            total = Amount.add(total, payment.value);
+        }
+        long transactions = (payments.size() + maxPayments - 1) / maxPayments;
+        return Amount.add(total, Math.multiplyExact(transactions, fee));
+    }
+    // Builds and signs the transactions paying everything added and clears the payments, or returns null
+    // and reserves nothing when the wallet cannot cover it; a signing failure is thrown with nothing reserved
+    public List<Transaction> build()
+    {
+        List<List<Payment>> chunks = new ArrayList<List<Payment>>();
+        for(int from = 0; from < payments.size(); from += maxPayments)
+        {
+            chunks.add(payments.subList(from, Math.min(from + maxPayments, payments.size())));
+        }
+        wallet.getBalance();
+        if(wallet.UTXOs.getAvailable() < getTotal())
+        {
+            System.err.println("#Not Enough funds to send payouts. Payouts Discarded.");
+            return null;
+        }
+        List<Transaction> transactions = new ArrayList<Transaction>(chunks.size());
+        for(List<Payment> chunk : chunks)
+        {
+            long needed = fee;
+            for(Payment payment : chunk)
+            {
+                needed = Amount.add(needed, payment.value);
+            }
+            List<TransactionOutput> selected = wallet.UTXOs.reserve(wallet.coinSelection, Math.max(needed, myBlockchain.minimumTransaction));
+            if(selected == null)
+            {
+                // Only when the minimum transaction amount asks for more than the payments left
+                for(Transaction transaction : transactions)
+                {
+                    wallet.release(transaction);
+                }
+                System.err.println("#Not Enough funds to send payouts. Payouts Discarded.");
+                return null;
+            }
+            ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>(selected.size());
+            for(TransactionOutput output : selected)
+            {
+                inputs.add(new TransactionInput(output.id));
+            }
+            transactions.add(new Transaction(wallet.publicKey, chunk, fee, inputs));
+        }
+        boolean signed = false;
+        try
+        {
+            sign(transactions);
+            signed = true;
+        }
+        finally
+        {
+            if(!signed)
+            {
+                for(Transaction transaction : transactions)
+                {
+                    wallet.release(transaction);
+                }
+            }
+        }
+        payments.clear();
+        return transactions;
+    }
+
+    private void sign(List<Transaction> transactions)
+    {
+        try
+        {
+            pool.submit(() -> IntStream.range(0, transactions.size()).parallel()
+                .forEach(i -> transactions.get(i).generateSignature(wallet.privateKey))).get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package myBlockchain.Transactions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import myBlockchain.Util.StringUtil;
+
+/*
+ * Remembers signatures that already passed ECDSA verification.
+ * An entry is the SHA-256 of (signed payload, public key, signature), so a hit
+ * proves the exact same bytes were verified before. Only successful checks are
+ * stored. The cache is split into segments, each one a small LRU map with its
+ * own lock, so parallel verifiers rarely wait on each other.
+ */
+public class SignatureCache
+{
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SignatureCache(int capacity)
+    {
+        if(capacity < SEGMENTS)
+        {
+            throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS);
+        }
+        for(int i = 0; i < SEGMENTS; i++)
+        {
+            segments[i] = new Segment(capacity / SEGMENTS);
+        }
+    }
+    // Verifies the signature, skipping the ECDSA math when the same signature was verified before
+    public boolean verify(PublicKey publicKey, String data, byte[] signature)
+    {
+        return verify(publicKey, data.getBytes(StandardCharsets.UTF_8), signature);
+    }
+
+    public boolean verify(PublicKey publicKey, byte[] data, byte[] signature)
+    {
+        ByteBuffer key = cacheKey(publicKey, data, signature);
+        Segment segment = segmentFor(key);
+        if(segment.contains(key))
+        {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        boolean valid = StringUtil.verifyECDSASig(publicKey, data, signature);
+        if(valid)
+        {
+            segment.add(key);
+        }
+        return valid;
+    }
+    // Number of verifications answered from the cache
+    public long getHits()
+    {
+        return hits.sum();
+    }
+    // Number of verifications that had to run ECDSA
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+    // Number of signatures currently cached
+    public int size()
+    {
+        int size = 0;
+        for(Segment segment : segments)
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+    // Drops every cached signature
+    public void clear()
+    {
+        for(Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    private Segment segmentFor(ByteBuffer key)
+    {
+        return segments[key.get(0) & (SEGMENTS - 1)];
+    }
+    // Length prefixes keep (payload, key, signature) unambiguous before hashing
+    private static ByteBuffer cacheKey(PublicKey publicKey, byte[] payload, byte[] signature)
+    {
+        byte[] encodedKey = KeyRegistry.encodedOf(publicKey);
+        ByteBuffer buffer = ByteBuffer.allocate(12 + payload.length + encodedKey.length + signature.length);
+        buffer.putInt(payload.length).put(payload);
+        buffer.putInt(encodedKey.length).put(encodedKey);
+        buffer.putInt(signature.length).put(signature);
+        buffer.flip();
+        return ByteBuffer.wrap(StringUtil.sha256(buffer));
+    }
+
+    private static class Segment
+    {
+        private final LinkedHashMap<ByteBuffer, Boolean> entries;
+
+        Segment(int capacity)
+        {
+            // Access order turns the map into an LRU, the eldest entry is dropped once full
+            entries = new LinkedHashMap<ByteBuffer, Boolean>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest)
+                {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized boolean contains(ByteBuffer key)
+        {
+            return entries.get(key) != null;
+        }
+
+        synchronized void add(ByteBuffer key)
+        {
+            entries.put(key, Boolean.TRUE);
+        }
+
+        synchronized int size()
+        {
+            return entries.size();
+        }
+
+        synchronized void clear()
+        {
+            entries.clear();
+        }
+    }
+}
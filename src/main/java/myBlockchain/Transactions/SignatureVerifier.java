@@ -0,0 +1,78 @@
+package myBlockchain.Transactions;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/*
+ * Checks the signatures of a whole list of transactions at once.
+ * The work is spread over a fork-join pool and each worker thread reuses its
+ * own pooled Signature instance (see StringUtil), so a block with thousands of
+ * transactions is verified on all cores instead of one at a time.
+ */
+public class SignatureVerifier
+{
+    private static final int PARALLEL_THRESHOLD = 4; // Smaller batches are cheaper to verify inline
+
+    private final ForkJoinPool pool;
+
+    public SignatureVerifier()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public SignatureVerifier(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+    // Verifies every transaction, result[i] tells if transactions.get(i) is correctly signed
+    public boolean[] verifyAll(List<Transaction> transactions)
+    {
+        boolean[] results = new boolean[transactions.size()];
+        if(results.length < PARALLEL_THRESHOLD)
+        {
+            for(int i = 0; i < results.length; i++)
+            {
+                results[i] = verify(transactions.get(i));
+            }
+            return results;
+        }
+        try
+        {
+            pool.submit(() -> IntStream.range(0, results.length).parallel()
+                .forEach(i -> results[i] = verify(transactions.get(i)))).get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+    // Verifies every transaction and tells if all of them are correctly signed
+    public boolean allValid(List<Transaction> transactions)
+    {
+        for(boolean valid : verifyAll(transactions))
+        {
+            if(!valid) return false;
+        }
+        return true;
+    }
+    // A malformed signature counts as an invalid one instead of failing the whole batch
+    private static boolean verify(Transaction transaction)
+    {
+        try
+        {
+            return transaction.verifiySignature();
+        }
+        catch(RuntimeException e)
+        {
+            return false;
+        }
+    }
+}
@@ -2,111 +2,281 @@ package myBlockchain.Transactions;
 
 import java.security.*;
 import java.util.ArrayList;
+import java.util.List;
 
 import myBlockchain.Util.StringUtil;
 import myBlockchain.myBlockchain;
 
 public class Transaction
 {
+    public static final int VERSION = 3; // Signs and hashes the binary body with the further payments, see TransactionCodec
+    public static final int SINGLE_PAYMENT_VERSION = 2; // Binary body without payments, read from block stores before them
+    public static final int LEGACY_VERSION = 1; // Signs a string of the fields, read from old block stores
+
     public String transactionId; // Unique identifier for this transaction
     public PublicKey sender; // Who is sending the funds
     public PublicKey reciever; // Who is receiving the funds
-    public float value; // Amount being sent
+    public long value; // Amount being sent, in base units
+    public long fee; // Left to the miner on top of value, in base units
     public byte[] signature; // Digital signature to prove ownership
+    public int version = VERSION; // How the transaction is signed and hashed
 
+    public ArrayList<Payment> payments = new ArrayList<Payment>(); // Further recipients after reciever, each paid by its own output
     public ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>();
     public ArrayList<TransactionOutput> outputs = new ArrayList<TransactionOutput>();
 
-    private static int sequence = 0; // Counter for unique transaction IDs
+    public Transaction(PublicKey sender, PublicKey reciever, long value,  ArrayList<TransactionInput> inputs)
+    {
+        this(sender, reciever, value, 0, inputs);
+    }
 
-    public Transaction(PublicKey sender, PublicKey reciever, float value,  ArrayList<TransactionInput> inputs)
+    public Transaction(PublicKey sender, PublicKey reciever, long value, long fee, ArrayList<TransactionInput> inputs)
     {
         this.sender = sender;
         this.reciever = reciever;
         this.value = value;
+        this.fee = fee;
         this.inputs = inputs;
     }
+    // Pays every one of the payments in one transaction, the first one through reciever and value
+    public Transaction(PublicKey sender, List<Payment> payments, long fee, ArrayList<TransactionInput> inputs)
+    {
+        this(sender, payments.get(0).reciever, payments.get(0).value, fee, inputs);
+        this.payments.addAll(payments.subList(1, payments.size()));
+    }
+
+    // The encoded form as built for the fields it covers; a changed field makes it stale and it is built again
+    private static final class Encoded
+    {
+        final int version;
+        final PublicKey sender;
+        final PublicKey reciever;
+        final long value;
+        final long fee;
+        final Payment[] payments;
+        final String[] inputIds;
+        final byte[] body;
+        // The whole transaction, null until toBytes() asks for it
+        final String transactionId;
+        final byte[] signature;
+        final int outputCount;
+        final byte[] bytes;
+
+        Encoded(Transaction transaction, byte[] body, byte[] bytes)
+        {
+            version = transaction.version;
+            sender = transaction.sender;
+            reciever = transaction.reciever;
+            value = transaction.value;
+            fee = transaction.fee;
+            payments = transaction.payments == null ? new Payment[0] : transaction.payments.toArray(new Payment[0]);
+            inputIds = inputIds(transaction.inputs);
+            this.body = body;
+            transactionId = transaction.transactionId;
+            signature = transaction.signature;
+            outputCount = transaction.outputs.size();
+            this.bytes = bytes;
+        }
+
+        boolean coversBody(Transaction transaction)
+        {
+            if(version != transaction.version || sender != transaction.sender || reciever != transaction.reciever
+                    || value != transaction.value || fee != transaction.fee) return false;
+            int paymentCount = transaction.payments == null ? 0 : transaction.payments.size();
+            if(paymentCount != payments.length) return false;
+            for(int i = 0; i < paymentCount; i++)
+            {
+                if(transaction.payments.get(i) != payments[i]) return false;
+            }
+            int inputs = transaction.inputs == null ? 0 : transaction.inputs.size();
+            if(inputs != inputIds.length) return false;
+            for(int i = 0; i < inputs; i++)
+            {
+                if(transaction.inputs.get(i).transactionOutputId != inputIds[i]) return false;
+            }
+            return true;
+        }
+
+        boolean covers(Transaction transaction)
+        {
+            return bytes != null && coversBody(transaction) && transactionId == transaction.transactionId
+                    && signature == transaction.signature && outputCount == transaction.outputs.size();
+        }
+
+        private static String[] inputIds(ArrayList<TransactionInput> inputs)
+        {
+            String[] ids = new String[inputs == null ? 0 : inputs.size()];
+            for(int i = 0; i < ids.length; i++)
+            {
+                ids[i] = inputs.get(i).transactionOutputId;
+            }
+            return ids;
+        }
+    }
 
-    // Calculates a unique hash for this transaction
+    private volatile Encoded encoded;
+
+    // The signed part of the transaction in its binary form, see TransactionCodec
+    public byte[] getBody() 
+    {
+		Encoded current = encoded;
+		if(current != null && current.coversBody(this)) return current.body;
+		current = new Encoded(this, TransactionCodec.encodeBody(this), null);
+		encoded = current;
+		return current.body;
+	}
+    // The whole transaction in its binary form, built once and kept while the transaction does not change.
+    // The array is shared, callers must not modify it.
+    public byte[] toBytes() 
+    {
+		Encoded current = encoded;
+		if(current != null && current.covers(this)) return current.bytes;
+		byte[] body = getBody();
+		current = new Encoded(this, body, TransactionCodec.encode(this, body));
+		encoded = current;
+		return current.bytes;
+	}
+    // Size of toBytes(), e.g. to rank transactions by fee per byte
+    public int getEncodedSize() 
+    {
+		return toBytes().length;
+	}
+    // Calculates the transaction hash from its body; the spent inputs make it unique, as an output can only be spent once
 	private String calulateHash() 
     {
-		sequence++;
-		return StringUtil.applySHA256(
-				StringUtil.getStringFromKey(sender) +
-				StringUtil.getStringFromKey(reciever) +
-				Float.toString(value) + sequence
-				);
+		return StringUtil.sha256Hex(getBody());
+	}
+    // Returns the transaction id, assigning one first if the transaction has none yet
+    public String getId() 
+    {
+		if(transactionId == null) transactionId = calulateHash();
+		return transactionId;
 	}
     // Signs the transaction with the sender's private key
     public void generateSignature(PrivateKey privateKey) 
     {
-	    String data = StringUtil.getStringFromKey(sender) + StringUtil.getStringFromKey(reciever) + Float.toString(value)	;
-	    signature = StringUtil.applyECDSASig(privateKey,data);		
+	    signature = StringUtil.applyECDSASig(privateKey, getSignatureData());		
     }
     // Verifies the transaction signature is valid
     public boolean verifiySignature() 
     {
-	    String data = StringUtil.getStringFromKey(sender) + StringUtil.getStringFromKey(reciever) + Float.toString(value)	;
-	    return StringUtil.verifyECDSASig(sender, data, signature);
+	    return myBlockchain.signatureCache.verify(sender, getSignatureData(), signature);
     }
+    // What the signature covers, the body; legacy transactions sign their fields as a string, with the fee only appended when there is one
+    private byte[] getSignatureData() 
+    {
+	    if(version != LEGACY_VERSION) return getBody();
+	    String data = keyString(sender) + keyString(reciever) + Long.toString(value);
+	    return (fee == 0 ? data : data + ":" + Long.toString(fee)).getBytes();
+    }
+    // The Base64 form of a key, from the registry when it is registered, without registering it
+    private static String keyString(PublicKey key) 
+    {
+		int id = KeyRegistry.find(key);
+		return id != KeyRegistry.NONE ? KeyRegistry.getString(id) : StringUtil.getStringFromKey(key);
+	}
     // Processes the transaction and updates the UTXO set
     public boolean processTransaction() 
+    {
+		return processTransaction(false);
+	}
+    // Same as processTransaction(), the signature check is skipped when a batch verifier already did it
+    public boolean processTransaction(boolean signatureVerified) 
+    {
+		UTXOBatch batch = new UTXOBatch(myBlockchain.UTXOs);
+		if(!processTransaction(signatureVerified, batch)) return false;
+		batch.commit();
+		return true;
+	}
+    // Validates the transaction against the batch and stages its spends and new outputs there
+    public boolean processTransaction(boolean signatureVerified, UTXOBatch batch) 
     {
 		// Verify the transaction signature
-		if(verifiySignature() == false) {
+		if(!signatureVerified && verifiySignature() == false) {
 			System.out.println("#Transaction Signature failed to verify");
 			return false;
 		}
 		
-        // Gather transaction inputs from UTXO set
+        // Gather transaction inputs from the UTXOs, including the ones staged in the batch
 		for(TransactionInput i : inputs) 
         {
-			i.UTXO = myBlockchain.UTXOs.get(i.transactionOutputId);
+			i.UTXO = batch.get(i.transactionOutputId);
 		}
         // Check minimum transaction amount
-		if(getInputsValue() < myBlockchain.minimumTransaction) 
+		long inputsValue = getInputsValue();
+		if(inputsValue < myBlockchain.minimumTransaction) 
+        {
+			System.out.println("#Transaction Inputs to small: " + Amount.toString(inputsValue));
+			return false;
+		}
+        // Inputs have to cover every payment plus the fee
+		long paid = getTotalValue();
+		if(paid < 0 || !Amount.isValid(fee) || Amount.add(paid, fee) > inputsValue) 
         {
-			System.out.println("#Transaction Inputs to small: " + getInputsValue());
+			System.out.println("#Transaction value not covered by inputs: " + Amount.toString(paid));
 			return false;
 		}
 		
 		//generate transaction outputs:
-		float leftOver = getInputsValue() - value; //get value of inputs then the left over change:
-		transactionId = calulateHash();
-		outputs.add(new TransactionOutput( this.reciever, value,transactionId)); //send value to recipient
-		outputs.add(new TransactionOutput( this.sender, leftOver,transactionId)); //send the left over 'change' back to sender		
+		createOutputs(inputsValue - paid - fee); //get value of inputs then the left over change, the fee is what remains
 		
-        // Add new outputs to global UTXO set
-		for(TransactionOutput o : outputs) 
-        {
-			myBlockchain.UTXOs.put(o.id , o);
-		}
-        // Remove spent UTXOs from global set
+        // Stage the spent UTXOs and the new outputs
 		for(TransactionInput i : inputs) 
         {
 			if(i.UTXO == null) continue; //if Transaction can't be found skip it 
-			myBlockchain.UTXOs.remove(i.UTXO.id);
+			batch.remove(i.UTXO.id);
+		}
+		for(TransactionOutput o : outputs) 
+        {
+			batch.put(o);
 		}
 		
 		return true;
 	}
+    // Adds the outputs for the reciever, each payment and the change; processing does this, a block rebuilt from pooled copies does it itself
+	public void createOutputs(long leftOver) 
+    {
+		getId();
+		outputs.add(new TransactionOutput( this.reciever, value,transactionId)); //send value to recipient
+		for(Payment payment : payments) 
+        {
+			outputs.add(new TransactionOutput(KeyRegistry.idOf(payment.reciever), payment.value, transactionId, outputs.size())); //one output per further recipient
+		}
+		if(leftOver > 0) 
+        {
+			outputs.add(new TransactionOutput(KeyRegistry.idOf(this.sender), leftOver, transactionId, outputs.size())); //send the left over 'change' back to sender
+		}
+	}
+    // Value paid to all recipients, -1 when one of the amounts is invalid
+	public long getTotalValue() 
+    {
+		if(!Amount.isValid(value)) return -1;
+		long total = value;
+		if(payments == null) return total;
+		for(Payment payment : payments) 
+        {
+			if(!Amount.isValid(payment.value)) return -1;
+			total = Amount.add(total, payment.value);
+		}
+		return total;
+	}
     // Calculates total value of all inputs
-	public float getInputsValue() 
+	public long getInputsValue() 
     {
-		float total = 0;
+		long total = 0;
 		for(TransactionInput i : inputs) 
         {
 			if(i.UTXO == null) continue;
-			total += i.UTXO.value;
+			total = Amount.add(total, i.UTXO.value);
 		}
 		return total;
 	}
     // Calculates total value of all outputs
-	public float getOutputsValue() 
+	public long getOutputsValue() 
     {
-		float total = 0;
+		long total = 0;
 		for(TransactionOutput o : outputs) {
-			total += o.value;
+			total = Amount.add(total, o.value);
 		}
 		return total;
 	}
@@ -0,0 +1,151 @@
+package myBlockchain.Transactions;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.ArrayList;
+
+import myBlockchain.Util.Binary;
+import myBlockchain.Util.VarInt;
+
+/*
+ * Canonical binary form of transactions and their outputs, the one form used
+ * for ids, signatures, storage and the network:
+ *
+ *   body        version | sender key | reciever key | value | fee | input count | spent output ids
+ *               | payment count | (reciever key | value) ...
+ *   transaction body | id | signature | output count | (output id | output) ...
+ *   output      reciever key | value | parent transaction id
+ *
+ * Keys are length-prefixed X.509 bytes, amounts and counts are varints and ids
+ * are 32 raw bytes (see Binary.Writer.writeHash). A transaction id is the
+ * SHA-256 of its body and the sender signs the body; an output id is the
+ * SHA-256 of the output, followed by its position in the transaction for all
+ * but the first output. Transactions keep their encoded form once built, see
+ * Transaction.toBytes().
+ *
+ * Transactions of version 2 were created before transactions could pay more
+ * than one recipient and have no payments in their body. Transactions of
+ * version 1 were created before this format and sign a string made of their
+ * fields instead; both are still read and written here with their version in
+ * their body.
+ *
+ * Keys are written from the bytes KeyRegistry keeps for them, without
+ * registering keys it does not know yet. Decoding gives every key it reads a
+ * pending id there, so the same key read twice is the same object and outputs
+ * come back holding only its id, but a key only stays once an output to it is
+ * accepted. The codec keeps no state and can be used from any thread.
+ */
+public class TransactionCodec
+{
+    // What the sender signs and the id is hashed from
+    public static byte[] encodeBody(Transaction transaction)
+    {
+        Binary.Writer out = new Binary.Writer(256);
+        out.write(transaction.version);
+        out.writeByteArray(KeyRegistry.encodedOf(transaction.sender));
+        out.writeByteArray(KeyRegistry.encodedOf(transaction.reciever));
+        out.writeVarInt(transaction.value);
+        out.writeVarInt(transaction.fee);
+        int inputs = transaction.inputs == null ? 0 : transaction.inputs.size();
+        out.writeVarInt(inputs);
+        for(int i = 0; i < inputs; i++)
+        {
+            out.writeHash(transaction.inputs.get(i).transactionOutputId);
+        }
+        if(transaction.version >= Transaction.VERSION)
+        {
+            int payments = transaction.payments == null ? 0 : transaction.payments.size();
+            out.writeVarInt(payments);
+            for(int i = 0; i < payments; i++)
+            {
+                Payment payment = transaction.payments.get(i);
+                out.writeByteArray(KeyRegistry.encodedOf(payment.reciever));
+                out.writeVarInt(payment.value);
+            }
+        }
+        return out.toByteArray();
+    }
+    // The whole transaction behind its already encoded body
+    static byte[] encode(Transaction transaction, byte[] body)
+    {
+        Binary.Writer out = new Binary.Writer(body.length + 64 + transaction.outputs.size() * 128);
+        out.write(body, 0, body.length);
+        out.writeHash(transaction.transactionId);
+        out.writeByteArray(transaction.signature == null ? new byte[0] : transaction.signature);
+        out.writeVarInt(transaction.outputs.size());
+        for(TransactionOutput output : transaction.outputs)
+        {
+            out.writeHash(output.id);
+            writeOutput(out, output.owner, output.value, output.parentTransactionId, 0);
+        }
+        return out.toByteArray();
+    }
+    // The bytes the id of the output at the given position is hashed from
+    public static byte[] encodeOutput(int owner, long value, String parentTransactionId, int index)
+    {
+        Binary.Writer out = new Binary.Writer(128);
+        writeOutput(out, owner, value, parentTransactionId, index);
+        return out.toByteArray();
+    }
+
+    private static void writeOutput(Binary.Writer out, int owner, long value, String parentTransactionId, int index)
+    {
+        out.writeByteArray(KeyRegistry.getEncoded(owner));
+        out.writeVarInt(value);
+        out.writeHash(parentTransactionId);
+        if(index > 0) out.writeVarInt(index);
+    }
+    // Reads a transaction written by Transaction.toBytes()
+    public Transaction decode(ByteBuffer in)
+    {
+        int version = in.get();
+        if(version < 1 || version > Transaction.VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported transaction version " + version);
+        }
+        PublicKey sender = readKey(in);
+        PublicKey reciever = readKey(in);
+        long value = Amount.read(in);
+        long fee = Amount.read(in);
+        int inputCount = VarInt.readUnsignedInt(in);
+        ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>(Math.min(inputCount, 1024));
+        for(int i = 0; i < inputCount; i++)
+        {
+            inputs.add(new TransactionInput(Binary.readHash(in)));
+        }
+        Transaction transaction = new Transaction(sender, reciever, value, fee, inputs);
+        transaction.version = version;
+        if(version >= Transaction.VERSION)
+        {
+            int paymentCount = VarInt.readUnsignedInt(in);
+            transaction.payments.ensureCapacity(Math.min(paymentCount, 1024));
+            for(int i = 0; i < paymentCount; i++)
+            {
+                transaction.payments.add(new Payment(readKey(in), Amount.read(in)));
+            }
+        }
+        transaction.transactionId = Binary.readHash(in);
+        byte[] signature = Binary.readBytes(in);
+        transaction.signature = signature.length == 0 ? null : signature;
+        int outputCount = VarInt.readUnsignedInt(in);
+        for(int i = 0; i < outputCount; i++)
+        {
+            String id = Binary.readHash(in);
+            int owner = KeyRegistry.internPending(Binary.readBytes(in));
+            long outputValue = Amount.read(in);
+            String parent = Binary.readHash(in);
+            transaction.outputs.add(new TransactionOutput(id, owner, outputValue, parent));
+        }
+        return transaction;
+    }
+
+    public Transaction decode(byte[] bytes)
+    {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+    // Reads a length-prefixed encoded key, the same key object for the same bytes while it is pending
+    public PublicKey readKey(ByteBuffer in)
+    {
+        return KeyRegistry.getKey(KeyRegistry.internPending(Binary.readBytes(in)));
+    }
+}
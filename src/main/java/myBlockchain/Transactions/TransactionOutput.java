@@ -3,27 +3,55 @@ package myBlockchain.Transactions;
 import java.security.PublicKey;
 import myBlockchain.Util.StringUtil;
 
-public class TransactionOutput 
+public class TransactionOutput
 {
 	public String id; // Unique identifier for this output
-	public PublicKey reciever; // Who can spend this output
-	public float value; // Amount of funds in this output
+	public int owner; // Who can spend this output, as a KeyRegistry id
+	public long value; // Amount of funds in this output, in base units
 	public String parentTransactionId; // ID of the transaction that created this output
-	
+
 	//Constructor
-	public TransactionOutput(PublicKey reciever, float value, String parentTransactionId) 
+	public TransactionOutput(PublicKey reciever, long value, String parentTransactionId)
+    {
+		this(KeyRegistry.idOf(reciever), value, parentTransactionId);
+	}
+
+	public TransactionOutput(int owner, long value, String parentTransactionId)
+    {
+		this(owner, value, parentTransactionId, 0);
+	}
+	// The output at the given position of its transaction; the position keeps two equal payments in one transaction apart
+	public TransactionOutput(int owner, long value, String parentTransactionId, int index)
+    {
+		this.owner = owner;
+		this.value = value;
+		this.parentTransactionId = parentTransactionId;
+        // Generate unique ID based on recipient, value, parent transaction and position
+		this.id = StringUtil.sha256Hex(TransactionCodec.encodeOutput(owner, value, parentTransactionId, index));
+	}
+	// Recreates an output whose id is already known, e.g. when it is read back from disk
+	public TransactionOutput(String id, int owner, long value, String parentTransactionId)
     {
-		this.reciever = reciever;
+		this.id = id;
+		this.owner = owner;
 		this.value = value;
 		this.parentTransactionId = parentTransactionId;
-        // Generate unique ID based on recipient, value, and parent transaction
-		this.id = StringUtil.applySHA256(StringUtil.getStringFromKey(reciever)+Float.toString(value)+parentTransactionId);
 	}
-	
+	// The key that can spend this output
+	public PublicKey getReciever()
+    {
+		return KeyRegistry.getKey(owner);
+	}
+
     // Checks if this output belongs to the given public key
-	public boolean isMine(PublicKey publicKey) 
+	public boolean isMine(PublicKey publicKey)
+    {
+		return KeyRegistry.isKey(owner, publicKey);
+	}
+    // Checks if this output belongs to the key with the given KeyRegistry id
+	public boolean isMine(int keyId)
     {
-		return (publicKey == reciever);
+		return owner == keyId;
 	}
-	
+
 }
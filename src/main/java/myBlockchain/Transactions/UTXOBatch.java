@@ -0,0 +1,83 @@
+package myBlockchain.Transactions;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/*
+ * Spends and creates staged on top of a UTXOStore.
+ * Lookups see the staged changes first, so a transaction can spend an output
+ * created earlier in the same batch and an output spent in the batch cannot be
+ * spent again. Nothing reaches the store until the batch is committed.
+ * An output created and spent within the batch never reaches the store at all.
+ * Not thread-safe.
+ */
+public class UTXOBatch
+{
+    private final UTXOStore store;
+    private final LinkedHashMap<String,TransactionOutput> created = new LinkedHashMap<String,TransactionOutput>();
+    private final LinkedHashSet<String> spent = new LinkedHashSet<String>();
+
+    public UTXOBatch(UTXOStore store)
+    {
+        this.store = store;
+    }
+    // The store this batch is staged on
+    public UTXOStore getStore()
+    {
+        return store;
+    }
+    // Returns the output as it would be after the batch is committed, or null
+    public TransactionOutput get(String id)
+    {
+        TransactionOutput output = created.get(id);
+        if(output != null) return output;
+        if(spent.contains(id)) return null;
+        return store.get(id);
+    }
+    // Stages a new unspent output, registering its owner for good when the key was only pending
+    public void put(TransactionOutput output)
+    {
+        output.owner = KeyRegistry.accept(output.owner);
+        created.put(output.id, output);
+    }
+    // Stages spending an output, returns it or null when it is not unspent
+    public TransactionOutput remove(String id)
+    {
+        TransactionOutput output = created.remove(id);
+        if(output != null) return output;
+        if(spent.contains(id)) return null;
+        output = store.get(id);
+        if(output != null) spent.add(id);
+        return output;
+    }
+    // Outputs to add to the store, in the order they were staged
+    public Collection<TransactionOutput> getCreated()
+    {
+        return Collections.unmodifiableCollection(created.values());
+    }
+    // Ids of store outputs to remove
+    public Set<String> getSpent()
+    {
+        return Collections.unmodifiableSet(spent);
+    }
+
+    public boolean isEmpty()
+    {
+        return created.isEmpty() && spent.isEmpty();
+    }
+    // Drops everything staged so far
+    public void clear()
+    {
+        created.clear();
+        spent.clear();
+    }
+    // Applies the batch to its store and starts a new one
+    public void commit()
+    {
+        store.commit(this);
+        clear();
+    }
+}
@@ -0,0 +1,134 @@
+package myBlockchain.Transactions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The in-memory UTXOStore: unspent transaction outputs, indexed by id and by owner.
+ * Next to the id -> output map it keeps, per owner key id, the ids of the
+ * outputs that key can spend and their running total. Both are updated on every
+ * put/remove, so a balance lookup never has to scan the whole set.
+ */
+public class UTXOSet implements UTXOStore
+{
+    private final HashMap<String,TransactionOutput> outputs = new HashMap<String,TransactionOutput>();
+    private final HashMap<Integer,Owner> owners = new HashMap<Integer,Owner>();
+
+    // Index entry for one owner
+    private static class Owner
+    {
+        final LinkedHashSet<String> outputIds = new LinkedHashSet<String>();
+        long balance;
+    }
+    // Returns the unspent output with the given id, or null
+    public TransactionOutput get(String id)
+    {
+        return outputs.get(id);
+    }
+    // Checks if an output with the given id is unspent
+    public boolean containsKey(String id)
+    {
+        return outputs.containsKey(id);
+    }
+    // Adds an unspent output, replacing any output with the same id
+    public void put(String id, TransactionOutput output)
+    {
+        TransactionOutput previous = outputs.put(id, output);
+        if(previous != null)
+        {
+            unindex(id, previous);
+        }
+        Owner owner = owners.computeIfAbsent(output.owner, key -> new Owner());
+        owner.outputIds.add(id);
+        owner.balance = Amount.add(owner.balance, output.value);
+    }
+    // Removes a spent output, returns it or null when it was not in the set
+    public TransactionOutput remove(String id)
+    {
+        TransactionOutput removed = outputs.remove(id);
+        if(removed != null)
+        {
+            unindex(id, removed);
+        }
+        return removed;
+    }
+    // Number of unspent outputs
+    public int size()
+    {
+        return outputs.size();
+    }
+    // All unspent outputs
+    public Collection<TransactionOutput> values()
+    {
+        return Collections.unmodifiableCollection(outputs.values());
+    }
+    // Sum of the outputs the key with the given KeyRegistry id can spend
+    public long getBalance(int ownerId)
+    {
+        Owner owner = owners.get(ownerId);
+        return owner == null ? 0 : owner.balance;
+    }
+    // The outputs the key with the given KeyRegistry id can spend, in the order they were added
+    public List<TransactionOutput> getOutputs(int ownerId)
+    {
+        Owner owner = owners.get(ownerId);
+        if(owner == null) return Collections.emptyList();
+        List<TransactionOutput> owned = new ArrayList<TransactionOutput>(owner.outputIds.size());
+        for(String id : owner.outputIds)
+        {
+            owned.add(outputs.get(id));
+        }
+        return owned;
+    }
+    // Applies a batch; nothing in here can fail halfway, so it is atomic as it is
+    public void commit(UTXOBatch batch)
+    {
+        for(String id : batch.getSpent())
+        {
+            remove(id);
+        }
+        for(TransactionOutput output : batch.getCreated())
+        {
+            put(output.id, output);
+        }
+    }
+    // A copy that shares the outputs but none of the maps
+    public UTXOSet copy()
+    {
+        UTXOSet copy = new UTXOSet();
+        copy.outputs.putAll(outputs);
+        for(Map.Entry<Integer,Owner> entry : owners.entrySet())
+        {
+            Owner owner = new Owner();
+            owner.outputIds.addAll(entry.getValue().outputIds);
+            owner.balance = entry.getValue().balance;
+            copy.owners.put(entry.getKey(), owner);
+        }
+        return copy;
+    }
+    // Removes every output
+    public void clear()
+    {
+        outputs.clear();
+        owners.clear();
+    }
+
+    private void unindex(String id, TransactionOutput output)
+    {
+        Owner owner = owners.get(output.owner);
+        if(owner == null || !owner.outputIds.remove(id)) return;
+        if(owner.outputIds.isEmpty())
+        {
+            owners.remove(output.owner);
+        }
+        else
+        {
+            owner.balance -= output.value;
+        }
+    }
+}
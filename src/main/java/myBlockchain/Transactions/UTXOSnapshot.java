@@ -0,0 +1,222 @@
+package myBlockchain.Transactions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/*
+ * An immutable version of the unspent outputs.
+ * Each version is the changes of one commit layered over the version before
+ * it, down to a UTXOSet that is never modified once a version uses it. apply()
+ * returns a new version and leaves this one as it was, so a reader holding a
+ * version keeps seeing the same outputs for as long as it likes, without locks.
+ * Lookups walk the layers newest first; once there are more than MAX_DEPTH the
+ * layers are folded into a fresh copy of the base, which keeps lookups bounded
+ * at the cost of an occasional O(n) copy.
+ */
+public final class UTXOSnapshot implements UTXOStore
+{
+    static final int MAX_DEPTH = 32;
+
+    private final UTXOSnapshot parent; // Null for the base version
+    private final UTXOSet base;
+    private final HashMap<String,TransactionOutput> created;
+    private final HashSet<String> spent;
+    private final HashMap<Integer,Long> balanceChanges;
+    private final HashMap<Integer,List<TransactionOutput>> createdByOwner;
+    private final int depth;
+    private final int size;
+
+    private UTXOSnapshot(UTXOSet base)
+    {
+        this.parent = null;
+        this.base = base;
+        this.created = new HashMap<String,TransactionOutput>();
+        this.spent = new HashSet<String>();
+        this.balanceChanges = new HashMap<Integer,Long>();
+        this.createdByOwner = new HashMap<Integer,List<TransactionOutput>>();
+        this.depth = 0;
+        this.size = base.size();
+    }
+
+    private UTXOSnapshot(UTXOSnapshot parent, UTXOBatch batch)
+    {
+        this.parent = parent;
+        this.base = parent.base;
+        this.created = new HashMap<String,TransactionOutput>(batch.getCreated().size() * 2);
+        this.spent = new HashSet<String>(batch.getSpent().size() * 2);
+        this.balanceChanges = new HashMap<Integer,Long>();
+        this.createdByOwner = new HashMap<Integer,List<TransactionOutput>>();
+        this.depth = parent.depth + 1;
+        int size = parent.size;
+        // Same order as UTXOStore.commit(): spends first, then creates
+        for(String id : batch.getSpent())
+        {
+            TransactionOutput output = parent.get(id);
+            if(output == null) continue;
+            spent.add(id);
+            balanceChanges.merge(output.owner, -output.value, Long::sum);
+            size--;
+        }
+        for(TransactionOutput output : batch.getCreated())
+        {
+            TransactionOutput replaced = spent.contains(output.id) ? null : parent.get(output.id);
+            if(replaced != null)
+            {
+                // Same as put() over an existing id: the old output goes away
+                spent.add(output.id);
+                balanceChanges.merge(replaced.owner, -replaced.value, Long::sum);
+                size--;
+            }
+            created.put(output.id, output);
+            balanceChanges.merge(output.owner, output.value, Long::sum);
+            createdByOwner.computeIfAbsent(output.owner, key -> new ArrayList<TransactionOutput>()).add(output);
+            size++;
+        }
+        this.size = size;
+    }
+    // A version holding nothing
+    public static UTXOSnapshot empty()
+    {
+        return new UTXOSnapshot(new UTXOSet());
+    }
+    // A version holding the given outputs
+    public static UTXOSnapshot of(Collection<TransactionOutput> outputs)
+    {
+        UTXOSet base = new UTXOSet();
+        for(TransactionOutput output : outputs)
+        {
+            base.put(output.id, output);
+        }
+        return new UTXOSnapshot(base);
+    }
+    // The version after the batch, this one is left unchanged
+    public UTXOSnapshot apply(UTXOBatch batch)
+    {
+        if(batch.isEmpty()) return this;
+        UTXOSnapshot next = new UTXOSnapshot(this, batch);
+        return next.depth > MAX_DEPTH ? next.flatten() : next;
+    }
+    // The same outputs as a single layer over a new base
+    UTXOSnapshot flatten()
+    {
+        if(parent == null) return this;
+        UTXOSet outputs = base.copy();
+        for(UTXOSnapshot layer : layers())
+        {
+            for(String id : layer.spent)
+            {
+                outputs.remove(id);
+            }
+            for(TransactionOutput output : layer.created.values())
+            {
+                outputs.put(output.id, output);
+            }
+        }
+        return new UTXOSnapshot(outputs);
+    }
+    // Every output in this version, folding the layers first when there are any
+    public Collection<TransactionOutput> values()
+    {
+        return flatten().base.values();
+    }
+    // Number of layers above the base
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    @Override
+    public TransactionOutput get(String id)
+    {
+        for(UTXOSnapshot layer = this; layer.parent != null; layer = layer.parent)
+        {
+            TransactionOutput output = layer.created.get(id);
+            if(output != null) return output;
+            if(layer.spent.contains(id)) return null;
+        }
+        return base.get(id);
+    }
+
+    @Override
+    public boolean containsKey(String id)
+    {
+        return get(id) != null;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public long getBalance(int owner)
+    {
+        long balance = base.getBalance(owner);
+        for(UTXOSnapshot layer = this; layer.parent != null; layer = layer.parent)
+        {
+            Long change = layer.balanceChanges.get(owner);
+            if(change != null) balance += change;
+        }
+        return balance;
+    }
+
+    @Override
+    public List<TransactionOutput> getOutputs(int owner)
+    {
+        List<TransactionOutput> outputs = new ArrayList<TransactionOutput>(base.getOutputs(owner));
+        for(UTXOSnapshot layer : layers())
+        {
+            if(!layer.balanceChanges.containsKey(owner)) continue; // Nothing of this owner's in the layer
+            if(!layer.spent.isEmpty()) outputs.removeIf(output -> layer.spent.contains(output.id));
+            List<TransactionOutput> added = layer.createdByOwner.get(owner);
+            if(added != null) outputs.addAll(added);
+        }
+        return Collections.unmodifiableList(outputs);
+    }
+
+    @Override
+    public UTXOStore readView()
+    {
+        return this;
+    }
+
+    @Override
+    public void put(String id, TransactionOutput output)
+    {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+
+    @Override
+    public TransactionOutput remove(String id)
+    {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+
+    @Override
+    public void commit(UTXOBatch batch)
+    {
+        throw new UnsupportedOperationException("Snapshots are read-only, use apply()");
+    }
+
+    @Override
+    public void clear()
+    {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+    // The layers above the base, oldest first
+    private List<UTXOSnapshot> layers()
+    {
+        List<UTXOSnapshot> layers = new ArrayList<UTXOSnapshot>(depth);
+        for(UTXOSnapshot layer = this; layer.parent != null; layer = layer.parent)
+        {
+            layers.add(layer);
+        }
+        Collections.reverse(layers);
+        return layers;
+    }
+}
@@ -0,0 +1,52 @@
+package myBlockchain.Transactions;
+
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Storage for the unspent transaction outputs.
+ * UTXOSet keeps everything on the heap, DiskUTXOStore keeps the outputs on disk
+ * and only a compact index in memory. Changes made by a block are staged in a
+ * UTXOBatch and applied with commit(), which either applies all of them or none.
+ * Ledger and UTXOSnapshot keep immutable versions of the outputs for readers
+ * that must not see a commit halfway, see readView().
+ */
+public interface UTXOStore
+{
+    // Returns the unspent output with the given id, or null
+    TransactionOutput get(String id);
+    // Checks if an output with the given id is unspent
+    boolean containsKey(String id);
+    // Adds an unspent output, replacing any output with the same id
+    void put(String id, TransactionOutput output);
+    // Removes a spent output, returns it or null when it was not in the store
+    TransactionOutput remove(String id);
+    // Number of unspent outputs
+    int size();
+    // Sum of the outputs the key with the given KeyRegistry id can spend
+    long getBalance(int owner);
+    // The outputs the key with the given KeyRegistry id can spend, in the order they were added
+    List<TransactionOutput> getOutputs(int owner);
+    // Sum of the outputs the given key can spend
+    default long getBalance(PublicKey publicKey)
+    {
+        int owner = KeyRegistry.find(publicKey);
+        return owner == KeyRegistry.NONE ? 0 : getBalance(owner);
+    }
+    // The outputs the given key can spend, in the order they were added
+    default List<TransactionOutput> getOutputs(PublicKey publicKey)
+    {
+        int owner = KeyRegistry.find(publicKey);
+        return owner == KeyRegistry.NONE ? Collections.<TransactionOutput>emptyList() : getOutputs(owner);
+    }
+    // Applies every spend and create staged in the batch as one atomic change
+    void commit(UTXOBatch batch);
+    // Removes every output
+    void clear();
+    // A view that does not change under the caller, for reads that have to agree with each other; plain stores return themselves
+    default UTXOStore readView()
+    {
+        return this;
+    }
+}
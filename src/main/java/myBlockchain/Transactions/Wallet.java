@@ -3,8 +3,7 @@ package myBlockchain.Transactions;
 import java.security.*;
 import java.security.spec.ECGenParameterSpec; //Elliptic-curve cryptography
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import myBlockchain.myBlockchain;
 
@@ -13,9 +12,12 @@ public class Wallet
 {
     public PrivateKey privateKey; //To sign our transactions
     public PublicKey publicKey; //To verify that our signature is valid and data has not been tampered with
+    public int keyId; //The public key's KeyRegistry id, what the outputs this wallet can spend hold
 
-    // Local copy of UTXOs owned by this wallet
-    public HashMap<String,TransactionOutput> UTXOs = new HashMap<String,TransactionOutput>();
+    // Local index of the UTXOs owned by this wallet, with the ones reserved by unconfirmed sends
+    public final WalletUTXOIndex UTXOs = new WalletUTXOIndex();
+    // How sendFunds() picks the outputs to spend
+    public CoinSelection coinSelection = CoinSelection.BRANCH_AND_BOUND;
 
 
     public Wallet()
@@ -36,6 +38,7 @@ public class Wallet
 
             privateKey = keyPair.getPrivate();
             publicKey = keyPair.getPublic();
+            keyId = KeyRegistry.idOf(publicKey);
         } 
         catch (Exception e) 
         {
@@ -43,50 +46,55 @@ public class Wallet
         }
     }
     // Calculates and returns the wallet's current balance
-    public float getBalance() 
+    public long getBalance() 
     {
-	    float total = 0;	
-        // Check all UTXOs in the blockchain for ones belonging to this wallet
-        for (Map.Entry<String, TransactionOutput> item: myBlockchain.UTXOs.entrySet())
-        {
-        	TransactionOutput UTXO = item.getValue();
-            if(UTXO.isMine(publicKey)) 
-            {
-                // Add to local UTXO collection and total balance
-            	UTXOs.put(UTXO.id,UTXO);
-            	total += UTXO.value ; 
-            }
-        }  
-		return total;
+        // One snapshot for both reads, so a block applied meanwhile cannot make them disagree
+        UTXOStore view = myBlockchain.UTXOs.readView();
+        // Only this wallet's outputs are visited, the owner index keeps the running total
+        UTXOs.sync(view.getOutputs(keyId));
+		return view.getBalance(keyId);
+	}
+    // The balance not reserved by sends that are still waiting to be confirmed
+    public long getAvailableBalance() 
+    {
+		getBalance();
+		return UTXOs.getAvailable();
 	}
     // Creates and signs a new transaction to send funds
-    public Transaction sendFunds(PublicKey _reciever,float value ) 
+    public Transaction sendFunds(PublicKey _reciever,long value ) 
+    {
+		return sendFunds(_reciever, value, 0);
+	}
+    // Same as sendFunds(), paying the given fee on top of the value
+    public Transaction sendFunds(PublicKey _reciever, long value, long fee) 
     {
-        // Check if wallet has sufficient funds
-		if(getBalance() < value) 
+		long needed = Amount.add(value, fee);
+		getBalance();
+        // Pick and reserve the inputs in one step, outputs reserved by earlier sends are left alone
+		List<TransactionOutput> selected = UTXOs.reserve(coinSelection, Math.max(needed, myBlockchain.minimumTransaction));
+		if(selected == null) 
         {
 			System.err.println("#Not Enough funds to send transaction. Transaction Discarded.");
 			return null;
 		}
-        // Gather inputs to cover the transaction amount
-		ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>();
-		float total = 0;
-		for (Map.Entry<String, TransactionOutput> item: UTXOs.entrySet())
+		ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>(selected.size());
+		for(TransactionOutput UTXO : selected)
         {
-			TransactionOutput UTXO = item.getValue();
-			total += UTXO.value;
 			inputs.add(new TransactionInput(UTXO.id));
-            // Stop when we have enough to cover the transaction
-			if(total > value) break;
 		}
         // Create and sign the new transaction
-		Transaction newTransaction = new Transaction(publicKey, _reciever , value, inputs);
+		Transaction newTransaction = new Transaction(publicKey, _reciever , value, fee, inputs);
 		newTransaction.generateSignature(privateKey);
-        // Remove used UTXOs from wallet's local collection
-		for(TransactionInput input: inputs)
+		return newTransaction;
+	}
+    // Hands back the outputs a send reserved, for a transaction that will not be confirmed
+    public void release(Transaction transaction) 
+    {
+		ArrayList<String> ids = new ArrayList<String>(transaction.inputs.size());
+		for(TransactionInput input : transaction.inputs)
         {
-			UTXOs.remove(input.transactionOutputId);
+			ids.add(input.transactionOutputId);
 		}
-		return newTransaction;
+		UTXOs.release(ids);
 	}
 }
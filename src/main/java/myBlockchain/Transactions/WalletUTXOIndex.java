@@ -0,0 +1,145 @@
+package myBlockchain.Transactions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/*
+ * A wallet's own unspent outputs, sorted largest first, and the ones reserved
+ * by sends that are not confirmed yet.
+ *
+ * sync() brings the index in line with the outputs the UTXO store holds for
+ * the wallet's key: new outputs are added, spent ones are dropped together
+ * with their reservation. Only the difference touches the sorted set, so a
+ * sync is one pass over the owned outputs. reserve() picks outputs with a
+ * CoinSelection and reserves them in one step, so two sends running at once
+ * never pick the same output; release() hands them back when a send will not
+ * be confirmed after all.
+ */
+public class WalletUTXOIndex
+{
+    // Largest first, ties by id so the order does not depend on the map
+    private static final Comparator<TransactionOutput> ORDER = Comparator.comparingLong((TransactionOutput output) -> output.value).reversed()
+            .thenComparing(output -> output.id);
+
+    private final HashMap<String,TransactionOutput> outputs = new HashMap<String,TransactionOutput>();
+    private final TreeSet<TransactionOutput> available = new TreeSet<TransactionOutput>(ORDER);
+    private final HashSet<String> reserved = new HashSet<String>();
+    private long balance;
+    private long reservedValue;
+
+    // Makes the index hold exactly the given outputs, keeping the reservations of the ones still there
+    public synchronized void sync(Collection<TransactionOutput> owned)
+    {
+        HashSet<String> ids = new HashSet<String>(owned.size() * 2);
+        for(TransactionOutput output : owned)
+        {
+            ids.add(output.id);
+            if(!outputs.containsKey(output.id)) add(output);
+        }
+        if(ids.size() == outputs.size()) return;
+        Iterator<Map.Entry<String,TransactionOutput>> entries = outputs.entrySet().iterator();
+        while(entries.hasNext())
+        {
+            TransactionOutput output = entries.next().getValue();
+            if(ids.contains(output.id)) continue;
+            entries.remove();
+            drop(output);
+        }
+    }
+    // Returns the output with the given id, or null
+    public synchronized TransactionOutput get(String id)
+    {
+        return outputs.get(id);
+    }
+    // Number of outputs, reserved ones included
+    public synchronized int size()
+    {
+        return outputs.size();
+    }
+    // Sum of all outputs, reserved ones included
+    public synchronized long getBalance()
+    {
+        return balance;
+    }
+    // Sum of the outputs no send has reserved
+    public synchronized long getAvailable()
+    {
+        return balance - reservedValue;
+    }
+    // Sum of the outputs reserved by sends
+    public synchronized long getReserved()
+    {
+        return reservedValue;
+    }
+
+    public synchronized boolean isReserved(String id)
+    {
+        return reserved.contains(id);
+    }
+    // The outputs no send has reserved, largest first
+    public synchronized List<TransactionOutput> getAvailableOutputs()
+    {
+        return new ArrayList<TransactionOutput>(available);
+    }
+    // Picks outputs covering the target with the strategy and reserves them, or returns null and reserves nothing
+    public synchronized List<TransactionOutput> reserve(CoinSelection strategy, long target)
+    {
+        if(getAvailable() < target) return null;
+        List<TransactionOutput> selected = strategy.select(new ArrayList<TransactionOutput>(available), target);
+        if(selected == null) return null;
+        for(TransactionOutput output : selected)
+        {
+            available.remove(output);
+            reserved.add(output.id);
+            reservedValue += output.value;
+        }
+        return selected;
+    }
+    // Makes the outputs with the given ids available again
+    public synchronized void release(Collection<String> ids)
+    {
+        for(String id : ids)
+        {
+            TransactionOutput output = outputs.get(id);
+            if(output == null || !reserved.remove(id)) continue;
+            reservedValue -= output.value;
+            available.add(output);
+        }
+    }
+    // Drops every output and reservation
+    public synchronized void clear()
+    {
+        outputs.clear();
+        available.clear();
+        reserved.clear();
+        balance = 0;
+        reservedValue = 0;
+    }
+
+    private void add(TransactionOutput output)
+    {
+        outputs.put(output.id, output);
+        available.add(output);
+        balance = Amount.add(balance, output.value);
+    }
+
+    private void drop(TransactionOutput output)
+    {
+        balance -= output.value;
+        if(reserved.remove(output.id))
+        {
+            reservedValue -= output.value;
+        }
+        else
+        {
+            available.remove(output);
+        }
+    }
+}
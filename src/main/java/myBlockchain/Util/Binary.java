@@ -0,0 +1,189 @@
+package myBlockchain.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.KeyRegistry;
+import myBlockchain.Transactions.TransactionOutput;
+
+/*
+ * Field encoding shared by the on-disk and wire formats.
+ * Strings and byte arrays are varint length prefixed. A null string is written
+ * as length 0 plus a marker byte so it survives the round trip. Hashes kept as
+ * hex strings are written as their 32 raw bytes.
+ */
+public final class Binary
+{
+    private static final ThreadLocal<KeyFactory> KEY_FACTORY = ThreadLocal.withInitial(() -> {
+        try
+        {
+            return KeyFactory.getInstance("ECDSA", "BC");
+        }
+        catch(Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    });
+
+    private static final int HASH = 1;  // 32 raw bytes follow
+    private static final int LABEL = 2; // Not a hash (null, or a label like the "0" genesis id), a string follows
+
+    private Binary()
+    {
+    }
+
+    public static byte[] readBytes(ByteBuffer in)
+    {
+        byte[] bytes = new byte[VarInt.readLength(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    public static String readString(ByteBuffer in)
+    {
+        int length = VarInt.readLength(in);
+        if(length == 0)
+        {
+            return in.get() == 0 ? null : "";
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    // Reads an output written by Writer.writeOutput()
+    public static TransactionOutput readOutput(ByteBuffer in)
+    {
+        String id = readString(in);
+        int owner = KeyRegistry.intern(readBytes(in));
+        long value = Amount.read(in);
+        String parent = readString(in);
+        return new TransactionOutput(id, owner, value, parent);
+    }
+    // Reads a hash written by Writer.writeHash()
+    public static String readHash(ByteBuffer in)
+    {
+        int tag = in.get();
+        if(tag == HASH)
+        {
+            byte[] hash = new byte[StringUtil.SHA256_LENGTH];
+            in.get(hash);
+            return StringUtil.toHexString(hash);
+        }
+        if(tag != LABEL) throw new IllegalArgumentException("Unknown hash tag " + tag);
+        return readString(in);
+    }
+    // Decodes an X.509 encoded ECDSA public key
+    public static PublicKey decodeKey(byte[] encoded)
+    {
+        try
+        {
+            return KEY_FACTORY.get().generatePublic(new X509EncodedKeySpec(encoded));
+        }
+        catch(Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Only lowercase hex comes back unchanged from the raw bytes
+    private static boolean isLowerHex(String value)
+    {
+        for(int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    public static class Writer extends ByteArrayOutputStream
+    {
+        private final byte[] scratch = new byte[VarInt.MAX_LONG_SIZE];
+
+        public Writer(int size)
+        {
+            super(size);
+        }
+
+        public void writeVarInt(long value)
+        {
+            write(scratch, 0, VarInt.writeUnsignedLong(scratch, 0, value));
+        }
+
+        public void writeLong(long value)
+        {
+            for(int shift = 56; shift >= 0; shift -= 8)
+            {
+                write((int) (value >>> shift));
+            }
+        }
+
+        public void writeInt(int value)
+        {
+            for(int shift = 24; shift >= 0; shift -= 8)
+            {
+                write(value >>> shift);
+            }
+        }
+
+        public void writeByteArray(byte[] bytes)
+        {
+            writeVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        public void writeString(String value)
+        {
+            if(value == null || value.isEmpty())
+            {
+                writeVarInt(0);
+                write(value == null ? 0 : 1);
+                return;
+            }
+            writeByteArray(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // A hex SHA-256 hash as its raw bytes, any other string behind a marker
+        public void writeHash(String hash)
+        {
+            if(hash != null && hash.length() == StringUtil.SHA256_LENGTH * 2 && isLowerHex(hash))
+            {
+                write(HASH);
+                write(StringUtil.hexToBytes(hash), 0, StringUtil.SHA256_LENGTH);
+                return;
+            }
+            write(LABEL);
+            writeString(hash);
+        }
+        // Id, owner key, value and parent transaction of an unspent output
+        public void writeOutput(TransactionOutput output)
+        {
+            writeString(output.id);
+            writeByteArray(KeyRegistry.getEncoded(output.owner));
+            writeVarInt(output.value);
+            writeString(output.parentTransactionId);
+        }
+        // Bytes written so far
+        public int position()
+        {
+            return count;
+        }
+        // Overwrites an int written earlier, e.g. a length that was only known later
+        public void putInt(int position, int value)
+        {
+            for(int i = 0; i < 4; i++)
+            {
+                buf[position + i] = (byte) (value >>> (24 - 8 * i));
+            }
+        }
+        // The written bytes without copying them, valid until the next write
+        public ByteBuffer buffer()
+        {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package myBlockchain.Util;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Inclusion proof for one leaf of a MerkleTree: the sibling hashes on the path
+ * from the leaf to the root, and on which side each sibling sits.
+ * Levels where the path node had no sibling are simply absent.
+ */
+public class MerkleProof
+{
+    public final int index; // Position of the proven leaf
+    public final byte[][] siblings; // Sibling hashes, from the leaf level upwards
+    public final boolean[] siblingOnLeft; // True when the sibling is the left input of the parent
+
+    public MerkleProof(int index, byte[][] siblings, boolean[] siblingOnLeft)
+    {
+        if(siblings.length != siblingOnLeft.length)
+        {
+            throw new IllegalArgumentException("Every sibling needs a side");
+        }
+        this.index = index;
+        this.siblings = siblings;
+        this.siblingOnLeft = siblingOnLeft;
+    }
+    // Serializes the proof as: index, sibling count, side bits, then the raw 32 byte hashes
+    public byte[] toBytes()
+    {
+        int sideBytes = (siblings.length + 7) / 8;
+        ByteBuffer out = ByteBuffer.allocate(VarInt.sizeOf(index) + VarInt.sizeOf(siblings.length) + sideBytes + siblings.length * StringUtil.SHA256_LENGTH);
+        VarInt.writeUnsignedLong(out, index);
+        VarInt.writeUnsignedLong(out, siblings.length);
+        byte[] sides = new byte[sideBytes];
+        for(int i = 0; i < siblingOnLeft.length; i++)
+        {
+            if(siblingOnLeft[i]) sides[i >> 3] |= 1 << (i & 7);
+        }
+        out.put(sides);
+        for(byte[] sibling : siblings)
+        {
+            out.put(sibling);
+        }
+        return out.array();
+    }
+    // Reads a proof written by toBytes()
+    public static MerkleProof fromBytes(byte[] bytes)
+    {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int index = VarInt.readUnsignedInt(in);
+        int count = VarInt.readUnsignedInt(in);
+        if(count > 64)
+        {
+            throw new IllegalArgumentException("Merkle proof too long: " + count);
+        }
+        byte[] sides = new byte[(count + 7) / 8];
+        in.get(sides);
+        byte[][] siblings = new byte[count][];
+        boolean[] siblingOnLeft = new boolean[count];
+        for(int i = 0; i < count; i++)
+        {
+            siblingOnLeft[i] = (sides[i >> 3] & (1 << (i & 7))) != 0;
+            siblings[i] = new byte[StringUtil.SHA256_LENGTH];
+            in.get(siblings[i]);
+        }
+        return new MerkleProof(index, siblings, siblingOnLeft);
+    }
+}
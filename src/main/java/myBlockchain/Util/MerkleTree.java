@@ -0,0 +1,159 @@
+package myBlockchain.Util;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Binary Merkle tree over 32 byte leaf digests that grows one leaf at a time.
+ *
+ * Each level only stores completed nodes, i.e. hashes of two full children.
+ * Appending a leaf completes at most one node per level, so it costs O(log n)
+ * hashes, and the root of the still-growing right edge is folded in on demand.
+ * A node without a sibling is carried up unchanged instead of being paired
+ * with a copy of itself, so [a, b, c] and [a, b, c, c] never share a root.
+ * Not thread-safe.
+ */
+public class MerkleTree
+{
+    private final ArrayList<ArrayList<byte[]>> levels = new ArrayList<ArrayList<byte[]>>();
+    private final byte[] pair = new byte[StringUtil.SHA256_LENGTH * 2];
+
+    public MerkleTree()
+    {
+        levels.add(new ArrayList<byte[]>());
+    }
+    // Builds the tree over a list of leaves at once
+    public static MerkleTree of(List<byte[]> leaves)
+    {
+        MerkleTree tree = new MerkleTree();
+        for(byte[] leaf : leaves)
+        {
+            tree.append(leaf);
+        }
+        return tree;
+    }
+    // Adds a leaf digest, completing the parents it closes on the way up
+    public void append(byte[] leaf)
+    {
+        if(leaf.length != StringUtil.SHA256_LENGTH)
+        {
+            throw new IllegalArgumentException("Merkle leaves must be " + StringUtil.SHA256_LENGTH + " bytes");
+        }
+        byte[] node = leaf.clone();
+        int level = 0;
+        while(true)
+        {
+            ArrayList<byte[]> nodes = levels.get(level);
+            nodes.add(node);
+            if((nodes.size() & 1) == 1) return; // Still waiting for a right sibling
+            node = hashPair(nodes.get(nodes.size() - 2), node);
+            level++;
+            if(level == levels.size()) levels.add(new ArrayList<byte[]>());
+        }
+    }
+    // Number of leaves in the tree
+    public int size()
+    {
+        return levels.get(0).size();
+    }
+    // Returns the leaf at the given index
+    public byte[] getLeaf(int index)
+    {
+        return levels.get(0).get(index).clone();
+    }
+    // Returns the root, or null while the tree is empty
+    public byte[] getRoot()
+    {
+        if(size() == 0) return null;
+        byte[] carry = null;
+        for(int level = 0; ; level++)
+        {
+            List<byte[]> nodes = nodesAt(level);
+            int count = nodes.size() + (carry == null ? 0 : 1);
+            if(count == 1)
+            {
+                return (carry == null ? nodes.get(0) : carry).clone();
+            }
+            carry = nextCarry(nodes, carry);
+        }
+    }
+    // Returns the root as a hex string, or "" while the tree is empty
+    public String getRootHex()
+    {
+        byte[] root = getRoot();
+        return root == null ? "" : StringUtil.toHexString(root);
+    }
+    // Builds the proof that the leaf at index is part of the current root
+    public MerkleProof getProof(int index)
+    {
+        if(index < 0 || index >= size())
+        {
+            throw new IndexOutOfBoundsException("No leaf at index " + index);
+        }
+        ArrayList<byte[]> siblings = new ArrayList<byte[]>();
+        ArrayList<Boolean> onLeft = new ArrayList<Boolean>();
+        byte[] carry = null;
+        int position = index;
+        for(int level = 0; ; level++)
+        {
+            List<byte[]> nodes = nodesAt(level);
+            int count = nodes.size() + (carry == null ? 0 : 1);
+            if(count == 1) break;
+            int sibling = position ^ 1;
+            if(sibling < count)
+            {
+                siblings.add((sibling < nodes.size() ? nodes.get(sibling) : carry).clone());
+                onLeft.add(sibling < position);
+            }
+            // Otherwise this node has no sibling and is carried up as it is
+            carry = nextCarry(nodes, carry);
+            position >>= 1;
+        }
+        boolean[] sides = new boolean[onLeft.size()];
+        for(int i = 0; i < sides.length; i++)
+        {
+            sides[i] = onLeft.get(i);
+        }
+        return new MerkleProof(index, siblings.toArray(new byte[0][]), sides);
+    }
+    // Checks a proof by hashing the leaf up to the root
+    public static boolean verify(byte[] leaf, MerkleProof proof, byte[] root)
+    {
+        if(leaf == null || root == null) return false;
+        byte[] node = leaf;
+        byte[] buffer = new byte[StringUtil.SHA256_LENGTH * 2];
+        for(int i = 0; i < proof.siblings.length; i++)
+        {
+            byte[] left = proof.siblingOnLeft[i] ? proof.siblings[i] : node;
+            byte[] right = proof.siblingOnLeft[i] ? node : proof.siblings[i];
+            node = hashPair(buffer, left, right);
+        }
+        return MessageDigest.isEqual(node, root);
+    }
+
+    private List<byte[]> nodesAt(int level)
+    {
+        return level < levels.size() ? levels.get(level) : Collections.<byte[]>emptyList();
+    }
+    // The right-edge node that moves up from this level, if any
+    private byte[] nextCarry(List<byte[]> nodes, byte[] carry)
+    {
+        if((nodes.size() & 1) == 0) return carry;
+        byte[] last = nodes.get(nodes.size() - 1);
+        return carry == null ? last : hashPair(last, carry);
+    }
+
+    private byte[] hashPair(byte[] left, byte[] right)
+    {
+        return hashPair(pair, left, right);
+    }
+
+    private static byte[] hashPair(byte[] buffer, byte[] left, byte[] right)
+    {
+        System.arraycopy(left, 0, buffer, 0, StringUtil.SHA256_LENGTH);
+        System.arraycopy(right, 0, buffer, StringUtil.SHA256_LENGTH, StringUtil.SHA256_LENGTH);
+        return StringUtil.sha256(buffer);
+    }
+}
@@ -0,0 +1,116 @@
+package myBlockchain.Util;
+
+/*
+ * Bare SHA-256 compression function working on caller-owned int arrays.
+ * MessageDigest hides its internal state, so it can not resume from a saved
+ * midstate without cloning itself. Here the state is a plain int[8] that can be
+ * copied and compressed again without allocating.
+ */
+public final class SHA256
+{
+    public static final int BLOCK_SIZE = 64; // Bytes per compression block
+    public static final int STATE_WORDS = 8; // Words in the chaining state
+    public static final int SCHEDULE_WORDS = 64; // Words in the message schedule
+
+    private static final int[] INITIAL_STATE = {
+        0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+        0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final int[] K = {
+        0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+        0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+        0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+        0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+        0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+        0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+        0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+        0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private SHA256()
+    {
+    }
+    // Resets the given state to the SHA-256 initial hash value
+    public static void initState(int[] state)
+    {
+        System.arraycopy(INITIAL_STATE, 0, state, 0, STATE_WORDS);
+    }
+    // Loads a 64 byte block into the first 16 words of the schedule, big-endian
+    public static void loadBlock(byte[] data, int offset, int[] schedule)
+    {
+        for(int i = 0; i < 16; i++)
+        {
+            int p = offset + (i << 2);
+            schedule[i] = (data[p] << 24) | ((data[p + 1] & 0xff) << 16) | ((data[p + 2] & 0xff) << 8) | (data[p + 3] & 0xff);
+        }
+    }
+    /*
+     * Runs one compression round over the block held in schedule[0..15].
+     * Only schedule[16..63] are overwritten, so a caller can change a single
+     * input word and compress again.
+     */
+    public static void compress(int[] state, int[] schedule)
+    {
+        for(int t = 16; t < 64; t++)
+        {
+            int w15 = schedule[t - 15];
+            int w2 = schedule[t - 2];
+            int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+            int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+            schedule[t] = schedule[t - 16] + s0 + schedule[t - 7] + s1;
+        }
+
+        int a = state[0], b = state[1], c = state[2], d = state[3];
+        int e = state[4], f = state[5], g = state[6], h = state[7];
+        for(int t = 0; t < 64; t++)
+        {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int temp1 = h + s1 + ch + K[t] + schedule[t];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int maj = (a & b) ^ (a & c) ^ (b & c);
+            int temp2 = s0 + maj;
+            h = g;
+            g = f;
+            f = e;
+            e = d + temp1;
+            d = c;
+            c = b;
+            b = a;
+            a = temp1 + temp2;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+    // Writes the state as the 32 byte digest, big-endian
+    public static void writeDigest(int[] state, byte[] out, int offset)
+    {
+        for(int i = 0; i < STATE_WORDS; i++)
+        {
+            int word = state[i];
+            int p = offset + (i << 2);
+            out[p] = (byte) (word >>> 24);
+            out[p + 1] = (byte) (word >>> 16);
+            out[p + 2] = (byte) (word >>> 8);
+            out[p + 3] = (byte) word;
+        }
+    }
+    // Checks that the digest held in state starts with the given number of zero bits
+    public static boolean hasLeadingZeroBits(int[] state, int bits)
+    {
+        int word = 0;
+        while(bits >= 32)
+        {
+            if(state[word++] != 0) return false;
+            bits -= 32;
+        }
+        return bits == 0 || (state[word] >>> (32 - bits)) == 0;
+    }
+}
@@ -0,0 +1,81 @@
+package myBlockchain.Util;
+
+/*
+ * SipHash-2-4, a keyed 64 bit hash that is fast on short inputs.
+ *
+ * Without the 128 bit key the output can not be predicted, so values hashed
+ * under a key picked for one use can not be chosen to collide. Keys are two
+ * longs read little-endian from the 16 key bytes, as in the reference code.
+ */
+public final class SipHash
+{
+    private SipHash()
+    {
+    }
+    // Reads the two key halves from the first 16 bytes of key
+    public static long keyHalf(byte[] key, int half)
+    {
+        return readLong(key, half * 8);
+    }
+
+    public static long hash(long k0, long k1, byte[] data)
+    {
+        return hash(k0, k1, data, 0, data.length);
+    }
+
+    public static long hash(long k0, long k1, byte[] data, int offset, int length)
+    {
+        long[] v = {
+            0x736f6d6570736575L ^ k0, 0x646f72616e646f6dL ^ k1,
+            0x6c7967656e657261L ^ k0, 0x7465646279746573L ^ k1
+        };
+        int end = offset + length - (length & 7);
+        for(int i = offset; i < end; i += 8)
+        {
+            compress(v, readLong(data, i));
+        }
+        // The last block holds the remaining bytes and the length in its top byte
+        long last = ((long) length) << 56;
+        for(int i = 0; i < (length & 7); i++)
+        {
+            last |= (data[end + i] & 0xffL) << (8 * i);
+        }
+        compress(v, last);
+        v[2] ^= 0xff;
+        rounds(v, 4);
+        return v[0] ^ v[1] ^ v[2] ^ v[3];
+    }
+    // Mixes one 8 byte message block into the state with two rounds
+    private static void compress(long[] v, long m)
+    {
+        v[3] ^= m;
+        rounds(v, 2);
+        v[0] ^= m;
+    }
+
+    private static void rounds(long[] v, int count)
+    {
+        long v0 = v[0], v1 = v[1], v2 = v[2], v3 = v[3];
+        for(int round = 0; round < count; round++)
+        {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v[0] = v0;
+        v[1] = v1;
+        v[2] = v2;
+        v[3] = v3;
+    }
+    // Little-endian
+    private static long readLong(byte[] data, int offset)
+    {
+        long value = 0;
+        for(int i = 7; i >= 0; i--)
+        {
+            value = (value << 8) | (data[offset + i] & 0xffL);
+        }
+        return value;
+    }
+}
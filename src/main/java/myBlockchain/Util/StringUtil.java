@@ -1,40 +1,114 @@
 package myBlockchain.Util;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.Key;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 
 import myBlockchain.Transactions.Transaction;
 
 public class StringUtil 
 {
-    public static String applySHA256(String input)
+    public static final int SHA256_LENGTH = 32; // Bytes in a SHA-256 digest
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+    static 
+    {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for(int i = 0; i < 16; i++) 
+        {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+    // MessageDigest lookups are slow and instances are not thread-safe, so each thread keeps one
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST = ThreadLocal.withInitial(() -> 
     {
         try 
         {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes("UTF-8"));
-            StringBuffer hexString = new StringBuffer();
-            
-            for(int i=0;i<hash.length;++i)
-            {
-                String hex = Integer.toHexString(0xff & hash[i]);
-                if(hex.length() == 1)
-                {
-                    hexString.append(0);
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
+            return MessageDigest.getInstance("SHA-256");
+        } 
+        catch (NoSuchAlgorithmException e) 
+        {
+            throw new RuntimeException(e);
+        }
+    });
+    // Same for Signature, initSign/initVerify reset the pooled instance before every use
+    private static final ThreadLocal<Signature> ECDSA_SIGNATURE = ThreadLocal.withInitial(() -> 
+    {
+        try 
+        {
+            return Signature.getInstance("ECDSA", "BC");
         } 
         catch (Exception e) 
         {
             throw new RuntimeException(e);
         }
+    });
+
+    public static String applySHA256(String input)
+    {
+        return sha256Hex(input.getBytes(StandardCharsets.UTF_8));
+    }
+    // Hashes raw bytes and returns the digest as a hex string
+    public static String sha256Hex(byte[] input)
+    {
+        return toHexString(sha256(input));
+    }
+    // Hashes raw bytes and returns the 32 byte digest
+    public static byte[] sha256(byte[] input)
+    {
+        return SHA256_DIGEST.get().digest(input);
+    }
+    // Hashes a slice of a byte array and returns the 32 byte digest
+    public static byte[] sha256(byte[] input, int offset, int length)
+    {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.update(input, offset, length);
+        return digest.digest();
+    }
+    // Hashes the remaining bytes of a buffer and returns the 32 byte digest
+    public static byte[] sha256(ByteBuffer input)
+    {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.update(input);
+        return digest.digest();
+    }
+    // Hashes a slice of a byte array into out at outOffset, allocating nothing
+    public static void sha256(byte[] input, int offset, int length, byte[] out, int outOffset)
+    {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.update(input, offset, length);
+        finish(digest, out, outOffset);
+    }
+    // Hashes the remaining bytes of a buffer into out at outOffset, allocating nothing
+    public static void sha256(ByteBuffer input, byte[] out, int outOffset)
+    {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.update(input);
+        finish(digest, out, outOffset);
+    }
+
+    private static void finish(MessageDigest digest, byte[] out, int outOffset)
+    {
+        try 
+        {
+            digest.digest(out, outOffset, SHA256_LENGTH);
+        } 
+        catch (DigestException e) 
+        {
+            digest.reset();
+            throw new RuntimeException(e);
+        }
     }
     /* applyECDSASig takes in the senders private key and string input,
     *signs it and returns an array of bytes. verifyECDSASig takes in the signature, 
@@ -42,15 +116,19 @@ public class StringUtil
     *getStringFromKey returns encoded string from any key.
     */
     public static byte[] applyECDSASig(PrivateKey privateKey, String input) 
+    {
+		return applyECDSASig(privateKey, input.getBytes());
+	}
+
+    public static byte[] applyECDSASig(PrivateKey privateKey, byte[] input) 
     {
 		Signature dsa;
 		byte[] output = new byte[0];
 		try 
         {
-			dsa = Signature.getInstance("ECDSA", "BC");
+			dsa = ECDSA_SIGNATURE.get();
 			dsa.initSign(privateKey);
-			byte[] strByte = input.getBytes();
-			dsa.update(strByte);
+			dsa.update(input);
 			byte[] realSig = dsa.sign();
 			output = realSig;
 		} 
@@ -61,12 +139,17 @@ public class StringUtil
 		return output;
 	}
 	public static boolean verifyECDSASig(PublicKey publicKey, String data, byte[] signature) 
+    {
+		return verifyECDSASig(publicKey, data.getBytes(), signature);
+	}
+
+	public static boolean verifyECDSASig(PublicKey publicKey, byte[] data, byte[] signature) 
     {
 		try 
         {
-			Signature ecdsaVerify = Signature.getInstance("ECDSA", "BC");
+			Signature ecdsaVerify = ECDSA_SIGNATURE.get();
 			ecdsaVerify.initVerify(publicKey);
-			ecdsaVerify.update(data.getBytes());
+			ecdsaVerify.update(data);
 			return ecdsaVerify.verify(signature);
 		}
         catch(Exception e) 
@@ -78,28 +161,84 @@ public class StringUtil
     {
 		return Base64.getEncoder().encodeToString(key.getEncoded());
 	}
+    // Builds the merkle root over the transaction ids, "" when there are no transactions
     public static String getMerkleRoot(ArrayList<Transaction> transactions) 
     {
-		int count = transactions.size();
-		ArrayList<String> previousTreeLayer = new ArrayList<String>();
+		MerkleTree tree = new MerkleTree();
 		for(Transaction transaction : transactions) 
         {
-			previousTreeLayer.add(transaction.transactionId);
+			tree.append(toHashBytes(transaction.transactionId));
 		}
-		ArrayList<String> treeLayer = previousTreeLayer;
-		while(count > 1) 
+		return tree.getRootHex();
+	}
+    /*
+     * Converts a hash kept as a String (block hashes, transaction ids) into 32 raw bytes.
+     * Hex hashes are decoded, an unset hash becomes all zeros and any other
+     * label (like the "0" genesis parent) is hashed so it still fills 32 bytes.
+     */
+    public static byte[] toHashBytes(String hash) 
+    {
+        if(hash == null || hash.isEmpty()) 
+        {
+            return new byte[SHA256_LENGTH];
+        }
+        if(hash.length() == SHA256_LENGTH * 2 && isHex(hash)) 
+        {
+            return hexToBytes(hash);
+        }
+        return sha256(hash.getBytes(StandardCharsets.UTF_8));
+    }
+    // Encodes bytes as a lowercase hex string
+    public static String toHexString(byte[] bytes) 
+    {
+        char[] hex = new char[bytes.length * 2];
+        toHex(bytes, 0, bytes.length, hex, 0);
+        return new String(hex);
+    }
+    // Encodes a slice of bytes as lowercase hex digits into out at outOffset
+    public static void toHex(byte[] bytes, int offset, int length, char[] out, int outOffset) 
+    {
+        for(int i = 0; i < length; i++) 
         {
-			treeLayer = new ArrayList<String>();
-			for(int i=1; i < previousTreeLayer.size(); i++) 
+            int b = bytes[offset + i];
+            out[outOffset++] = HEX_DIGITS[(b >> 4) & 0xf];
+            out[outOffset++] = HEX_DIGITS[b & 0xf];
+        }
+    }
+    // Decodes a hex string into bytes
+    public static byte[] hexToBytes(String hex) 
+    {
+        if(hex.length() % 2 != 0) 
+        {
+            throw new IllegalArgumentException("Hex string must have an even length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for(int i = 0; i < bytes.length; i++) 
+        {
+            int high = hexValue(hex.charAt(2 * i));
+            int low = hexValue(hex.charAt(2 * i + 1));
+            if(high < 0 || low < 0) 
             {
-				treeLayer.add(applySHA256(previousTreeLayer.get(i-1) + previousTreeLayer.get(i)));
-			}
-			count = treeLayer.size();
-			previousTreeLayer = treeLayer;
-		}
-		String merkleRoot = (treeLayer.size() == 1) ? treeLayer.get(0) : "";
-		return merkleRoot;
-	}
+                throw new IllegalArgumentException("Not a hex string: " + hex);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+    // Checks that a string only contains hex digits
+    public static boolean isHex(String value) 
+    {
+        for(int i = 0; i < value.length(); i++) 
+        {
+            if(hexValue(value.charAt(i)) < 0) return false;
+        }
+        return true;
+    }
+
+    private static int hexValue(char c) 
+    {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
     public static String getDificultyString(int difficulty) 
     {
         return new String(new char[difficulty]).replace('\0', '0');
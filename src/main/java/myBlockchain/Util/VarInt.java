@@ -0,0 +1,84 @@
+package myBlockchain.Util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/*
+ * Unsigned LEB128 variable length integers: 7 bits per byte, the high bit
+ * set on every byte except the last. Small values take a single byte.
+ */
+public final class VarInt
+{
+    public static final int MAX_LONG_SIZE = 10; // Bytes needed for any 64 bit value
+
+    private VarInt()
+    {
+    }
+    // Number of bytes the value takes once encoded
+    public static int sizeOf(long value)
+    {
+        int size = 1;
+        while((value >>>= 7) != 0)
+        {
+            size++;
+        }
+        return size;
+    }
+    // Writes the value at the buffer's position
+    public static void writeUnsignedLong(ByteBuffer out, long value)
+    {
+        while((value & ~0x7fL) != 0)
+        {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    // Writes the value into out at offset, returns the number of bytes written
+    public static int writeUnsignedLong(byte[] out, int offset, long value)
+    {
+        int start = offset;
+        while((value & ~0x7fL) != 0)
+        {
+            out[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out[offset++] = (byte) value;
+        return offset - start;
+    }
+    // Reads a value written by writeUnsignedLong
+    public static long readUnsignedLong(ByteBuffer in)
+    {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarInt is longer than " + MAX_LONG_SIZE + " bytes");
+    }
+    // Reads a value that has to fit in a non-negative int, such as a length or a count
+    public static int readUnsignedInt(ByteBuffer in)
+    {
+        long value = readUnsignedLong(in);
+        if(value < 0 || value > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("VarInt out of int range: " + Long.toUnsignedString(value));
+        }
+        return (int) value;
+    }
+    // Reads a length and checks that many bytes are actually left in the buffer
+    public static int readLength(ByteBuffer in)
+    {
+        int length = readUnsignedInt(in);
+        if(length > in.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+}
@@ -1,32 +1,65 @@
 package myBlockchain;
 
+import java.nio.file.Path;
 import java.security.Security;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import com.google.gson.GsonBuilder; //Objects to JSON
 
 import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.BlockTree;
+import myBlockchain.Blockchain.ChainValidator;
+import myBlockchain.Blockchain.Checkpoint;
+import myBlockchain.Blockchain.DifficultyEngine;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Blockchain.ParallelMiner;
+import myBlockchain.Network.Node;
+import myBlockchain.Storage.BlockStore;
+import myBlockchain.Storage.CheckpointFile;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Mempool;
+import myBlockchain.Transactions.SignatureCache;
+import myBlockchain.Transactions.SignatureVerifier;
 import myBlockchain.Transactions.Transaction;
 import myBlockchain.Transactions.TransactionInput;
 import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOStore;
 import myBlockchain.Transactions.Wallet;
 
 public class myBlockchain
 {
-    // The main blockchain storage - list of all blocks
-    public static ArrayList<Block> blockchain = new ArrayList<Block>();
-    // Unspent transaction outputs - tracks available funds
-	public static HashMap<String,TransactionOutput> UTXOs = new HashMap<String,TransactionOutput>();
+    // The chain and the unspent outputs, readers get consistent snapshots without locking
+    public static Ledger ledger = new Ledger();
+    // Unspent transaction outputs - tracks available funds, the ledger unless a DiskUTXOStore is set
+	public static UTXOStore UTXOs = ledger;
 	
-    // Mining difficulty - number of leading zeros required
-	public static int difficulty = 3;
-    // Minimum amount for a valid transaction
-	public static float minimumTransaction = 0.1f;
+    // Initial mining difficulty - number of leading zeros required of the first blocks
+	public static volatile int difficulty = 3;
+    // Retargets the difficulty every so many blocks to hold the block time
+	public static DifficultyEngine difficultyEngine = new DifficultyEngine();
+    // Number of worker threads used to search for a nonce
+	public static int miningThreads = Runtime.getRuntime().availableProcessors();
+    // Shared miner, created on first use
+	private static ParallelMiner miner;
+    // Checks transaction signatures of a block in parallel
+	public static SignatureVerifier signatureVerifier = new SignatureVerifier();
+    // Remembers how far the chain was validated, so isChainValid() only checks new blocks
+	public static ChainValidator chainValidator = new ChainValidator();
+    // Signatures that already passed verification, so re-validation skips the ECDSA math
+	public static SignatureCache signatureCache = new SignatureCache(100_000);
+    // Signed transactions waiting for a block, ordered by fee per byte
+	public static Mempool mempool = new Mempool();
+    // Minimum amount for a valid transaction, in base units
+	public static long minimumTransaction = Amount.parse("0.1");
     // Test wallets for demonstration
 	public static Wallet walletA;
 	public static Wallet walletB;
     // First transaction to initialize the blockchain
 	public static Transaction genesisTransaction;
+    // Where mined blocks are written, null keeps the chain in memory only
+	public static BlockStore blockStore;
+    // Relays mined blocks to peers, null runs without a network
+	public static Node node;
 
 	public static void main(String[] args) 
     {	
@@ -39,7 +72,7 @@ public class myBlockchain
 		Wallet coinbase = new Wallet();
 		
         // Create genesis transaction to give initial funds to walletA
-		genesisTransaction = new Transaction(coinbase.publicKey, walletA.publicKey, 100f, null);
+		genesisTransaction = new Transaction(coinbase.publicKey, walletA.publicKey, Amount.ofCoins(100), null);
 		genesisTransaction.generateSignature(coinbase.privateKey);	
 		genesisTransaction.transactionId = "0";
 		genesisTransaction.outputs.add(new TransactionOutput(genesisTransaction.reciever, genesisTransaction.value, genesisTransaction.transactionId));
@@ -54,128 +87,145 @@ public class myBlockchain
 		
         // Test transaction: walletA sends 40 to walletB
 		Block block1 = new Block(genesis.hash);
-		System.out.println("\nWalletA's balance is: " + walletA.getBalance());
+		System.out.println("\nWalletA's balance is: " + Amount.toString(walletA.getBalance()));
 		System.out.println("\nWalletA is Attempting to send funds (40) to WalletB...");
-		block1.addTransaction(walletA.sendFunds(walletB.publicKey, 40f));
+		block1.addTransaction(walletA.sendFunds(walletB.publicKey, Amount.ofCoins(40)));
 		addBlock(block1);
-		System.out.println("\nWalletA's balance is: " + walletA.getBalance());
-		System.out.println("WalletB's balance is: " + walletB.getBalance());
+		System.out.println("\nWalletA's balance is: " + Amount.toString(walletA.getBalance()));
+		System.out.println("WalletB's balance is: " + Amount.toString(walletB.getBalance()));
 		
         // Test invalid transaction: walletA tries to send more than it has
 		Block block2 = new Block(block1.hash);
 		System.out.println("\nWalletA Attempting to send more funds (1000) than it has...");
-		block2.addTransaction(walletA.sendFunds(walletB.publicKey, 1000f));
+		block2.addTransaction(walletA.sendFunds(walletB.publicKey, Amount.ofCoins(1000)));
 		addBlock(block2);
-		System.out.println("\nWalletA's balance is: " + walletA.getBalance());
-		System.out.println("WalletB's balance is: " + walletB.getBalance());
+		System.out.println("\nWalletA's balance is: " + Amount.toString(walletA.getBalance()));
+		System.out.println("WalletB's balance is: " + Amount.toString(walletB.getBalance()));
 		
         // Test transaction: walletB sends 20 back to walletA
 		Block block3 = new Block(block2.hash);
 		System.out.println("\nWalletB is Attempting to send funds (20) to WalletA...");
-		block3.addTransaction(walletB.sendFunds( walletA.publicKey, 20));
-		System.out.println("\nWalletA's balance is: " + walletA.getBalance());
-		System.out.println("WalletB's balance is: " + walletB.getBalance());
+		block3.addTransaction(walletB.sendFunds( walletA.publicKey, Amount.ofCoins(20)));
+		addBlock(block3);
+		System.out.println("\nWalletA's balance is: " + Amount.toString(walletA.getBalance()));
+		System.out.println("WalletB's balance is: " + Amount.toString(walletB.getBalance()));
 		
         // Validate the entire blockchain
 		isChainValid();
 		
 	}
 	
-    // Validates the integrity of the entire blockchain
+    // Validates the blocks added since the last successful validation
 	public static Boolean isChainValid() 
     {
-		Block currentBlock; 
-		Block previousBlock;
-        // Create target string for difficulty check
-		String hashTarget = new String(new char[difficulty]).replace('\0', '0');
-        // Temporary UTXO map to track transaction validity
-		HashMap<String,TransactionOutput> tempUTXOs = new HashMap<String,TransactionOutput>();
-		tempUTXOs.put(genesisTransaction.outputs.get(0).id, genesisTransaction.outputs.get(0));
-		
-        // Check each block in the chain
-		for(int i=1; i < blockchain.size(); i++) 
+		return isChainValid(false);
+	}
+    // Validates the integrity of the blockchain; a full check re-validates every block after the trusted checkpoint
+	public static Boolean isChainValid(boolean full) 
+    {
+        // One snapshot for the whole check, blocks added meanwhile are not looked at
+		Ledger.Snapshot blockchain = ledger.snapshot();
+		boolean valid = full ? chainValidator.validateAll(blockchain, difficulty) : chainValidator.validate(blockchain, difficulty);
+		if(valid) System.out.println("Blockchain is valid");
+		return valid;
+	}
+    // Writes the last validated block and the unspent outputs after it, for other nodes to trust
+	public static void saveCheckpoint(Path file) 
+    {
+		Checkpoint checkpoint = chainValidator.getCheckpoint();
+		if(checkpoint == null) throw new IllegalStateException("Nothing validated yet, call isChainValid() first");
+		CheckpointFile.save(file, checkpoint);
+	}
+    // Trusts the blocks up to the saved checkpoint, they are no longer validated
+	public static Checkpoint loadCheckpoint(Path file) 
+    {
+		Checkpoint checkpoint = CheckpointFile.load(file);
+		chainValidator.trust(checkpoint);
+		return checkpoint;
+	}
+    // Mines a new block and adds it to the block tree, the ledger follows the branch with the most work
+	public static BlockTree.Result addBlock(Block newBlock) 
+    {
+		BlockTree tree = ledger.getBlockTree();
+		newBlock.mineBlock(tree.getTarget(newBlock.previousHash, difficulty), getMiner());
+		BlockTree.Result result = acceptBlock(newBlock, ledger, mempool, blockStore);
+		if(node != null) node.announce(result);
+		return result;
+	}
+    // Adds a block that is already mined, e.g. one received from a peer, to the ledger's tree; the store and the mempool follow the active chain
+	public static BlockTree.Result acceptBlock(Block newBlock, Ledger chain, Mempool pool, BlockStore store) 
+    {
+		BlockTree tree = chain.getBlockTree();
+        // Blocks added at the same time update the store and the mempool in the order the tree saw them
+		synchronized(tree) 
         {
-			
-			currentBlock = blockchain.get(i);
-			previousBlock = blockchain.get(i-1);
-            // Verify block's hash is correct
-			if(!currentBlock.hash.equals(currentBlock.calculateHash()) )
+			BlockTree.Result result = tree.add(newBlock, difficulty);
+			if(store != null) 
             {
-				System.out.println("#Current Hashes not equal");
-				return false;
+				store.truncate(store.size() - result.getDisconnected().size());
+				for(Block block : result.getConnected()) store.append(block);
+                // The store drops whole segments the ledger has pruned past
+				if(chain.getPruneDepth() > 0) store.prune(chain.snapshot().getPrunedHeight());
 			}
-            // Verify chain links are correct
-			if(!previousBlock.hash.equals(currentBlock.previousHash) ) 
+            // Transactions of disconnected blocks are pending again, unless the new branch holds them
+			for(Block block : result.getDisconnected()) 
             {
-				System.out.println("#Previous Hashes not equal");
-				return false;
+				pool.addAll(block.transactions);
 			}
-            // Verify block was properly mined
-			if(!currentBlock.hash.substring( 0, difficulty).equals(hashTarget)) 
+			for(Block block : result.getConnected()) 
             {
-				System.out.println("#This block hasn't been mined");
-				return false;
+				pool.removeForBlock(block);
 			}
-            // Validate all transactions in the block
-			TransactionOutput tempOutput;
-			for(int t=0; t <currentBlock.transactions.size(); t++) 
+			return result;
+		}
+	}
+    // Opens the block store in the given directory and loads the chain it holds; set the ledger's prune depth first to keep it pruned
+	public static void openBlockStore(Path directory) 
+    {
+		if(blockStore != null) blockStore.close();
+		blockStore = BlockStore.open(directory);
+		List<Block> blocks = blockStore.loadChain();
+		int pruned = blockStore.getPrunedHeight();
+        // Pruned blocks only bring their headers, the outputs left after them come from the store
+		ledger.clear();
+		if(UTXOs != ledger) UTXOs.clear();
+		for(Block block : blocks.subList(0, pruned)) 
+        {
+			ledger.appendBlock(block, null);
+		}
+		UTXOBatch outputs = new UTXOBatch(UTXOs);
+		for(TransactionOutput output : blockStore.getPrunedUTXOs().values()) 
+        {
+			outputs.put(output);
+		}
+		outputs.commit();
+        // Replay the stored transactions to rebuild the unspent outputs
+		for(Block block : blocks.subList(pruned, blocks.size())) 
+        {
+			UTXOBatch batch = new UTXOBatch(UTXOs);
+			for(Transaction transaction : block.transactions) 
             {
-				Transaction currentTransaction = currentBlock.transactions.get(t);
-                // Verify transaction signature
-				if(!currentTransaction.verifiySignature()) {
-					System.out.println("#Signature on Transaction(" + t + ") is Invalid");
-					return false; 
-				}
-                // Verify input and output values match
-				if(currentTransaction.getInputsValue() != currentTransaction.getOutputsValue()) 
-                {
-					System.out.println("#Inputs are note equal to outputs on Transaction(" + t + ")");
-					return false; 
-				}
-                // Validate all transaction inputs
-				for(TransactionInput input: currentTransaction.inputs) 
-                {	
-					tempOutput = tempUTXOs.get(input.transactionOutputId);
-					
-					if(tempOutput == null) {
-						System.out.println("#Referenced input on Transaction(" + t + ") is Missing");
-						return false;
-					}
-					
-					if(input.UTXO.value != tempOutput.value) {
-						System.out.println("#Referenced input Transaction(" + t + ") value is Invalid");
-						return false;
-					}
-					
-                    // Remove spent UTXO
-					tempUTXOs.remove(input.transactionOutputId);
-				}
-                // Add new outputs to UTXO set
-				for(TransactionOutput output: currentTransaction.outputs) 
-                {
-					tempUTXOs.put(output.id, output);
-				}
-				
-                // Verify transaction outputs go to correct recipients
-				if( currentTransaction.outputs.get(0).reciever != currentTransaction.reciever) 
+				for(TransactionInput input : transaction.inputs) 
                 {
-					System.out.println("#Transaction(" + t + ") output reciever is not who it should be");
-					return false;
+					batch.remove(input.transactionOutputId);
 				}
-				if( currentTransaction.outputs.get(1).reciever != currentTransaction.sender) 
+				for(TransactionOutput output : transaction.outputs) 
                 {
-					System.out.println("#Transaction(" + t + ") output 'change' is not sender.");
-					return false;
+					batch.put(output);
 				}
-			}	
+			}
+			ledger.appendBlock(block, batch);
 		}
-		System.out.println("Blockchain is valid");
-		return true;
+		genesisTransaction = blocks.isEmpty() || pruned > 0 ? null : blocks.get(0).transactions.get(0);
 	}
-    // Mines a new block and adds it to the blockchain
-	public static void addBlock(Block newBlock) 
+    // Returns the shared miner, recreating it when the thread count was changed
+	public static synchronized ParallelMiner getMiner() 
     {
-		newBlock.mineBlock(difficulty);
-		blockchain.add(newBlock);
+		if(miner == null || miner.getThreads() != miningThreads) 
+        {
+			if(miner != null) miner.shutdown();
+			miner = new ParallelMiner(miningThreads);
+		}
+		return miner;
 	}
 }
@@ -0,0 +1,89 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Transactions.Amount;
+
+public class AmountTest
+{
+    /*
+     * Testing if coin amounts convert
+     * to base units exactly
+     */
+    @Test
+    public void testOfCoinsAndParse() {
+        assertEquals(100_000_000L, Amount.ofCoins(1));
+        assertEquals(10_000_000L, Amount.parse("0.1"));
+        assertEquals(1L, Amount.parse("0.00000001"));
+        assertEquals(Amount.ofCoins(42), Amount.parse("42"));
+    }
+
+    /*
+     * Testing if amounts finer than one
+     * base unit are rejected
+     */
+    @Test
+    public void testParseRejectsTooManyDecimals() {
+        assertThrows(IllegalArgumentException.class, () -> Amount.parse("0.000000001"));
+        assertThrows(IllegalArgumentException.class, () -> Amount.parse("abc"));
+    }
+
+    /*
+     * Testing if repeated sums stay exact,
+     * where float addition would drift
+     */
+    @Test
+    public void testSumIsExact() {
+        long tenth = Amount.parse("0.1");
+        long total = 0;
+        for (int i = 0; i < 10; i++) {
+            total = Amount.add(total, tenth);
+        }
+
+        assertEquals(Amount.ofCoins(1), total, "Ten times 0.1 should be exactly 1 coin");
+        assertEquals(Amount.ofCoins(6), Amount.sum(new long[] { Amount.ofCoins(1), Amount.ofCoins(2), Amount.ofCoins(3) }));
+    }
+
+    /*
+     * Testing if overflowing sums
+     * throw instead of wrapping around
+     */
+    @Test
+    public void testOverflowChecked() {
+        assertThrows(ArithmeticException.class, () -> Amount.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Amount.sum(new long[] { Long.MAX_VALUE, 1 }));
+        assertThrows(ArithmeticException.class, () -> Amount.ofCoins(Long.MAX_VALUE));
+    }
+
+    /*
+     * Testing the coin formatting
+     */
+    @Test
+    public void testToString() {
+        assertEquals("60.0", Amount.toString(Amount.ofCoins(60)));
+        assertEquals("0.1", Amount.toString(Amount.parse("0.1")));
+        assertEquals("0.00000001", Amount.toString(1));
+        assertEquals("0.0", Amount.toString(0));
+    }
+
+    /*
+     * Testing if amounts serialize compactly
+     * and read back unchanged
+     */
+    @Test
+    public void testCompactEncoding() {
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        Amount.write(buffer, 100);
+        Amount.write(buffer, Amount.ofCoins(21_000_000));
+        buffer.flip();
+
+        assertEquals(1 + Amount.encodedSize(Amount.ofCoins(21_000_000)), buffer.remaining(), "Small amounts should take one byte");
+        assertEquals(100, Amount.read(buffer));
+        assertEquals(Amount.ofCoins(21_000_000), Amount.read(buffer));
+        assertThrows(IllegalArgumentException.class, () -> Amount.write(ByteBuffer.allocate(16), -1));
+    }
+}
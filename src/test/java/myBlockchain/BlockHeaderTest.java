@@ -0,0 +1,124 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.BlockHeader;
+import myBlockchain.Blockchain.HeaderHasher;
+import myBlockchain.Util.SHA256;
+import myBlockchain.Util.StringUtil;
+
+public class BlockHeaderTest
+{
+    private static byte[] sha256(byte[] input) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(input);
+    }
+
+    /*
+     * Testing if the serialized header
+     * has the fixed binary layout
+     */
+    @Test
+    public void testHeaderLayout() {
+        String previousHash = StringUtil.applySHA256("previous");
+        BlockHeader header = new BlockHeader(previousHash, "", 0x0102030405060708L, 0x0a0b0c0d);
+        byte[] bytes = header.toBytes();
+
+        assertEquals(BlockHeader.SIZE, bytes.length, "Header should be " + BlockHeader.SIZE + " bytes");
+        assertArrayEquals(StringUtil.hexToBytes(previousHash), Arrays.copyOfRange(bytes, 0, 32),
+            "Header should start with the raw previous hash");
+        assertArrayEquals(new byte[32], Arrays.copyOfRange(bytes, 32, 64),
+            "Unset merkle root should be all zeros");
+        assertEquals(0x01, bytes[64], "Timestamp should be big-endian");
+        assertEquals(0x0d, bytes[75], "Nonce should be the last field");
+    }
+
+    /*
+     * Testing if the midstate hasher gives
+     * the same digest as a full SHA-256 pass
+     */
+    @Test
+    public void testHasherMatchesMessageDigest() throws Exception {
+        BlockHeader header = new BlockHeader(StringUtil.applySHA256("a"), StringUtil.applySHA256("b"), 1234567890L, 0);
+        HeaderHasher hasher = new HeaderHasher(header);
+
+        for (int nonce : new int[] { 0, 1, 42, -1, Integer.MAX_VALUE }) {
+            hasher.hash(nonce);
+            BlockHeader expected = new BlockHeader(header.previousHash, header.merkleRoot, header.timeStamp, nonce);
+            assertArrayEquals(sha256(expected.toBytes()), hasher.getHash(), "Hash should match for nonce " + nonce);
+        }
+    }
+
+    /*
+     * Testing if a copied hasher keeps
+     * the midstate of the original
+     */
+    @Test
+    public void testCopiedHasher() {
+        BlockHeader header = new BlockHeader("0", "", 99L, 0);
+        HeaderHasher original = new HeaderHasher(header);
+        HeaderHasher copy = new HeaderHasher(original);
+
+        original.hash(7);
+        copy.hash(7);
+
+        assertArrayEquals(original.getHash(), copy.getHash(), "Copy should hash like the original");
+    }
+
+    /*
+     * Testing the compression function
+     * against the published "abc" test vector
+     */
+    @Test
+    public void testCompressKnownVector() {
+        byte[] block = new byte[64];
+        block[0] = 'a';
+        block[1] = 'b';
+        block[2] = 'c';
+        block[3] = (byte) 0x80;
+        block[63] = 24; // Message length in bits
+
+        int[] state = new int[SHA256.STATE_WORDS];
+        int[] schedule = new int[SHA256.SCHEDULE_WORDS];
+        SHA256.initState(state);
+        SHA256.loadBlock(block, 0, schedule);
+        SHA256.compress(state, schedule);
+        byte[] digest = new byte[32];
+        SHA256.writeDigest(state, digest, 0);
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", StringUtil.toHexString(digest));
+    }
+
+    /*
+     * Testing the leading zero bit check
+     * on word boundaries
+     */
+    @Test
+    public void testLeadingZeroBits() {
+        int[] state = { 0, 0x0fffffff, 0, 0, 0, 0, 0, 0 };
+
+        assertTrue(SHA256.hasLeadingZeroBits(state, 0));
+        assertTrue(SHA256.hasLeadingZeroBits(state, 32));
+        assertTrue(SHA256.hasLeadingZeroBits(state, 36));
+        assertFalse(SHA256.hasLeadingZeroBits(state, 37));
+    }
+
+    /*
+     * Testing if a mined block hash
+     * is the hash of its binary header
+     */
+    @Test
+    public void testMinedBlockHashesHeader() throws Exception {
+        Block block = new Block("0");
+        block.mineBlock(2);
+
+        assertEquals(StringUtil.toHexString(sha256(block.getHeader().toBytes())), block.hash,
+            "Block hash should be the SHA-256 of its header");
+        assertEquals(block.hash, block.calculateHash(), "Mined hash should be reproducible");
+    }
+}
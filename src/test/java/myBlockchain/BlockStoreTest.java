@@ -0,0 +1,310 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Security;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Storage.BlockStore;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.Wallet;
+
+public class BlockStoreTest
+{
+    private Wallet walletA;
+    private Wallet walletB;
+    private Wallet coinbase;
+
+    @TempDir
+    Path directory;
+
+    private ArrayList<Block> chain;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+    }
+
+    @BeforeEach
+    public void setup() {
+        myBlockchain.ledger.clear();
+        // New wallets every test, the genesis output comes back with the same id and would still be reserved
+        walletA = new Wallet();
+        walletB = new Wallet();
+        coinbase = new Wallet();
+
+        // Same chain as the demo: genesis pays walletA, then walletA pays walletB
+        Transaction genesisTransaction = new Transaction(coinbase.publicKey, walletA.publicKey, Amount.ofCoins(100), null);
+        genesisTransaction.generateSignature(coinbase.privateKey);
+        genesisTransaction.transactionId = "0";
+        genesisTransaction.outputs.add(new TransactionOutput(genesisTransaction.reciever, genesisTransaction.value, genesisTransaction.transactionId));
+        myBlockchain.UTXOs.put(genesisTransaction.outputs.get(0).id, genesisTransaction.outputs.get(0));
+        myBlockchain.genesisTransaction = genesisTransaction;
+
+        Block genesis = new Block("0");
+        genesis.addTransaction(genesisTransaction);
+        genesis.mineBlock(myBlockchain.difficulty);
+
+        Block block1 = new Block(genesis.hash);
+        block1.addTransaction(walletA.sendFunds(walletB.publicKey, Amount.ofCoins(40)));
+        block1.mineBlock(myBlockchain.difficulty);
+
+        chain = new ArrayList<Block>();
+        chain.add(genesis);
+        chain.add(block1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.ledger.setPruneDepth(0);
+        if(myBlockchain.blockStore != null) {
+            myBlockchain.blockStore.close();
+            myBlockchain.blockStore = null;
+        }
+    }
+
+    private void storeChain(BlockStore store) {
+        for(Block block : chain) {
+            store.append(block);
+        }
+    }
+
+    /*
+     * Testing if blocks read back after reopening
+     * the store match the blocks that were written
+     */
+    @Test
+    public void testRoundTrip() {
+        BlockStore store = BlockStore.open(directory);
+        storeChain(store);
+        store.close();
+
+        store = BlockStore.open(directory);
+        ArrayList<Block> loaded = store.loadChain();
+        store.close();
+
+        assertEquals(2, loaded.size(), "Both blocks should be stored");
+        for(int i = 0; i < chain.size(); i++) {
+            Block expected = chain.get(i);
+            Block actual = loaded.get(i);
+            assertEquals(expected.hash, actual.hash, "Hash should survive the round trip");
+            assertEquals(expected.previousHash, actual.previousHash, "Previous hash should survive the round trip");
+            assertEquals(expected.merkleRoot, actual.merkleRoot, "Merkle root should survive the round trip");
+            assertEquals(expected.hash, actual.calculateHash(), "Stored header should reproduce the hash");
+            assertEquals(expected.transactions.size(), actual.transactions.size(), "Transaction count should match");
+        }
+        Transaction sent = loaded.get(1).transactions.get(0);
+        assertEquals(chain.get(1).transactions.get(0).transactionId, sent.transactionId, "Transaction id should match");
+        assertEquals(Amount.ofCoins(40), sent.value, "Value should match");
+        assertEquals(walletB.publicKey, sent.reciever, "Receiver key should decode to the same key");
+        assertSame(sent.reciever, sent.outputs.get(0).getReciever(), "Equal keys should decode to the same object");
+        assertTrue(sent.verifiySignature(), "Signature should still verify");
+        for(TransactionInput input : sent.inputs) {
+            assertNotNull(input.UTXO, "Inputs should be linked to the outputs they spend");
+        }
+        assertEquals(sent.getInputsValue(), sent.getOutputsValue(), "Linked inputs should balance the outputs");
+    }
+
+    /*
+     * Testing if blocks can be looked
+     * up by hash
+     */
+    @Test
+    public void testReadByHash() {
+        try(BlockStore store = BlockStore.open(directory)) {
+            storeChain(store);
+
+            assertEquals(1, store.heightOf(chain.get(1).hash), "Height should be indexed by hash");
+            assertEquals(chain.get(1).hash, store.read(chain.get(1).hash).hash, "Block should be found by hash");
+            assertEquals(-1, store.heightOf("missing"), "Unknown hash should have no height");
+            assertNull(store.read("missing"), "Unknown hash should not be found");
+        }
+    }
+
+    /*
+     * Testing if a small segment size spreads
+     * blocks over several segment files
+     */
+    @Test
+    public void testSegmentRollover() {
+        BlockStore store = new BlockStore(directory, 64);
+        storeChain(store);
+        store.close();
+
+        assertTrue(Files.exists(directory.resolve("blocks-00000.dat")), "First segment should exist");
+        assertTrue(Files.exists(directory.resolve("blocks-00001.dat")), "Second segment should exist");
+
+        store = new BlockStore(directory, 64);
+        assertEquals(chain.get(0).hash, store.read(0).hash, "First segment should be readable");
+        assertEquals(chain.get(1).hash, store.read(1).hash, "Second segment should be readable");
+        store.close();
+    }
+
+    /*
+     * Testing if a torn write at the end of the store
+     * is cut off and appending continues after it
+     */
+    @Test
+    public void testRecoversFromTornWrite() throws IOException {
+        BlockStore store = BlockStore.open(directory);
+        store.append(chain.get(0));
+        store.close();
+
+        // An unindexed record and half an index entry, as left by a crash
+        Files.write(directory.resolve("blocks-00000.dat"), new byte[] { 0, 0, 1, 0, 7, 7 }, StandardOpenOption.APPEND);
+        Files.write(directory.resolve("blocks.idx"), new byte[] { 0, 0, 0, 1, 9 }, StandardOpenOption.APPEND);
+
+        store = BlockStore.open(directory);
+        assertEquals(1, store.size(), "Only the complete block should remain");
+        store.append(chain.get(1));
+        store.close();
+
+        store = BlockStore.open(directory);
+        assertEquals(2, store.size(), "Appending should continue after the cut");
+        assertEquals(chain.get(1).hash, store.read(1).hash, "Appended block should be readable");
+        store.close();
+    }
+
+    /*
+     * Testing if a corrupted record
+     * fails its checksum
+     */
+    @Test
+    public void testDetectsCorruption() throws IOException {
+        BlockStore store = BlockStore.open(directory);
+        storeChain(store);
+        store.close();
+
+        try(FileChannel segment = FileChannel.open(directory.resolve("blocks-00000.dat"), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[] { 42 }), 20);
+        }
+
+        try(BlockStore reopened = BlockStore.open(directory)) {
+            assertThrows(IllegalStateException.class, () -> reopened.read(0), "Corrupted block should be rejected");
+            assertEquals(chain.get(1).hash, reopened.read(1).hash, "Other blocks should still be readable");
+        }
+    }
+
+    /*
+     * Testing if opening the store restores
+     * the chain and the unspent outputs
+     */
+    @Test
+    public void testOpenBlockStoreRestoresChain() {
+        try(BlockStore store = BlockStore.open(directory)) {
+            storeChain(store);
+        }
+        myBlockchain.ledger.clear();
+
+        myBlockchain.openBlockStore(directory);
+
+        assertEquals(2, myBlockchain.ledger.height(), "Chain should be loaded from the store");
+        assertEquals(Amount.ofCoins(60), walletA.getBalance(), "WalletA balance should be rebuilt");
+        assertEquals(Amount.ofCoins(40), walletB.getBalance(), "WalletB balance should be rebuilt");
+        assertTrue(myBlockchain.isChainValid(), "Loaded chain should be valid");
+    }
+
+    /*
+     * Testing if truncating gives the records of the dropped
+     * blocks back, in their segment and in later ones
+     */
+    @Test
+    public void testTruncateReclaimsRecords() throws IOException {
+        BlockStore store = BlockStore.open(directory);
+        storeChain(store);
+        long size = Files.size(directory.resolve("blocks-00000.dat"));
+        store.truncate(1);
+        assertTrue(Files.size(directory.resolve("blocks-00000.dat")) < size, "The dropped record should be cut off");
+        store.append(chain.get(1));
+        assertEquals(size, Files.size(directory.resolve("blocks-00000.dat")), "The block should take the dropped record's place");
+        store.close();
+
+        // One block per segment
+        store = new BlockStore(directory, 64);
+        Block next = new Block(chain.get(1).hash);
+        next.mineBlock(myBlockchain.difficulty);
+        store.append(next);
+        assertTrue(Files.exists(directory.resolve("blocks-00001.dat")));
+        store.truncate(1);
+        assertFalse(Files.exists(directory.resolve("blocks-00001.dat")), "Segments of dropped blocks only should be deleted");
+        store.append(next);
+        assertEquals(next.hash, store.read(1).hash);
+        store.close();
+
+        store = BlockStore.open(directory);
+        assertEquals(2, store.size(), "The store should reopen with the blocks appended after truncating");
+        assertEquals(chain.get(0).hash, store.read(0).hash);
+        assertEquals(next.hash, store.read(1).hash);
+        store.close();
+    }
+
+    /*
+     * Testing if a pruned store deletes old segments, keeps their
+     * headers and outputs and still takes new blocks after reopening
+     */
+    @Test
+    public void testPruneDeletesOldSegments() {
+        myBlockchain.ledger.setPruneDepth(2);
+        // One block per segment
+        myBlockchain.blockStore = new BlockStore(directory, 64);
+        for(Block block : chain) {
+            myBlockchain.acceptBlock(block, myBlockchain.ledger, myBlockchain.mempool, myBlockchain.blockStore);
+        }
+        for(int i = 0; i < 4; i++) {
+            Block block = new Block(chain.get(chain.size() - 1).hash);
+            assertTrue(block.addTransaction(walletB.sendFunds(walletA.publicKey, Amount.ofCoins(5))));
+            myBlockchain.addBlock(block);
+            chain.add(block);
+        }
+
+        BlockStore store = myBlockchain.blockStore;
+        assertEquals(4, store.getPrunedHeight(), "Segments of blocks below the depth should be pruned");
+        assertFalse(Files.exists(directory.resolve("blocks-00000.dat")), "Pruned segment should be deleted");
+        assertTrue(Files.exists(directory.resolve("blocks-00004.dat")), "Segments above the depth should stay");
+        assertThrows(IllegalStateException.class, () -> store.read(0), "Pruned blocks cannot be read");
+        assertThrows(IllegalStateException.class, () -> store.truncate(3), "Pruned blocks cannot be disconnected");
+        assertEquals(chain.get(5).hash, store.read(5).hash);
+        assertEquals(2, store.heightOf(chain.get(2).hash), "Hashes of pruned blocks should be kept");
+        assertTrue(myBlockchain.isChainValid(), "A pruned chain should still be valid");
+
+        myBlockchain.ledger.clear();
+        myBlockchain.openBlockStore(directory);
+
+        Ledger.Snapshot snapshot = myBlockchain.ledger.snapshot();
+        assertEquals(6, snapshot.size(), "Chain should be loaded from the store");
+        for(int height = 0; height < 6; height++) {
+            assertEquals(chain.get(height).hash, snapshot.getBlock(height).hash);
+            assertArrayEquals(chain.get(height).getHeader().toBytes(), snapshot.getHeader(height).toBytes(), "Headers should be kept");
+        }
+        assertTrue(snapshot.isPruned(3));
+        assertFalse(snapshot.isPruned(4));
+        assertEquals(Amount.ofCoins(80), walletA.getBalance(), "WalletA balance should be rebuilt");
+        assertEquals(Amount.ofCoins(20), walletB.getBalance(), "WalletB balance should be rebuilt");
+        assertTrue(myBlockchain.isChainValid(), "Loaded chain should be valid");
+
+        // New blocks are still checked in full
+        Block spent = new Block(chain.get(5).hash);
+        assertTrue(spent.addTransaction(walletB.sendFunds(walletA.publicKey, Amount.ofCoins(5))));
+        myBlockchain.addBlock(spent);
+        assertEquals(7, myBlockchain.ledger.height());
+        assertEquals(Amount.ofCoins(15), walletB.getBalance());
+    }
+}
@@ -11,6 +11,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import myBlockchain.Blockchain.Block;
+import myBlockchain.Transactions.Amount;
 import myBlockchain.Transactions.Transaction;
 import myBlockchain.Transactions.Wallet;
 
@@ -114,7 +115,7 @@ public class BlockTest
     @Test
     public void testAddValidTransaction() {
         // Create a simple transaction (for genesis block)
-        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, 50f, null);
+        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, Amount.ofCoins(50), null);
         transaction.transactionId = "test_transaction";
         
         boolean result = testBlock.addTransaction(transaction);
@@ -143,7 +144,7 @@ public class BlockTest
     @Test
     public void testMineBlock() {
         // Add a transaction before mining
-        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, 50f, null);
+        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, Amount.ofCoins(50), null);
         transaction.transactionId = "test_transaction";
         testBlock.addTransaction(transaction);
         
@@ -164,7 +165,7 @@ public class BlockTest
     @Test
     public void testMineBlockDifficulty() {
         // Add a transaction before mining
-        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, 50f, null);
+        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, Amount.ofCoins(50), null);
         transaction.transactionId = "test_transaction";
         testBlock.addTransaction(transaction);
         
@@ -183,7 +184,7 @@ public class BlockTest
     @Test
     public void testMineBlockHigherDifficulty() {
         // Add a transaction before mining
-        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, 50f, null);
+        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, Amount.ofCoins(50), null);
         transaction.transactionId = "test_transaction";
         testBlock.addTransaction(transaction);
         
@@ -204,7 +205,7 @@ public class BlockTest
         Block block1 = new Block("0");
         
         // Add transaction and mine first block
-        Transaction transaction1 = new Transaction(walletA.publicKey, walletB.publicKey, 50f, null);
+        Transaction transaction1 = new Transaction(walletA.publicKey, walletB.publicKey, Amount.ofCoins(50), null);
         transaction1.transactionId = "transaction_1";
         block1.addTransaction(transaction1);
         block1.mineBlock(1);
@@ -223,9 +224,9 @@ public class BlockTest
     @Test
     public void testMultipleTransactions() {
         // Add multiple transactions
-        Transaction transaction1 = new Transaction(walletA.publicKey, walletB.publicKey, 25f, null);
+        Transaction transaction1 = new Transaction(walletA.publicKey, walletB.publicKey, Amount.ofCoins(25), null);
         transaction1.transactionId = "transaction_1";
-        Transaction transaction2 = new Transaction(walletB.publicKey, walletA.publicKey, 15f, null);
+        Transaction transaction2 = new Transaction(walletB.publicKey, walletA.publicKey, Amount.ofCoins(15), null);
         transaction2.transactionId = "transaction_2";
         
         testBlock.addTransaction(transaction1);
@@ -0,0 +1,292 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.BlockTree;
+import myBlockchain.Blockchain.ChainValidator;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Blockchain.Target;
+import myBlockchain.Storage.BlockCodec;
+import myBlockchain.Storage.BlockStore;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.KeyRegistry;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+
+public class BlockTreeTest
+{
+    private static final int DIFFICULTY = 1;
+
+    private Ledger previousLedger;
+    private UTXOStore previousUTXOs;
+    private Ledger ledger;
+    private BlockTree tree;
+    private Wallet walletA;
+    private Wallet walletB;
+    private Block genesis;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+    }
+
+    @BeforeEach
+    public void setup() {
+        previousLedger = myBlockchain.ledger;
+        previousUTXOs = myBlockchain.UTXOs;
+        ledger = new Ledger();
+        tree = ledger.getBlockTree();
+        myBlockchain.ledger = ledger;
+        myBlockchain.UTXOs = ledger;
+        walletA = new Wallet();
+        walletB = new Wallet();
+        Wallet coinbase = new Wallet();
+
+        Transaction genesisTransaction = new Transaction(coinbase.publicKey, walletA.publicKey, Amount.ofCoins(100), null);
+        genesisTransaction.generateSignature(coinbase.privateKey);
+        genesisTransaction.transactionId = "0";
+        TransactionOutput funds = new TransactionOutput(genesisTransaction.reciever, genesisTransaction.value, genesisTransaction.transactionId);
+        genesisTransaction.outputs.add(funds);
+        ledger.put(funds.id, funds);
+        genesis = new Block("0");
+        genesis.addTransaction(genesisTransaction);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.ledger = previousLedger;
+        myBlockchain.UTXOs = previousUTXOs;
+    }
+
+    // A block on the given parent paying walletB from walletA's outputs as the ledger has them now
+    private Block payment(Block parent, long coins) {
+        Block block = new Block(parent.hash);
+        Transaction transaction = walletA.sendFunds(walletB.publicKey, Amount.ofCoins(coins));
+        assertTrue(block.addTransaction(transaction));
+        walletA.release(transaction); // So the next payment can spend the same outputs on another branch
+        block.mineBlock(DIFFICULTY);
+        return block;
+    }
+
+    private static Block empty(Block parent) {
+        Block block = new Block(parent.hash);
+        block.mineBlock(DIFFICULTY);
+        return block;
+    }
+
+    private Block addGenesis() {
+        genesis.mineBlock(DIFFICULTY);
+        assertEquals(BlockTree.Status.CONNECTED, tree.add(genesis, DIFFICULTY).getStatus());
+        return genesis;
+    }
+
+    /*
+     * Testing if a branch with more work replaces
+     * the active chain and its outputs
+     */
+    @Test
+    public void testReorgToMostWork() {
+        addGenesis();
+        // Two payments spending the same genesis output on competing branches
+        Block first = payment(genesis, 10);
+        Block competing = payment(genesis, 30);
+        Block next = empty(competing);
+
+        assertEquals(BlockTree.Status.CONNECTED, tree.add(first, DIFFICULTY).getStatus());
+        assertEquals(BlockTree.Status.SIDE_BRANCH, tree.add(competing, DIFFICULTY).getStatus(), "Equal work should not take over");
+        assertEquals(first, ledger.snapshot().getTip());
+        assertEquals(Amount.ofCoins(10), walletB.getBalance());
+        Ledger.Snapshot before = ledger.snapshot();
+
+        BlockTree.Result result = tree.add(next, DIFFICULTY);
+
+        assertEquals(BlockTree.Status.CONNECTED, result.getStatus());
+        assertEquals(Arrays.asList(first), result.getDisconnected());
+        assertEquals(Arrays.asList(competing, next), result.getConnected());
+        assertEquals(3, ledger.height());
+        assertEquals(next, ledger.snapshot().getTip());
+        assertEquals(-1, ledger.snapshot().heightOf(first.hash));
+        assertEquals(1, ledger.snapshot().heightOf(competing.hash));
+        assertEquals(Amount.ofCoins(30), walletB.getBalance());
+        assertEquals(Amount.ofCoins(70), walletA.getBalance());
+        assertEquals(first, before.getTip(), "Old snapshot should keep the old branch");
+        assertEquals(Amount.ofCoins(10), before.getBalance(walletB.publicKey));
+        assertEquals(Target.ofDifficulty(DIFFICULTY).getWork().multiply(BigInteger.valueOf(3)), tree.getChainWork());
+        assertTrue(new ChainValidator().validateAll(ledger.snapshot(), DIFFICULTY));
+    }
+
+    /*
+     * Testing if a block that arrives before
+     * its parent is connected once the parent is
+     */
+    @Test
+    public void testOrphanConnectsWithParent() {
+        addGenesis();
+        Block parent = empty(genesis);
+        Block child = empty(parent);
+
+        assertEquals(BlockTree.Status.ORPHAN, tree.add(child, DIFFICULTY).getStatus());
+        assertEquals(1, tree.getOrphanCount());
+        assertEquals(1, ledger.height());
+
+        BlockTree.Result result = tree.add(parent, DIFFICULTY);
+
+        assertEquals(BlockTree.Status.CONNECTED, result.getStatus());
+        assertEquals(Arrays.asList(parent, child), result.getConnected());
+        assertEquals(0, tree.getOrphanCount());
+        assertEquals(child, ledger.snapshot().getTip());
+        assertEquals(BlockTree.Status.DUPLICATE, tree.add(child, DIFFICULTY).getStatus());
+    }
+
+    /*
+     * Testing if a block spending outputs already
+     * spent is rejected together with its children
+     */
+    @Test
+    public void testDoubleSpendIsInvalid() {
+        addGenesis();
+        Block first = payment(genesis, 10);
+        // Filled while the genesis output was still unspent, connected on top of the block spending it
+        Block doubleSpend = new Block(first.hash);
+        assertTrue(doubleSpend.addTransaction(walletA.sendFunds(walletB.publicKey, Amount.ofCoins(20))));
+        doubleSpend.mineBlock(DIFFICULTY);
+        Block child = empty(doubleSpend);
+
+        assertEquals(BlockTree.Status.CONNECTED, tree.add(first, DIFFICULTY).getStatus());
+        assertEquals(BlockTree.Status.INVALID, tree.add(doubleSpend, DIFFICULTY).getStatus());
+        assertEquals(BlockTree.Status.INVALID, tree.add(child, DIFFICULTY).getStatus());
+        assertEquals(first, ledger.snapshot().getTip());
+        assertEquals(Amount.ofCoins(10), walletB.getBalance());
+    }
+
+    /*
+     * Testing if addBlock() keeps the block store
+     * on the active branch through a reorg
+     */
+    @Test
+    public void testAddBlockFollowsReorg(@TempDir Path directory) {
+        BlockStore previousStore = myBlockchain.blockStore;
+        int difficulty = myBlockchain.difficulty;
+        myBlockchain.blockStore = new BlockStore(directory, BlockStore.DEFAULT_SEGMENT_SIZE);
+        myBlockchain.difficulty = DIFFICULTY;
+        try {
+            myBlockchain.addBlock(genesis);
+            Block first = new Block(genesis.hash);
+            Block competing = payment(genesis, 5);
+            assertEquals(BlockTree.Status.CONNECTED, myBlockchain.addBlock(first).getStatus());
+            assertEquals(BlockTree.Status.SIDE_BRANCH, myBlockchain.addBlock(competing).getStatus());
+            BlockTree.Result result = myBlockchain.addBlock(new Block(competing.hash));
+
+            assertEquals(Arrays.asList(first), result.getDisconnected());
+            assertEquals(3, myBlockchain.blockStore.size());
+            assertEquals(competing.hash, myBlockchain.blockStore.read(1).hash);
+            assertEquals(-1, myBlockchain.blockStore.heightOf(first.hash));
+            assertEquals(ledger.snapshot().getTip().hash, myBlockchain.blockStore.read(2).hash);
+        } finally {
+            myBlockchain.blockStore.close();
+            myBlockchain.blockStore = previousStore;
+            myBlockchain.difficulty = difficulty;
+        }
+    }
+
+    /*
+     * Testing if a block spending an output
+     * its sender does not own is rejected
+     */
+    @Test
+    public void testRejectsSpendOfOthersOutput() {
+        addGenesis();
+        Wallet thief = new Wallet();
+        ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>();
+        inputs.add(new TransactionInput(genesis.transactions.get(0).outputs.get(0).id));
+        Transaction theft = new Transaction(thief.publicKey, thief.publicKey, Amount.ofCoins(100), inputs);
+        theft.generateSignature(thief.privateKey);
+        // Filling a block does not look at owners, as a peer's block would not have
+        Block block = new Block(genesis.hash);
+        assertTrue(block.addTransaction(theft));
+        block.mineBlock(DIFFICULTY);
+
+        assertEquals(BlockTree.Status.INVALID, tree.add(block, DIFFICULTY).getStatus());
+        assertEquals(genesis, ledger.snapshot().getTip());
+        assertEquals(Amount.ofCoins(100), walletA.getBalance());
+        assertEquals(0L, ledger.getBalance(thief.publicKey));
+    }
+
+    /*
+     * Testing if an input that was never linked to its output
+     * fails the block instead of breaking the connect
+     */
+    @Test
+    public void testRejectsUnlinkedInput() {
+        addGenesis();
+        TransactionOutput extra = new TransactionOutput(walletA.publicKey, Amount.ofCoins(5), "tree_unlinked_extra");
+        ledger.put(extra.id, extra);
+        ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>();
+        inputs.add(new TransactionInput(genesis.transactions.get(0).outputs.get(0).id));
+        inputs.add(new TransactionInput(extra.id));
+        inputs.get(0).UTXO = genesis.transactions.get(0).outputs.get(0);
+        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, Amount.ofCoins(100), inputs);
+        transaction.generateSignature(walletA.privateKey);
+        transaction.outputs.add(new TransactionOutput(walletB.publicKey, transaction.value, transaction.getId()));
+        Block block = new Block(genesis.hash);
+        block.transactions.add(transaction);
+        block.mineBlock(DIFFICULTY);
+
+        assertEquals(BlockTree.Status.INVALID, tree.add(block, DIFFICULTY).getStatus());
+        assertEquals(genesis, ledger.snapshot().getTip());
+        assertEquals(Amount.ofCoins(105), walletA.getBalance());
+    }
+
+    /*
+     * Testing if a block from another node paying a key
+     * this node has never registered is connected
+     */
+    @Test
+    public void testConnectsBlockPayingUnseenKey() throws Exception {
+        addGenesis();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("ECDSA", "BC");
+        generator.initialize(new ECGenParameterSpec("prime192v1"));
+        PublicKey stranger = generator.generateKeyPair().getPublic();
+        TransactionOutput funds = genesis.transactions.get(0).outputs.get(0);
+        ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>();
+        inputs.add(new TransactionInput(funds.id));
+        Transaction transaction = new Transaction(walletA.publicKey, stranger, Amount.ofCoins(40), inputs);
+        transaction.generateSignature(walletA.privateKey);
+        // Outputs as the other node made them, the stranger's key is not registered here
+        transaction.outputs.add(new TransactionOutput(KeyRegistry.internPending(stranger.getEncoded()), transaction.value, transaction.getId()));
+        transaction.outputs.add(new TransactionOutput(walletA.keyId, Amount.ofCoins(60), transaction.getId(), 1));
+        Block block = new Block(genesis.hash);
+        block.transactions.add(transaction);
+        block.mineBlock(DIFFICULTY);
+
+        Block received = new BlockCodec().decode(ByteBuffer.wrap(new BlockCodec().encode(block)));
+        received.transactions.get(0).inputs.get(0).UTXO = ledger.get(funds.id); // As Node links the inputs of a received block
+        assertEquals(KeyRegistry.NONE, KeyRegistry.find(received.transactions.get(0).reciever), "The key should only be pending");
+
+        assertEquals(BlockTree.Status.CONNECTED, tree.add(received, DIFFICULTY).getStatus());
+        assertNotEquals(KeyRegistry.NONE, KeyRegistry.find(stranger), "Connecting the block should register the key");
+        assertEquals(Amount.ofCoins(40), ledger.getBalance(stranger));
+        assertEquals(Amount.ofCoins(60), walletA.getBalance());
+    }
+}
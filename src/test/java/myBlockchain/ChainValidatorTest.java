@@ -0,0 +1,225 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.ChainValidator;
+import myBlockchain.Blockchain.Checkpoint;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Storage.CheckpointFile;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+
+public class ChainValidatorTest
+{
+    private static final int DIFFICULTY = 2;
+
+    private static Wallet coinbase;
+    private Wallet walletA;
+    private Wallet walletB;
+
+    @TempDir
+    Path directory;
+
+    private Ledger previousLedger;
+    private UTXOStore previousUTXOs;
+    private Ledger ledger;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        coinbase = new Wallet();
+    }
+
+    @BeforeEach
+    public void setup() {
+        previousLedger = myBlockchain.ledger;
+        previousUTXOs = myBlockchain.UTXOs;
+        ledger = new Ledger();
+        myBlockchain.ledger = ledger;
+        myBlockchain.UTXOs = ledger;
+        // Fresh wallets, their local output lists would still hold outputs of the previous test's chain
+        walletA = new Wallet();
+        walletB = new Wallet();
+
+        // Genesis pays walletA, then walletA pays walletB
+        Transaction genesisTransaction = new Transaction(coinbase.publicKey, walletA.publicKey, Amount.ofCoins(100), null);
+        genesisTransaction.generateSignature(coinbase.privateKey);
+        genesisTransaction.transactionId = "0";
+        genesisTransaction.outputs.add(new TransactionOutput(genesisTransaction.reciever, genesisTransaction.value, genesisTransaction.transactionId));
+        ledger.put(genesisTransaction.outputs.get(0).id, genesisTransaction.outputs.get(0));
+
+        Block genesis = new Block("0");
+        genesis.addTransaction(genesisTransaction);
+        append(genesis);
+        pay(walletA, walletB, 40);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.ledger = previousLedger;
+        myBlockchain.UTXOs = previousUTXOs;
+    }
+
+    /*
+     * Testing if a second run only checks
+     * the blocks added since the first
+     */
+    @Test
+    public void testValidatesOnlyNewBlocks() {
+        ChainValidator validator = new ChainValidator();
+        assertTrue(validator.validate(ledger.snapshot(), DIFFICULTY));
+        assertEquals(2, validator.getCheckpoint().getHeight());
+
+        // Changing a block that was already checked is not noticed by an incremental run
+        Block checked = ledger.snapshot().getBlock(1);
+        checked.transactions.get(0).value += 1;
+        pay(walletB, walletA, 10);
+
+        assertTrue(validator.validate(ledger.snapshot(), DIFFICULTY), "Only the new block should be checked");
+        assertEquals(3, validator.getCheckpoint().getHeight());
+        assertEquals(ledger.snapshot().getTip().hash, validator.getCheckpoint().getHash());
+        assertFalse(validator.validateAll(ledger.snapshot(), DIFFICULTY), "A full run should check every block again");
+        checked.transactions.get(0).value -= 1;
+    }
+
+    /*
+     * Testing if the checkpoint's outputs match
+     * the ledger's after the validated blocks
+     */
+    @Test
+    public void testCheckpointTracksOutputs() {
+        pay(walletB, walletA, 15);
+        ChainValidator validator = new ChainValidator();
+        assertTrue(validator.validate(ledger.snapshot(), DIFFICULTY));
+
+        Checkpoint checkpoint = validator.getCheckpoint();
+        assertEquals(ledger.size(), checkpoint.getUTXOs().size());
+        assertEquals(walletA.getBalance(), checkpoint.getUTXOs().getBalance(walletA.publicKey));
+        assertEquals(walletB.getBalance(), checkpoint.getUTXOs().getBalance(walletB.publicKey));
+    }
+
+    /*
+     * Testing if an invalid new block fails validation
+     * and the checkpoint stays at the last valid one
+     */
+    @Test
+    public void testInvalidNewBlockRejected() {
+        ChainValidator validator = new ChainValidator();
+        assertTrue(validator.validate(ledger.snapshot(), DIFFICULTY));
+        String validTip = validator.getCheckpoint().getHash();
+
+        Block bad = pay(walletA, walletB, 5);
+        bad.transactions.get(0).value += 1;
+
+        assertFalse(validator.validate(ledger.snapshot(), DIFFICULTY));
+        assertEquals(validTip, validator.getCheckpoint().getHash(), "Checkpoint should not move past an invalid block");
+        bad.transactions.get(0).value -= 1;
+    }
+
+    /*
+     * Testing if a saved checkpoint loads back
+     * and lets a new validator skip old blocks
+     */
+    @Test
+    public void testTrustedCheckpointSkipsHistory() {
+        ChainValidator validator = new ChainValidator();
+        assertTrue(validator.validate(ledger.snapshot(), DIFFICULTY));
+        Path file = directory.resolve("checkpoint.dat");
+        CheckpointFile.save(file, validator.getCheckpoint());
+
+        Checkpoint loaded = CheckpointFile.load(file);
+        assertEquals(2, loaded.getHeight());
+        assertEquals(validator.getCheckpoint().getHash(), loaded.getHash());
+        assertEquals(DIFFICULTY, loaded.getDifficulty());
+        assertEquals(Amount.ofCoins(60), loaded.getUTXOs().getBalance(walletA.publicKey));
+        assertEquals(walletB.publicKey, loaded.getUTXOs().getOutputs(walletB.publicKey).get(0).getReciever());
+
+        // Old history is not checked, so a change to it goes unnoticed
+        Block old = ledger.snapshot().getBlock(1);
+        old.transactions.get(0).value += 1;
+        pay(walletB, walletA, 10);
+
+        ChainValidator fresh = new ChainValidator();
+        fresh.trust(loaded);
+        assertTrue(fresh.validate(ledger.snapshot(), DIFFICULTY), "Blocks up to the checkpoint should be trusted");
+        assertTrue(fresh.validateAll(ledger.snapshot(), DIFFICULTY), "Even a full run should start at the trusted checkpoint");
+        assertEquals(3, fresh.getCheckpoint().getHeight());
+        assertFalse(new ChainValidator().validate(ledger.snapshot(), DIFFICULTY), "Without the checkpoint the change is found");
+        old.transactions.get(0).value -= 1;
+    }
+
+    /*
+     * Testing if a damaged checkpoint file
+     * is refused
+     */
+    @Test
+    public void testCorruptCheckpointRejected() throws IOException {
+        ChainValidator validator = new ChainValidator();
+        assertTrue(validator.validate(ledger.snapshot(), DIFFICULTY));
+        Path file = directory.resolve("checkpoint.dat");
+        CheckpointFile.save(file, validator.getCheckpoint());
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 3] ^= 0x55;
+        Files.write(file, bytes);
+
+        assertThrows(IllegalStateException.class, () -> CheckpointFile.load(file));
+    }
+
+    /*
+     * Testing if the blocks a pruned ledger kept
+     * are still checked, from the pruned height on
+     */
+    @Test
+    public void testPrunedChainChecksKeptBlocks() {
+        ledger.setPruneDepth(2);
+        pay(walletB, walletA, 10);
+        pay(walletA, walletB, 5);
+        pay(walletB, walletA, 1);
+        pay(walletA, walletB, 2);
+        assertEquals(4, ledger.snapshot().getPrunedHeight());
+
+        ChainValidator validator = new ChainValidator();
+        assertTrue(validator.validate(ledger.snapshot(), DIFFICULTY));
+        assertEquals(6, validator.getCheckpoint().getHeight());
+        assertEquals(ledger.snapshot().getTip().hash, validator.getCheckpoint().getHash());
+
+        Block kept = ledger.snapshot().getBlock(4);
+        kept.transactions.get(0).value += 1;
+        assertFalse(new ChainValidator().validate(ledger.snapshot(), DIFFICULTY), "A changed kept block should be noticed");
+        assertFalse(validator.validateAll(ledger.snapshot(), DIFFICULTY));
+        assertEquals(4, validator.getLastFailure().getFailedHeight());
+        kept.transactions.get(0).value -= 1;
+        assertTrue(validator.validateAll(ledger.snapshot(), DIFFICULTY));
+    }
+
+    // Mines the block and adds it to the ledger with its UTXO changes
+    private Block append(Block block) {
+        block.mineBlock(DIFFICULTY);
+        ledger.applyBlock(block);
+        return block;
+    }
+
+    private Block pay(Wallet sender, Wallet reciever, long coins) {
+        Block block = new Block(ledger.snapshot().getTip().hash);
+        assertTrue(block.addTransaction(sender.sendFunds(reciever.publicKey, Amount.ofCoins(coins))));
+        return append(block);
+    }
+}
@@ -0,0 +1,163 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.CoinSelection;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSet;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+public class CoinSelectionTest
+{
+    private static Wallet reciever;
+    private UTXOStore previous;
+    private Wallet wallet;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        reciever = new Wallet();
+    }
+
+    @BeforeEach
+    public void setup() {
+        previous = myBlockchain.UTXOs;
+        myBlockchain.UTXOs = new UTXOSet();
+        wallet = new Wallet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.UTXOs = previous;
+    }
+
+    // Outputs of the given whole coin values owned by the wallet, added to the UTXO set
+    private List<TransactionOutput> fund(long... coins) {
+        List<TransactionOutput> outputs = new ArrayList<TransactionOutput>();
+        for(long value : coins) {
+            TransactionOutput output = new TransactionOutput(wallet.publicKey, Amount.ofCoins(value), StringUtil.applySHA256("coins_" + outputs.size() + "_" + System.nanoTime()));
+            myBlockchain.UTXOs.put(output.id, output);
+            outputs.add(output);
+        }
+        return outputs;
+    }
+
+    private static long[] coins(List<TransactionOutput> outputs) {
+        long[] coins = new long[outputs.size()];
+        for(int i = 0; i < coins.length; i++) {
+            coins[i] = outputs.get(i).value / Amount.ofCoins(1);
+        }
+        return coins;
+    }
+
+    /*
+     * Testing what each strategy picks
+     * out of the same outputs
+     */
+    @Test
+    public void testStrategies() {
+        fund(20, 3, 50, 7, 30);
+        wallet.getBalance();
+        List<TransactionOutput> sorted = wallet.UTXOs.getAvailableOutputs();
+        assertArrayEquals(new long[] { 50, 30, 20, 7, 3 }, coins(sorted), "Outputs should be sorted largest first");
+
+        assertArrayEquals(new long[] { 50, 30 }, coins(CoinSelection.LARGEST_FIRST.select(sorted, Amount.ofCoins(57))));
+        assertArrayEquals(new long[] { 50, 7 }, coins(CoinSelection.FEWEST_INPUTS.select(sorted, Amount.ofCoins(57))), "Same count, less change");
+        assertArrayEquals(new long[] { 30, 3 }, coins(CoinSelection.BRANCH_AND_BOUND.select(sorted, Amount.ofCoins(33))), "Exact match");
+        assertArrayEquals(new long[] { 50 }, coins(CoinSelection.FEWEST_INPUTS.select(sorted, Amount.ofCoins(33))));
+        // 2 + 0.5 coins cannot be made exactly, falls back to fewest inputs
+        assertArrayEquals(new long[] { 3 }, coins(CoinSelection.BRANCH_AND_BOUND.select(sorted, Amount.parse("2.5"))));
+        for(CoinSelection strategy : CoinSelection.values()) {
+            assertNull(strategy.select(sorted, Amount.ofCoins(111)), strategy + " should not cover more than the outputs hold");
+            assertEquals(Amount.ofCoins(110), sum(strategy.select(sorted, Amount.ofCoins(110))));
+        }
+    }
+
+    /*
+     * Testing if the exact match search stays
+     * bounded when no exact match exists
+     */
+    @Test
+    public void testExactMatchSearchIsBounded() {
+        List<TransactionOutput> outputs = new ArrayList<TransactionOutput>();
+        for(int i = 0; i < 200; i++) {
+            outputs.add(new TransactionOutput(wallet.publicKey, Amount.ofCoins(2), "bounded_" + i));
+        }
+        long start = System.nanoTime();
+        List<TransactionOutput> selected = CoinSelection.BRANCH_AND_BOUND.select(outputs, Amount.ofCoins(41));
+        assertEquals(21, selected.size());
+        assertEquals(Amount.ofCoins(42), sum(selected));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L, "Search should give up instead of trying every subset");
+    }
+
+    /*
+     * Testing if a send spending the exact
+     * value makes no change output
+     */
+    @Test
+    public void testExactSendHasNoChange() {
+        fund(20, 3, 50, 7, 30);
+        Transaction payment = wallet.sendFunds(reciever.publicKey, Amount.ofCoins(33));
+
+        assertEquals(2, payment.inputs.size());
+        assertTrue(payment.processTransaction());
+        assertEquals(1, payment.outputs.size(), "No change should be left");
+        assertEquals(Amount.ofCoins(33), reciever.getBalance());
+        assertEquals(Amount.ofCoins(77), wallet.getBalance());
+    }
+
+    /*
+     * Testing if sends in flight reserve their
+     * outputs until they are spent or released
+     */
+    @Test
+    public void testReservations() {
+        fund(10, 10, 10);
+        Transaction first = wallet.sendFunds(reciever.publicKey, Amount.ofCoins(10));
+        Transaction second = wallet.sendFunds(reciever.publicKey, Amount.ofCoins(10));
+
+        HashSet<String> spent = new HashSet<String>();
+        for(TransactionInput input : first.inputs) spent.add(input.transactionOutputId);
+        for(TransactionInput input : second.inputs) assertTrue(spent.add(input.transactionOutputId), "Sends in flight should not share inputs");
+        assertEquals(Amount.ofCoins(30), wallet.getBalance(), "Reserved outputs are still confirmed");
+        assertEquals(Amount.ofCoins(10), wallet.getAvailableBalance());
+        assertNull(wallet.sendFunds(reciever.publicKey, Amount.ofCoins(15)), "Only 10 coins are not reserved");
+
+        // Confirming the first send drops its reservation along with the spent output
+        assertTrue(first.processTransaction());
+        assertEquals(Amount.ofCoins(20), wallet.getBalance());
+        assertEquals(Amount.ofCoins(10), wallet.UTXOs.getReserved());
+
+        // A send that will not be confirmed hands its outputs back
+        wallet.release(second);
+        assertEquals(Amount.ofCoins(20), wallet.getAvailableBalance());
+        assertNotNull(wallet.sendFunds(reciever.publicKey, Amount.ofCoins(15)));
+        assertEquals(Collections.emptyList(), wallet.UTXOs.getAvailableOutputs());
+    }
+
+    private static long sum(List<TransactionOutput> outputs) {
+        long total = 0;
+        for(TransactionOutput output : outputs) {
+            total += output.value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,176 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Network.CompactBlock;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSet;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.SipHash;
+import myBlockchain.Util.StringUtil;
+
+public class CompactBlockTest
+{
+    private static Wallet sender;
+    private static Wallet reciever;
+    private UTXOStore previous;
+    private final TransactionCodec codec = new TransactionCodec();
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        sender = new Wallet();
+        reciever = new Wallet();
+    }
+
+    @BeforeEach
+    public void setup() {
+        previous = myBlockchain.UTXOs;
+        myBlockchain.UTXOs = new UTXOSet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.UTXOs = previous;
+    }
+
+    // A mined block of count one coin payments
+    private Block newBlock(int count) {
+        for(int i = 0; i < count; i++) {
+            TransactionOutput output = new TransactionOutput(sender.publicKey, Amount.ofCoins(1), StringUtil.applySHA256("compact_" + i + "_" + System.nanoTime()));
+            myBlockchain.UTXOs.put(output.id, output);
+        }
+        Block block = new Block(StringUtil.applySHA256("parent_" + System.nanoTime()));
+        for(int i = 0; i < count; i++) {
+            assertTrue(block.addTransaction(sender.sendFunds(reciever.publicKey, Amount.ofCoins(1))));
+        }
+        block.mineBlock(1);
+        return block;
+    }
+
+    // Copies of the transactions as another node's mempool would hold them
+    private List<Transaction> pool(Block block, int... positions) {
+        List<Transaction> pool = new ArrayList<Transaction>();
+        for(int position : positions) {
+            pool.add(codec.decode(block.transactions.get(position).toBytes()));
+        }
+        return pool;
+    }
+
+    private CompactBlock roundTrip(CompactBlock compact) throws Exception {
+        return CompactBlock.decode(ByteBuffer.wrap(compact.encode()), codec);
+    }
+
+    /*
+     * Testing if short ids are SipHash-2-4,
+     * cut to 48 bits and salted per message
+     */
+    @Test
+    public void testShortIds() {
+        byte[] key = new byte[16];
+        byte[] message = new byte[15];
+        for(int i = 0; i < key.length; i++) {
+            key[i] = (byte) i;
+            if(i < message.length) message[i] = (byte) i;
+        }
+        long k0 = SipHash.keyHalf(key, 0);
+        long k1 = SipHash.keyHalf(key, 1);
+        assertEquals(0x726fdb47dd0e0e31L, SipHash.hash(k0, k1, new byte[0]));
+        assertEquals(0xa129ca6149be45e5L, SipHash.hash(k0, k1, message));
+
+        Block block = newBlock(1);
+        String id = block.transactions.get(0).transactionId;
+        CompactBlock first = CompactBlock.of(block, 1, hash -> true);
+        CompactBlock second = CompactBlock.of(block, 2, hash -> true);
+        assertTrue(first.shortId(id) >>> 48 == 0, "Short ids should take 6 bytes");
+        assertEquals(first.shortId(id), CompactBlock.of(block, 1, hash -> true).shortId(id));
+        assertNotEquals(first.shortId(id), second.shortId(id), "Another salt should give other short ids");
+    }
+
+    /*
+     * Testing if a block whose transactions are all pooled
+     * is rebuilt from short ids alone
+     */
+    @Test
+    public void testRebuildFromPool() throws Exception {
+        Block block = newBlock(5);
+        CompactBlock compact = roundTrip(CompactBlock.of(block, 42, hash -> true));
+        assertEquals(block.hash, compact.getHash());
+        assertEquals(block.previousHash, compact.getPreviousHash());
+        assertEquals(5, compact.size());
+        assertTrue(compact.getPrefilled().isEmpty());
+        assertTrue(compact.encode().length < block.transactions.get(0).toBytes().length, "Five short ids should take less than one transaction");
+
+        List<Transaction> pool = pool(block, 4, 3, 2, 1, 0);
+        assertTrue(compact.reconstruct(pool).isEmpty());
+        Block rebuilt = compact.toBlock(codec);
+        assertNotNull(rebuilt);
+        assertEquals(block.hash, rebuilt.hash);
+        assertEquals(block.merkleRoot, rebuilt.merkleRoot);
+        for(int i = 0; i < 5; i++) {
+            assertEquals(block.transactions.get(i).transactionId, rebuilt.transactions.get(i).transactionId);
+            assertNotSame(pool.get(4 - i), rebuilt.transactions.get(i), "Pooled transactions should be copied");
+            assertTrue(rebuilt.transactions.get(i).outputs.isEmpty(), "Outputs are made once inputs are linked");
+        }
+    }
+
+    /*
+     * Testing if transactions the peer lacks are sent in whole
+     * and the ones missing from the pool are filled in afterwards
+     */
+    @Test
+    public void testPrefilledAndMissing() throws Exception {
+        Block block = newBlock(6);
+        HashSet<String> known = new HashSet<String>();
+        for(int i = 0; i < 4; i++) {
+            known.add(block.transactions.get(i).transactionId);
+        }
+        CompactBlock compact = roundTrip(CompactBlock.of(block, 7, known::contains));
+        List<Transaction> prefilled = compact.getPrefilled();
+        assertEquals(2, prefilled.size());
+        assertEquals(block.transactions.get(4).transactionId, prefilled.get(0).transactionId);
+        assertEquals(block.transactions.get(5).transactionId, prefilled.get(1).transactionId);
+
+        assertEquals(Arrays.asList(1, 3), compact.reconstruct(pool(block, 0, 2)));
+        assertNull(compact.toBlock(codec), "A block with missing transactions can not be built");
+        assertThrows(ProtocolException.class, () -> compact.fill(pool(block, 1)));
+        compact.fill(pool(block, 1, 3));
+        assertTrue(compact.getMissing().isEmpty());
+        assertEquals(block.hash, compact.toBlock(codec).hash);
+    }
+
+    /*
+     * Testing if transactions that do not match
+     * the merkle root give no block
+     */
+    @Test
+    public void testWrongTransactionsRejected() throws Exception {
+        Block block = newBlock(2);
+        Block other = newBlock(1);
+        CompactBlock compact = roundTrip(CompactBlock.of(block, 3, hash -> true));
+        assertEquals(Arrays.asList(0, 1), compact.reconstruct(Collections.<Transaction>emptyList()));
+        compact.fill(pool(other, 0, 0));
+        assertNull(compact.toBlock(codec));
+    }
+}
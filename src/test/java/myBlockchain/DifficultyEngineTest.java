@@ -0,0 +1,185 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.BlockTree;
+import myBlockchain.Blockchain.ChainValidator;
+import myBlockchain.Blockchain.DifficultyEngine;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Blockchain.Target;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Util.StringUtil;
+
+public class DifficultyEngineTest
+{
+    private static final int DIFFICULTY = 1;
+    private static final int INTERVAL = 4;
+    private static final long BLOCK_TIME = 1000;
+    private static final long START = 1_700_000_000_000L;
+
+    private DifficultyEngine previousEngine;
+    private Ledger previousLedger;
+    private UTXOStore previousUTXOs;
+    private DifficultyEngine engine;
+    private Ledger ledger;
+
+    @BeforeEach
+    public void setup() {
+        previousEngine = myBlockchain.difficultyEngine;
+        previousLedger = myBlockchain.ledger;
+        previousUTXOs = myBlockchain.UTXOs;
+        engine = new DifficultyEngine(INTERVAL, BLOCK_TIME);
+        ledger = new Ledger();
+        myBlockchain.difficultyEngine = engine;
+        myBlockchain.ledger = ledger;
+        myBlockchain.UTXOs = ledger;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.difficultyEngine = previousEngine;
+        myBlockchain.ledger = previousLedger;
+        myBlockchain.UTXOs = previousUTXOs;
+    }
+
+    // An empty block with the given time stamp, mined at the target
+    private static Block block(String previousHash, long timeStamp, Target target) {
+        Block block = new Block(null, previousHash, timeStamp, 0, null, new ArrayList<>());
+        block.mineBlock(target);
+        return block;
+    }
+
+    /*
+     * Testing if a whole-digit target accepts the
+     * same hashes as the old hex zero prefix
+     */
+    @Test
+    public void testTargetMatchesDifficulty() {
+        for(int difficulty = 0; difficulty <= 3; difficulty++) {
+            Target target = Target.ofDifficulty(difficulty);
+            String prefix = StringUtil.getDificultyString(difficulty);
+            for(int i = 0; i < 2000; i++) {
+                String hash = StringUtil.applySHA256("target_" + difficulty + "_" + i);
+                assertEquals(hash.startsWith(prefix), target.isMetBy(hash), hash);
+            }
+            assertEquals(BigInteger.valueOf(16).pow(difficulty), target.getWork());
+            assertEquals(difficulty, target.getDifficulty(), 1e-9);
+        }
+        Target target = Target.of(Target.ofDifficulty(2).getValue().divide(BigInteger.valueOf(3)));
+        Block block = block("target_parent", START, target);
+        assertTrue(new BigInteger(block.hash, 16).compareTo(target.getValue()) <= 0, "Mined hash should be at most the target");
+        assertTrue(target.isMetBy(block.hash));
+        assertEquals(Target.MAX, Target.of(Target.MAX.getValue().add(BigInteger.ONE)));
+    }
+
+    /*
+     * Testing if the target follows the block
+     * time and is clamped at each retarget
+     */
+    @Test
+    public void testRetarget() {
+        Target initial = Target.ofDifficulty(2);
+        BigInteger value = initial.getValue();
+
+        assertSame(initial, engine.next(initial, 3, height -> { throw new AssertionError("Not a retarget"); }));
+        // On time: 3 intervals between the first 4 blocks
+        assertEquals(initial, engine.next(initial, 4, height -> START + height * BLOCK_TIME));
+        // Twice as slow, the target doubles
+        assertEquals(value.multiply(BigInteger.TWO), engine.next(initial, 4, height -> START + height * 2 * BLOCK_TIME).getValue());
+        // Ten times as fast, only lowered by the maximum adjustment
+        assertEquals(value.divide(BigInteger.valueOf(4)), engine.next(initial, 4, height -> START + height * BLOCK_TIME / 10).getValue());
+        // Later retargets span a whole interval, starting at the last block before the previous retarget
+        assertEquals(value.divide(BigInteger.TWO), engine.next(initial, 8, height -> START + height * BLOCK_TIME / 2).getValue());
+        assertFalse(engine.isRetarget(0));
+        assertTrue(engine.isRetarget(8));
+    }
+
+    /*
+     * Testing if validation expects the retargeted
+     * target and rejects blocks mined at the old one
+     */
+    @Test
+    public void testValidationChecksExpectedTarget() {
+        Target initial = Target.ofDifficulty(DIFFICULTY);
+        // Blocks ten times faster than the block time, the target drops at height 4
+        Block previous = block("0", START, initial);
+        ledger.appendBlock(previous, null);
+        for(int height = 1; height < INTERVAL; height++) {
+            previous = block(previous.hash, START + height * BLOCK_TIME / 10, initial);
+            ledger.appendBlock(previous, null);
+        }
+        Target expected = engine.targetAt(ledger.snapshot(), INTERVAL, initial);
+        assertEquals(initial.getValue().divide(BigInteger.valueOf(4)), expected.getValue());
+        BlockTree tree = ledger.getBlockTree();
+        assertEquals(expected, tree.getTarget(previous.hash, DIFFICULTY));
+
+        // Meets the initial target but not the retargeted one
+        Block tooEasy;
+        long timeStamp = START + INTERVAL * BLOCK_TIME / 10;
+        do {
+            tooEasy = block(previous.hash, timeStamp++, initial);
+        } while(expected.isMetBy(tooEasy.hash));
+        assertEquals(BlockTree.Status.INVALID, tree.add(tooEasy, DIFFICULTY).getStatus());
+
+        Block mined = block(previous.hash, timeStamp, expected);
+        assertEquals(BlockTree.Status.CONNECTED, tree.add(mined, DIFFICULTY).getStatus());
+        assertTrue(new ChainValidator().validateAll(ledger.snapshot(), DIFFICULTY));
+
+        Ledger other = new Ledger();
+        for(int height = 0; height < INTERVAL; height++) {
+            other.appendBlock(ledger.snapshot().getBlock(height), null);
+        }
+        other.appendBlock(tooEasy, null);
+        ChainValidator validator = new ChainValidator();
+        assertFalse(validator.validateAll(other.snapshot(), DIFFICULTY));
+        assertEquals(INTERVAL, validator.getLastFailure().getFailedHeight());
+        assertEquals("This block hasn't been mined", validator.getLastFailure().getReason());
+    }
+
+    /*
+     * Testing if an interval without a gap to
+     * measure is refused and the shortest one works
+     */
+    @Test
+    public void testShortestInterval() {
+        assertThrows(IllegalArgumentException.class, () -> new DifficultyEngine(1, BLOCK_TIME));
+        DifficultyEngine shortest = new DifficultyEngine(2, BLOCK_TIME);
+        Target initial = Target.ofDifficulty(2);
+        assertSame(initial, shortest.next(initial, 1, height -> { throw new AssertionError("Not a retarget"); }));
+        assertEquals(initial, shortest.next(initial, 2, height -> START + height * BLOCK_TIME));
+    }
+
+    /*
+     * Testing if blocks older than the median of the blocks
+     * before them or far in the future are rejected
+     */
+    @Test
+    public void testTimeStampBounds() {
+        Target initial = Target.ofDifficulty(DIFFICULTY);
+        BlockTree tree = ledger.getBlockTree();
+        Block previous = block("0", START, initial);
+        assertEquals(BlockTree.Status.CONNECTED, tree.add(previous, DIFFICULTY).getStatus());
+        // Heights 1 and 2 at START + 10 s and + 20 s, a retarget only comes at height 4
+        for(int height = 1; height < 3; height++) {
+            previous = block(previous.hash, START + height * 10 * BLOCK_TIME, initial);
+            assertEquals(BlockTree.Status.CONNECTED, tree.add(previous, DIFFICULTY).getStatus());
+        }
+        assertEquals(START + 10 * BLOCK_TIME, engine.medianTimePast(3, ledger.snapshot()::getTimeStamp));
+
+        Block early = block(previous.hash, START + 5 * BLOCK_TIME, initial);
+        assertEquals(BlockTree.Status.INVALID, tree.add(early, DIFFICULTY).getStatus(), "Before the median time past");
+        Block future = block(previous.hash, System.currentTimeMillis() + DifficultyEngine.MAX_FUTURE_TIME + 60_000, initial);
+        assertEquals(BlockTree.Status.INVALID, tree.add(future, DIFFICULTY).getStatus(), "Too far in the future");
+        // Older than its parent but not than the median is fine
+        Block late = block(previous.hash, START + 15 * BLOCK_TIME, initial);
+        assertEquals(BlockTree.Status.CONNECTED, tree.add(late, DIFFICULTY).getStatus());
+    }
+}
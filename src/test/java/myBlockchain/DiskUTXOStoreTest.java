@@ -0,0 +1,220 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import myBlockchain.Storage.DiskUTXOStore;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+
+public class DiskUTXOStoreTest
+{
+    private static Wallet walletA;
+    private static Wallet walletB;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        walletA = new Wallet();
+        walletB = new Wallet();
+    }
+
+    /*
+     * Testing if outputs and balances
+     * survive reopening the store
+     */
+    @Test
+    public void testPersistsAcrossReopen() {
+        TransactionOutput a = output(walletA, Amount.ofCoins(10), "disk_a");
+        TransactionOutput b = output(walletB, Amount.ofCoins(4), "disk_b");
+        try(DiskUTXOStore store = DiskUTXOStore.open(directory)) {
+            store.put(a.id, a);
+            store.put(b.id, b);
+            store.remove(b.id);
+        }
+
+        try(DiskUTXOStore store = DiskUTXOStore.open(directory)) {
+            assertEquals(1, store.size());
+            assertTrue(store.containsKey(a.id));
+            assertFalse(store.containsKey(b.id));
+            assertEquals(Amount.ofCoins(10), store.getBalance(walletA.publicKey));
+            assertEquals(0L, store.getBalance(walletB.publicKey));
+
+            TransactionOutput read = store.get(a.id);
+            assertEquals(a.value, read.value);
+            assertEquals(a.parentTransactionId, read.parentTransactionId);
+            assertEquals(walletA.publicKey, read.getReciever(), "Owner key should decode to the same key");
+        }
+    }
+
+    /*
+     * Testing if reads that miss the cache
+     * go to the log
+     */
+    @Test
+    public void testReadsBehindCache() {
+        try(DiskUTXOStore store = new DiskUTXOStore(directory, 1)) {
+            TransactionOutput a = output(walletA, Amount.ofCoins(1), "cache_a");
+            TransactionOutput b = output(walletA, Amount.ofCoins(2), "cache_b");
+            store.put(a.id, a);
+            store.put(b.id, b);
+
+            List<TransactionOutput> owned = store.getOutputs(walletA.publicKey);
+            assertEquals(2, owned.size());
+            assertEquals(a.id, owned.get(0).id, "Outputs should come back in the order they were added");
+            assertEquals(b.id, owned.get(1).id);
+        }
+    }
+
+    /*
+     * Testing if a batch is written as one record
+     * and a torn record is dropped on open
+     */
+    @Test
+    public void testBatchIsAtomic() throws IOException {
+        TransactionOutput a = output(walletA, Amount.ofCoins(10), "atomic_a");
+        TransactionOutput b = output(walletB, Amount.ofCoins(6), "atomic_b");
+        TransactionOutput c = output(walletA, Amount.ofCoins(4), "atomic_c");
+        try(DiskUTXOStore store = DiskUTXOStore.open(directory)) {
+            store.put(a.id, a);
+            long before = store.getLogSize();
+
+            UTXOBatch batch = new UTXOBatch(store);
+            batch.remove(a.id);
+            batch.put(b);
+            batch.put(c);
+            assertEquals(Amount.ofCoins(10), store.getBalance(walletA.publicKey), "Store should not change before commit");
+            batch.commit();
+
+            assertEquals(2, store.size());
+            assertEquals(Amount.ofCoins(4), store.getBalance(walletA.publicKey));
+            assertTrue(store.getLogSize() > before);
+        }
+
+        // Half of a record, as left by a crash during the next commit
+        Files.write(directory.resolve("utxo.log"), new byte[] { 0, 0, 0, 40, 1, 2, 3, 4, 5 }, StandardOpenOption.APPEND);
+
+        try(DiskUTXOStore store = DiskUTXOStore.open(directory)) {
+            assertEquals(2, store.size(), "Torn record should be ignored");
+            assertEquals(Amount.ofCoins(6), store.getBalance(walletB.publicKey));
+            assertEquals(Files.size(directory.resolve("utxo.log")), store.getLogSize(), "Torn record should be cut off");
+        }
+    }
+
+    /*
+     * Testing if compaction drops spent outputs
+     * and keeps the unspent ones readable
+     */
+    @Test
+    public void testCompaction() {
+        try(DiskUTXOStore store = DiskUTXOStore.open(directory)) {
+            TransactionOutput kept = output(walletA, Amount.ofCoins(7), "compact_kept");
+            store.put(kept.id, kept);
+            for(int i = 0; i < 50; i++) {
+                TransactionOutput spent = output(walletB, Amount.ofCoins(1), "compact_" + i);
+                store.put(spent.id, spent);
+                store.remove(spent.id);
+            }
+            long before = store.getLogSize();
+
+            store.compact();
+
+            assertTrue(store.getLogSize() < before, "Compaction should shrink the log");
+            assertEquals(1, store.size());
+            assertEquals(Amount.ofCoins(7), store.get(kept.id).value);
+        }
+        try(DiskUTXOStore store = DiskUTXOStore.open(directory)) {
+            assertEquals(1, store.size(), "Compacted log should replay");
+            assertEquals(Amount.ofCoins(7), store.getBalance(walletA.publicKey));
+        }
+    }
+
+    /*
+     * Testing if many outputs keep their owners' order and balances
+     * through removals, compaction into several records and replay
+     */
+    @Test
+    public void testManyOutputs() {
+        List<TransactionOutput> kept = new ArrayList<TransactionOutput>();
+        try(DiskUTXOStore store = DiskUTXOStore.open(directory)) {
+            store.setSync(false);
+            UTXOBatch batch = new UTXOBatch(store);
+            List<TransactionOutput> created = new ArrayList<TransactionOutput>();
+            for(int i = 0; i < 20_000; i++) {
+                TransactionOutput output = output(i % 2 == 0 ? walletA : walletB, 1 + i, "many_" + i);
+                batch.put(output);
+                created.add(output);
+            }
+            batch.commit();
+            batch = new UTXOBatch(store);
+            for(int i = 0; i < created.size(); i++) {
+                if(i % 3 == 0) batch.remove(created.get(i).id);
+                else if(i % 2 == 0) kept.add(created.get(i));
+            }
+            batch.commit();
+            store.compact();
+            assertTrue(store.getLogSize() > (1 << 20), "Compacted log should hold more than one record");
+        }
+        try(DiskUTXOStore store = new DiskUTXOStore(directory, 1)) {
+            long balance = 0;
+            for(TransactionOutput output : kept) {
+                balance += output.value;
+            }
+            assertEquals(20_000 - 6_667, store.size());
+            assertEquals(balance, store.getBalance(walletA.publicKey));
+            List<TransactionOutput> owned = store.getOutputs(walletA.publicKey);
+            assertEquals(kept.size(), owned.size());
+            for(int i = 0; i < kept.size(); i++) {
+                assertEquals(kept.get(i).id, owned.get(i).id, "Outputs should stay in the order they were added");
+            }
+        }
+    }
+
+    /*
+     * Testing if the chain runs on the disk store
+     * with the block's changes committed together
+     */
+    @Test
+    public void testProcessTransactionOnDisk() {
+        UTXOStore previous = myBlockchain.UTXOs;
+        try(DiskUTXOStore store = DiskUTXOStore.open(directory)) {
+            myBlockchain.UTXOs = store;
+            Wallet sender = new Wallet();
+            TransactionOutput funds = output(sender, Amount.ofCoins(50), "disk_funds");
+            store.put(funds.id, funds);
+
+            UTXOBatch batch = new UTXOBatch(store);
+            assertTrue(sender.sendFunds(walletB.publicKey, Amount.ofCoins(20)).processTransaction(false, batch));
+            assertEquals(Amount.ofCoins(50), sender.getBalance(), "Nothing should change before commit");
+            batch.commit();
+
+            assertEquals(Amount.ofCoins(30), sender.getBalance());
+            assertEquals(2, store.size());
+        } finally {
+            myBlockchain.UTXOs = previous;
+        }
+    }
+
+    private static TransactionOutput output(Wallet owner, long value, String parent) {
+        return new TransactionOutput(owner.publicKey, value, parent);
+    }
+}
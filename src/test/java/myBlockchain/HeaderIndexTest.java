@@ -0,0 +1,151 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.BlockHeader;
+import myBlockchain.Blockchain.HeaderIndex;
+import myBlockchain.Util.StringUtil;
+
+public class HeaderIndexTest
+{
+    // Header of a made-up block at the given height, linked to the previous one
+    private static BlockHeader header(int height) {
+        byte[] previous = StringUtil.sha256(("header_" + (height - 1)).getBytes());
+        byte[] merkleRoot = StringUtil.sha256(("merkle_" + height).getBytes());
+        return new BlockHeader(previous, merkleRoot, 1_700_000_000_000L + height, height * 7);
+    }
+
+    private static byte[] hash(int height) {
+        return StringUtil.sha256(("header_" + height).getBytes());
+    }
+
+    private static HeaderIndex filled(int blocks) {
+        HeaderIndex index = new HeaderIndex(4); // Small, so appending has to grow it
+        for(int height = 0; height < blocks; height++) {
+            assertEquals(height, index.append(hash(height), header(height)));
+        }
+        return index;
+    }
+
+    /*
+     * Testing if every block is found by
+     * its hash and unknown hashes are not
+     */
+    @Test
+    public void testLookupByHash() {
+        HeaderIndex index = filled(1000);
+
+        assertEquals(1000, index.size());
+        for(int height = 0; height < 1000; height++) {
+            assertEquals(height, index.heightOf(hash(height)));
+        }
+        assertEquals(-1, index.heightOf(hash(1000)));
+        assertEquals(-1, index.heightOf(new byte[3]), "A short hash should not match");
+        assertEquals(42, index.heightOf(StringUtil.toHexString(hash(42))), "Hex hashes should be accepted");
+        assertEquals(-1, index.heightOf(hash(500), 500), "Blocks past the limit should not be found");
+        assertEquals(499, index.heightOf(hash(499), 500));
+    }
+
+    /*
+     * Testing if hashes with the leading zeros of proof
+     * of work are still spread over the lookup table
+     */
+    @Test
+    public void testLookupOfMinedHashes() {
+        int blocks = 100_000;
+        HeaderIndex index = new HeaderIndex(4);
+        long start = System.nanoTime();
+        for(int height = 0; height < blocks; height++) {
+            index.append(minedHash(height), header(height));
+        }
+        for(int height = 0; height < blocks; height++) {
+            assertEquals(height, index.heightOf(minedHash(height)));
+        }
+        assertEquals(-1, index.heightOf(minedHash(blocks)));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L, "Leading zeros should not make every lookup probe from one slot");
+    }
+
+    // A hash as mined at difficulty 8, its first 4 bytes zero
+    private static byte[] minedHash(int height) {
+        byte[] hash = hash(height);
+        for(int i = 0; i < 4; i++) {
+            hash[i] = 0;
+        }
+        return hash;
+    }
+
+    /*
+     * Testing if headers read back by height
+     * and range match what was appended
+     */
+    @Test
+    public void testLookupByHeightAndRange() {
+        HeaderIndex index = filled(100);
+
+        assertArrayEquals(header(37).toBytes(), index.getHeader(37).toBytes());
+        assertArrayEquals(hash(37), index.getHash(37));
+        assertEquals(header(37).timeStamp, index.getTimeStamp(37));
+        assertEquals(header(37).nonce, index.getNonce(37));
+
+        List<BlockHeader> range = index.getHeaders(10, 20);
+        assertEquals(10, range.size());
+        for(int i = 0; i < range.size(); i++) {
+            assertArrayEquals(header(10 + i).toBytes(), range.get(i).toBytes());
+        }
+
+        byte[] raw = new byte[3 * HeaderIndex.ENTRY_SIZE];
+        assertEquals(raw.length, index.copyEntries(50, 53, raw, 0));
+        byte[] entryHash = new byte[BlockHeader.HASH_SIZE];
+        System.arraycopy(raw, HeaderIndex.ENTRY_SIZE, entryHash, 0, entryHash.length);
+        assertArrayEquals(hash(51), entryHash, "Raw entries should start with the block hash");
+
+        assertThrows(IndexOutOfBoundsException.class, () -> index.getHeader(100));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.getHeaders(90, 101));
+    }
+
+    /*
+     * Testing if readers never see a block
+     * half added while the index grows
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        HeaderIndex index = new HeaderIndex(1);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> reads = new ArrayList<Future<Integer>>();
+            for(int r = 0; r < 4; r++) {
+                reads.add(readers.submit(() -> {
+                    int checks = 0;
+                    while(!done.get() || checks == 0) {
+                        int size = index.size();
+                        if(size == 0) continue;
+                        int height = size - 1;
+                        assertEquals(height, index.heightOf(hash(height), size), "A published block should be found");
+                        assertArrayEquals(header(height).toBytes(), index.getHeader(height).toBytes());
+                        checks++;
+                    }
+                    return checks;
+                }));
+            }
+            for(int height = 0; height < 20_000; height++) {
+                index.append(hash(height), header(height));
+            }
+            done.set(true);
+            for(Future<Integer> read : reads) {
+                assertTrue(read.get() > 0);
+            }
+        } finally {
+            readers.shutdown();
+        }
+    }
+}
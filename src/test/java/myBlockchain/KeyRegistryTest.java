@@ -0,0 +1,203 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.KeyRegistry;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOSet;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.Binary;
+import myBlockchain.Util.StringUtil;
+
+public class KeyRegistryTest
+{
+    private static Wallet walletA;
+    private static Wallet walletB;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        walletA = new Wallet();
+        walletB = new Wallet();
+    }
+
+    // A key no wallet has registered
+    private static PublicKey newKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("ECDSA", "BC");
+        generator.initialize(new ECGenParameterSpec("prime192v1"));
+        return generator.generateKeyPair().getPublic();
+    }
+
+    /*
+     * Testing if equal keys get one id and
+     * the registry keeps their encoded forms
+     */
+    @Test
+    public void testInterning() {
+        byte[] encoded = walletA.publicKey.getEncoded();
+        PublicKey copy = Binary.decodeKey(encoded);
+
+        assertNotSame(walletA.publicKey, copy);
+        assertEquals(walletA.keyId, KeyRegistry.idOf(walletA.publicKey));
+        assertEquals(walletA.keyId, KeyRegistry.idOf(copy), "A decoded copy should get the same id");
+        assertEquals(walletA.keyId, KeyRegistry.intern(encoded.clone()));
+        assertNotEquals(walletA.keyId, walletB.keyId);
+        assertNotEquals(KeyRegistry.NONE, walletA.keyId);
+
+        assertSame(walletA.publicKey, KeyRegistry.getKey(walletA.keyId));
+        assertArrayEquals(encoded, KeyRegistry.getEncoded(walletA.keyId));
+        assertSame(KeyRegistry.getEncoded(walletA.keyId), KeyRegistry.getEncoded(walletA.keyId));
+        assertEquals(StringUtil.getStringFromKey(walletA.publicKey), KeyRegistry.getString(walletA.keyId));
+        assertThrows(IllegalArgumentException.class, () -> KeyRegistry.getKey(KeyRegistry.NONE));
+    }
+
+    /*
+     * Testing if a key registered from its bytes
+     * is decoded once, to a key equal to the original
+     */
+    @Test
+    public void testLazyDecoding() throws Exception {
+        // A key seen only as bytes, as when it is read back from disk
+        byte[] encoded = newKey().getEncoded();
+        int size = KeyRegistry.size();
+        int id = KeyRegistry.intern(encoded);
+        assertEquals(size + 1, KeyRegistry.size());
+
+        PublicKey key = KeyRegistry.getKey(id);
+        assertArrayEquals(encoded, key.getEncoded());
+        assertSame(key, KeyRegistry.getKey(id));
+        assertEquals(id, KeyRegistry.idOf(key));
+        assertEquals(id, KeyRegistry.idOf(Binary.decodeKey(encoded)));
+    }
+
+    /*
+     * Testing if outputs and the UTXO set match
+     * owners by id, whichever key object built them
+     */
+    @Test
+    public void testOwnershipById() {
+        PublicKey copy = Binary.decodeKey(walletA.publicKey.getEncoded());
+        TransactionOutput output = new TransactionOutput(copy, Amount.ofCoins(3), StringUtil.applySHA256("registry"));
+
+        assertEquals(walletA.keyId, output.owner);
+        assertTrue(output.isMine(walletA.publicKey), "Ownership should not depend on the key object");
+        assertTrue(output.isMine(walletA.keyId));
+        assertFalse(output.isMine(walletB.keyId));
+        assertSame(walletA.publicKey, output.getReciever());
+
+        Binary.Writer out = new Binary.Writer(256);
+        out.writeOutput(output);
+        TransactionOutput read = Binary.readOutput(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(output.owner, read.owner);
+        assertEquals(output.id, read.id);
+
+        UTXOSet utxos = new UTXOSet();
+        utxos.put(read.id, read);
+        assertEquals(Amount.ofCoins(3), utxos.getBalance(walletA.keyId));
+        assertEquals(Amount.ofCoins(3), utxos.getBalance(copy));
+        assertEquals(0L, utxos.getBalance(walletB.keyId));
+    }
+
+    /*
+     * Testing if threads registering the same
+     * new keys at once all get the same ids
+     */
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        List<byte[]> keys = new ArrayList<byte[]>();
+        for(int i = 0; i < 8; i++) {
+            keys.add(newKey().getEncoded());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+            for(int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    int[] ids = new int[keys.size()];
+                    for(int i = 0; i < ids.length; i++) {
+                        ids[i] = KeyRegistry.intern(keys.get(i).clone());
+                    }
+                    return ids;
+                }));
+            }
+            int[] first = results.get(0).get();
+            for(Future<int[]> result : results) {
+                assertArrayEquals(first, result.get());
+            }
+            HashSet<Integer> distinct = new HashSet<Integer>();
+            for(int id : first) {
+                distinct.add(id);
+            }
+            assertEquals(keys.size(), distinct.size());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * Testing if keys read from a transaction stay pending
+     * until one of its outputs is accepted
+     */
+    @Test
+    public void testPendingUntilAccepted() throws Exception {
+        PublicKey reciever = newKey();
+        Transaction transaction = new Transaction(walletA.publicKey, reciever, Amount.ofCoins(1), new ArrayList<TransactionInput>());
+        transaction.generateSignature(walletA.privateKey);
+        transaction.outputs.add(new TransactionOutput(KeyRegistry.internPending(reciever.getEncoded()), transaction.value, transaction.getId()));
+        int size = KeyRegistry.size();
+
+        Transaction decoded = new TransactionCodec().decode(transaction.toBytes());
+        TransactionOutput output = decoded.outputs.get(0);
+        assertEquals(size, KeyRegistry.size(), "Keys of an unchecked transaction should not be registered");
+        assertEquals(KeyRegistry.NONE, KeyRegistry.find(reciever));
+        assertTrue(output.owner < 0);
+        assertEquals(reciever, decoded.reciever);
+        assertEquals(transaction.outputs.get(0).id, output.id);
+
+        new UTXOBatch(new UTXOSet()).put(output);
+        assertEquals(size + 1, KeyRegistry.size(), "An accepted output should register its owner");
+        assertTrue(output.owner > 0);
+        assertEquals(output.owner, KeyRegistry.find(reciever));
+        assertEquals(reciever, output.getReciever());
+    }
+
+    /*
+     * Testing if the oldest pending keys are dropped
+     * once the pending table is full
+     */
+    @Test
+    public void testPendingIsBounded() throws Exception {
+        int size = KeyRegistry.size();
+        int first = KeyRegistry.internPending(newKey().getEncoded());
+        for(int i = 0; i < KeyRegistry.PENDING_CAPACITY; i++) {
+            KeyRegistry.internPending(ByteBuffer.allocate(8).putInt(0x5eed).putInt(i).array());
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> KeyRegistry.getEncoded(first), "The oldest pending key should be dropped");
+        assertThrows(IllegalArgumentException.class, () -> KeyRegistry.accept(first));
+        assertEquals(size, KeyRegistry.size());
+    }
+}
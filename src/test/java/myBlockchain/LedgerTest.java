@@ -0,0 +1,239 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOSnapshot;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+public class LedgerTest
+{
+    private Wallet walletA;
+    private Wallet walletB;
+    private Ledger previousLedger;
+    private UTXOStore previousUTXOs;
+    private Ledger ledger;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+    }
+
+    @BeforeEach
+    public void setup() {
+        previousLedger = myBlockchain.ledger;
+        previousUTXOs = myBlockchain.UTXOs;
+        ledger = new Ledger();
+        myBlockchain.ledger = ledger;
+        myBlockchain.UTXOs = ledger;
+        // Fresh wallets, their local outputs would otherwise point at other tests' ledgers
+        walletA = new Wallet();
+        walletB = new Wallet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.ledger = previousLedger;
+        myBlockchain.UTXOs = previousUTXOs;
+    }
+
+    /*
+     * Testing if a snapshot keeps its outputs
+     * and chain after later writes
+     */
+    @Test
+    public void testSnapshotIsImmutable() {
+        TransactionOutput funds = new TransactionOutput(walletA.publicKey, Amount.ofCoins(10), "ledger_funds");
+        ledger.put(funds.id, funds);
+        ledger.appendBlock(block("ledger_first"), null);
+        Ledger.Snapshot before = ledger.snapshot();
+
+        ledger.remove(funds.id);
+        ledger.appendBlock(block("ledger_second"), null);
+
+        assertEquals(Amount.ofCoins(10), before.getBalance(walletA.publicKey), "Old snapshot should keep its balance");
+        assertEquals(1, before.getUTXOs().getOutputs(walletA.publicKey).size());
+        assertEquals(1, before.size(), "Old snapshot should not see the new block");
+        assertEquals(0L, ledger.getBalance(walletA.publicKey));
+        assertEquals(2, ledger.height());
+        assertTrue(ledger.snapshot().getVersion() > before.getVersion());
+        assertThrows(UnsupportedOperationException.class, () -> before.getUTXOs().put(funds.id, funds));
+    }
+
+    /*
+     * Testing if a block and its UTXO changes
+     * are published in one step
+     */
+    @Test
+    public void testApplyBlockPublishesTogether() {
+        TransactionOutput funds = new TransactionOutput(walletA.publicKey, Amount.ofCoins(50), "ledger_block_funds");
+        ledger.put(funds.id, funds);
+        Block block = new Block(StringUtil.applySHA256("ledger_parent"));
+        assertTrue(block.addTransaction(walletA.sendFunds(walletB.publicKey, Amount.ofCoins(20))));
+        block.mineBlock(1);
+
+        Ledger.Snapshot before = ledger.snapshot();
+        assertEquals(Amount.ofCoins(50), walletA.getBalance(), "Staged block should not change the ledger");
+        ledger.applyBlock(block);
+        Ledger.Snapshot after = ledger.snapshot();
+
+        assertEquals(0, before.size());
+        assertEquals(Amount.ofCoins(50), before.getBalance(walletA.publicKey));
+        assertEquals(1, after.size());
+        assertSame(block, after.getBlock(block.hash));
+        assertSame(block, after.getTip());
+        assertEquals(0, after.heightOf(block.hash));
+        assertEquals(-1, before.heightOf(block.hash));
+        assertArrayEquals(block.getHeader().toBytes(), after.getHeader(0).toBytes(), "Header should be served from the index");
+        assertEquals(Amount.ofCoins(30), after.getBalance(walletA.publicKey));
+        assertEquals(Amount.ofCoins(20), after.getBalance(walletB.publicKey));
+        assertThrows(IllegalArgumentException.class, () -> ledger.appendBlock(block, null), "A block should only be added once");
+    }
+
+    /*
+     * Testing if readers see consistent snapshots
+     * while blocks are applied
+     */
+    @Test
+    public void testConcurrentReadersDuringBlocks() throws Exception {
+        long total = Amount.ofCoins(1000);
+        TransactionOutput funds = new TransactionOutput(walletA.publicKey, total, "ledger_concurrent");
+        ledger.put(funds.id, funds);
+        Wallet[] wallets = { walletA, walletB };
+
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> reads = new ArrayList<Future<Integer>>();
+            for(int r = 0; r < 4; r++) {
+                reads.add(readers.submit(() -> {
+                    int count = 0;
+                    while(!done.get() || count == 0) {
+                        Ledger.Snapshot snapshot = ledger.snapshot();
+                        long sum = snapshot.getBalance(walletA.publicKey) + snapshot.getBalance(walletB.publicKey);
+                        assertEquals(total, sum, "Money should never be seen half moved");
+                        if(!snapshot.isEmpty()) assertNotNull(snapshot.getBlock(snapshot.getTip().hash));
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+            // Move coins back and forth, one block each, past the point where layers are folded
+            String previous = StringUtil.applySHA256("ledger_concurrent_parent");
+            for(int i = 0; i < 40; i++) {
+                Wallet sender = wallets[i % 2];
+                Wallet reciever = wallets[(i + 1) % 2];
+                Block block = new Block(previous);
+                block.addTransaction(sender.sendFunds(reciever.publicKey, Amount.ofCoins(1)));
+                block.mineBlock(1);
+                ledger.applyBlock(block);
+                previous = block.hash;
+            }
+            done.set(true);
+            for(Future<Integer> read : reads) {
+                assertTrue(read.get() > 0);
+            }
+        } finally {
+            readers.shutdown();
+        }
+
+        assertEquals(40, ledger.height());
+        assertEquals(total, walletA.getBalance() + walletB.getBalance());
+    }
+
+    /*
+     * Testing if folding many versions into one
+     * keeps every output and balance
+     */
+    @Test
+    public void testDeepHistoryIsFolded() {
+        UTXOSnapshot snapshot = UTXOSnapshot.empty();
+        List<UTXOSnapshot> versions = new ArrayList<UTXOSnapshot>();
+        TransactionOutput last = null;
+        for(int i = 0; i < 100; i++) {
+            UTXOBatch batch = new UTXOBatch(snapshot);
+            if(last != null && i % 2 == 0) batch.remove(last.id);
+            last = new TransactionOutput(walletA.publicKey, Amount.ofCoins(1), "ledger_fold_" + i);
+            batch.put(last);
+            snapshot = snapshot.apply(batch);
+            versions.add(snapshot);
+        }
+
+        assertTrue(snapshot.getDepth() <= 32, "Layers should be folded");
+        assertEquals(51, snapshot.size());
+        assertEquals(Amount.ofCoins(51), snapshot.getBalance(walletA.publicKey));
+        assertEquals(51, snapshot.getOutputs(walletA.publicKey).size());
+        assertEquals(1, versions.get(0).size(), "Earlier versions should be unchanged");
+        assertEquals(Amount.ofCoins(2), versions.get(1).getBalance(walletA.publicKey));
+    }
+
+    /*
+     * Testing if blocks below the prune depth keep only
+     * their headers while the outputs stay whole
+     */
+    @Test
+    public void testPruneBelowDepth() {
+        TransactionOutput funds = new TransactionOutput(walletA.publicKey, Amount.ofCoins(10), "ledger_prune_funds");
+        ledger.put(funds.id, funds);
+        ledger.setPruneDepth(2);
+        List<Block> blocks = new ArrayList<Block>();
+        String parent = StringUtil.applySHA256("ledger_prune_parent");
+        for(int i = 0; i < 5; i++) {
+            Block block = new Block(parent);
+            assertTrue(block.addTransaction(walletA.sendFunds(walletB.publicKey, Amount.ofCoins(1))));
+            block.mineBlock(1);
+            ledger.applyBlock(block);
+            blocks.add(block);
+            parent = block.hash;
+        }
+
+        Ledger.Snapshot snapshot = ledger.snapshot();
+        assertEquals(5, snapshot.size());
+        assertEquals(3, snapshot.getPrunedHeight());
+        for(int height = 0; height < 5; height++) {
+            Block block = snapshot.getBlock(height);
+            assertEquals(height < 3, snapshot.isPruned(height));
+            assertEquals(height < 3, block.isPruned());
+            assertEquals(blocks.get(height).hash, block.hash, "Hashes should be kept");
+            assertEquals(blocks.get(height).previousHash, block.previousHash);
+            assertEquals(blocks.get(height).merkleRoot, block.merkleRoot, "Merkle roots should be kept");
+            assertArrayEquals(blocks.get(height).getHeader().toBytes(), snapshot.getHeader(height).toBytes());
+            assertEquals(height < 3 ? 0 : 1, block.transactions.size());
+        }
+        assertSame(blocks.get(4), snapshot.getTip());
+        assertEquals(2, snapshot.heightOf(blocks.get(2).hash));
+        assertEquals(Amount.ofCoins(5), snapshot.getBalance(walletA.publicKey));
+        assertEquals(Amount.ofCoins(5), snapshot.getBalance(walletB.publicKey));
+        assertTrue(ledger.canDisconnect(3), "Blocks above the depth keep their undo data");
+        assertFalse(ledger.canDisconnect(2), "Pruned blocks have no undo data");
+        assertThrows(IllegalArgumentException.class, () -> ledger.setPruneDepth(-1));
+        assertThrows(IllegalArgumentException.class, () -> ledger.appendBlock(Block.pruned(blocks.get(0).hash, blocks.get(0).getHeader()), null),
+                "A pruned block should not follow kept blocks");
+    }
+
+    private static Block block(String parent) {
+        Block block = new Block(StringUtil.applySHA256(parent));
+        block.mineBlock(1);
+        return block;
+    }
+}
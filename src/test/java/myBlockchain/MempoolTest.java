@@ -0,0 +1,222 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Storage.BlockCodec;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Mempool;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSet;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+public class MempoolTest
+{
+    private static Wallet reciever;
+    private UTXOStore previous;
+    private Mempool mempool;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        reciever = new Wallet();
+    }
+
+    @BeforeEach
+    public void setup() {
+        previous = myBlockchain.UTXOs;
+        myBlockchain.UTXOs = new UTXOSet();
+        mempool = new Mempool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.UTXOs = previous;
+    }
+
+    // A wallet holding one confirmed output of the given value
+    private static Wallet funded(long value) {
+        Wallet wallet = new Wallet();
+        TransactionOutput funds = new TransactionOutput(wallet.publicKey, value, "mempool_test_" + System.nanoTime());
+        myBlockchain.UTXOs.put(funds.id, funds);
+        return wallet;
+    }
+
+    /*
+     * Testing if the block template lists
+     * transactions by fee rate, best first
+     */
+    @Test
+    public void testTemplateOrderedByFeeRate() {
+        Transaction low = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 1_000);
+        Transaction high = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 50_000);
+        Transaction middle = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 20_000);
+
+        assertEquals(Mempool.Result.ADDED, mempool.add(low));
+        assertEquals(Mempool.Result.ADDED, mempool.add(high));
+        assertEquals(Mempool.Result.ADDED, mempool.add(middle));
+
+        List<Transaction> template = mempool.getBlockTemplate(Long.MAX_VALUE);
+        assertEquals(List.of(high, middle, low), template);
+    }
+
+    /*
+     * Testing if the template stops at
+     * the byte limit of the block
+     */
+    @Test
+    public void testTemplateRespectsSizeLimit() {
+        Transaction first = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 2_000);
+        Transaction second = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 1_000);
+        mempool.add(first);
+        mempool.add(second);
+
+        List<Transaction> template = mempool.getBlockTemplate(BlockCodec.encodedSize(first));
+
+        assertEquals(List.of(first), template, "Only the better paying transaction should fit");
+    }
+
+    /*
+     * Testing if a second transaction spending
+     * the same output is rejected
+     */
+    @Test
+    public void testDoubleSpendRejected() {
+        Wallet sender = funded(Amount.ofCoins(10));
+        Transaction first = sender.sendFunds(reciever.publicKey, Amount.ofCoins(1), 1_000);
+        assertNull(sender.sendFunds(reciever.publicKey, Amount.ofCoins(2), 5_000), "The wallet should not spend a reserved output twice");
+        sender.release(first);
+        Transaction second = sender.sendFunds(reciever.publicKey, Amount.ofCoins(2), 5_000);
+
+        assertEquals(Mempool.Result.ADDED, mempool.add(first));
+        assertEquals(Mempool.Result.DOUBLE_SPEND, mempool.add(second));
+        assertEquals(1, mempool.size());
+        assertEquals(first.transactionId, mempool.getSpender(first.inputs.get(0).transactionOutputId));
+    }
+
+    /*
+     * Testing if bad transactions and resubmissions
+     * are turned away
+     */
+    @Test
+    public void testInvalidAndDuplicateRejected() {
+        Wallet sender = funded(Amount.ofCoins(10));
+        Transaction forged = new Transaction(sender.publicKey, reciever.publicKey, Amount.ofCoins(1), new ArrayList<TransactionInput>());
+        forged.generateSignature(reciever.privateKey);
+        Transaction unknownInput = new Transaction(sender.publicKey, reciever.publicKey, Amount.ofCoins(1), new ArrayList<TransactionInput>(List.of(new TransactionInput(StringUtil.applySHA256("missing")))));
+        unknownInput.generateSignature(sender.privateKey);
+        Transaction overspend = sender.sendFunds(reciever.publicKey, Amount.ofCoins(9), Amount.ofCoins(2));
+
+        assertEquals(Mempool.Result.INVALID, mempool.add(forged));
+        assertEquals(Mempool.Result.INVALID, mempool.add(unknownInput));
+        assertNull(overspend, "Wallet should not build a transaction it cannot pay the fee for");
+
+        Transaction valid = sender.sendFunds(reciever.publicKey, Amount.ofCoins(1), 1_000);
+        assertEquals(Mempool.Result.ADDED, mempool.add(valid));
+        assertEquals(Mempool.Result.DUPLICATE, mempool.add(valid));
+        assertEquals(1, mempool.size());
+    }
+
+    /*
+     * Testing if a full pool evicts the cheapest
+     * transactions and refuses cheaper ones
+     */
+    @Test
+    public void testEvictsLowestFeeOverBudget() {
+        Transaction sample = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 1_000);
+        Mempool probe = new Mempool();
+        probe.add(sample);
+        Mempool small = new Mempool(probe.getUsage() * 2 + probe.getUsage() / 2); // Room for two transactions
+
+        Transaction cheap = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 1_000);
+        Transaction better = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 3_000);
+        Transaction best = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 9_000);
+        assertEquals(Mempool.Result.ADDED, small.add(cheap));
+        assertEquals(Mempool.Result.ADDED, small.add(better));
+        assertEquals(Mempool.Result.ADDED, small.add(best));
+
+        assertEquals(2, small.size(), "Pool should stay within its budget");
+        assertFalse(small.contains(cheap.transactionId), "Cheapest transaction should be evicted");
+        assertNull(small.getSpender(cheap.inputs.get(0).transactionOutputId), "Evicted transaction should free its inputs");
+        assertTrue(small.getUsage() <= small.getMaxBytes());
+        assertTrue(small.getMinFeeRate() > 0, "Full pool should ask for a minimum fee rate");
+
+        Transaction tooCheap = funded(Amount.ofCoins(10)).sendFunds(reciever.publicKey, Amount.ofCoins(1), 500);
+        assertEquals(Mempool.Result.FEE_TOO_LOW, small.add(tooCheap));
+    }
+
+    /*
+     * Testing if concurrent submissions spending
+     * the same output let exactly one through
+     */
+    @Test
+    public void testConcurrentDoubleSpends() throws Exception {
+        Wallet sender = funded(Amount.ofCoins(10));
+        String outputId = myBlockchain.UTXOs.getOutputs(sender.publicKey).get(0).id;
+        List<Transaction> conflicting = new ArrayList<Transaction>();
+        for(int i = 0; i < 16; i++) {
+            ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>(List.of(new TransactionInput(outputId)));
+            Transaction transaction = new Transaction(sender.publicKey, reciever.publicKey, Amount.ofCoins(1), 1_000 + i, inputs);
+            transaction.generateSignature(sender.privateKey);
+            conflicting.add(transaction);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Mempool.Result>> tasks = new ArrayList<Callable<Mempool.Result>>();
+            for(Transaction transaction : conflicting) {
+                tasks.add(() -> mempool.add(transaction));
+            }
+            int added = 0;
+            for(Future<Mempool.Result> result : executor.invokeAll(tasks)) {
+                if(result.get() == Mempool.Result.ADDED) added++;
+                else assertEquals(Mempool.Result.DOUBLE_SPEND, result.get());
+            }
+            assertEquals(1, added, "Exactly one spend of the output should be accepted");
+            assertEquals(1, mempool.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * Testing if a mined template leaves the pool
+     * and the fee is kept out of the outputs
+     */
+    @Test
+    public void testMinedTemplateLeavesPool() {
+        Wallet sender = funded(Amount.ofCoins(10));
+        Transaction payment = sender.sendFunds(reciever.publicKey, Amount.ofCoins(4), 10_000);
+        assertEquals(Mempool.Result.ADDED, mempool.add(payment));
+
+        Block block = new Block(StringUtil.applySHA256("mempool_parent"));
+        boolean[] added = block.addTransactions(mempool.getBlockTemplate(Long.MAX_VALUE));
+        block.getUTXOBatch().commit();
+        mempool.removeForBlock(block);
+
+        assertTrue(added[0]);
+        assertEquals(0, mempool.size());
+        assertEquals(0L, mempool.getUsage());
+        assertEquals(payment.getInputsValue(), Amount.add(payment.getOutputsValue(), payment.fee), "Fee should be the difference between inputs and outputs");
+        assertEquals(Amount.ofCoins(10) - Amount.ofCoins(4) - 10_000, sender.getBalance());
+    }
+}
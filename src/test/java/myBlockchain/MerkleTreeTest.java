@@ -0,0 +1,146 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Util.MerkleProof;
+import myBlockchain.Util.MerkleTree;
+import myBlockchain.Util.StringUtil;
+
+public class MerkleTreeTest
+{
+    private static List<byte[]> leaves(int count) {
+        List<byte[]> leaves = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            leaves.add(StringUtil.sha256(("leaf " + i).getBytes()));
+        }
+        return leaves;
+    }
+
+    private static byte[] hashPair(byte[] left, byte[] right) {
+        byte[] pair = Arrays.copyOf(left, 64);
+        System.arraycopy(right, 0, pair, 32, 32);
+        return StringUtil.sha256(pair);
+    }
+
+    // Reference root: split at the largest power of two below the leaf count
+    private static byte[] referenceRoot(List<byte[]> leaves) {
+        if (leaves.size() == 1) {
+            return leaves.get(0);
+        }
+        int split = Integer.highestOneBit(leaves.size() - 1);
+        return hashPair(referenceRoot(leaves.subList(0, split)), referenceRoot(leaves.subList(split, leaves.size())));
+    }
+
+    /*
+     * Testing if the incrementally built root
+     * matches a balanced tree built from scratch
+     */
+    @Test
+    public void testRootMatchesReference() {
+        for (int count = 1; count <= 33; count++) {
+            List<byte[]> leaves = leaves(count);
+            MerkleTree tree = MerkleTree.of(leaves);
+
+            assertEquals(count, tree.size());
+            assertArrayEquals(referenceRoot(leaves), tree.getRoot(), "Wrong root for " + count + " leaves");
+        }
+    }
+
+    /*
+     * Testing if the root can be read at any
+     * time while leaves are still being appended
+     */
+    @Test
+    public void testRootWhileGrowing() {
+        List<byte[]> leaves = leaves(20);
+        MerkleTree tree = new MerkleTree();
+
+        for (int i = 0; i < leaves.size(); i++) {
+            tree.append(leaves.get(i));
+            assertArrayEquals(referenceRoot(leaves.subList(0, i + 1)), tree.getRoot());
+        }
+    }
+
+    /*
+     * Testing if an empty tree
+     * has no root
+     */
+    @Test
+    public void testEmptyTree() {
+        MerkleTree tree = new MerkleTree();
+
+        assertNull(tree.getRoot());
+        assertEquals("", tree.getRootHex());
+    }
+
+    /*
+     * Testing if every leaf has a proof
+     * that verifies against the root
+     */
+    @Test
+    public void testProofsVerify() {
+        for (int count = 1; count <= 17; count++) {
+            List<byte[]> leaves = leaves(count);
+            MerkleTree tree = MerkleTree.of(leaves);
+            byte[] root = tree.getRoot();
+
+            for (int i = 0; i < count; i++) {
+                MerkleProof proof = tree.getProof(i);
+                assertTrue(MerkleTree.verify(leaves.get(i), proof, root), "Proof failed for leaf " + i + " of " + count);
+                assertTrue(proof.siblings.length <= 32 - Integer.numberOfLeadingZeros(count), "Proof should be O(log n)");
+            }
+        }
+    }
+
+    /*
+     * Testing if a proof does not verify
+     * for another leaf or a tampered sibling
+     */
+    @Test
+    public void testProofRejectsWrongData() {
+        List<byte[]> leaves = leaves(9);
+        MerkleTree tree = MerkleTree.of(leaves);
+        byte[] root = tree.getRoot();
+        MerkleProof proof = tree.getProof(4);
+
+        assertFalse(MerkleTree.verify(leaves.get(5), proof, root), "Proof should only fit its own leaf");
+
+        proof.siblings[0][0] ^= 1;
+        assertFalse(MerkleTree.verify(leaves.get(4), proof, root), "Tampered proof should fail");
+    }
+
+    /*
+     * Testing if a proof survives
+     * serialization unchanged
+     */
+    @Test
+    public void testProofSerialization() {
+        List<byte[]> leaves = leaves(13);
+        MerkleTree tree = MerkleTree.of(leaves);
+        MerkleProof proof = tree.getProof(11);
+
+        MerkleProof copy = MerkleProof.fromBytes(proof.toBytes());
+
+        assertEquals(11, copy.index);
+        assertTrue(MerkleTree.verify(leaves.get(11), copy, tree.getRoot()));
+    }
+
+    /*
+     * Testing if a duplicated last leaf
+     * changes the root
+     */
+    @Test
+    public void testDuplicateLastLeafChangesRoot() {
+        List<byte[]> leaves = leaves(3);
+        List<byte[]> duplicated = new ArrayList<>(leaves);
+        duplicated.add(leaves.get(2));
+
+        assertFalse(Arrays.equals(MerkleTree.of(leaves).getRoot(), MerkleTree.of(duplicated).getRoot()));
+    }
+}
@@ -0,0 +1,310 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.BlockTree;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Network.Node;
+import myBlockchain.Storage.BlockCodec;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Mempool;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+public class NodeTest
+{
+    private static final int DIFFICULTY = 1;
+    private static final long TIMEOUT_MILLIS = 20_000;
+
+    private Ledger previousLedger;
+    private UTXOStore previousUTXOs;
+    private Mempool previousMempool;
+    private int previousDifficulty;
+    private final List<Node> nodes = new ArrayList<Node>();
+    private Wallet walletA;
+    private Wallet walletB;
+    private Wallet walletC;
+    private TransactionOutput funds;
+    private final List<TransactionOutput> coins = new ArrayList<TransactionOutput>(); // walletC's, one coin each
+    private Block genesis;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+    }
+
+    @BeforeEach
+    public void setup() {
+        previousLedger = myBlockchain.ledger;
+        previousUTXOs = myBlockchain.UTXOs;
+        previousMempool = myBlockchain.mempool;
+        previousDifficulty = myBlockchain.difficulty;
+        myBlockchain.difficulty = DIFFICULTY;
+        walletA = new Wallet();
+        walletB = new Wallet();
+        walletC = new Wallet();
+        Wallet coinbase = new Wallet();
+
+        Transaction genesisTransaction = new Transaction(coinbase.publicKey, walletA.publicKey, Amount.ofCoins(100), null);
+        genesisTransaction.generateSignature(coinbase.privateKey);
+        genesisTransaction.transactionId = "0";
+        funds = new TransactionOutput(genesisTransaction.reciever, genesisTransaction.value, genesisTransaction.transactionId);
+        genesisTransaction.outputs.add(funds);
+        genesis = new Block("0");
+        genesis.addTransaction(genesisTransaction);
+        genesis.mineBlock(DIFFICULTY);
+        for(int i = 0; i < 20; i++) {
+            coins.add(new TransactionOutput(walletC.publicKey, Amount.ofCoins(1), StringUtil.applySHA256("coin_" + i + "_" + System.nanoTime())));
+        }
+
+        // The first node works on myBlockchain's ledger, so wallets and blocks built here spend from it
+        Ledger ledger = newLedger();
+        myBlockchain.ledger = ledger;
+        myBlockchain.UTXOs = ledger;
+        myBlockchain.mempool = new Mempool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for(Node node : nodes) {
+            node.close();
+        }
+        myBlockchain.ledger = previousLedger;
+        myBlockchain.UTXOs = previousUTXOs;
+        myBlockchain.mempool = previousMempool;
+        myBlockchain.difficulty = previousDifficulty;
+    }
+
+    // A ledger holding only the shared genesis block
+    private Ledger newLedger() {
+        Ledger ledger = new Ledger();
+        ledger.put(funds.id, funds);
+        for(TransactionOutput coin : coins) {
+            ledger.put(coin.id, coin);
+        }
+        ledger.appendBlock(genesis, null);
+        return ledger;
+    }
+
+    private Node start(Ledger ledger, Mempool mempool) {
+        Node node = new Node(ledger, mempool, null);
+        nodes.add(node);
+        node.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return node;
+    }
+    // The node on myBlockchain's ledger and mempool
+    private Node startMain() {
+        return start(myBlockchain.ledger, myBlockchain.mempool);
+    }
+    // A node with a ledger and mempool of its own
+    private Node startOther() {
+        Ledger ledger = newLedger();
+        return start(ledger, new Mempool(Mempool.DEFAULT_MAX_BYTES, ledger));
+    }
+
+    // Mines a block on the node's tip, paying walletB from walletA when coins is positive
+    private Block mine(Node node, long coins) {
+        Ledger ledger = node.getLedger();
+        Block block = new Block(ledger.snapshot().getTip().hash);
+        if(coins > 0) assertTrue(block.addTransaction(walletA.sendFunds(walletB.publicKey, Amount.ofCoins(coins))));
+        block.mineBlock(ledger.getBlockTree().getTarget(block.previousHash, DIFFICULTY));
+        assertEquals(BlockTree.Status.CONNECTED, node.submitBlock(block).getStatus());
+        return block;
+    }
+
+    // Connects b to a and has walletC pay walletB a coin count times through a, waiting until b pooled them
+    private List<Transaction> payThrough(Node a, Node b, int count) {
+        b.connect(a.getAddress());
+        await(() -> a.getPeerCount() == 1 && b.getPeerCount() == 1, "Nodes should connect");
+        List<Transaction> payments = new ArrayList<Transaction>();
+        for(int i = 0; i < count; i++) {
+            Transaction payment = walletC.sendFunds(walletB.publicKey, Amount.ofCoins(1));
+            assertEquals(Mempool.Result.ADDED, a.submitTransaction(payment));
+            payments.add(payment);
+        }
+        Mempool pool = b.getMempool();
+        await(() -> pool.size() == count, "Payments should reach the second node");
+        return payments;
+    }
+
+    private static void await(BooleanSupplier condition, String message) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while(!condition.getAsBoolean()) {
+            if(System.currentTimeMillis() > deadline) fail(message);
+            try {
+                Thread.sleep(10);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+
+    /*
+     * Testing if a new node catches up through
+     * headers and blocks from several peers
+     */
+    @Test
+    public void testSyncFromSeveralPeers() {
+        Node a = startMain();
+        for(int i = 0; i < 40; i++) {
+            mine(a, i % 4 == 0 ? 1 : 0);
+        }
+        Node b = startOther();
+        b.connect(a.getAddress());
+        await(() -> b.getLedger().height() == 41 && !b.isSyncing(), "The second node should catch up with the first");
+
+        Node c = startOther();
+        c.connect(a.getAddress());
+        c.connect(b.getAddress());
+        await(() -> c.getLedger().height() == 41 && !c.isSyncing(), "The third node should catch up with both");
+
+        assertEquals(2, c.getPeerCount());
+        assertEquals(a.getLedger().snapshot().getTip().hash, c.getLedger().snapshot().getTip().hash);
+        assertEquals(Amount.ofCoins(10), c.getLedger().getBalance(walletB.keyId), "Payments should be spent on every node");
+        assertEquals(Amount.ofCoins(90), c.getLedger().getBalance(walletA.keyId));
+    }
+
+    /*
+     * Testing if transactions and blocks are
+     * relayed along a line of nodes
+     */
+    @Test
+    public void testRelay() {
+        Node a = startMain();
+        Node b = startOther();
+        Node c = startOther();
+        b.connect(a.getAddress());
+        c.connect(b.getAddress());
+        await(() -> a.getPeerCount() == 1 && b.getPeerCount() == 2 && c.getPeerCount() == 1, "Nodes should connect");
+
+        Transaction transaction = walletA.sendFunds(walletB.publicKey, Amount.ofCoins(10));
+        assertEquals(Mempool.Result.ADDED, a.submitTransaction(transaction));
+        Mempool poolC = c.getMempool();
+        await(() -> poolC.contains(transaction.transactionId), "The transaction should reach the last node");
+
+        Block block = new Block(genesis.hash);
+        assertTrue(block.addTransaction(transaction));
+        block.mineBlock(a.getLedger().getBlockTree().getTarget(genesis.hash, DIFFICULTY));
+        assertEquals(BlockTree.Status.CONNECTED, a.submitBlock(block).getStatus());
+
+        await(() -> c.getLedger().height() == 2, "The block should reach the last node");
+        assertEquals(block.hash, c.getLedger().snapshot().getTip().hash);
+        assertEquals(Amount.ofCoins(10), c.getLedger().getBalance(walletB.keyId));
+        await(() -> !poolC.contains(transaction.transactionId), "Mined transactions should leave the pool");
+    }
+
+    /*
+     * Testing if nodes that mined apart agree
+     * on the branch with the most work once connected
+     */
+    @Test
+    public void testBranchesMeet() {
+        Node a = startMain();
+        Node b = startOther();
+        mine(a, 5);
+        mine(a, 0);
+        for(int i = 0; i < 3; i++) {
+            mine(b, 0);
+        }
+        String tip = b.getLedger().snapshot().getTip().hash;
+
+        a.connect(b.getAddress());
+        await(() -> tip.equals(a.getLedger().snapshot().getTip().hash), "The first node should switch to the longer branch");
+        assertEquals(4, a.getLedger().height());
+        assertEquals(0, a.getLedger().getBalance(walletB.keyId), "The payment was on the branch left behind");
+        await(() -> !b.isSyncing(), "The second node should be done with what the first sent");
+        assertEquals(tip, b.getLedger().snapshot().getTip().hash, "The longer branch should stay active");
+    }
+
+    /*
+     * Testing if a node on another
+     * genesis block is turned away
+     */
+    @Test
+    public void testOtherGenesisRejected() throws InterruptedException {
+        Node a = startMain();
+        Block otherGenesis = new Block("0");
+        otherGenesis.mineBlock(DIFFICULTY);
+        Ledger otherLedger = new Ledger();
+        otherLedger.appendBlock(otherGenesis, null);
+        Node other = start(otherLedger, new Mempool(Mempool.DEFAULT_MAX_BYTES, otherLedger));
+
+        Node b = startOther();
+        other.connect(a.getAddress());
+        b.connect(a.getAddress());
+        await(() -> b.getPeerCount() == 1, "A node on the same genesis should connect");
+        Thread.sleep(200);
+        assertEquals(0, other.getPeerCount());
+        assertEquals(1, a.getPeerCount());
+    }
+
+    /*
+     * Testing if a block whose transactions the peer
+     * has pooled is relayed as a compact block
+     */
+    @Test
+    public void testCompactBlockRelay() {
+        Node a = startMain();
+        Node b = startOther();
+        List<Transaction> payments = payThrough(a, b, 20);
+        Block block = new Block(genesis.hash);
+        for(Transaction payment : payments) {
+            assertTrue(block.addTransaction(payment));
+        }
+        block.mineBlock(a.getLedger().getBlockTree().getTarget(genesis.hash, DIFFICULTY));
+
+        long before = a.getBytesSent();
+        assertEquals(BlockTree.Status.CONNECTED, a.submitBlock(block).getStatus());
+        await(() -> block.hash.equals(b.getLedger().snapshot().getTip().hash), "The block should be rebuilt on the second node");
+        long sent = a.getBytesSent() - before;
+        int full = new BlockCodec().encode(block).length;
+        assertTrue(sent * 10 < full, sent + " bytes sent for a block of " + full);
+        assertEquals(Amount.ofCoins(20), b.getLedger().getBalance(walletB.keyId));
+        await(() -> b.getMempool().size() == 0, "Mined transactions should leave the pool");
+    }
+
+    /*
+     * Testing if transactions missing from the peer's pool
+     * are fetched and the rest sent with the block
+     */
+    @Test
+    public void testCompactBlockMissingTransactions() {
+        Node a = startMain();
+        Node b = startOther();
+        List<Transaction> payments = payThrough(a, b, 10);
+        for(int i = 0; i < 4; i++) {
+            assertNotNull(b.getMempool().remove(payments.get(i).transactionId));
+        }
+        Block block = new Block(genesis.hash);
+        for(Transaction payment : payments) {
+            assertTrue(block.addTransaction(payment));
+        }
+        // Never announced, so it goes in whole
+        assertTrue(block.addTransaction(walletC.sendFunds(walletB.publicKey, Amount.ofCoins(1))));
+        block.mineBlock(a.getLedger().getBlockTree().getTarget(genesis.hash, DIFFICULTY));
+
+        assertEquals(BlockTree.Status.CONNECTED, a.submitBlock(block).getStatus());
+        await(() -> block.hash.equals(b.getLedger().snapshot().getTip().hash), "The block should be completed on the second node");
+        assertEquals(Amount.ofCoins(11), b.getLedger().getBalance(walletB.keyId));
+        assertEquals(Amount.ofCoins(9), b.getLedger().getBalance(walletC.keyId));
+        assertEquals(1, b.getPeerCount(), "Fetching transactions should not drop the peer");
+    }
+}
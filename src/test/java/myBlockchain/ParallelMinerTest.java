@@ -0,0 +1,111 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.MiningResult;
+import myBlockchain.Blockchain.ParallelMiner;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.Wallet;
+
+public class ParallelMinerTest
+{
+    private static ParallelMiner miner;
+    private static Wallet walletA;
+    private static Wallet walletB;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        miner = new ParallelMiner(4);
+        walletA = new Wallet();
+        walletB = new Wallet();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        miner.shutdown();
+    }
+
+    /*
+     * Testing if parallel mining produces
+     * a hash that meets the difficulty
+     */
+    @Test
+    public void testParallelMineMeetsDifficulty() {
+        Block block = new Block("0");
+        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, Amount.ofCoins(50), null);
+        transaction.transactionId = "test_transaction";
+        block.addTransaction(transaction);
+
+        block.mineBlock(3, miner);
+
+        assertTrue(block.hash.startsWith("000"), "Mined hash should start with 3 zeros");
+    }
+
+    /*
+     * Testing if the winning nonce is published
+     * to the block so its hash can be recalculated
+     */
+    @Test
+    public void testParallelMinePublishesNonce() {
+        Block block = new Block("0");
+
+        MiningResult result = block.mineBlock(2, miner);
+
+        assertEquals(result.hash, block.hash, "Block should carry the winning hash");
+        assertEquals(block.hash, block.calculateHash(), "Recalculated hash should match the mined hash");
+        assertEquals(block.hash, block.calculateHash(result.nonce), "Winning nonce should reproduce the hash");
+    }
+
+    /*
+     * Testing if the miner reports
+     * hash count and hash rate
+     */
+    @Test
+    public void testParallelMineReportsHashRate() {
+        Block block = new Block("0");
+
+        MiningResult result = block.mineBlock(3, miner);
+
+        assertTrue(result.hashes > 0, "Miner should count the hashes it tried");
+        assertTrue(result.elapsedNanos > 0, "Miner should measure elapsed time");
+        assertTrue(result.getHashesPerSecond() > 0, "Hash rate should be positive");
+    }
+
+    /*
+     * Testing if a single worker miner
+     * behaves like the sequential search
+     */
+    @Test
+    public void testSingleThreadMiner() {
+        ParallelMiner single = new ParallelMiner(1);
+        try {
+            Block block = new Block("0");
+            MiningResult result = block.mineBlock(2, single);
+
+            assertTrue(block.hash.startsWith("00"), "Mined hash should start with 2 zeros");
+            assertEquals(result.hashes, result.nonce + 1L, "Single worker should try nonces in order");
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    /*
+     * Testing if the miner rejects
+     * an empty thread pool
+     */
+    @Test
+    public void testInvalidThreadCount() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelMiner(0));
+    }
+}
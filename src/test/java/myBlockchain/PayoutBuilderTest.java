@@ -0,0 +1,183 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Payment;
+import myBlockchain.Transactions.PayoutBuilder;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSet;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+public class PayoutBuilderTest
+{
+    private static final long FEE = Amount.parse("0.01");
+
+    private static Wallet[] recievers;
+    private UTXOStore previous;
+    private Wallet wallet;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        recievers = new Wallet[50];
+        for(int i = 0; i < recievers.length; i++) {
+            recievers[i] = new Wallet();
+        }
+    }
+
+    @BeforeEach
+    public void setup() {
+        previous = myBlockchain.UTXOs;
+        myBlockchain.UTXOs = new UTXOSet();
+        wallet = new Wallet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.UTXOs = previous;
+    }
+
+    // Outputs of the given whole coin values owned by the wallet, added to the UTXO set
+    private void fund(long... coins) {
+        for(long value : coins) {
+            TransactionOutput output = new TransactionOutput(wallet.publicKey, Amount.ofCoins(value), StringUtil.applySHA256("payout_" + value + "_" + System.nanoTime()));
+            myBlockchain.UTXOs.put(output.id, output);
+        }
+    }
+
+    /*
+     * Testing if a thousand payouts are packed into
+     * few signed transactions that all confirm
+     */
+    @Test
+    public void testBatchOfPayouts() {
+        fund(300, 300, 300, 300, 300);
+        PayoutBuilder builder = new PayoutBuilder(wallet, FEE);
+        for(int i = 0; i < 1000; i++) {
+            builder.add(recievers[i % recievers.length].publicKey, Amount.ofCoins(1));
+        }
+        long total = builder.getTotal();
+        assertEquals(Amount.add(Amount.ofCoins(1000), 5 * FEE), total);
+
+        List<Transaction> transactions = builder.build();
+        assertEquals(5, transactions.size(), "200 payments fit in a transaction");
+        assertEquals(0, builder.size(), "Built payments should be cleared");
+        assertTrue(builder.build().isEmpty(), "A second build should pay nobody again");
+
+        HashSet<String> spent = new HashSet<String>();
+        TransactionCodec codec = new TransactionCodec();
+        for(Transaction transaction : transactions) {
+            assertEquals(199, transaction.payments.size());
+            assertTrue(transaction.verifiySignature());
+            for(TransactionInput input : transaction.inputs) {
+                assertTrue(spent.add(input.transactionOutputId), "Transactions of one batch should not share inputs");
+            }
+            assertTrue(transaction.processTransaction());
+            assertTrue(transaction.outputs.size() >= 200);
+            assertTrue(codec.decode(transaction.toBytes()).verifiySignature(), "Payments should read back as signed");
+        }
+        for(Wallet reciever : recievers) {
+            assertEquals(Amount.ofCoins(20), reciever.getBalance());
+        }
+        assertEquals(Amount.ofCoins(1500) - total, wallet.getBalance());
+        assertEquals(0, wallet.UTXOs.getReserved(), "Confirmed payouts should not keep reservations");
+    }
+
+    /*
+     * Testing if the inputs reserved for a batch
+     * are handed back when signing fails
+     */
+    @Test
+    public void testSigningFailureReleasesInputs() {
+        fund(10, 10);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        pool.shutdown();
+        PayoutBuilder builder = new PayoutBuilder(wallet, FEE, pool);
+        builder.setMaxPayments(1);
+        builder.add(recievers[0].publicKey, Amount.ofCoins(4));
+        builder.add(recievers[1].publicKey, Amount.ofCoins(4));
+
+        assertThrows(RejectedExecutionException.class, builder::build);
+        assertEquals(0, wallet.UTXOs.getReserved(), "Reservations should be released");
+        assertEquals(Amount.ofCoins(20), wallet.getAvailableBalance());
+        assertEquals(2, builder.size(), "Payments should be kept for another try");
+    }
+
+    /*
+     * Testing if two equal payments to the same
+     * reciever get outputs of their own
+     */
+    @Test
+    public void testEqualPaymentsGetOwnOutputs() {
+        fund(10);
+        Wallet reciever = recievers[0];
+        long before = reciever.getBalance();
+        List<Transaction> transactions = new PayoutBuilder(wallet, FEE)
+                .add(reciever.publicKey, Amount.ofCoins(2))
+                .add(reciever.publicKey, Amount.ofCoins(2))
+                .build();
+
+        assertEquals(1, transactions.size());
+        Transaction transaction = transactions.get(0);
+        assertTrue(transaction.processTransaction());
+        assertEquals(3, transaction.outputs.size());
+        assertNotEquals(transaction.outputs.get(0).id, transaction.outputs.get(1).id);
+        assertEquals(Amount.add(before, Amount.ofCoins(4)), reciever.getBalance());
+    }
+
+    /*
+     * Testing if a batch the wallet cannot cover
+     * is refused without reserving anything
+     */
+    @Test
+    public void testNotEnoughFunds() {
+        fund(5, 5);
+        PayoutBuilder builder = new PayoutBuilder(wallet, FEE);
+        builder.setMaxPayments(2);
+        for(int i = 0; i < 5; i++) {
+            builder.add(recievers[i].publicKey, Amount.ofCoins(2));
+        }
+
+        assertNull(builder.build());
+        assertEquals(0, wallet.UTXOs.getReserved());
+        assertEquals(Amount.ofCoins(10), wallet.getAvailableBalance());
+        assertThrows(IllegalArgumentException.class, () -> builder.add(recievers[0].publicKey, 0));
+    }
+
+    /*
+     * Testing if the signature covers
+     * every payment
+     */
+    @Test
+    public void testSignatureCoversPayments() {
+        fund(10);
+        Transaction transaction = new PayoutBuilder(wallet, FEE)
+                .add(recievers[0].publicKey, Amount.ofCoins(1))
+                .add(recievers[1].publicKey, Amount.ofCoins(1))
+                .build().get(0);
+        assertTrue(transaction.verifiySignature());
+
+        transaction.payments.set(0, new Payment(wallet.publicKey, Amount.ofCoins(1)));
+        assertFalse(transaction.verifiySignature(), "A replaced payment should not verify");
+        assertFalse(transaction.processTransaction());
+    }
+}
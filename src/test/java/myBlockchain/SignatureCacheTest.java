@@ -0,0 +1,110 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Transactions.SignatureCache;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+public class SignatureCacheTest
+{
+    private static Wallet walletA;
+    private static Wallet walletB;
+    private SignatureCache cache;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        walletA = new Wallet();
+        walletB = new Wallet();
+    }
+
+    @BeforeEach
+    public void setup() {
+        cache = new SignatureCache(64);
+    }
+
+    /*
+     * Testing if a second verification of the
+     * same signature is answered from the cache
+     */
+    @Test
+    public void testRepeatedVerificationHitsCache() {
+        byte[] signature = StringUtil.applyECDSASig(walletA.privateKey, "payload");
+
+        assertTrue(cache.verify(walletA.publicKey, "payload", signature));
+        assertTrue(cache.verify(walletA.publicKey, "payload", signature));
+
+        assertEquals(1, cache.getMisses(), "Only the first check should run ECDSA");
+        assertEquals(1, cache.getHits(), "The second check should be a cache hit");
+        assertEquals(1, cache.size());
+    }
+
+    /*
+     * Testing if failed verifications
+     * are never cached
+     */
+    @Test
+    public void testInvalidSignatureNotCached() {
+        byte[] signature = StringUtil.applyECDSASig(walletA.privateKey, "payload");
+
+        assertFalse(cache.verify(walletB.publicKey, "payload", signature));
+        assertFalse(cache.verify(walletA.publicKey, "other payload", signature));
+
+        assertEquals(0, cache.size(), "Invalid signatures should not be cached");
+        assertEquals(0, cache.getHits());
+    }
+
+    /*
+     * Testing if the entry depends on the payload,
+     * the key and the signature bytes
+     */
+    @Test
+    public void testCacheKeyCoversAllInputs() {
+        byte[] signature = StringUtil.applyECDSASig(walletA.privateKey, "payload");
+        assertTrue(cache.verify(walletA.publicKey, "payload", signature));
+
+        // A different signature over the same payload is verified again
+        byte[] second = StringUtil.applyECDSASig(walletA.privateKey, "payload");
+        assertTrue(cache.verify(walletA.publicKey, "payload", second));
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    /*
+     * Testing if the cache stays within
+     * its capacity by evicting old entries
+     */
+    @Test
+    public void testBoundedCapacity() {
+        for (int i = 0; i < 200; i++) {
+            String data = "payload " + i;
+            cache.verify(walletA.publicKey, data, StringUtil.applyECDSASig(walletA.privateKey, data));
+        }
+
+        assertTrue(cache.size() <= 64, "Cache should never hold more than its capacity");
+        assertTrue(cache.size() > 0, "Recent entries should still be cached");
+    }
+
+    /*
+     * Testing if clear() empties the cache
+     */
+    @Test
+    public void testClear() {
+        byte[] signature = StringUtil.applyECDSASig(walletA.privateKey, "payload");
+        cache.verify(walletA.publicKey, "payload", signature);
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,117 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.SignatureVerifier;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+public class SignatureVerifierTest
+{
+    private static Wallet walletA;
+    private static Wallet walletB;
+    private static SignatureVerifier verifier;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        walletA = new Wallet();
+        walletB = new Wallet();
+        verifier = new SignatureVerifier();
+    }
+
+    private static Transaction signedTransaction(long value) {
+        Transaction transaction = new Transaction(walletA.publicKey, walletB.publicKey, value, new ArrayList<>());
+        transaction.generateSignature(walletA.privateKey);
+        return transaction;
+    }
+
+    /*
+     * Testing if a batch of correctly signed
+     * transactions all verify
+     */
+    @Test
+    public void testVerifyAllValid() {
+        List<Transaction> batch = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            batch.add(signedTransaction(Amount.ofCoins(i + 1)));
+        }
+
+        boolean[] results = verifier.verifyAll(batch);
+
+        assertEquals(batch.size(), results.length, "There should be one result per transaction");
+        for (boolean result : results) {
+            assertTrue(result, "Every signature in the batch should be valid");
+        }
+        assertTrue(verifier.allValid(batch));
+    }
+
+    /*
+     * Testing if forged and malformed signatures
+     * are reported at their own index
+     */
+    @Test
+    public void testVerifyAllReportsInvalid() {
+        List<Transaction> batch = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            batch.add(signedTransaction(Amount.ofCoins(i + 1)));
+        }
+        // Signed with the wrong key
+        batch.get(3).generateSignature(walletB.privateKey);
+        // Not a DER signature at all
+        batch.get(6).signature = new byte[] { 1, 2, 3 };
+
+        boolean[] results = verifier.verifyAll(batch);
+
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(i != 3 && i != 6, results[i], "Unexpected result for transaction " + i);
+        }
+        assertFalse(verifier.allValid(batch));
+    }
+
+    /*
+     * Testing if an empty batch
+     * gives an empty result
+     */
+    @Test
+    public void testVerifyEmptyBatch() {
+        assertEquals(0, verifier.verifyAll(new ArrayList<>()).length);
+    }
+
+    /*
+     * Testing if Block.addTransactions() only
+     * accepts the correctly signed transactions
+     */
+    @Test
+    public void testBlockAddTransactions() {
+        Wallet sender = new Wallet();
+        TransactionOutput funds = new TransactionOutput(sender.publicKey, Amount.ofCoins(100), "signature_verifier_test");
+        myBlockchain.UTXOs.put(funds.id, funds);
+
+        Transaction valid = sender.sendFunds(walletB.publicKey, Amount.ofCoins(10));
+        Transaction forged = new Transaction(sender.publicKey, walletB.publicKey, Amount.ofCoins(5), new ArrayList<>());
+        forged.generateSignature(walletB.privateKey);
+
+        Block block = new Block(StringUtil.applySHA256("parent"));
+        boolean[] added = block.addTransactions(List.of(valid, forged));
+
+        assertTrue(added[0], "Correctly signed transaction should be added");
+        assertFalse(added[1], "Forged transaction should be rejected");
+        assertEquals(1, block.transactions.size(), "Only one transaction should be in the block");
+        block.getUTXOBatch().commit();
+        assertEquals(Amount.ofCoins(90), sender.getBalance(), "Change should be back in the sender's balance");
+    }
+}
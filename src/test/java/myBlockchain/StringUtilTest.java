@@ -2,17 +2,22 @@ package myBlockchain;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import myBlockchain.Transactions.Amount;
 import myBlockchain.Transactions.Transaction;
 import myBlockchain.Transactions.Wallet;
 import myBlockchain.Util.StringUtil;
@@ -364,14 +369,16 @@ public class StringUtilTest
         Wallet wallet2 = new Wallet();
         
         ArrayList<Transaction> transactions = new ArrayList<>();
-        Transaction tx = new Transaction(wallet1.publicKey, wallet2.publicKey, 50f, null);
-        tx.transactionId = "test_transaction_id";
+        Transaction tx = new Transaction(wallet1.publicKey, wallet2.publicKey, Amount.ofCoins(50), null);
+        // Merkle leaves are 32 byte digests, so use a real SHA-256 transaction ID
+        String transactionId = StringUtil.applySHA256("test_transaction_id");
+        tx.transactionId = transactionId;
         transactions.add(tx);
         
         String merkleRoot = StringUtil.getMerkleRoot(transactions);
         
         assertNotNull(merkleRoot, "Merkle root should not be null");
-        assertEquals("test_transaction_id", merkleRoot, "Single transaction merkle root should be the transaction ID");
+        assertEquals(transactionId, merkleRoot, "Single transaction merkle root should be the transaction ID");
     }
     
     /*
@@ -385,11 +392,11 @@ public class StringUtilTest
         
         ArrayList<Transaction> transactions = new ArrayList<>();
         
-        Transaction tx1 = new Transaction(wallet1.publicKey, wallet2.publicKey, 50f, null);
+        Transaction tx1 = new Transaction(wallet1.publicKey, wallet2.publicKey, Amount.ofCoins(50), null);
         tx1.transactionId = "tx1";
         transactions.add(tx1);
         
-        Transaction tx2 = new Transaction(wallet2.publicKey, wallet1.publicKey, 25f, null);
+        Transaction tx2 = new Transaction(wallet2.publicKey, wallet1.publicKey, Amount.ofCoins(25), null);
         tx2.transactionId = "tx2";
         transactions.add(tx2);
         
@@ -416,11 +423,11 @@ public class StringUtilTest
         ArrayList<Transaction> transactions2 = new ArrayList<>();
         
         // Create identical transaction lists
-        Transaction tx1a = new Transaction(wallet1.publicKey, wallet2.publicKey, 50f, null);
+        Transaction tx1a = new Transaction(wallet1.publicKey, wallet2.publicKey, Amount.ofCoins(50), null);
         tx1a.transactionId = "tx1";
         transactions1.add(tx1a);
         
-        Transaction tx1b = new Transaction(wallet1.publicKey, wallet2.publicKey, 50f, null);
+        Transaction tx1b = new Transaction(wallet1.publicKey, wallet2.publicKey, Amount.ofCoins(50), null);
         tx1b.transactionId = "tx1";
         transactions2.add(tx1b);
         
@@ -442,10 +449,10 @@ public class StringUtilTest
         ArrayList<Transaction> transactions1 = new ArrayList<>();
         ArrayList<Transaction> transactions2 = new ArrayList<>();
         
-        Transaction txA = new Transaction(wallet1.publicKey, wallet2.publicKey, 50f, null);
+        Transaction txA = new Transaction(wallet1.publicKey, wallet2.publicKey, Amount.ofCoins(50), null);
         txA.transactionId = "txA";
         
-        Transaction txB = new Transaction(wallet2.publicKey, wallet1.publicKey, 25f, null);
+        Transaction txB = new Transaction(wallet2.publicKey, wallet1.publicKey, Amount.ofCoins(25), null);
         txB.transactionId = "txB";
         
         // Add in different orders
@@ -460,4 +467,87 @@ public class StringUtilTest
         
         assertNotEquals(merkleRoot1, merkleRoot2, "Different transaction orders should produce different merkle roots");
     }
-}
\ No newline at end of file
+
+    // =================== BINARY SHA-256 TESTS ===================
+
+    /*
+     * Testing if hashing raw bytes matches
+     * the String overload for the same UTF-8 bytes
+     */
+    @Test
+    public void testSha256Hex_MatchesApplySHA256()
+    {
+        byte[] input = "blockchain".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(StringUtil.applySHA256("blockchain"), StringUtil.sha256Hex(input));
+        assertEquals(StringUtil.applySHA256("blockchain"), StringUtil.toHexString(StringUtil.sha256(input)));
+    }
+
+    /*
+     * Testing sha256() over a ByteBuffer
+     * and a slice of an array
+     */
+    @Test
+    public void testSha256_BufferAndSlice()
+    {
+        byte[] padded = "xxhelloxx".getBytes(StandardCharsets.UTF_8);
+        String expected = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+        assertEquals(expected, StringUtil.toHexString(StringUtil.sha256(padded, 2, 5)));
+        assertEquals(expected, StringUtil.toHexString(StringUtil.sha256(ByteBuffer.wrap(padded, 2, 5))));
+        ByteBuffer direct = ByteBuffer.allocateDirect(5);
+        direct.put("hello".getBytes(StandardCharsets.UTF_8)).flip();
+        assertEquals(expected, StringUtil.toHexString(StringUtil.sha256(direct)));
+    }
+
+    /*
+     * Testing sha256() writing into
+     * a caller-supplied output buffer
+     */
+    @Test
+    public void testSha256_IntoOutputBuffer()
+    {
+        byte[] input = "hello".getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[40];
+
+        StringUtil.sha256(input, 0, input.length, out, 4);
+        assertArrayEquals(StringUtil.sha256(input), Arrays.copyOfRange(out, 4, 36));
+        assertEquals(0, out[0], "Bytes before the offset should be untouched");
+
+        byte[] fromBuffer = new byte[32];
+        StringUtil.sha256(ByteBuffer.wrap(input), fromBuffer, 0);
+        assertArrayEquals(StringUtil.sha256(input), fromBuffer);
+    }
+
+    /*
+     * Testing the hex encoder and decoder
+     * round trip, including upper case input
+     */
+    @Test
+    public void testHexRoundTrip()
+    {
+        byte[] bytes = { 0x00, 0x0f, (byte) 0xab, (byte) 0xff, 0x10 };
+
+        assertEquals("000fabff10", StringUtil.toHexString(bytes));
+        assertArrayEquals(bytes, StringUtil.hexToBytes("000fabff10"));
+        assertArrayEquals(bytes, StringUtil.hexToBytes("000FABFF10"));
+        assertTrue(StringUtil.isHex("0123456789abcdefABCDEF"));
+        assertFalse(StringUtil.isHex("xyz"));
+        assertThrows(IllegalArgumentException.class, () -> StringUtil.hexToBytes("zz"));
+    }
+
+    /*
+     * Testing if hashing from many threads
+     * gives the same results as a single thread
+     */
+    @Test
+    public void testApplySHA256_ConcurrentCallers()
+    {
+        String expected = StringUtil.applySHA256("test");
+        boolean allMatch = IntStream.range(0, 10_000).parallel()
+            .mapToObj(i -> StringUtil.applySHA256("test"))
+            .allMatch(expected::equals);
+
+        assertTrue(allMatch, "Per-thread digests should not corrupt each other");
+    }
+}
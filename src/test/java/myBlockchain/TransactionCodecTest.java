@@ -0,0 +1,147 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionCodec;
+import myBlockchain.Transactions.TransactionInput;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSet;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+import myBlockchain.Util.StringUtil;
+
+public class TransactionCodecTest
+{
+    private static Wallet sender;
+    private static Wallet reciever;
+    private UTXOStore previous;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        sender = new Wallet();
+        reciever = new Wallet();
+    }
+
+    @BeforeEach
+    public void setup() {
+        previous = myBlockchain.UTXOs;
+        myBlockchain.UTXOs = new UTXOSet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.UTXOs = previous;
+    }
+
+    // A signed and processed payment spending one fresh output of 10 coins
+    private static Transaction payment(long coins) {
+        TransactionOutput funds = new TransactionOutput(sender.publicKey, Amount.ofCoins(10), StringUtil.applySHA256("codec_" + System.nanoTime()));
+        myBlockchain.UTXOs.put(funds.id, funds);
+        ArrayList<TransactionInput> inputs = new ArrayList<TransactionInput>();
+        inputs.add(new TransactionInput(funds.id));
+        Transaction transaction = new Transaction(sender.publicKey, reciever.publicKey, Amount.ofCoins(coins), Amount.parse("0.01"), inputs);
+        transaction.generateSignature(sender.privateKey);
+        assertTrue(transaction.processTransaction());
+        return transaction;
+    }
+
+    /*
+     * Testing if a transaction reads back with the
+     * same id, signature, outputs and bytes
+     */
+    @Test
+    public void testRoundTrip() {
+        Transaction transaction = payment(4);
+        byte[] bytes = transaction.toBytes();
+
+        TransactionCodec codec = new TransactionCodec();
+        Transaction decoded = codec.decode(bytes);
+
+        assertEquals(transaction.transactionId, decoded.transactionId);
+        assertEquals(transaction.value, decoded.value);
+        assertEquals(transaction.fee, decoded.fee);
+        assertEquals(transaction.sender, decoded.sender);
+        assertEquals(transaction.inputs.get(0).transactionOutputId, decoded.inputs.get(0).transactionOutputId);
+        assertEquals(2, decoded.outputs.size());
+        for(int i = 0; i < 2; i++) {
+            assertEquals(transaction.outputs.get(i).id, decoded.outputs.get(i).id);
+            assertEquals(transaction.outputs.get(i).value, decoded.outputs.get(i).value);
+            assertEquals(transaction.outputs.get(i).parentTransactionId, decoded.outputs.get(i).parentTransactionId);
+        }
+        assertSame(decoded.sender, decoded.outputs.get(1).getReciever(), "Keys read twice should be interned");
+        assertTrue(decoded.verifiySignature());
+        assertArrayEquals(bytes, decoded.toBytes());
+        assertEquals(bytes.length, transaction.getEncodedSize());
+    }
+
+    /*
+     * Testing if ids and signatures cover the
+     * binary body and hashes take 32 bytes
+     */
+    @Test
+    public void testIdsCoverBinaryForm() {
+        Transaction transaction = payment(4);
+        TransactionOutput output = transaction.outputs.get(0);
+
+        assertEquals(StringUtil.sha256Hex(transaction.getBody()), transaction.transactionId);
+        assertEquals(StringUtil.sha256Hex(TransactionCodec.encodeOutput(output.owner, output.value, output.parentTransactionId, 0)), output.id);
+
+        int before = transaction.getBody().length;
+        transaction.inputs.add(new TransactionInput(StringUtil.applySHA256("codec_extra")));
+        assertEquals(before + 1 + StringUtil.SHA256_LENGTH, transaction.getBody().length, "An input should take a tag and 32 raw bytes");
+        assertFalse(transaction.verifiySignature(), "The signature should cover the inputs");
+    }
+
+    /*
+     * Testing if the encoded form is kept between
+     * calls and rebuilt once a field changes
+     */
+    @Test
+    public void testBytesAreCachedUntilChanged() {
+        Transaction transaction = payment(4);
+        byte[] bytes = transaction.toBytes();
+
+        assertSame(bytes, transaction.toBytes());
+        assertTrue(transaction.verifiySignature());
+
+        transaction.value += 1;
+        assertNotSame(bytes, transaction.toBytes());
+        assertFalse(transaction.verifiySignature(), "A changed value should not verify");
+
+        transaction.value -= 1;
+        assertArrayEquals(bytes, transaction.toBytes());
+        assertTrue(transaction.verifiySignature());
+    }
+
+    /*
+     * Testing if legacy transactions keep signing
+     * their fields as a string
+     */
+    @Test
+    public void testLegacyTransaction() {
+        Transaction transaction = new Transaction(sender.publicKey, reciever.publicKey, Amount.ofCoins(1), new ArrayList<TransactionInput>());
+        transaction.version = Transaction.LEGACY_VERSION;
+        transaction.transactionId = "0";
+        String data = StringUtil.getStringFromKey(sender.publicKey) + StringUtil.getStringFromKey(reciever.publicKey) + Long.toString(transaction.value);
+        transaction.signature = StringUtil.applyECDSASig(sender.privateKey, data);
+
+        assertTrue(transaction.verifiySignature());
+        Transaction decoded = new TransactionCodec().decode(transaction.toBytes());
+        assertEquals(Transaction.LEGACY_VERSION, decoded.version);
+        assertEquals("0", decoded.transactionId, "Ids that are not hashes should survive");
+        assertTrue(decoded.verifiySignature());
+    }
+}
@@ -0,0 +1,160 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOBatch;
+import myBlockchain.Transactions.UTXOSet;
+import myBlockchain.Transactions.Wallet;
+
+public class UTXOSetTest
+{
+    private static Wallet walletA;
+    private static Wallet walletB;
+    private UTXOSet utxos;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        walletA = new Wallet();
+        walletB = new Wallet();
+    }
+
+    @BeforeEach
+    public void setup() {
+        utxos = new UTXOSet();
+    }
+
+    /*
+     * Testing if adding outputs updates
+     * the running balance of each owner
+     */
+    @Test
+    public void testBalancePerOwner() {
+        utxos.put("a1", output(walletA, Amount.ofCoins(10), "a1"));
+        utxos.put("a2", output(walletA, Amount.ofCoins(5), "a2"));
+        utxos.put("b1", output(walletB, Amount.ofCoins(7), "b1"));
+
+        assertEquals(Amount.ofCoins(15), utxos.getBalance(walletA.publicKey));
+        assertEquals(Amount.ofCoins(7), utxos.getBalance(walletB.publicKey));
+        assertEquals(3, utxos.size());
+    }
+
+    /*
+     * Testing if spending an output removes it
+     * from its owner's index and balance
+     */
+    @Test
+    public void testRemoveUpdatesIndex() {
+        TransactionOutput first = output(walletA, Amount.ofCoins(10), "a1");
+        TransactionOutput second = output(walletA, Amount.ofCoins(5), "a2");
+        utxos.put(first.id, first);
+        utxos.put(second.id, second);
+
+        assertSame(first, utxos.remove(first.id));
+
+        assertEquals(Amount.ofCoins(5), utxos.getBalance(walletA.publicKey));
+        assertEquals(1, utxos.getOutputs(walletA.publicKey).size());
+        assertSame(second, utxos.getOutputs(walletA.publicKey).get(0));
+        assertNull(utxos.remove(first.id), "Removing a spent output twice should do nothing");
+    }
+
+    /*
+     * Testing if replacing an output with the
+     * same id does not count it twice
+     */
+    @Test
+    public void testReplaceSameId() {
+        utxos.put("x", output(walletA, Amount.ofCoins(10), "x"));
+        utxos.put("x", output(walletB, Amount.ofCoins(4), "x"));
+
+        assertEquals(0L, utxos.getBalance(walletA.publicKey));
+        assertEquals(Amount.ofCoins(4), utxos.getBalance(walletB.publicKey));
+        assertTrue(utxos.getOutputs(walletA.publicKey).isEmpty());
+    }
+
+    /*
+     * Testing if an owner without outputs
+     * has a zero balance
+     */
+    @Test
+    public void testUnknownOwner() {
+        assertEquals(0L, utxos.getBalance(new Wallet().publicKey));
+        assertTrue(utxos.getOutputs(walletA.publicKey).isEmpty());
+    }
+
+    /*
+     * Testing if Wallet.getBalance() reads the
+     * global index and fills the wallet's local outputs
+     */
+    @Test
+    public void testWalletBalanceUsesIndex() {
+        Wallet wallet = new Wallet();
+        TransactionOutput funds = output(wallet, Amount.ofCoins(25), "utxo_set_test");
+        myBlockchain.UTXOs.put(funds.id, funds);
+
+        assertEquals(Amount.ofCoins(25), wallet.getBalance());
+        assertSame(funds, wallet.UTXOs.get(funds.id));
+
+        myBlockchain.UTXOs.remove(funds.id);
+        assertEquals(0L, wallet.getBalance());
+    }
+
+    /*
+     * Testing if a batch sees its own changes
+     * and leaves the set alone until committed
+     */
+    @Test
+    public void testBatchStagesChanges() {
+        TransactionOutput a = output(walletA, Amount.ofCoins(10), "batch_a");
+        TransactionOutput b = output(walletB, Amount.ofCoins(5), "batch_b");
+        utxos.put(a.id, a);
+
+        UTXOBatch batch = new UTXOBatch(utxos);
+        assertSame(a, batch.remove(a.id));
+        assertNull(batch.remove(a.id), "An output can only be spent once per batch");
+        batch.put(b);
+        assertSame(b, batch.get(b.id));
+        assertNull(batch.get(a.id));
+
+        assertSame(a, utxos.get(a.id), "Set should not change before commit");
+        assertNull(utxos.get(b.id));
+
+        batch.commit();
+        assertNull(utxos.get(a.id));
+        assertSame(b, utxos.get(b.id));
+        assertEquals(0L, utxos.getBalance(walletA.publicKey));
+        assertEquals(Amount.ofCoins(5), utxos.getBalance(walletB.publicKey));
+        assertTrue(batch.isEmpty(), "Commit should start a new batch");
+    }
+
+    /*
+     * Testing if an output created and spent
+     * in the same batch never reaches the set
+     */
+    @Test
+    public void testBatchNetsOutCreateAndSpend() {
+        TransactionOutput change = output(walletA, Amount.ofCoins(3), "batch_change");
+
+        UTXOBatch batch = new UTXOBatch(utxos);
+        batch.put(change);
+        assertSame(change, batch.remove(change.id));
+        assertTrue(batch.isEmpty());
+
+        batch.commit();
+        assertEquals(0, utxos.size());
+    }
+
+    private static TransactionOutput output(Wallet owner, long value, String parent) {
+        return new TransactionOutput(owner.publicKey, value, parent);
+    }
+}
@@ -0,0 +1,202 @@
+package myBlockchain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.Security;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import myBlockchain.Blockchain.Block;
+import myBlockchain.Blockchain.Ledger;
+import myBlockchain.Blockchain.ValidationPipeline;
+import myBlockchain.Transactions.Amount;
+import myBlockchain.Transactions.Transaction;
+import myBlockchain.Transactions.TransactionOutput;
+import myBlockchain.Transactions.UTXOSnapshot;
+import myBlockchain.Transactions.UTXOStore;
+import myBlockchain.Transactions.Wallet;
+
+public class ValidationPipelineTest
+{
+    private static final int DIFFICULTY = 1;
+    private static final int BLOCKS = 24;
+
+    private static ForkJoinPool pool;
+    private static Wallet coinbase;
+
+    private Ledger previousLedger;
+    private UTXOStore previousUTXOs;
+    private Ledger ledger;
+    private UTXOSnapshot genesisOutputs;
+
+    @BeforeAll
+    public static void setupClass() {
+        // Add BouncyCastle provider for cryptographic operations
+        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+        pool = new ForkJoinPool(4);
+        coinbase = new Wallet();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        pool.shutdown();
+    }
+
+    @BeforeEach
+    public void setup() {
+        previousLedger = myBlockchain.ledger;
+        previousUTXOs = myBlockchain.UTXOs;
+        ledger = new Ledger();
+        myBlockchain.ledger = ledger;
+        myBlockchain.UTXOs = ledger;
+        Wallet walletA = new Wallet();
+        Wallet walletB = new Wallet();
+
+        Transaction genesisTransaction = new Transaction(coinbase.publicKey, walletA.publicKey, Amount.ofCoins(100), null);
+        genesisTransaction.generateSignature(coinbase.privateKey);
+        genesisTransaction.transactionId = "0";
+        TransactionOutput funds = new TransactionOutput(genesisTransaction.reciever, genesisTransaction.value, genesisTransaction.transactionId);
+        genesisTransaction.outputs.add(funds);
+        ledger.put(funds.id, funds);
+        genesisOutputs = ledger.snapshot().getUTXOs();
+
+        Block genesis = new Block("0");
+        genesis.addTransaction(genesisTransaction);
+        genesis.mineBlock(DIFFICULTY);
+        ledger.applyBlock(genesis);
+        // One payment per block, back and forth
+        for(int i = 1; i < BLOCKS; i++) {
+            Wallet sender = (i & 1) == 1 ? walletA : walletB;
+            Wallet reciever = sender == walletA ? walletB : walletA;
+            Block block = new Block(ledger.snapshot().getTip().hash);
+            assertTrue(block.addTransaction(sender.sendFunds(reciever.publicKey, Amount.ofCoins(1))));
+            block.mineBlock(DIFFICULTY);
+            ledger.applyBlock(block);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        myBlockchain.ledger = previousLedger;
+        myBlockchain.UTXOs = previousUTXOs;
+    }
+
+    /*
+     * Testing if a valid chain passes and ends
+     * with the same outputs as the ledger
+     */
+    @Test
+    public void testValidChain() {
+        ValidationPipeline pipeline = new ValidationPipeline(pool, 3);
+        ValidationPipeline.Result result = pipeline.validate(ledger.snapshot(), 1, DIFFICULTY, genesisOutputs);
+
+        assertTrue(result.isValid(), result.getReason());
+        assertEquals(BLOCKS, result.getValidHeight());
+        assertEquals(-1, result.getFailedHeight());
+        assertEquals(ledger.size(), result.getUTXOs().size());
+        for(TransactionOutput output : ledger.snapshot().getUTXOs().values()) {
+            assertTrue(result.getUTXOs().containsKey(output.id), "Pipeline should end with the ledger's outputs");
+        }
+    }
+
+    /*
+     * Testing if the first bad block and transaction
+     * are reported when later blocks are bad too
+     */
+    @Test
+    public void testReportsFirstFailure() {
+        Transaction first = ledger.snapshot().getBlock(9).transactions.get(0);
+        Transaction later = ledger.snapshot().getBlock(17).transactions.get(0);
+        first.value += 1;
+        later.value += 1;
+
+        ValidationPipeline.Result result = new ValidationPipeline(pool, 8).validate(ledger.snapshot(), 1, DIFFICULTY, genesisOutputs);
+
+        assertFalse(result.isValid());
+        assertEquals(9, result.getFailedHeight());
+        assertEquals(0, result.getFailedTransaction());
+        assertEquals("Signature on Transaction(0) is Invalid", result.getReason());
+        assertEquals(9, result.getValidHeight(), "Blocks before the bad one should count as valid");
+        first.value -= 1;
+        later.value -= 1;
+    }
+
+    /*
+     * Testing if a block whose transactions do not
+     * match its merkle root is rejected as a whole
+     */
+    @Test
+    public void testMerkleRootMismatch() {
+        Transaction transaction = ledger.snapshot().getBlock(5).transactions.get(0);
+        String id = transaction.transactionId;
+        transaction.transactionId = "tampered";
+
+        ValidationPipeline.Result result = new ValidationPipeline(pool).validate(ledger.snapshot(), 1, DIFFICULTY, genesisOutputs);
+
+        assertEquals(5, result.getFailedHeight());
+        assertEquals(-1, result.getFailedTransaction(), "The block itself should be at fault");
+        assertEquals("Merkle root does not match the transactions", result.getReason());
+        transaction.transactionId = id;
+    }
+
+    /*
+     * Testing if an output rewritten after signing,
+     * which keeps the block hash, is caught by its id
+     */
+    @Test
+    public void testRewrittenOutput() {
+        Transaction transaction = ledger.snapshot().getBlock(7).transactions.get(0);
+        TransactionOutput output = transaction.outputs.get(0);
+        Wallet thief = new Wallet();
+        transaction.outputs.set(0, new TransactionOutput(output.id, thief.keyId, output.value, output.parentTransactionId));
+
+        ValidationPipeline.Result result = new ValidationPipeline(pool).validate(ledger.snapshot(), 1, DIFFICULTY, genesisOutputs);
+
+        assertEquals(7, result.getFailedHeight());
+        assertEquals(0, result.getFailedTransaction());
+        assertEquals("Transaction(0) ids do not match its contents", result.getReason());
+        transaction.outputs.set(0, output);
+    }
+
+    /*
+     * Testing if the UTXO stage catches inputs
+     * that are not unspent
+     */
+    @Test
+    public void testMissingInputs() {
+        ValidationPipeline.Result result = new ValidationPipeline(pool, 2).validate(ledger.snapshot(), 1, DIFFICULTY, UTXOSnapshot.empty());
+
+        assertEquals(1, result.getFailedHeight());
+        assertEquals(0, result.getFailedTransaction());
+        assertEquals("Referenced input on Transaction(0) is Missing", result.getReason());
+    }
+
+    /*
+     * Testing if isChainValid() goes through the
+     * pipeline and remembers where it failed
+     */
+    @Test
+    public void testChainValidatorReportsFailure() {
+        myBlockchain.chainValidator.reset();
+        int difficulty = myBlockchain.difficulty;
+        myBlockchain.difficulty = DIFFICULTY;
+        try {
+            assertTrue(myBlockchain.isChainValid(true));
+            Transaction transaction = ledger.snapshot().getBlock(12).transactions.get(0);
+            transaction.value += 1;
+            assertFalse(myBlockchain.isChainValid(true));
+            assertEquals(12, myBlockchain.chainValidator.getLastFailure().getFailedHeight());
+            assertEquals(12, myBlockchain.chainValidator.getCheckpoint().getHeight(), "Checkpoint should stop before the bad block");
+            transaction.value -= 1;
+        } finally {
+            myBlockchain.difficulty = difficulty;
+            myBlockchain.chainValidator.reset();
+        }
+    }
+}